@@ -802,6 +802,27 @@ public class MapBean extends JComponent implements ComponentListener, ContainerL
 
 	protected transient boolean doContainerChange = true;
 
+	/**
+	 * Get the position of a layer on the map, without locking the component
+	 * tree, so it can be called from any thread. May not reflect a layer
+	 * change that is in progress.
+	 * 
+	 * @param layer the layer to look for.
+	 * @return 0 for the top layer, 1 for the one under it, etc., -1 if the layer
+	 *         isn't on the map.
+	 */
+	public int getLayerIndex(Layer layer) {
+		Layer[] layers = currentLayers;
+		if (layers != null) {
+			for (int i = 0; i < layers.length; i++) {
+				if (layers[i] == layer) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * ContainerListener Interface method. Should not be called directly. Part
 	 * of the ContainerListener interface, and it's here to make the MapBean a
@@ -226,61 +226,6 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
         return null;
     }
 
-    /**
-     * This version of resizeCache is for screen size changes, where the number
-     * of frames kept on hand in the cache must change, but the images
-     * themselves don't have to because the pixel/posting spacing hasn't changed
-     * in the projection. The frames already in the cache are re-added to the
-     * new cache, if the cache size is increasing. If the cache size is
-     * shrinking, then as many as will fit are added to the new cache.
-     * 
-     * @param max_size the new size of the cache.
-     */
-    public void resizeCache(int max_size) {
-
-        CacheObject[] oldObjs = objs;
-
-        if (max_size != objs.length && max_size > 0) {
-            objs = new CacheObject[max_size];
-        }
-
-        for (int i = 0; i < objs.length; i++) {
-
-            if (i >= oldObjs.length) {
-                break;
-            }
-
-            DTEDCacheObject dco = (DTEDCacheObject) oldObjs[i];
-
-            if (dco == null) {
-                // We load from the front to the back 0 -> length - 1;
-                // Once you hit a null, the rest should be null, too.
-                objs[i] = null;
-                continue;
-            }
-
-            DTEDFrame frame = (DTEDFrame) (dco.obj);
-            dco.cachedTime = 0;
-
-            if (frame == null) {
-                Debug.output("DTEDFrameCache: No Frame for key!");
-                continue;
-            }
-
-            if (oldObjs == objs) {
-                continue;
-            }
-
-            if (i < oldObjs.length) {
-                objs[i] = oldObjs[i];
-            } else {
-                objs[i] = null;
-            }
-        }
-
-        oldObjs = null;
-    }
-
     public int getHighestResLevel() {
         return highestResLevel;
     }
@@ -0,0 +1,478 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded store for encoded tile images (the png/jpg bytes), kept in a single
+ * file on disk. Tiles are appended to the file as they are added, and an index
+ * of where each z/x/y tile lives in the file is kept in memory, so checking
+ * whether a tile is stored doesn't touch the disk. The index is rebuilt by
+ * reading through the record headers when the file is opened.
+ * <P>
+ * The cache is limited by the number of tile bytes it holds. When there isn't
+ * room for a new tile, the least recently used tiles are dropped. Dropped and
+ * replaced tiles leave dead space in the file, which is reclaimed by copying
+ * the live tiles to a new file once the dead space outgrows the live tiles.
+ * Tiles can also be given a time to live, after which they are treated as
+ * missing so they get fetched again.
+ * <P>
+ * Each record in the file is a header (a marker int, zoom level, x, y, the time
+ * the tile was stored and the number of bytes, all big-endian) followed by the
+ * tile bytes. A record with a negative length marks a tile as removed. A
+ * partial record at the end of the file, left by a crash, is cut off when the
+ * file is opened.
+ * <P>
+ * The order tiles were last used in is kept in memory; when the file is
+ * reopened, tiles are considered used in the order they were written, and
+ * compaction writes them out least recently used first so the order survives.
+ * All methods are synchronized, the cache can be shared between threads.
+ */
+public class DiskTileCache {
+
+	public static Logger logger = Logger.getLogger("com.bbn.openmap.dataAccess.mapTile.DiskTileCache");
+
+	/**
+	 * Marker at the start of each record, "OMTP".
+	 */
+	protected final static int MAGIC = 0x4F4D5450;
+	protected final static int HEADER_SIZE = 28;
+	/**
+	 * Dead space is only reclaimed once there is at least this much of it.
+	 */
+	protected final static long MIN_COMPACT_BYTES = 1024 * 1024;
+
+	protected final File file;
+	protected final long maxBytes;
+	protected long timeToLive;
+
+	protected RandomAccessFile raf;
+	protected FileChannel channel;
+	protected long fileLength;
+	protected long liveBytes;
+	/**
+	 * Access ordered, so iteration starts at the least recently used tile.
+	 */
+	protected final LinkedHashMap<Long, Entry> index = new LinkedHashMap<Long, Entry>(256, .75f, true);
+	protected final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+	/**
+	 * Open a cache file, creating it if it doesn't exist.
+	 *
+	 * @param file the file to keep the tiles in.
+	 * @param maxBytes the maximum number of tile bytes to keep.
+	 * @param timeToLive milliseconds a tile is good for after it's stored, 0
+	 *        or less for tiles that never expire.
+	 * @throws IOException if the file can't be opened or created.
+	 */
+	public DiskTileCache(File file, long maxBytes, long timeToLive) throws IOException {
+		this.file = file;
+		this.maxBytes = maxBytes;
+		this.timeToLive = timeToLive;
+		open();
+	}
+
+	protected void open() throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		index.clear();
+		liveBytes = 0;
+
+		long length = channel.size();
+		long pos = 0;
+		long now = System.currentTimeMillis();
+		while (pos + HEADER_SIZE <= length) {
+			readHeader(pos);
+			int magic = header.getInt();
+			int z = header.getInt();
+			int x = header.getInt();
+			int y = header.getInt();
+			long time = header.getLong();
+			int size = header.getInt();
+
+			if (magic != MAGIC || pos + HEADER_SIZE + Math.max(0, size) > length) {
+				break;
+			}
+
+			Long key = key(x, y, z);
+			Entry old = index.remove(key);
+			if (old != null) {
+				liveBytes -= old.size;
+			}
+
+			if (size >= 0 && !isExpired(time, now)) {
+				index.put(key, new Entry(pos + HEADER_SIZE, size, time));
+				liveBytes += size;
+			}
+
+			pos += HEADER_SIZE + Math.max(0, size);
+		}
+
+		if (pos < length) {
+			logger.warning("cutting off " + (length - pos) + " unreadable bytes at the end of " + file);
+			channel.truncate(pos);
+		}
+		fileLength = pos;
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("opened " + file + " with " + index.size() + " tiles, " + liveBytes + " bytes");
+		}
+
+		evictIfNeeded();
+	}
+
+	/**
+	 * @return the single key a tile is indexed under.
+	 */
+	protected static Long key(int x, int y, int z) {
+		return Long.valueOf(((long) z << 58) | (((long) x & 0x1FFFFFFFL) << 29) | ((long) y & 0x1FFFFFFFL));
+	}
+
+	protected boolean isExpired(long time, long now) {
+		return timeToLive > 0 && now - time > timeToLive;
+	}
+
+	/**
+	 * Check if a tile is in the cache, without reading it.
+	 *
+	 * @param x tile x coordinate.
+	 * @param y tile y coordinate.
+	 * @param z zoom level.
+	 * @return true if the tile is stored and hasn't expired.
+	 */
+	public synchronized boolean contains(int x, int y, int z) {
+		Entry entry = index.get(key(x, y, z));
+		return entry != null && !isExpired(entry.time, System.currentTimeMillis());
+	}
+
+	/**
+	 * Get the bytes for a tile.
+	 *
+	 * @param x tile x coordinate.
+	 * @param y tile y coordinate.
+	 * @param z zoom level.
+	 * @return the tile bytes, or null if the tile isn't stored, has expired or
+	 *         couldn't be read.
+	 */
+	public synchronized byte[] get(int x, int y, int z) {
+		if (channel == null) {
+			return null;
+		}
+
+		Long key = key(x, y, z);
+		Entry entry = index.get(key);
+		if (entry == null) {
+			return null;
+		}
+
+		if (isExpired(entry.time, System.currentTimeMillis())) {
+			remove(key);
+			return null;
+		}
+
+		try {
+			ByteBuffer bytes = ByteBuffer.allocate(entry.size);
+			while (bytes.hasRemaining()) {
+				if (channel.read(bytes, entry.offset + bytes.position()) < 0) {
+					throw new IOException("unexpected end of file");
+				}
+			}
+			return bytes.array();
+		} catch (IOException ioe) {
+			logger.log(Level.WARNING, "problem reading tile " + z + "/" + x + "/" + y + " from " + file, ioe);
+			return null;
+		}
+	}
+
+	/**
+	 * Add a tile to the cache, replacing any version already stored. The least
+	 * recently used tiles are dropped if there isn't room.
+	 *
+	 * @param x tile x coordinate.
+	 * @param y tile y coordinate.
+	 * @param z zoom level.
+	 * @param bytes the encoded tile image.
+	 * @return true if the tile was stored.
+	 */
+	public synchronized boolean put(int x, int y, int z, byte[] bytes) {
+		if (channel == null || bytes == null || bytes.length > maxBytes) {
+			return false;
+		}
+
+		try {
+			long time = System.currentTimeMillis();
+			long offset = append(x, y, z, time, bytes);
+
+			Long key = key(x, y, z);
+			Entry old = index.put(key, new Entry(offset, bytes.length, time));
+			if (old != null) {
+				liveBytes -= old.size;
+			}
+			liveBytes += bytes.length;
+
+			evictIfNeeded();
+			compactIfNeeded();
+			return true;
+		} catch (IOException ioe) {
+			logger.log(Level.WARNING, "problem writing tile " + z + "/" + x + "/" + y + " to " + file, ioe);
+			return false;
+		}
+	}
+
+	/**
+	 * Remove a tile from the cache.
+	 *
+	 * @param x tile x coordinate.
+	 * @param y tile y coordinate.
+	 * @param z zoom level.
+	 */
+	public synchronized void remove(int x, int y, int z) {
+		remove(key(x, y, z));
+	}
+
+	protected void remove(Long key) {
+		Entry entry = index.remove(key);
+		if (entry != null) {
+			liveBytes -= entry.size;
+			writeRemoval(key);
+		}
+	}
+
+	/**
+	 * Remove all the tiles, emptying the file.
+	 */
+	public synchronized void clear() {
+		index.clear();
+		liveBytes = 0;
+		fileLength = 0;
+		if (channel != null) {
+			try {
+				channel.truncate(0);
+			} catch (IOException ioe) {
+				logger.log(Level.WARNING, "problem clearing " + file, ioe);
+			}
+		}
+	}
+
+	/**
+	 * Close the file. The cache doesn't store or return anything after this.
+	 */
+	public synchronized void close() {
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException ioe) {
+				logger.log(Level.FINE, "problem closing " + file, ioe);
+			}
+		}
+		raf = null;
+		channel = null;
+		index.clear();
+		liveBytes = 0;
+	}
+
+	/**
+	 * @return the number of tiles stored.
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return the number of tile bytes stored, not counting record headers or
+	 *         dead space in the file.
+	 */
+	public synchronized long getBytes() {
+		return liveBytes;
+	}
+
+	/**
+	 * @return the length of the file.
+	 */
+	public synchronized long getFileLength() {
+		return fileLength;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public synchronized long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * @param timeToLive milliseconds a tile is good for after it's stored, 0
+	 *        or less for tiles that never expire.
+	 */
+	public synchronized void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	protected void evictIfNeeded() {
+		Iterator<Map.Entry<Long, Entry>> it = index.entrySet().iterator();
+		while (liveBytes > maxBytes && it.hasNext()) {
+			Map.Entry<Long, Entry> eldest = it.next();
+			it.remove();
+			liveBytes -= eldest.getValue().size;
+			writeRemoval(eldest.getKey());
+		}
+	}
+
+	/**
+	 * Copy the live tiles to a new file once the dead space in the current one
+	 * is bigger than the live tiles.
+	 */
+	protected void compactIfNeeded() throws IOException {
+		long live = liveBytes + (long) index.size() * HEADER_SIZE;
+		long dead = fileLength - live;
+		if (dead < MIN_COMPACT_BYTES || dead < live) {
+			return;
+		}
+
+		File tmp = new File(file.getPath() + ".tmp");
+		RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+		FileChannel outChannel = out.getChannel();
+		LinkedHashMap<Long, Entry> moved = new LinkedHashMap<Long, Entry>(index.size() * 2, .75f, true);
+		long pos = 0;
+		try {
+			outChannel.truncate(0);
+			for (Map.Entry<Long, Entry> e : index.entrySet()) {
+				Entry entry = e.getValue();
+				long key = e.getKey().longValue();
+				fillHeader((int) (key >>> 58), (int) ((key >>> 29) & 0x1FFFFFFFL), (int) (key & 0x1FFFFFFFL),
+						entry.time, entry.size);
+				writeFully(outChannel, header, pos);
+				long copied = 0;
+				outChannel.position(pos + HEADER_SIZE);
+				while (copied < entry.size) {
+					copied += channel.transferTo(entry.offset + copied, entry.size - copied, outChannel);
+				}
+				moved.put(e.getKey(), new Entry(pos + HEADER_SIZE, entry.size, entry.time));
+				pos += HEADER_SIZE + entry.size;
+			}
+			outChannel.force(false);
+		} finally {
+			out.close();
+		}
+
+		raf.close();
+		if (!file.delete() || !tmp.renameTo(file)) {
+			// Go back to whatever is left of the original file, so the cache
+			// doesn't keep using the closed channel.
+			tmp.delete();
+			raf = null;
+			channel = null;
+			try {
+				open();
+			} catch (IOException ioe) {
+				logger.log(Level.WARNING, "problem reopening " + file, ioe);
+				close();
+			}
+			throw new IOException("couldn't replace " + file + " with compacted " + tmp);
+		}
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("compacted " + file + " from " + fileLength + " to " + pos + " bytes");
+		}
+
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		fileLength = pos;
+		index.clear();
+		index.putAll(moved);
+	}
+
+	protected long append(int x, int y, int z, long time, byte[] bytes) throws IOException {
+		long pos = fileLength;
+		fillHeader(z, x, y, time, bytes.length);
+		writeFully(channel, header, pos);
+		writeFully(channel, ByteBuffer.wrap(bytes), pos + HEADER_SIZE);
+		fileLength = pos + HEADER_SIZE + bytes.length;
+		return pos + HEADER_SIZE;
+	}
+
+	/**
+	 * Note the removal in the file, so the tile doesn't come back when the
+	 * file is reopened.
+	 */
+	protected void writeRemoval(Long key) {
+		long k = key.longValue();
+		try {
+			fillHeader((int) (k >>> 58), (int) ((k >>> 29) & 0x1FFFFFFFL), (int) (k & 0x1FFFFFFFL),
+					System.currentTimeMillis(), -1);
+			writeFully(channel, header, fileLength);
+			fileLength += HEADER_SIZE;
+		} catch (IOException ioe) {
+			logger.log(Level.WARNING, "problem noting tile removal in " + file, ioe);
+		}
+	}
+
+	protected void fillHeader(int z, int x, int y, long time, int size) {
+		header.clear();
+		header.putInt(MAGIC).putInt(z).putInt(x).putInt(y).putLong(time).putInt(size);
+		header.flip();
+	}
+
+	protected void readHeader(long pos) throws IOException {
+		header.clear();
+		while (header.hasRemaining()) {
+			if (channel.read(header, pos + header.position()) < 0) {
+				break;
+			}
+		}
+		header.flip();
+	}
+
+	protected static void writeFully(FileChannel fc, ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining()) {
+			pos += fc.write(buf, pos);
+		}
+	}
+
+	/**
+	 * Where a tile's bytes are in the file.
+	 */
+	protected static class Entry {
+		final long offset;
+		final int size;
+		final long time;
+
+		Entry(long offset, int size, long time) {
+			this.offset = offset;
+			this.size = size;
+			this.time = time;
+		}
+	}
+}
@@ -63,6 +63,10 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * 
  * # Additional properties
  * localCacheRootDir=if specified, the factory will store tiles locally at this root directory.  This directory is checked before going to the server, too.
+ * # or, to keep the fetched tiles in a single file, with a size limit
+ * diskCacheFile=the path to a file to store fetched tiles in. The file is checked before going to the server.
+ * diskCacheSize=the number of megabytes of tiles to keep in the diskCacheFile, the least recently used are removed first. The default is 256.
+ * diskCacheTTL=the number of hours a tile stays good in the diskCacheFile before it's fetched from the server again. The default is 0, never.
  * </pre>
  * 
  * @author dietrick
@@ -70,8 +74,18 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
 public class ServerMapTileFactory extends StandardMapTileFactory implements MapTileFactory, PropertyConsumer {
 
 	public final static String LOCAL_CACHE_ROOT_DIR_PROPERTY = "localCacheRootDir";
+	public final static String DISK_CACHE_FILE_PROPERTY = "diskCacheFile";
+	public final static String DISK_CACHE_SIZE_PROPERTY = "diskCacheSize";
+	public final static String DISK_CACHE_TTL_PROPERTY = "diskCacheTTL";
 
 	protected String localCacheDir = null;
+	protected String diskCacheFile = null;
+	protected int diskCacheSize = 256;
+	protected int diskCacheTTL = 0;
+	/**
+	 * Holds the image bytes fetched from the server, if diskCacheFile is set.
+	 */
+	protected DiskTileCache diskCache = null;
 
 	public ServerMapTileFactory() {
 		this(null);
@@ -130,6 +144,8 @@ public class ServerMapTileFactory extends StandardMapTileFactory implements MapT
 	 * cache, any retrieved files will be stored there for future use. We are
 	 * using the local name of the file as the cache key for all tiles for
 	 * consistency - all tiles are looked up with local cache locations.
+	 * Returns null if the tile wasn't found, and the caller creates the empty
+	 * tile.
 	 */
 	public CacheObject load(Object key, int x, int y, int zoomLevel, Projection proj) {
 		if (key instanceof String) {
@@ -140,17 +156,21 @@ public class ServerMapTileFactory extends StandardMapTileFactory implements MapT
 
 			byte[] imageBytes = null;
 
-			CacheObject localVersion = super.load(key, x, y, zoomLevel, proj);
+			// Without a local directory, the key is the server URL, and the
+			// bytes need to be fetched here to get into the disk cache.
+			if (localCacheDir != null || getDiskCache() == null) {
+				CacheObject localVersion = super.load(key, x, y, zoomLevel, proj);
 
-			if (localVersion != null) {
-				logger.log(Level.FINE, "found version of tile in local cache: {0}", key);
-				return localVersion;
+				if (localVersion != null) {
+					logger.log(Level.FINE, "found version of tile in local cache: {0}", key);
+					return localVersion;
+				}
 			}
 
 			// build file path here uses rootDir, which is the URL.
 			String imagePath = buildFilePath(x, y, zoomLevel, getFileExt());
 
-			imageBytes = getImageBytes(imagePath, (String) key);
+			imageBytes = getTileBytes(x, y, zoomLevel, imagePath, (String) key);
 
 			if (imageBytes != null && imageBytes.length > 0) {
 				// image found
@@ -178,14 +198,87 @@ public class ServerMapTileFactory extends StandardMapTileFactory implements MapT
 
 			/*
 			 * At this point, nothing was found for this location, so it's an
-			 * empty tile.
+			 * empty tile. This can be running on a load thread, and the
+			 * EmptyTileHandlers aren't thread safe, so the empty tile is made
+			 * by the caller on its own thread.
 			 */
-			return getEmptyTile(key, x, y, zoomLevel, proj);
+			return null;
 		}
 
 		return null;
 	}
 
+	/**
+	 * Gets the image bytes for a tile from the disk cache file if one is being
+	 * used and it has the tile, or from the server. Tiles fetched from the
+	 * server are added to the disk cache file and the local cache directory.
+	 * 
+	 * @param x
+	 *            tile coordinate
+	 * @param y
+	 *            tile coordinate
+	 * @param zoomLevel
+	 *            zoom level
+	 * @param imagePath
+	 *            the source URL image path.
+	 * @param localFilePath
+	 *            the caching local file path, may be null.
+	 * @return byte[] of image, null if it wasn't found.
+	 */
+	public byte[] getTileBytes(int x, int y, int zoomLevel, String imagePath, String localFilePath) {
+		DiskTileCache dtc = getDiskCache();
+		byte[] imageBytes = null;
+
+		if (dtc != null) {
+			imageBytes = dtc.get(x, y, zoomLevel);
+			if (imageBytes != null) {
+				logger.log(Level.FINE, "found tile in disk cache: {0}", imagePath);
+				return imageBytes;
+			}
+		}
+
+		imageBytes = getImageBytes(imagePath, localFilePath);
+
+		if (dtc != null && imageBytes != null && imageBytes.length > 0) {
+			dtc.put(x, y, zoomLevel, imageBytes);
+		}
+
+		return imageBytes;
+	}
+
+	/**
+	 * Returns the DiskTileCache holding tiles fetched from the server, opening
+	 * it if needed.
+	 * 
+	 * @return DiskTileCache, or null if diskCacheFile isn't set or the file
+	 *         can't be opened.
+	 */
+	public synchronized DiskTileCache getDiskCache() {
+		if (diskCache == null && diskCacheFile != null) {
+			try {
+				diskCache = new DiskTileCache(new File(diskCacheFile), diskCacheSize * 1024L * 1024L,
+						diskCacheTTL * 3600000L);
+			} catch (IOException ioe) {
+				logger.log(Level.WARNING, "Can't open tile disk cache {0}: {1}",
+						new Object[] { diskCacheFile, ioe.getMessage() });
+				// Don't keep trying.
+				diskCacheFile = null;
+			}
+		}
+		return diskCache;
+	}
+
+	/**
+	 * Close the disk cache file, if it's open. It will be opened again if it's
+	 * needed.
+	 */
+	public synchronized void closeDiskCache() {
+		if (diskCache != null) {
+			diskCache.close();
+			diskCache = null;
+		}
+	}
+
 	/**
 	 * Tries to get the image bytes from imagePath URL. If image found, will
 	 * write it locally to localFilePath for caching.
@@ -317,6 +410,9 @@ public class ServerMapTileFactory extends StandardMapTileFactory implements MapT
 	public Properties getProperties(Properties getList) {
 		getList = super.getProperties(getList);
 		getList.put(prefix + LOCAL_CACHE_ROOT_DIR_PROPERTY, PropUtils.unnull(localCacheDir));
+		getList.put(prefix + DISK_CACHE_FILE_PROPERTY, PropUtils.unnull(diskCacheFile));
+		getList.put(prefix + DISK_CACHE_SIZE_PROPERTY, Integer.toString(diskCacheSize));
+		getList.put(prefix + DISK_CACHE_TTL_PROPERTY, Integer.toString(diskCacheTTL));
 		return getList;
 	}
 
@@ -327,6 +423,14 @@ public class ServerMapTileFactory extends StandardMapTileFactory implements MapT
 				LOCAL_CACHE_ROOT_DIR_PROPERTY, "Local Cache Tile Directory",
 				"Root directory containing image tiles retrieved from image server.",
 				"com.bbn.openmap.util.propertyEditor.DirectoryPropertyEditor");
+		PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
+				DISK_CACHE_FILE_PROPERTY, "Disk Cache File", "File to store tiles retrieved from image server in.",
+				"com.bbn.openmap.util.propertyEditor.FilePropertyEditor");
+		PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
+				DISK_CACHE_SIZE_PROPERTY, "Disk Cache Size", "Megabytes of tiles kept in the disk cache file.", null);
+		PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
+				DISK_CACHE_TTL_PROPERTY, "Disk Cache Time To Live",
+				"Hours tiles are kept in the disk cache file before being retrieved again, 0 for forever.", null);
 		return list;
 	}
 
@@ -339,18 +443,41 @@ public class ServerMapTileFactory extends StandardMapTileFactory implements MapT
 		if (localCacheDir != null && localCacheDir.trim().isEmpty()) {
 			localCacheDir = null;
 		}
+
+		String oldDiskCacheFile = diskCacheFile;
+		int oldDiskCacheSize = diskCacheSize;
+		int oldDiskCacheTTL = diskCacheTTL;
+
+		diskCacheFile = setList.getProperty(prefix + DISK_CACHE_FILE_PROPERTY, diskCacheFile);
+		if (diskCacheFile != null && diskCacheFile.trim().isEmpty()) {
+			diskCacheFile = null;
+		}
+		diskCacheSize = PropUtils.intFromProperties(setList, prefix + DISK_CACHE_SIZE_PROPERTY, diskCacheSize);
+		diskCacheTTL = PropUtils.intFromProperties(setList, prefix + DISK_CACHE_TTL_PROPERTY, diskCacheTTL);
+
+		if (diskCacheSize != oldDiskCacheSize
+				|| (diskCacheFile == null ? oldDiskCacheFile != null : !diskCacheFile.equals(oldDiskCacheFile))) {
+			closeDiskCache();
+		} else if (diskCacheTTL != oldDiskCacheTTL && diskCache != null) {
+			diskCache.setTimeToLive(diskCacheTTL * 3600000L);
+		}
 	}
 
 	public String getInitPropertiesOrder() {
-		return super.getInitPropertiesOrder() + " " + LOCAL_CACHE_ROOT_DIR_PROPERTY;
+		return super.getInitPropertiesOrder() + " " + LOCAL_CACHE_ROOT_DIR_PROPERTY + " " + DISK_CACHE_FILE_PROPERTY
+				+ " " + DISK_CACHE_SIZE_PROPERTY + " " + DISK_CACHE_TTL_PROPERTY;
 	}
 
 	/**
 	 * Tell the factory to dump the cache. For the ServerMapTileFactory, this
-	 * also includes the local file cache dir.
+	 * also includes the local file cache dir and the disk cache file.
 	 */
 	public void reset() {
 		super.reset();
+		DiskTileCache dtc = getDiskCache();
+		if (dtc != null) {
+			dtc.clear();
+		}
 		if (localCacheDir != null) {
 			File localCacheDirFile = new File(localCacheDir);
 			if (localCacheDirFile.exists()) {
@@ -34,8 +34,23 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.logging.Level;
@@ -48,10 +63,12 @@ import com.bbn.openmap.PropertyConsumer;
 import com.bbn.openmap.image.BufferedImageHelper;
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMRasterObject;
 import com.bbn.openmap.omGraphics.OMScalingRaster;
 import com.bbn.openmap.omGraphics.OMText;
 import com.bbn.openmap.omGraphics.OMTextLabeler;
 import com.bbn.openmap.omGraphics.OMWarpingImage;
+import com.bbn.openmap.omGraphics.util.ImageWarp;
 import com.bbn.openmap.proj.Mercator;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.proj.coords.LatLonPoint;
@@ -60,8 +77,10 @@ import com.bbn.openmap.util.ComponentFactory;
 import com.bbn.openmap.util.DataBounds;
 import com.bbn.openmap.util.I18n;
 import com.bbn.openmap.util.PropUtils;
+import com.bbn.openmap.util.TaskService;
 import com.bbn.openmap.util.cacheHandler.CacheHandler;
 import com.bbn.openmap.util.cacheHandler.CacheObject;
+import com.bbn.openmap.util.cacheHandler.StripedLRUCache;
 
 /**
  * The StandardImageTileFactory is a TileFactory implementation that retrieves
@@ -78,6 +97,8 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * rootDir=the path to the parent directory of the tiles. The factory will construct specific file paths that are appended to this value.
  * fileExt=the file extension to append to the tile names
  * cacheSize=the number of mapTiles the factory should hold on to. The default is 100.
+ * # or, to limit the cache by the memory used by the decoded tile images, in megabytes (overrides cacheSize)
+ * cacheMemorySize=64
  * # default is OSMMapTileCoordinateTransform, but it depends on the source of tiles.  GDAL is TSMMapTileCoordinateTransform
  * mapTileTransform=com.bbn.openmap.dataAccess.mapTile.OSMMapTileCoordinateTransform, or com.bbn.openmap.dataAccess.mapTile.TSMMapTileCoordinateTransform
  * # what to do about missing tiles?
@@ -86,6 +107,12 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * tileImagePreparer=com.bbn.openmap.dataAccess.mapTile.StandardImagePreparer
  * # or
  * tileImagePreparer=com.bbn.openmap.dataAccess.mapTile.GreyscaleImagePreparer
+ * # After the visible tiles are loaded, load this many rings of tiles around them into the cache, in the background. Default is 0, off.
+ * prefetchRing=1
+ * # Also prefetch the tiles for the zoom levels above and below the visible ones (false by default).
+ * prefetchZoomLevels=true
+ * # The number of threads used to load and decode tiles that aren't in the cache. 1 loads them one at a time.
+ * loadThreads=4
  * </pre>
  * 
  * @author dietrick
@@ -98,11 +125,20 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 	public final static String ROOT_DIR_PROPERTY = "rootDir";
 	public final static String FILE_EXT_PROPERTY = "fileExt";
 	public final static String CACHE_SIZE_PROPERTY = "cacheSize";
+	public final static String CACHE_MEMORY_SIZE_PROPERTY = "cacheMemorySize";
 	public final static String MTCTRANSFORM_PROPERTY = "mapTileTransform";
 	public final static String EMPTY_TILE_HANDLER_PROPERTY = "emptyTileHandler";
 	public final static String ZOOM_LEVEL_INFO_PROPERTY = "zoomLevelInfo";
 	public final static String ZOOM_LEVEL_TILE_SIZE_PROPERTY = "zoomLevelTileSize";
 	public final static String TILE_IMAGE_PREPARER_PROPERTY = "tileImagePreparer";
+	public final static String PREFETCH_RING_PROPERTY = "prefetchRing";
+	public final static String PREFETCH_ZOOM_LEVELS_PROPERTY = "prefetchZoomLevels";
+	public final static String LOAD_THREADS_PROPERTY = "loadThreads";
+	/**
+	 * The default number of threads loading tiles for each factory, the number of
+	 * processors, at least 2 and at most 8.
+	 */
+	public final static int DEFAULT_LOAD_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
 	/**
 	 * Inserted into properties loaded via tiles.omp, so that the EmptyTileHandler
 	 * can know where the tile set is located, in case it needs to know the absolute
@@ -132,6 +168,47 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 	 */
 	protected int zoomLevelTileSize = 350;
 	protected TileImagePreparer tileImagePreparer;
+	/**
+	 * If greater than zero, the cache is limited to this many megabytes of tile
+	 * image pixels instead of a number of tiles.
+	 */
+	protected int cacheMemorySize = 0;
+
+	/**
+	 * The number of rings of tiles around the visible ones to load in the
+	 * background, after the visible ones have been loaded. 0 to turn it off.
+	 */
+	protected int prefetchRing = 0;
+	/**
+	 * Whether to load the tiles covering the visible area for the zoom levels
+	 * above and below the current one in the background.
+	 */
+	protected boolean prefetchZoomLevels = false;
+	/**
+	 * Incremented every time getTiles is called, so prefetching for an old
+	 * projection can tell it should stop.
+	 */
+	protected final AtomicInteger prefetchGeneration = new AtomicInteger();
+	protected Future<?> prefetchFuture;
+	/**
+	 * The keys of tiles prefetched into the cache that haven't been asked for
+	 * yet.
+	 */
+	protected final Set<Object> prefetchedKeys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+	/**
+	 * The keys of tiles being loaded for getTiles, so prefetching doesn't load
+	 * them at the same time.
+	 */
+	protected final Set<Object> loadingKeys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+	protected final AtomicLong prefetchCount = new AtomicLong();
+	protected final AtomicLong prefetchHitCount = new AtomicLong();
+	protected final AtomicLong prefetchWasteCount = new AtomicLong();
+
+	/**
+	 * The number of threads used to load tiles that weren't in the cache.
+	 */
+	protected int loadThreads = DEFAULT_LOAD_THREADS;
+	protected ThreadPoolExecutor loadExecutor;
 
 	/**
 	 * If set, the MapTileRequester will be notified when the list provided in
@@ -175,6 +252,82 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 		clear();
 	}
 
+	/**
+	 * Hooks into the cache to count prefetched tiles that are pushed out before
+	 * they are used.
+	 */
+	@Override
+	protected StripedLRUCache createCache(int max_size) {
+		return new StripedLRUCache(max_size) {
+			protected long weigh(CacheObject obj) {
+				return StandardMapTileFactory.this.weigh(obj);
+			}
+
+			protected void evicted(CacheObject obj) {
+				super.evicted(obj);
+				if (prefetchedKeys.remove(obj.id)) {
+					prefetchWasteCount.incrementAndGet();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Dumps the cache, any prefetched tiles that weren't used are counted as
+	 * wasted.
+	 */
+	@Override
+	public void clear() {
+		super.clear();
+		int unused = prefetchedKeys.size();
+		prefetchedKeys.clear();
+		prefetchWasteCount.addAndGet(unused);
+	}
+
+	/**
+	 * If the cache is being limited by memory, weighs the tiles by the
+	 * kilobytes used by their image pixels. Otherwise, each tile counts as one.
+	 */
+	@Override
+	protected long weigh(CacheObject obj) {
+		if (cacheMemorySize <= 0) {
+			return 1;
+		}
+
+		long pixels = 0;
+		if (obj.obj instanceof OMRasterObject) {
+			OMRasterObject raster = (OMRasterObject) obj.obj;
+			pixels = (long) raster.getWidth() * raster.getHeight();
+		} else if (obj.obj instanceof OMWarpingImage) {
+			ImageWarp warp = ((OMWarpingImage) obj.obj).getWarp();
+			if (warp != null) {
+				pixels = (long) warp.getIwidth() * warp.getIheight();
+			}
+		}
+
+		return Math.max(1, pixels * 4 / 1024);
+	}
+
+	/**
+	 * Limit the tile cache by the memory used by tile images.
+	 * 
+	 * @param megabytes the number of megabytes of tile image pixels to hold, 0
+	 *                  to go back to limiting the cache by the number of tiles
+	 *                  (100).
+	 */
+	public void setCacheMemorySize(int megabytes) {
+		cacheMemorySize = Math.max(0, megabytes);
+		resetCache(cacheMemorySize > 0 ? cacheMemorySize * 1024 : 100);
+	}
+
+	/**
+	 * @return the megabytes of tile images the cache is limited to, or 0 if the
+	 *         cache is limited to a number of tiles.
+	 */
+	public int getCacheMemorySize() {
+		return cacheMemorySize;
+	}
+
 	/**
 	 * Called to load cache object from data source, when not found in cache.
 	 * 
@@ -464,6 +617,9 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 			return list;
 		}
 
+		// Any prefetching for the last projection is out of date.
+		cancelPrefetch();
+
 		if (lastProj == null || !proj.getClass().isAssignableFrom(lastProj.getClass())) {
 			logger.fine("Clearing out cache for new projection type");
 			clear(); // empty the cache to rebuild OMGraphics for different type
@@ -523,10 +679,21 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 
 			if (!dateline) {
 				getTiles(uvleft, uvright, uvup, uvbottom, zoomLevelInfo, proj, list);
+
+				if (mapTileRequester == null || mapTileRequester.shouldContinue()) {
+					prefetch(uvleft, uvright, uvup, uvbottom, zoomLevel, proj, list.size());
+				}
 			} else {
 				logger.fine("handling DATELINE");
-				getTiles(uvleft, (int) Math.pow(2, zoomLevel), uvup, uvbottom, zoomLevelInfo, proj, list);
+				int edge = (int) Math.pow(2, zoomLevel);
+				getTiles(uvleft, edge, uvup, uvbottom, zoomLevelInfo, proj, list);
 				getTiles(0, uvright, uvup, uvbottom, zoomLevelInfo, proj, list);
+
+				if (mapTileRequester == null || mapTileRequester.shouldContinue()) {
+					// The visible tiles run from uvleft past the dateline to
+					// uvright, prefetch wraps the x coordinates around.
+					prefetch(uvleft, uvright + edge, uvup, uvbottom, zoomLevel, proj, list.size());
+				}
 			}
 
 		}
@@ -547,6 +714,11 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 		int x;
 		int y;
 		int zoomLevel;
+		/**
+		 * Set when the tile is loaded on a load thread.
+		 */
+		CacheObject loaded;
+		boolean skipped;
 
 		LoadObj(String p, int x, int y, int z) {
 			this.imagePath = p;
@@ -597,6 +769,10 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 
 				if (tileGraphic != null) {
 
+					if (!prefetchedKeys.isEmpty() && prefetchedKeys.remove(imagePath)) {
+						prefetchHitCount.incrementAndGet();
+					}
+
 					if (mapTileLogger.isLoggable(Level.FINE)) {
 						tileGraphic.putAttribute(OMGraphic.LABEL,
 								new OMTextLabeler("Tile: " + zoomLevel + "|" + x + "|" + y, OMText.JUSTIFY_CENTER));
@@ -623,18 +799,34 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 		 * Load the tiles that are not already in the cache, that need to be fetched
 		 * from the source.
 		 */
+		List<Object> loading = new ArrayList<Object>(reloads.size());
 		for (LoadObj reload : reloads) {
-			// Check and see of we should bother fetching the new tile.
-			if (mapTileRequester != null && !mapTileRequester.shouldContinue()) {
-				return;
+			if (loadingKeys.add(reload.imagePath)) {
+				loading.add(reload.imagePath);
 			}
+		}
+		try {
+			if (reloads.size() > 1 && getLoadThreads() > 1) {
+				if (!loadTiles(reloads, proj, list)) {
+					return;
+				}
+			} else {
+				for (LoadObj reload : reloads) {
+					// Check and see of we should bother fetching the new tile.
+					if (mapTileRequester != null && !mapTileRequester.shouldContinue()) {
+						return;
+					}
 
-			loadTile(reload.imagePath, reload.x, reload.y, reload.zoomLevel, proj, list);
+					loadTile(reload.imagePath, reload.x, reload.y, reload.zoomLevel, proj, list);
 
-			// OK, got it, notify requester the list has been updated.
-			if (mapTileRequester != null) {
-				mapTileRequester.listUpdated();
+					// OK, got it, notify requester the list has been updated.
+					if (mapTileRequester != null) {
+						mapTileRequester.listUpdated();
+					}
+				}
 			}
+		} finally {
+			loadingKeys.removeAll(loading);
 		}
 
 		if (verbose) {
@@ -719,6 +911,221 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 		}
 	}
 
+	/**
+	 * Start loading tiles the map is likely to need next into the cache, in the
+	 * background: prefetchRing rings of tiles around the visible ones, and if
+	 * prefetchZoomLevels is set, the tiles covering the visible area one zoom
+	 * level up and one down. Prefetching stops when getTiles is called again.
+	 * No more tiles are prefetched than will fit in the cache alongside the
+	 * visible ones. The x coordinates wrap around the dateline.
+	 * 
+	 * @param uvleft       left visible tile coordinate
+	 * @param uvright      right visible tile coordinate, exclusive, past the
+	 *                     number of tiles across if the view crosses the
+	 *                     dateline
+	 * @param uvup         top visible tile coordinate
+	 * @param uvbottom     bottom visible tile coordinate, exclusive
+	 * @param zoomLevel    zoom level of the visible tiles
+	 * @param proj         the current projection
+	 * @param visibleCount the number of visible tiles
+	 */
+	protected void prefetch(int uvleft, int uvright, int uvup, int uvbottom, int zoomLevel, Projection proj,
+			int visibleCount) {
+		if (prefetchRing <= 0 && !prefetchZoomLevels) {
+			return;
+		}
+
+		int left = Math.min(uvleft, uvright);
+		int right = Math.max(uvleft, uvright);
+		int top = Math.min(uvup, uvbottom);
+		int bottom = Math.max(uvup, uvbottom);
+
+		final List<int[]> tiles = new ArrayList<int[]>();
+		int edge = 1 << zoomLevel;
+		// Closest rings first.
+		for (int ring = 1; ring <= prefetchRing; ring++) {
+			int l = left - ring;
+			int r = right + ring - 1;
+			int t = top - ring;
+			int b = bottom + ring - 1;
+			for (int x = l; x <= r; x++) {
+				addPrefetchTile(tiles, x, t, zoomLevel, edge);
+				addPrefetchTile(tiles, x, b, zoomLevel, edge);
+			}
+			for (int y = t + 1; y < b; y++) {
+				addPrefetchTile(tiles, l, y, zoomLevel, edge);
+				addPrefetchTile(tiles, r, y, zoomLevel, edge);
+			}
+		}
+
+		if (prefetchZoomLevels) {
+			if (zoomLevel > 0) {
+				for (int x = left / 2; x <= (right - 1) / 2; x++) {
+					for (int y = top / 2; y <= (bottom - 1) / 2; y++) {
+						addPrefetchTile(tiles, x, y, zoomLevel - 1, edge / 2);
+					}
+				}
+			}
+			if (zoomLevel < MAX_PREFETCH_ZOOM_LEVEL) {
+				for (int x = left * 2; x < right * 2; x++) {
+					for (int y = top * 2; y < bottom * 2; y++) {
+						addPrefetchTile(tiles, x, y, zoomLevel + 1, edge * 2);
+					}
+				}
+			}
+		}
+
+		// Don't push the visible tiles out of the cache.
+		int room = getCacheTileCapacity() - visibleCount;
+		if (room <= 0 || tiles.isEmpty()) {
+			return;
+		}
+		final List<int[]> toLoad = tiles.size() > room ? tiles.subList(0, room) : tiles;
+		final Projection prefetchProj = proj;
+		final int generation = prefetchGeneration.get();
+
+		synchronized (prefetchGeneration) {
+			prefetchFuture = TaskService.singleton().spawn(new Callable<Object>() {
+				public Object call() {
+					for (int[] tile : toLoad) {
+						if (generation != prefetchGeneration.get()) {
+							return null;
+						}
+						prefetchTile(tile[0], tile[1], tile[2], prefetchProj);
+					}
+					if (logger.isLoggable(Level.FINE)) {
+						logger.fine("prefetched " + toLoad.size() + " tiles, totals: " + getPrefetchCount()
+								+ " prefetched, " + getPrefetchHitCount() + " used, " + getPrefetchWasteCount()
+								+ " wasted");
+					}
+					return null;
+				}
+			}, "MapTile prefetch", TaskService.DEFAULT_PRIORITY - 1);
+		}
+	}
+
+	/**
+	 * The highest zoom level tiles will be prefetched for.
+	 */
+	protected final static int MAX_PREFETCH_ZOOM_LEVEL = 20;
+
+	private void addPrefetchTile(List<int[]> tiles, int x, int y, int z, int edge) {
+		if (y >= 0 && y < edge) {
+			tiles.add(new int[] { ((x % edge) + edge) % edge, y, z });
+		}
+	}
+
+	/**
+	 * Load a tile into the cache, if it isn't already there or being loaded by
+	 * getTiles. Empty tiles aren't created here, the EmptyTileHandlers aren't
+	 * thread safe, and getTiles will make them if they are needed.
+	 */
+	protected void prefetchTile(int x, int y, int zoomLevel, Projection proj) {
+		String key = buildCacheKey(x, y, zoomLevel, getFileExt());
+		if (getFromCache(key, x, y, zoomLevel) != null || !loadingKeys.add(key)) {
+			return;
+		}
+
+		try {
+			CacheObject ret = load(key, x, y, zoomLevel, proj);
+
+			if (ret != null && ret.obj != null) {
+				prefetchCount.incrementAndGet();
+				prefetchedKeys.add(ret.id);
+				replaceLeastUsed(ret);
+			}
+		} finally {
+			loadingKeys.remove(key);
+		}
+	}
+
+	/**
+	 * Stop any prefetching going on.
+	 */
+	public void cancelPrefetch() {
+		prefetchGeneration.incrementAndGet();
+		synchronized (prefetchGeneration) {
+			if (prefetchFuture != null) {
+				// Not interrupting, that messes with image loading.
+				prefetchFuture.cancel(false);
+				prefetchFuture = null;
+			}
+		}
+	}
+
+	/**
+	 * @return about how many tiles the cache can hold. If the cache is limited
+	 *         by memory, this is estimated from the tiles in the cache.
+	 */
+	protected int getCacheTileCapacity() {
+		if (cacheMemorySize <= 0) {
+			return getCacheSize();
+		}
+
+		int count = getCacheCount();
+		long weight = getCacheWeight();
+		// Assume 256x256 tiles if there's nothing to go on.
+		long tileWeight = count > 0 ? Math.max(1, weight / count) : 256;
+		return (int) Math.min(Integer.MAX_VALUE, getCacheSize() / tileWeight);
+	}
+
+	/**
+	 * @return the number of tiles loaded by prefetching.
+	 */
+	public long getPrefetchCount() {
+		return prefetchCount.get();
+	}
+
+	/**
+	 * @return the number of prefetched tiles that were found in the cache when
+	 *         they were needed.
+	 */
+	public long getPrefetchHitCount() {
+		return prefetchHitCount.get();
+	}
+
+	/**
+	 * @return the number of prefetched tiles that were dropped from the cache
+	 *         before they were needed.
+	 */
+	public long getPrefetchWasteCount() {
+		return prefetchWasteCount.get();
+	}
+
+	/**
+	 * Set the prefetch counts back to zero.
+	 */
+	public void resetPrefetchCounts() {
+		prefetchCount.set(0);
+		prefetchHitCount.set(0);
+		prefetchWasteCount.set(0);
+	}
+
+	public int getPrefetchRing() {
+		return prefetchRing;
+	}
+
+	/**
+	 * @param prefetchRing the number of rings of tiles around the visible tiles
+	 *                     to load in the background, 0 for none.
+	 */
+	public void setPrefetchRing(int prefetchRing) {
+		this.prefetchRing = Math.max(0, prefetchRing);
+	}
+
+	public boolean isPrefetchZoomLevels() {
+		return prefetchZoomLevels;
+	}
+
+	/**
+	 * @param prefetchZoomLevels whether to load the tiles for the zoom levels
+	 *                           above and below the visible ones in the
+	 *                           background.
+	 */
+	public void setPrefetchZoomLevels(boolean prefetchZoomLevels) {
+		this.prefetchZoomLevels = prefetchZoomLevels;
+	}
+
 	/**
 	 * Handles going to the cache, getting the cache to load the tile, and then
 	 * manage the resulting OMRaster tile. Adds the tile to the list after
@@ -734,8 +1141,117 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 	 * @throws InterruptedException
 	 */
 	private void loadTile(String imagePath, int x, int y, int zoomLevel, Projection proj, OMGraphicList list) {
+		addLoadedTile(load(imagePath, x, y, zoomLevel, proj), imagePath, x, y, zoomLevel, proj, list);
+	}
+
+	/**
+	 * Loads tiles on the factory's load threads, adding them to the list as they
+	 * are ready. The MapTileRequester is notified as each tile is added, and asked
+	 * whether to continue while the tiles are being loaded. If it says to stop, the
+	 * tiles that haven't been loaded yet are skipped. Tiles are decoded on the load
+	 * threads, but empty tiles are created and all tiles are added to the cache and
+	 * generated on the calling thread.
+	 * 
+	 * @param reloads the tiles to load.
+	 * @param proj    the current projection.
+	 * @param list    the OMGraphicList to add the tiles to.
+	 * @return false if loading was stopped before all the tiles were added.
+	 */
+	protected boolean loadTiles(List<LoadObj> reloads, final Projection proj, OMGraphicList list) {
+		CompletionService<LoadObj> completion = new ExecutorCompletionService<LoadObj>(getLoadExecutor());
+		List<Future<LoadObj>> futures = new ArrayList<Future<LoadObj>>(reloads.size());
+
+		for (final LoadObj reload : reloads) {
+			futures.add(completion.submit(new Callable<LoadObj>() {
+				public LoadObj call() {
+					if (mapTileRequester == null || mapTileRequester.shouldContinue()) {
+						reload.loaded = load(reload.imagePath, reload.x, reload.y, reload.zoomLevel, proj);
+					} else {
+						reload.skipped = true;
+					}
+					return reload;
+				}
+			}));
+		}
+
+		try {
+			for (int i = 0; i < reloads.size(); i++) {
+				if (mapTileRequester != null && !mapTileRequester.shouldContinue()) {
+					return false;
+				}
+
+				LoadObj reload = completion.take().get();
+				if (reload.skipped) {
+					return false;
+				}
+				addLoadedTile(reload.loaded, reload.imagePath, reload.x, reload.y, reload.zoomLevel, proj, list);
+
+				if (mapTileRequester != null) {
+					mapTileRequester.listUpdated();
+				}
+			}
+			return true;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException ee) {
+			logger.log(Level.WARNING, "problem loading tile", ee.getCause());
+			return false;
+		} finally {
+			for (Future<LoadObj> future : futures) {
+				future.cancel(false);
+			}
+		}
+	}
 
-		CacheObject ret = load(imagePath, x, y, zoomLevel, proj);
+	/**
+	 * @return the executor that loads tiles, created if needed.
+	 */
+	protected synchronized ExecutorService getLoadExecutor() {
+		if (loadExecutor == null) {
+			loadExecutor = new ThreadPoolExecutor(loadThreads, loadThreads, 30L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "MapTileLoader-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			loadExecutor.allowCoreThreadTimeOut(true);
+		}
+		return loadExecutor;
+	}
+
+	public synchronized int getLoadThreads() {
+		return loadThreads;
+	}
+
+	/**
+	 * Set the number of threads used to load and decode tiles that aren't in the
+	 * cache.
+	 * 
+	 * @param loadThreads number of threads, 1 to load tiles one at a time on the
+	 *                    thread calling getTiles.
+	 */
+	public synchronized void setLoadThreads(int loadThreads) {
+		loadThreads = Math.max(1, loadThreads);
+		if (loadThreads != this.loadThreads && loadExecutor != null) {
+			// Let anything running finish, a new one is created when needed.
+			loadExecutor.shutdown();
+			loadExecutor = null;
+		}
+		this.loadThreads = loadThreads;
+	}
+
+	/**
+	 * Takes care of a loaded tile, or creates an empty tile if ret is null. Adds
+	 * the tile to the cache and to the list after generating it with the
+	 * projection.
+	 */
+	private void addLoadedTile(CacheObject ret, String imagePath, int x, int y, int zoomLevel, Projection proj,
+			OMGraphicList list) {
 		if (ret == null) {
 
 			// Check if the factory wants to do anything for empty tiles.
@@ -899,7 +1415,11 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 		String prefix = PropUtils.getScopedPropertyPrefix(this);
 		getList.put(prefix + ROOT_DIR_PROPERTY, PropUtils.unnull(rootDirProperty));
 		getList.put(prefix + FILE_EXT_PROPERTY, PropUtils.unnull(getFileExt()));
-		getList.put(prefix + CACHE_SIZE_PROPERTY, Integer.toString(getCacheSize()));
+		if (cacheMemorySize > 0) {
+			getList.put(prefix + CACHE_MEMORY_SIZE_PROPERTY, Integer.toString(cacheMemorySize));
+		} else {
+			getList.put(prefix + CACHE_SIZE_PROPERTY, Integer.toString(getCacheSize()));
+		}
 		getList.put(prefix + MTCTRANSFORM_PROPERTY, mtcTransform.getClass().toString());
 		if (emptyTileHandler != null) {
 			getList.put(prefix + EMPTY_TILE_HANDLER_PROPERTY, emptyTileHandler.getClass().toString());
@@ -914,6 +1434,9 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 		}
 
 		getList.put(prefix + ZOOM_LEVEL_TILE_SIZE_PROPERTY, Integer.toString(zoomLevelTileSize));
+		getList.put(prefix + PREFETCH_RING_PROPERTY, Integer.toString(prefetchRing));
+		getList.put(prefix + PREFETCH_ZOOM_LEVELS_PROPERTY, Boolean.toString(prefetchZoomLevels));
+		getList.put(prefix + LOAD_THREADS_PROPERTY, Integer.toString(getLoadThreads()));
 		TileImagePreparer tip = getTileImagePreparer();
 		if (!(tip instanceof StandardImagePreparer)) {
 			getList.put(prefix + TILE_IMAGE_PREPARER_PROPERTY, tip.getClass().getName());
@@ -934,9 +1457,22 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 				FILE_EXT_PROPERTY, "Image File Extension", "Extension of image files (.jpg, .png, etc)", null);
 		PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
 				CACHE_SIZE_PROPERTY, "Cache Size", "Number of tile images held in memory", null);
+		PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
+				CACHE_MEMORY_SIZE_PROPERTY, "Cache Memory Size",
+				"Megabytes of tile images held in memory, overrides Cache Size if set", null);
 		PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
 				ZOOM_LEVEL_TILE_SIZE_PROPERTY, "Zoom Level Tile Size",
 				"The maximum pixel size of a tile before switching to a higher zoom level (350 is default)", null);
+		PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
+				PREFETCH_RING_PROPERTY, "Prefetch Ring",
+				"Number of rings of tiles around the map to load in the background (0 for none)", null);
+		PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
+				PREFETCH_ZOOM_LEVELS_PROPERTY, "Prefetch Zoom Levels",
+				"Load tiles for the zoom levels above and below the current one in the background",
+				"com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+		PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
+				LOAD_THREADS_PROPERTY, "Load Threads", "Number of threads loading tiles (1 loads them one at a time)",
+				null);
 		return list;
 	}
 
@@ -1003,10 +1539,22 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 			}
 		}
 
-		super.resetCache(PropUtils.intFromProperties(setList, prefix + CACHE_SIZE_PROPERTY, getCacheSize()));
+		int oldCacheMemorySize = cacheMemorySize;
+		cacheMemorySize = Math.max(0,
+				PropUtils.intFromProperties(setList, prefix + CACHE_MEMORY_SIZE_PROPERTY, cacheMemorySize));
+		if (cacheMemorySize > 0) {
+			super.resetCache(cacheMemorySize * 1024);
+		} else {
+			super.resetCache(PropUtils.intFromProperties(setList, prefix + CACHE_SIZE_PROPERTY,
+					oldCacheMemorySize > 0 ? 100 : getCacheSize()));
+		}
 
 		zoomLevelTileSize = PropUtils.intFromProperties(setList, prefix + ZOOM_LEVEL_TILE_SIZE_PROPERTY,
 				zoomLevelTileSize);
+		setPrefetchRing(PropUtils.intFromProperties(setList, prefix + PREFETCH_RING_PROPERTY, prefetchRing));
+		prefetchZoomLevels = PropUtils.booleanFromProperties(setList, prefix + PREFETCH_ZOOM_LEVELS_PROPERTY,
+				prefetchZoomLevels);
+		setLoadThreads(PropUtils.intFromProperties(setList, prefix + LOAD_THREADS_PROPERTY, getLoadThreads()));
 	}
 
 	public void setPropertyPrefix(String prefix) {
@@ -0,0 +1,264 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.dataAccess.mapTile.mb;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The MBTilesReader fetches tile data out of a mbtiles file. It keeps a small
+ * pool of open JDBC connections, each with a prepared statement for the tile
+ * query, so requests don't pay for opening the database and parsing SQL every
+ * time, and several threads can fetch tiles at once. The tile bytes are
+ * returned exactly as they are stored in the database, it's up to the caller
+ * to decode them or pass them along.
+ * <p>
+ * The RasterMapTileFactory uses one of these to fetch tiles, and so does the
+ * MBRasterMapTileSet in the map tile servlet.
+ */
+public class MBTilesReader {
+
+	/**
+	 * The tile query, using the map and images tables of the mbtiles schema.
+	 * The parameters are zoom level, column and (TMS) row.
+	 */
+	public final static String TILE_QUERY = "select tile_data from map, images where zoom_level = ? and tile_column = ? and tile_row = ? and map.tile_id = images.tile_id";
+
+	/**
+	 * The default number of connections kept open.
+	 */
+	public final static int DEFAULT_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * How long a request will wait for a busy connection, in seconds, before
+	 * giving up.
+	 */
+	public static long CONNECTION_WAIT_SECONDS = 30;
+
+	protected final String jdbcString;
+	protected final int poolSize;
+	protected final LinkedBlockingQueue<TileStatement> idle = new LinkedBlockingQueue<TileStatement>();
+	protected int numOpen = 0;
+	protected boolean closed = false;
+
+	/**
+	 * Create a reader with the default pool size.
+	 *
+	 * @param jdbcString the jdbc string for the mbtiles file, i.e.
+	 *        "jdbc:sqlite:path to file".
+	 */
+	public MBTilesReader(String jdbcString) {
+		this(jdbcString, DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * Create a reader.
+	 *
+	 * @param jdbcString the jdbc string for the mbtiles file, i.e.
+	 *        "jdbc:sqlite:path to file".
+	 * @param poolSize the maximum number of connections to keep open.
+	 */
+	public MBTilesReader(String jdbcString, int poolSize) {
+		this.jdbcString = jdbcString;
+		this.poolSize = Math.max(1, poolSize);
+	}
+
+	/**
+	 * @return the jdbc string this reader connects to.
+	 */
+	public String getJdbcString() {
+		return jdbcString;
+	}
+
+	/**
+	 * Fetch the stored bytes for a tile.
+	 *
+	 * @param x tile column
+	 * @param y tile row, counted from the top (OSM/Google layout). Flipped to
+	 *        the TMS row used in the mbtiles file.
+	 * @param zoomLevel tile zoom level
+	 * @return the tile_data for the tile, or null if the tile isn't in the
+	 *         database.
+	 * @throws SQLException if there's a problem with the database.
+	 * @throws InterruptedException if interrupted waiting for a connection.
+	 */
+	public byte[] getTileData(int x, int y, int zoomLevel) throws SQLException, InterruptedException {
+		int tmsRow = (1 << zoomLevel) - y - 1;
+
+		TileStatement ts = borrow();
+		boolean healthy = false;
+		try {
+			PreparedStatement ps = ts.statement;
+			ps.setInt(1, zoomLevel);
+			ps.setInt(2, x);
+			ps.setInt(3, tmsRow);
+
+			byte[] tileData = null;
+			ResultSet rs = ps.executeQuery();
+			try {
+				if (rs.next()) {
+					tileData = rs.getBytes(1);
+				}
+			} finally {
+				rs.close();
+			}
+			healthy = true;
+			return tileData;
+		} finally {
+			release(ts, healthy);
+		}
+	}
+
+	/**
+	 * Close all of the idle connections, and any busy ones as they are
+	 * returned. The reader can't be used after it's closed.
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		TileStatement ts;
+		while ((ts = idle.poll()) != null) {
+			ts.close();
+			synchronized (this) {
+				numOpen--;
+			}
+		}
+	}
+
+	/**
+	 * Get an idle connection, creating a new one if the pool isn't full,
+	 * waiting for one to be returned if it is.
+	 */
+	protected TileStatement borrow() throws SQLException, InterruptedException {
+		TileStatement ts = idle.poll();
+		if (ts != null) {
+			return ts;
+		}
+
+		boolean create = false;
+		synchronized (this) {
+			if (closed) {
+				throw new SQLException("MBTilesReader for " + jdbcString + " has been closed");
+			}
+			if (numOpen < poolSize) {
+				numOpen++;
+				create = true;
+			}
+		}
+
+		if (create) {
+			try {
+				return new TileStatement(jdbcString);
+			} catch (SQLException sqle) {
+				synchronized (this) {
+					numOpen--;
+				}
+				throw sqle;
+			}
+		}
+
+		ts = idle.poll(CONNECTION_WAIT_SECONDS, TimeUnit.SECONDS);
+		if (ts == null) {
+			throw new SQLException("timed out waiting for connection to " + jdbcString);
+		}
+		return ts;
+	}
+
+	/**
+	 * Return a connection to the pool. Connections that had problems, or that
+	 * come back after the reader was closed, are closed instead.
+	 */
+	protected void release(TileStatement ts, boolean healthy) {
+		boolean keep;
+		synchronized (this) {
+			keep = healthy && !closed;
+			if (!keep) {
+				numOpen--;
+			}
+		}
+
+		if (keep) {
+			idle.offer(ts);
+		} else {
+			ts.close();
+		}
+	}
+
+	/**
+	 * A connection and its prepared tile query.
+	 */
+	protected static class TileStatement {
+		protected final Connection connection;
+		protected final PreparedStatement statement;
+
+		protected TileStatement(String jdbcString) throws SQLException {
+			connection = DriverManager.getConnection(jdbcString);
+			try {
+				statement = connection.prepareStatement(TILE_QUERY);
+			} catch (SQLException sqle) {
+				connection.close();
+				throw sqle;
+			}
+		}
+
+		protected void close() {
+			try {
+				statement.close();
+			} catch (SQLException sqle) {
+				getLogger().log(Level.FINE, "problem closing statement", sqle);
+			}
+			try {
+				connection.close();
+			} catch (SQLException sqle) {
+				getLogger().log(Level.FINE, "problem closing connection", sqle);
+			}
+		}
+	}
+
+	/**
+	 * Holder for this class's Logger. This allows for lazy initialization of
+	 * the logger.
+	 */
+	private static final class LoggerHolder {
+		/**
+		 * The logger for this class
+		 */
+		private static final Logger LOGGER = Logger.getLogger(MBTilesReader.class.getName());
+
+		/**
+		 * Prevent instantiation
+		 */
+		private LoggerHolder() {
+			throw new AssertionError("This should never be instantiated");
+		}
+	}
+
+	/**
+	 * Get the logger for this class.
+	 *
+	 * @return logger for this class
+	 */
+	private static Logger getLogger() {
+		return LoggerHolder.LOGGER;
+	}
+}
@@ -109,6 +109,14 @@ public class MVTMapTileFactory extends VectorMapTileFactory {
 		return null;
 	}
 
+	/**
+	 * The tile data is found by the key, so it's part of the feature cache
+	 * key, too.
+	 */
+	protected Object getFeatureCacheKey(Object key, int x, int y, int zoomLevel) {
+		return key + "|" + super.getFeatureCacheKey(key, x, y, zoomLevel);
+	}
+
 	// <editor-fold defaultstate="collapsed" desc="Logger Code">
 	/**
 	 * Holder for this class's Logger. This allows for lazy initialization of
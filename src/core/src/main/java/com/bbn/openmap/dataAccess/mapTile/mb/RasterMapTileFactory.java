@@ -25,13 +25,11 @@
 package com.bbn.openmap.dataAccess.mapTile.mb;
 
 import java.awt.image.BufferedImage;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
-import java.sql.Statement;
+import java.io.ByteArrayInputStream;
 import java.util.Properties;
 import java.util.logging.Level;
 
+import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 
 import com.bbn.openmap.Environment;
@@ -65,6 +63,8 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * # The class used to test for the existance of jdbc components.  Assumes sqlitejdbc, but the code fetching the tiles
  * # is pretty standard SQL - so you should be able to use any jdbc driver library.
  * testClass=org.sqlite.JDBC
+ * # The number of database connections to keep open for fetching tiles, defaults to the number of processors.
+ * connectionPoolSize=4
  *
  * </pre>
  *
@@ -73,11 +73,17 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
 public class RasterMapTileFactory extends StandardMapTileFactory implements MapTileFactory, PropertyConsumer {
 	public final static String DEFAULT_TEST_CLASS = "org.sqlite.JDBC";
 	public final static String TEST_CLASS_PROPERTY = "testClass";
+	public final static String CONNECTION_POOL_SIZE_PROPERTY = "connectionPoolSize";
 	/**
 	 * Test class to use for existence of JDBC drivers.
 	 */
 	protected String testClass = DEFAULT_TEST_CLASS;
 	protected boolean jdbcLoaded = false;
+	protected int connectionPoolSize = MBTilesReader.DEFAULT_POOL_SIZE;
+	/**
+	 * Fetches tile bytes from the database, created when first needed.
+	 */
+	protected MBTilesReader reader;
 
 	public RasterMapTileFactory() {
 		this(null);
@@ -96,6 +102,23 @@ public class RasterMapTileFactory extends StandardMapTileFactory implements MapT
 		}		
 	}
 
+	/**
+	 * Get the MBTilesReader for the current rootDir, creating it if needed.
+	 * 
+	 * @return MBTilesReader, or null if rootDir isn't set.
+	 */
+	protected synchronized MBTilesReader getReader() {
+		if (reader != null && !reader.getJdbcString().equals(rootDir)) {
+			reader.close();
+			reader = null;
+		}
+
+		if (reader == null && rootDir != null) {
+			reader = new MBTilesReader(rootDir, connectionPoolSize);
+		}
+		return reader;
+	}
+
 	/**
 	 * Fetches a new tile from the database.
 	 */
@@ -106,34 +129,17 @@ public class RasterMapTileFactory extends StandardMapTileFactory implements MapT
 		}
 
 		try {
-			Connection conn = DriverManager.getConnection(rootDir);
-			Statement stat = conn.createStatement();
-
-			// "select zoom_level, tile_column, tile_row, tile_data from map,
-			// images where map.tile_id = images.tile_id";
-			StringBuilder statement = new StringBuilder("select tile_data from map, images where");
-			statement.append(" zoom_level = ").append(zoomLevel);
-			statement.append(" and tile_column = ").append(x);
-			statement.append(" and tile_row = ").append(Math.pow(2, zoomLevel) - y - 1);
-			statement.append(" and map.tile_id = images.tile_id;");
-
-			ResultSet rs = stat.executeQuery(statement.toString());
-			while (rs.next()) {
-				byte[] imageBytes = rs.getBytes("tile_data");
-
-				ImageIcon ii = new ImageIcon(imageBytes);
-
-				BufferedImage bi = BufferedImageHelper.getBufferedImage(ii.getImage(), 0, 0, -1, -1);
+			MBTilesReader mbReader = getReader();
+			byte[] imageBytes = mbReader != null ? mbReader.getTileData(x, y, zoomLevel) : null;
 
+			if (imageBytes != null) {
+				BufferedImage bi = decodeImage(imageBytes);
 				OMGraphic raster = createOMGraphicFromBufferedImage(bi, x, y, zoomLevel, proj);
 
 				if (raster != null) {
 					return new CacheObject((String) key, raster);
 				}
-
 			}
-			rs.close();
-			conn.close();
 		} catch (Exception e) {
 			logger.warning("something went wrong fetching image from database: " + e.getMessage());
 			e.printStackTrace();
@@ -142,11 +148,42 @@ public class RasterMapTileFactory extends StandardMapTileFactory implements MapT
 		return null;
 	}
 
+	/**
+	 * Turn stored tile bytes into an image. Uses ImageIO, falling back on the
+	 * AWT toolkit for formats ImageIO doesn't know about.
+	 * 
+	 * @param imageBytes tile_data from the database.
+	 * @return BufferedImage
+	 * @throws Exception
+	 */
+	protected BufferedImage decodeImage(byte[] imageBytes) throws Exception {
+		BufferedImage bi = ImageIO.read(new ByteArrayInputStream(imageBytes));
+		if (bi == null) {
+			ImageIcon ii = new ImageIcon(imageBytes);
+			bi = BufferedImageHelper.getBufferedImage(ii.getImage(), 0, 0, -1, -1);
+		}
+		return bi;
+	}
+
+	/**
+	 * Closes the database connections along with emptying the cache.
+	 */
+	public void reset() {
+		super.reset();
+		synchronized (this) {
+			if (reader != null) {
+				reader.close();
+				reader = null;
+			}
+		}
+	}
+
 	public Properties getProperties(Properties getList) {
 		getList = super.getProperties(getList);
 		if (testClass != null && !testClass.equals(DEFAULT_TEST_CLASS)) {
 			getList.put(prefix + TEST_CLASS_PROPERTY, PropUtils.unnull(testClass));
 		}
+		getList.put(prefix + CONNECTION_POOL_SIZE_PROPERTY, Integer.toString(connectionPoolSize));
 		return getList;
 	}
 
@@ -157,6 +194,9 @@ public class RasterMapTileFactory extends StandardMapTileFactory implements MapT
 				TEST_CLASS_PROPERTY, "JDBC Availability Test Class",
 				"A class in the JDBC driver package to use to test for JDBC driver configuration (any class in package).",
 				null);
+		PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
+				CONNECTION_POOL_SIZE_PROPERTY, "Connection Pool Size",
+				"The number of database connections to keep open for fetching tiles.", null);
 		return list;
 	}
 
@@ -165,5 +205,13 @@ public class RasterMapTileFactory extends StandardMapTileFactory implements MapT
 		prefix = PropUtils.getScopedPropertyPrefix(prefix);
 
 		testClass = setList.getProperty(prefix + TEST_CLASS_PROPERTY, testClass);
+		int poolSize = PropUtils.intFromProperties(setList, prefix + CONNECTION_POOL_SIZE_PROPERTY, connectionPoolSize);
+		synchronized (this) {
+			if (poolSize != connectionPoolSize && reader != null) {
+				reader.close();
+				reader = null;
+			}
+			connectionPoolSize = poolSize;
+		}
 	}
 }
\ No newline at end of file
@@ -1,13 +1,19 @@
 package com.bbn.openmap.dataAccess.mapTile.mb;
 
 import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Image;
 import java.awt.RenderingHints;
+import java.awt.Shape;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -17,6 +23,8 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -35,6 +43,7 @@ import com.bbn.openmap.dataAccess.mapTile.MapTileCoordinateTransform;
 import com.bbn.openmap.image.BufferedImageHelper;
 import com.bbn.openmap.layer.OMGraphicHandlerLayer;
 import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicAdapter;
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.util.I18n;
@@ -43,7 +52,6 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
 
 import no.ecc.vectortile.VectorTileDecoder;
 import no.ecc.vectortile.VectorTileDecoder.Feature;
-import no.ecc.vectortile.VectorTileDecoder.FeatureIterable;
 
 /**
  * MapTileFactory that handles mbtiles files containing vector data
@@ -63,20 +71,49 @@ import no.ecc.vectortile.VectorTileDecoder.FeatureIterable;
  * vectorTileLayer.compressed=true
  * #optional - use parent tiles to fill missing tiles.
  * vectorTileLayer.useParentTiles=true
+ * #optional - number of decoded tiles kept in memory.
+ * vectorTileLayer.featureCacheSize=64
+ * #optional - draw features directly on the map instead of into tile images.
+ * vectorTileLayer.directRendering=false
  * </pre>
  * 
+ * Decoded tile features are cached, so changing zoom levels or reloading
+ * tiles doesn't have to go back to the database. With directRendering set,
+ * tiles are OMGraphics that draw their features on the map at the current
+ * scale instead of rasterizing them into 256x256 images, so the features
+ * stay sharp between zoom levels and past the deepest zoom level in the
+ * data.
+ * 
  * @author dietrick
  */
 public class VectorMapTileFactory extends RasterMapTileFactory {
 
 	public final static String COMPRESSED_PROPERTY = "compressed";
 	public final static String FILL_MISSING_TILES_FROM_PARENTS_PROPERTY = "useParentTiles";
+	public final static String FEATURE_CACHE_SIZE_PROPERTY = "featureCacheSize";
+	public final static String DIRECT_RENDERING_PROPERTY = "directRendering";
 
 	VectorOMGraphicFactory omGraphicFactory;
 	StyleRoot renderStyle;
 	/** mvt is compressed, pbf is not. */
 	boolean compressed = true;
 	boolean useParentTiles = true;
+	/** Draw features on the map instead of into tile images. */
+	boolean directRendering = false;
+	/** The number of decoded tiles kept in the featureCache. */
+	int featureCacheSize = 64;
+	/**
+	 * Decoded features of data tiles, by getFeatureCacheKey(). Tiles that
+	 * aren't in the data are stored as empty lists.
+	 */
+	final LinkedHashMap<Object, List<Feature>> featureCache = new LinkedHashMap<Object, List<Feature>>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<Object, List<Feature>> eldest) {
+			return size() > featureCacheSize;
+		}
+	};
 
 	public VectorMapTileFactory() {
 		getLogger().fine("Using VectorTileMapTileFactory");
@@ -131,6 +168,54 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 		this.useParentTiles = useParentTiles;
 	}
 
+	/**
+	 * @return true if tiles draw their features directly on the map.
+	 */
+	public boolean isDirectRendering() {
+		return directRendering;
+	}
+
+	/**
+	 * @param directRendering
+	 *            true to draw features directly on the map, false to draw them
+	 *            into tile images. Resets the tile cache.
+	 */
+	public void setDirectRendering(boolean directRendering) {
+		if (this.directRendering != directRendering) {
+			this.directRendering = directRendering;
+			reset();
+		}
+	}
+
+	/**
+	 * @return the number of decoded tiles kept in memory.
+	 */
+	public int getFeatureCacheSize() {
+		return featureCacheSize;
+	}
+
+	/**
+	 * @param featureCacheSize
+	 *            the number of decoded tiles kept in memory, 0 for none.
+	 */
+	public void setFeatureCacheSize(int featureCacheSize) {
+		synchronized (featureCache) {
+			this.featureCacheSize = featureCacheSize;
+			if (featureCacheSize <= 0) {
+				featureCache.clear();
+			}
+		}
+	}
+
+	/**
+	 * Drop the decoded features, needed if the tile data changes.
+	 */
+	public void clearFeatureCache() {
+		synchronized (featureCache) {
+			featureCache.clear();
+		}
+	}
+
 	/**
 	 * @return the renderStyle
 	 */
@@ -185,14 +270,8 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 			omGraphicFactory = new VectorOMGraphicFactory(renderStyle);
 		}
 
-		VectorTileDecoder decoder = new VectorTileDecoder();
-		BufferedImage rasterImage = new BufferedImage(MapTileCoordinateTransform.TILE_SIZE,
-				MapTileCoordinateTransform.TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
-		java.awt.Graphics2D g2 = rasterImage.createGraphics();
-		RenderingHints renderingHints = new RenderingHints(RenderingHints.KEY_ANTIALIASING,
-				RenderingHints.VALUE_ANTIALIAS_ON);
-		g2.addRenderingHints(renderingHints);
-
+		List<Feature> features = null;
+		AffineTransform transform = null;
 		try {
 
 			// What to do if the tile isn't there? We can check smaller zoom
@@ -202,30 +281,39 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 			// data.
 
 			TileDataLoader tileDataLoader = new TileDataLoader(key, x, y, zoomLevel);
-			byte[] tileData = tileDataLoader.tileData;
-			if (tileData != null) {
-				FeatureIterable fi = decoder.decode(tileData);
-
-				Map<String, OMGraphicList> featureLists = omGraphicFactory.getFeatureMap();
-
-				omGraphicFactory.setCoordTransform(tileDataLoader.transform);
-				for (Feature feature : fi.asList()) {
-					omGraphicFactory.createAndSort(feature, zoomLevel, featureLists);
-				}
-
-				omGraphicFactory.render(g2, zoomLevel, featureLists);
-				filterPanel.revalidate();
-
-			} else {
-				if (getLogger().isLoggable(Level.FINER)) {
-					getLogger().finer("tile for " + zoomLevel + "|" + x + "|" + y + " is missing.");
-				}
+			features = tileDataLoader.features;
+			transform = tileDataLoader.transform;
+			if (features == null && getLogger().isLoggable(Level.FINER)) {
+				getLogger().finer("tile for " + zoomLevel + "|" + x + "|" + y + " is missing.");
 			}
 		} catch (Exception e) {
 			getLogger().warning("something went wrong fetching image from database: " + e.getMessage());
 			e.printStackTrace();
 		}
 
+		if (directRendering) {
+			if (features == null) {
+				features = Collections.emptyList();
+			}
+			return new CacheObject(key, new VectorTile(features, transform, x, y, zoomLevel));
+		}
+
+		BufferedImage rasterImage = new BufferedImage(MapTileCoordinateTransform.TILE_SIZE,
+				MapTileCoordinateTransform.TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+
+		if (features != null) {
+			Graphics2D g2 = rasterImage.createGraphics();
+			RenderingHints renderingHints = new RenderingHints(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.addRenderingHints(renderingHints);
+
+			Map<String, OMGraphicList> featureLists = omGraphicFactory.createFeatureLists(features, zoomLevel,
+					transform);
+			omGraphicFactory.render(g2, zoomLevel, featureLists);
+			g2.dispose();
+			filterPanel.revalidate();
+		}
+
 		/**
 		 * At this point, we have a image of rendered tile data. Prepare it for
 		 * OpenMap layer.
@@ -256,6 +344,44 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 		return null;
 	}
 
+	/**
+	 * Get the decoded features for a data tile, from the featureCache if they
+	 * have been decoded before.
+	 * 
+	 * @return List of Features, or null if the tile isn't in the data.
+	 */
+	protected List<Feature> getFeatures(Object key, int x, int y, int zoomLevel) throws Exception {
+		Object cacheKey = getFeatureCacheKey(key, x, y, zoomLevel);
+		synchronized (featureCache) {
+			List<Feature> features = featureCache.get(cacheKey);
+			if (features != null) {
+				return features.isEmpty() ? null : features;
+			}
+		}
+
+		List<Feature> features = null;
+		byte[] tileData = getTileData(key, x, y, zoomLevel);
+		if (tileData != null) {
+			features = new VectorTileDecoder().decode(tileData).asList();
+		}
+
+		synchronized (featureCache) {
+			if (featureCacheSize > 0) {
+				featureCache.put(cacheKey, features == null ? Collections.<Feature> emptyList() : features);
+			}
+		}
+		return features == null || features.isEmpty() ? null : features;
+	}
+
+	/**
+	 * The key the decoded features of a tile are cached under. The default
+	 * uses the tile location, since all tiles come from one database.
+	 * Override this if getTileData() uses the key to find the data.
+	 */
+	protected Object getFeatureCacheKey(Object key, int x, int y, int zoomLevel) {
+		return zoomLevel + "|" + x + "|" + y;
+	}
+
 	protected BufferedImage preprocessImage(Image origImage, int imageWidth, int imageHeight)
 			throws InterruptedException {
 
@@ -349,6 +475,12 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 		compressed = PropUtils.booleanFromProperties(setList, prefix + COMPRESSED_PROPERTY, compressed);
 		useParentTiles = PropUtils.booleanFromProperties(setList, prefix + FILL_MISSING_TILES_FROM_PARENTS_PROPERTY,
 				useParentTiles);
+		setFeatureCacheSize(PropUtils.intFromProperties(setList, prefix + FEATURE_CACHE_SIZE_PROPERTY,
+				featureCacheSize));
+		setDirectRendering(PropUtils.booleanFromProperties(setList, prefix + DIRECT_RENDERING_PROPERTY,
+				directRendering));
+		// The rootDir may have changed.
+		clearFeatureCache();
 	}
 
 	public Properties getProperties(Properties getList) {
@@ -356,6 +488,8 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 		String prefix = PropUtils.getScopedPropertyPrefix(this);
 		getList.put(prefix + COMPRESSED_PROPERTY, Boolean.toString(compressed));
 		getList.put(prefix + FILL_MISSING_TILES_FROM_PARENTS_PROPERTY, Boolean.toString(useParentTiles));
+		getList.put(prefix + FEATURE_CACHE_SIZE_PROPERTY, Integer.toString(featureCacheSize));
+		getList.put(prefix + DIRECT_RENDERING_PROPERTY, Boolean.toString(directRendering));
 		return getList;
 	}
 
@@ -367,6 +501,11 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 		PropUtils.setI18NPropertyInfo(i18n, list, VectorMapTileFactory.class, FILL_MISSING_TILES_FROM_PARENTS_PROPERTY,
 				"Use Parent Tiles", "Will use parent data for missing tiles.",
 				"com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+		PropUtils.setI18NPropertyInfo(i18n, list, VectorMapTileFactory.class, FEATURE_CACHE_SIZE_PROPERTY,
+				"Feature Cache Size", "Number of decoded tiles kept in memory.", null);
+		PropUtils.setI18NPropertyInfo(i18n, list, VectorMapTileFactory.class, DIRECT_RENDERING_PROPERTY,
+				"Direct Rendering", "Draw features on the map at the current scale instead of into tile images.",
+				"com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
 		return list;
 	}
 
@@ -512,6 +651,82 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 		}
 	}
 
+	/**
+	 * A tile that draws its features directly on the map. The features are
+	 * converted to map pixel coordinates whenever the projection changes, so
+	 * lines and edges stay sharp at any scale. Drawing is clipped to the tile
+	 * area. The tile is placed by its corners, which is exact for the Mercator
+	 * projection the tiles are made for, and close for other projections.
+	 */
+	protected class VectorTile extends OMGraphicAdapter {
+
+		private static final long serialVersionUID = 1L;
+
+		final List<Feature> features;
+		/** From tile data coordinates to tile pixels. */
+		final AffineTransform dataTransform;
+		final int x;
+		final int y;
+		final int zoomLevel;
+
+		transient Projection lastProjection;
+		transient AffineTransform screenTransform;
+		transient Shape clip;
+		transient Map<String, OMGraphicList> featureLists;
+
+		protected VectorTile(List<Feature> features, AffineTransform dataTransform, int x, int y, int zoomLevel) {
+			this.features = features;
+			this.dataTransform = dataTransform;
+			this.x = x;
+			this.y = y;
+			this.zoomLevel = zoomLevel;
+		}
+
+		public boolean generate(Projection proj) {
+			if (!proj.equals(lastProjection) || featureLists == null) {
+				lastProjection = proj;
+
+				// The far corner is taken from just inside the tile, so it
+				// doesn't wrap around the dateline.
+				double f = (MapTileCoordinateTransform.TILE_SIZE - 1.0) / MapTileCoordinateTransform.TILE_SIZE;
+				Point2D ul = tileToScreen(x, y, proj);
+				Point2D lr = tileToScreen(x + f, y + f, proj);
+				double scaleX = (lr.getX() - ul.getX()) / (MapTileCoordinateTransform.TILE_SIZE - 1.0);
+				double scaleY = (lr.getY() - ul.getY()) / (MapTileCoordinateTransform.TILE_SIZE - 1.0);
+
+				screenTransform = new AffineTransform(scaleX, 0, 0, scaleY, ul.getX(), ul.getY());
+				clip = screenTransform.createTransformedShape(new Rectangle2D.Double(0, 0,
+						MapTileCoordinateTransform.TILE_SIZE, MapTileCoordinateTransform.TILE_SIZE));
+				setShape(new GeneralPath(clip));
+
+				AffineTransform transform = new AffineTransform(screenTransform);
+				if (dataTransform != null) {
+					transform.concatenate(dataTransform);
+				}
+				featureLists = omGraphicFactory.createFeatureLists(features, zoomLevel, transform);
+			}
+
+			setNeedToRegenerate(false);
+			return true;
+		}
+
+		Point2D tileToScreen(double tx, double ty, Projection proj) {
+			Point2D ll = mtcTransform.tileUVToLatLon(new Point2D.Double(tx, ty), zoomLevel);
+			return proj.forward(ll.getY(), ll.getX());
+		}
+
+		public void render(Graphics g) {
+			Map<String, OMGraphicList> lists = featureLists;
+			if (lists != null && isVisible()) {
+				Graphics2D g2 = (Graphics2D) g.create();
+				g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				g2.clip(clip);
+				omGraphicFactory.render(g2, zoomLevel, lists, screenTransform);
+				g2.dispose();
+			}
+		}
+	}
+
 	/**
 	 * This class loads parent tile data if a tile isn't found. The transform
 	 * will handle how to change the projection of the points of the parent to
@@ -533,9 +748,9 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 		 */
 		AffineTransform transform;
 		/**
-		 * The tile data to use.
+		 * The decoded features to use.
 		 */
-		byte[] tileData;
+		List<Feature> features;
 		/**
 		 * This is the zoom level where a tile was found that covers the
 		 * original tile area.
@@ -543,8 +758,8 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 		int foundDataZoomLevel;
 
 		TileDataLoader(Object key, int x, int y, int zoomLevel) throws Exception {
-			tileData = findTileData(key, x, y, zoomLevel);
-			if (tileData == null) {
+			features = findFeatures(key, x, y, zoomLevel);
+			if (features == null) {
 				foundDataZoomLevel = zoomLevel;
 			}
 
@@ -567,11 +782,11 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 		 * @return
 		 * @throws Exception
 		 */
-		byte[] findTileData(Object key, int x, int y, int zoomLevel) throws Exception {
-			byte[] tileDataBytes = getTileData(key, x, y, zoomLevel);
-			if (tileDataBytes != null || !useParentTiles) {
+		List<Feature> findFeatures(Object key, int x, int y, int zoomLevel) throws Exception {
+			List<Feature> tileFeatures = getFeatures(key, x, y, zoomLevel);
+			if (tileFeatures != null || !useParentTiles) {
 				foundDataZoomLevel = zoomLevel;
-				return tileDataBytes;
+				return tileFeatures;
 			}
 
 			if (zoomLevel == 0) {
@@ -584,7 +799,7 @@ public class VectorMapTileFactory extends RasterMapTileFactory {
 			x = x / 2;
 			y = y / 2;
 
-			return findTileData(key, x, y, zoomLevel);
+			return findFeatures(key, x, y, zoomLevel);
 		}
 	}
 }
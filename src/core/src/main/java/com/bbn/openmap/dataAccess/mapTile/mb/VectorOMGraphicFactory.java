@@ -1,6 +1,7 @@
 package com.bbn.openmap.dataAccess.mapTile.mb;
 
 import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Rectangle2D;
@@ -43,7 +44,23 @@ public class VectorOMGraphicFactory {
 	}
 
 	public OMGraphic getBackground(int zoomLevel) {
-		OMGraphic omg = new OMShape.PROJECTED(new Rectangle2D.Double(0, 0, 256, 256));
+		return getBackground(zoomLevel, null);
+	}
+
+	/**
+	 * @param zoomLevel
+	 *            the zoom level of the tile
+	 * @param transform
+	 *            moves the tile square to where it should be drawn, may be
+	 *            null if it is drawn at 0, 0.
+	 * @return OMGraphic covering the tile with the background style.
+	 */
+	public OMGraphic getBackground(int zoomLevel, AffineTransform transform) {
+		Shape tile = new Rectangle2D.Double(0, 0, 256, 256);
+		if (transform != null) {
+			tile = transform.createTransformedShape(tile);
+		}
+		OMGraphic omg = new OMShape.PROJECTED(tile);
 		styles.getBackgroundRenderer().getRenderer(zoomLevel).setTo(omg);
 		return omg;
 	}
@@ -63,6 +80,36 @@ public class VectorOMGraphicFactory {
 		this.coordTransform = coordTransform;
 	}
 
+	/**
+	 * Create the OMGraphics for the features of a tile, sorted into style
+	 * layer lists. The transform is set as the coordTransform while the
+	 * features are converted, and this method is synchronized so tiles can be
+	 * built from different threads.
+	 * 
+	 * @param features
+	 *            decoded features of the tile
+	 * @param zoomLevel
+	 *            the zoom level used for styling
+	 * @param transform
+	 *            transform from tile data coordinates to the drawing
+	 *            coordinates.
+	 * @return Map of style layer ids to OMGraphicLists.
+	 */
+	public synchronized Map<String, OMGraphicList> createFeatureLists(List<Feature> features, int zoomLevel,
+			AffineTransform transform) {
+		Map<String, OMGraphicList> featureLists = getFeatureMap();
+		AffineTransform oldTransform = coordTransform;
+		coordTransform = transform;
+		try {
+			for (Feature feature : features) {
+				createAndSort(feature, zoomLevel, featureLists);
+			}
+		} finally {
+			coordTransform = oldTransform;
+		}
+		return featureLists;
+	}
+
 	public void createAndSort(Feature feature, int currentZoomLevel, Map<String, OMGraphicList> featureLists) {
 		Geometry geometry = feature.getGeometry();
 
@@ -112,30 +159,54 @@ public class VectorOMGraphicFactory {
 	}
 
 	public void render(Graphics2D g2, int zoomLevel, Map<String, OMGraphicList> featureLists) {
-		StringBuilder sBuilder = new StringBuilder("\n========= New tile\n");
+		render(g2, zoomLevel, featureLists, null);
+	}
+
+	/**
+	 * Render the feature lists in style layer order.
+	 * 
+	 * @param g2
+	 *            Graphics to render into.
+	 * @param zoomLevel
+	 *            the zoom level of the tile
+	 * @param featureLists
+	 *            from createFeatureLists
+	 * @param transform
+	 *            the transform used for the feature lists, used to place the
+	 *            background. May be null if the tile is drawn at 0, 0.
+	 */
+	public void render(Graphics2D g2, int zoomLevel, Map<String, OMGraphicList> featureLists,
+			AffineTransform transform) {
+		// Only describe the tile if it's going to be logged, this is called
+		// for every tile on every paint.
+		StringBuilder sBuilder = getLogger().isLoggable(Level.FINE) ? new StringBuilder("\n========= New tile\n")
+				: null;
 		if (styles != null) {
 
 			for (StyleLayer layer : styles.layers) {
 
 				if (layer.type.equals(StyleLayerType.BACKGROUND)) {
 					if (styles.visibleLayers.contains(layer.id)) {
-						getBackground(zoomLevel).render(g2);
-						sBuilder.append("  rendering ").append(layer.id).append("\n");
+						getBackground(zoomLevel, transform).render(g2);
+						if (sBuilder != null) {
+							sBuilder.append("  rendering ").append(layer.id).append("\n");
+						}
 					}
 					continue;
 				}
 
 				OMGraphicList omgl = featureLists.get(layer.id);
 				if (omgl != null && styles.visibleLayers.contains(layer.id)) {
-					sBuilder.append("  rendering ").append(layer.id).append(" ").append(omgl.size()).append("\n");
+					if (sBuilder != null) {
+						sBuilder.append("  rendering ").append(layer.id).append(" ").append(omgl.size()).append("\n");
+					}
 					omgl.render(g2);
 				}
 			}
 
 		}
-		sBuilder.append("========= End tile").append("\n");
-
-		if (getLogger().isLoggable(Level.FINE)) {
+		if (sBuilder != null) {
+			sBuilder.append("========= End tile").append("\n");
 			getLogger().fine(sBuilder.toString());
 		}
 	}
@@ -8,6 +8,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
@@ -18,7 +19,6 @@ import javax.swing.ScrollPaneConstants;
 
 import com.bbn.openmap.io.BinaryBufferedFile;
 import com.bbn.openmap.io.FormatException;
-import com.bbn.openmap.util.MoreMath;
 
 /**
  * Reads the tpk bundlex file and gathers the indexes for the tiles. You can ask
@@ -31,46 +31,70 @@ import com.bbn.openmap.util.MoreMath;
  */
 public class BundleX {
 
+	/** Size of the header before the offsets. */
+	public final static int HEADER_SIZE = 16;
+	/** Size of each offset, a little-endian integer. */
+	public final static int OFFSET_SIZE = 5;
+
 	int[][] offsets = new int[128][128];
 
 	public BundleX(InputStream stream) throws FormatException, IOException {
 		readFile(stream);
 	}
 
+	/**
+	 * Read the offsets from a buffer holding the bundlx file contents, starting
+	 * at the buffer's position. The buffer isn't modified, so a shared or
+	 * memory-mapped buffer can be used.
+	 */
+	public BundleX(ByteBuffer buffer) throws FormatException {
+		readBuffer(buffer);
+	}
+
 	public void readFile(InputStream stream) throws FormatException, EOFException, IOException {
+		// Read it all first, streams from compressed zip entries don't always
+		// return as many bytes as asked for.
+		byte[] bytes = new byte[HEADER_SIZE + (128 * 128 + 1) * OFFSET_SIZE];
+		int gotsofar = 0;
+		while (gotsofar < bytes.length) {
+			int read = stream.read(bytes, gotsofar, bytes.length - gotsofar);
+			if (read == -1) {
+				throw new EOFException("bundlx data is too short");
+			}
+			gotsofar += read;
+		}
 
-		/* byte[16] header */ stream.skip(16);
+		readBuffer(ByteBuffer.wrap(bytes));
+	}
 
-		int nextFilePos = -1;
+	public void readBuffer(ByteBuffer buffer) throws FormatException {
+		int index = buffer.position() + HEADER_SIZE;
+		if (buffer.limit() - index < (128 * 128 + 1) * OFFSET_SIZE) {
+			throw new FormatException("bundlx data is too short");
+		}
 
-		byte[] bytevec = new byte[5];
-		stream.read(bytevec);
-		int currentFilePos = MoreMath.BuildIntegerLE(bytevec, 0);
+		int currentFilePos = getIntegerLE(buffer, index);
 
-		// The images are stored in row major order
+		// The images are stored in row major order. An offset that is only 4
+		// more than the previous one means the previous tile is empty.
 		for (int x = 0; x < 128; x++) {
 			for (int y = 0; y < 128; y++) {
-				stream.read(bytevec);
-				nextFilePos = MoreMath.BuildIntegerLE(bytevec, 0);
-				int storedVal = -1;
-
-				if (nextFilePos != currentFilePos + 4) {
-					storedVal = currentFilePos;
-				}
-
-				offsets[x][y] = storedVal;
-
-				/*
-				 * if (storedVal != -1) { System.out.println("tile in " + x +
-				 * ", " + y + " " + (storedVal)); }
-				 */
-
+				index += OFFSET_SIZE;
+				int nextFilePos = getIntegerLE(buffer, index);
+				offsets[x][y] = nextFilePos != currentFilePos + 4 ? currentFilePos : -1;
 				currentFilePos = nextFilePos;
-
 			}
 		}
 	}
 
+	/**
+	 * Read a little-endian integer from the buffer at an absolute index.
+	 */
+	static int getIntegerLE(ByteBuffer buffer, int index) {
+		return (buffer.get(index) & 0xff) | (buffer.get(index + 1) & 0xff) << 8
+				| (buffer.get(index + 2) & 0xff) << 16 | (buffer.get(index + 3) & 0xff) << 24;
+	}
+
 	/**
 	 * Return offset for tile. If the tile doesn't exist in the bundle, return
 	 * -1.
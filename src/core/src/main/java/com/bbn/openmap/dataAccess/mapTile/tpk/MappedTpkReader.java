@@ -0,0 +1,268 @@
+package com.bbn.openmap.dataAccess.mapTile.tpk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.io.FormatException;
+
+/**
+ * A TpkReader that memory-maps the bundle files instead of reading them
+ * through zip entry streams. TPK packages store the bundles uncompressed, so
+ * the zip central directory is read to find where each bundle's bytes are in
+ * the tpk file, and that part of the file is mapped. Tiles are returned as
+ * slices of the mapped bundle, without copying. Bundles that are compressed or
+ * too big to map are read through the zip entry streams, like the TpkReader
+ * does.
+ */
+public class MappedTpkReader extends TpkReader {
+
+	static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	static final int END_SIGNATURE = 0x06054b50;
+	static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final int END_SIZE = 22;
+	static final int ZIP64_LOCATOR_SIZE = 20;
+	static final int ZIP64_END_SIZE = 56;
+
+	private static Logger logger = Logger.getLogger("com.bbn.openmap.dataAccess.mapTile.tpk.MappedTpkReader");
+
+	protected RandomAccessFile file;
+	protected FileChannel channel;
+	/**
+	 * The stored bundle and bundlx entries in the tpk, by name. The values are
+	 * the offset of the entry's local header and the size of its data.
+	 */
+	protected Map<String, long[]> storedEntries;
+
+	public MappedTpkReader(String tpkLocation) throws IOException, NoClassDefFoundError {
+		super(tpkLocation);
+
+		file = new RandomAccessFile(tpkLocation, "r");
+		channel = file.getChannel();
+		try {
+			storedEntries = readStoredEntries(channel);
+		} catch (FormatException fe) {
+			logger.warning("can't read zip directory of " + tpkLocation + ", reading bundles from streams: "
+					+ fe.getMessage());
+			storedEntries = new HashMap<String, long[]>();
+		}
+	}
+
+	/**
+	 * Map the bundlx and bundle entries, if they are stored. Otherwise, the
+	 * TpkReader reads them through the zip streams.
+	 */
+	protected Bundle loadBundle(String bundlePath) throws IOException, FormatException {
+		ByteBuffer bundlx = map(bundlePath + ".bundlx");
+		ByteBuffer bundle = bundlx != null ? map(bundlePath + ".bundle") : null;
+		if (bundle == null) {
+			return super.loadBundle(bundlePath);
+		}
+
+		return new MappedBundle(new BundleX(bundlx), bundle);
+	}
+
+	/**
+	 * Map the data of a stored entry.
+	 *
+	 * @param entryName the name of the entry in the tpk.
+	 * @return read-only little-endian ByteBuffer, or null if the entry isn't a
+	 *         stored entry that can be mapped.
+	 */
+	protected ByteBuffer map(String entryName) throws IOException {
+		long[] entry = storedEntries.get(entryName);
+		if (entry == null || entry[1] > Integer.MAX_VALUE) {
+			return null;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, header, entry[0]);
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+			logger.warning("bad local header for " + entryName);
+			return null;
+		}
+
+		// The local extra field can be different from the one in the central
+		// directory.
+		long dataStart = entry[0] + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+		return channel.map(FileChannel.MapMode.READ_ONLY, dataStart, entry[1]).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public void close() throws IOException {
+		super.close();
+		if (file != null) {
+			// The mapped buffers stay valid until they are collected.
+			file.close();
+		}
+	}
+
+	/**
+	 * Read the zip central directory, and find the bundle and bundlx entries
+	 * that are stored without compression.
+	 *
+	 * @param channel for the tpk file.
+	 * @return Map of entry names to {local header offset, data size}.
+	 */
+	protected static Map<String, long[]> readStoredEntries(FileChannel channel) throws IOException, FormatException {
+		long fileSize = channel.size();
+
+		// The end record is at the end of the file, followed by a comment of
+		// up to 64k.
+		int tailSize = (int) Math.min(fileSize, END_SIZE + 0xffff);
+		ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, tail, fileSize - tailSize);
+
+		int end = tailSize - END_SIZE;
+		while (end >= 0 && tail.getInt(end) != END_SIGNATURE) {
+			end--;
+		}
+		if (end < 0) {
+			throw new FormatException("no zip end record");
+		}
+
+		long count = tail.getShort(end + 10) & 0xffff;
+		long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+		long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+
+		// Big packages have a zip64 end record, found through the locator
+		// before the end record.
+		long locatorPos = fileSize - tailSize + end - ZIP64_LOCATOR_SIZE;
+		if (locatorPos >= 0
+				&& (count == 0xffff || directorySize == 0xffffffffL || directoryOffset == 0xffffffffL)) {
+			ByteBuffer locator = ByteBuffer.allocate(ZIP64_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, locator, locatorPos);
+			if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+				ByteBuffer end64 = ByteBuffer.allocate(ZIP64_END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				readFully(channel, end64, locator.getLong(8));
+				if (end64.getInt(0) != ZIP64_END_SIGNATURE) {
+					throw new FormatException("bad zip64 end record");
+				}
+				count = end64.getLong(32);
+				directorySize = end64.getLong(40);
+				directoryOffset = end64.getLong(48);
+			}
+		}
+
+		if (directorySize > Integer.MAX_VALUE || directoryOffset + directorySize > fileSize) {
+			throw new FormatException("bad zip central directory");
+		}
+
+		ByteBuffer dir = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, directorySize).order(
+				ByteOrder.LITTLE_ENDIAN);
+		Charset utf8 = Charset.forName("UTF-8");
+		Map<String, long[]> entries = new HashMap<String, long[]>();
+
+		int pos = 0;
+		for (long i = 0; i < count && pos + 46 <= dir.limit(); i++) {
+			if (dir.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+				throw new FormatException("bad zip central directory entry");
+			}
+
+			int method = dir.getShort(pos + 10) & 0xffff;
+			long compressedSize = dir.getInt(pos + 20) & 0xffffffffL;
+			long size = dir.getInt(pos + 24) & 0xffffffffL;
+			int nameLength = dir.getShort(pos + 28) & 0xffff;
+			int extraLength = dir.getShort(pos + 30) & 0xffff;
+			int commentLength = dir.getShort(pos + 32) & 0xffff;
+			long offset = dir.getInt(pos + 42) & 0xffffffffL;
+
+			byte[] nameBytes = new byte[nameLength];
+			ByteBuffer nameBuffer = dir.duplicate();
+			nameBuffer.position(pos + 46);
+			nameBuffer.get(nameBytes);
+			String name = new String(nameBytes, utf8);
+
+			if (method == 0 && (name.endsWith(".bundle") || name.endsWith(".bundlx"))) {
+				// Sizes and offsets too big for the entry are in the zip64
+				// extra field, in this order.
+				int extra = pos + 46 + nameLength;
+				int extraEnd = extra + extraLength;
+				while (extra + 4 <= extraEnd) {
+					int id = dir.getShort(extra) & 0xffff;
+					int length = dir.getShort(extra + 2) & 0xffff;
+					if (id == 1) {
+						int field = extra + 4;
+						if (size == 0xffffffffL) {
+							size = dir.getLong(field);
+							field += 8;
+						}
+						if (compressedSize == 0xffffffffL) {
+							field += 8;
+						}
+						if (offset == 0xffffffffL) {
+							offset = dir.getLong(field);
+						}
+						break;
+					}
+					extra += 4 + length;
+				}
+
+				entries.put(name, new long[] { offset, size });
+			}
+
+			pos += 46 + nameLength + extraLength + commentLength;
+		}
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("found " + entries.size() + " stored bundle files");
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Fill the buffer from the channel, starting at a file position.
+	 */
+	protected static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new EOFException();
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * A Bundle whose data is memory-mapped. Tiles are slices of the mapped
+	 * data.
+	 */
+	protected static class MappedBundle extends Bundle {
+		protected final ByteBuffer data;
+
+		protected MappedBundle(BundleX index, ByteBuffer data) {
+			super(index);
+			this.data = data;
+		}
+
+		protected ByteBuffer readTile(int offset) throws IOException {
+			if (offset < 0 || offset > data.limit() - 4) {
+				return null;
+			}
+
+			int length = data.getInt(offset);
+			if (length < 0 || length > data.limit() - offset - 4) {
+				logger.warning("bad tile length in bundle: " + length);
+				return null;
+			}
+
+			// The shared buffer's position is never changed, so duplicates
+			// can be made by different threads.
+			ByteBuffer tile = data.duplicate();
+			tile.position(offset + 4);
+			tile.limit(offset + 4 + length);
+			return tile.slice();
+		}
+	}
+}
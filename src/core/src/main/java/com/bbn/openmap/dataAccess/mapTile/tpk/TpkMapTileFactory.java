@@ -4,6 +4,7 @@ import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Properties;
 import java.util.logging.Level;
 
@@ -14,7 +15,6 @@ import com.bbn.openmap.image.BufferedImageHelper;
 import com.bbn.openmap.io.FormatException;
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.proj.Projection;
-import com.bbn.openmap.util.MoreMath;
 import com.bbn.openmap.util.PropUtils;
 import com.bbn.openmap.util.cacheHandler.CacheObject;
 
@@ -28,9 +28,14 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
 public class TpkMapTileFactory extends StandardMapTileFactory {
 
 	public final static String TPK_FILE_PROPERTY = "tpk";
+	public final static String MEMORY_MAPPED_PROPERTY = "memoryMapped";
 
 	protected String tpkLocation;
 	protected TpkReader tpkReader;
+	/**
+	 * Whether the bundles are memory-mapped, with a MappedTpkReader.
+	 */
+	protected boolean memoryMapped = true;
 
 	public TpkMapTileFactory() {
 		logger.fine("Using TpkMapTileFactory");
@@ -56,61 +61,19 @@ public class TpkMapTileFactory extends StandardMapTileFactory {
 	public CacheObject load(Object key, int x, int y, int zoomLevel, Projection proj) {
 		if (key instanceof String) {
 			if (tpkReader != null) {
-				String pathToTiles = tpkReader.getPathToTiles();
-
-				StringBuilder bundleName = new StringBuilder(pathToTiles).append("/L");
-				if (zoomLevel < 10) {
-					bundleName.append("0");
-				}
-				bundleName.append(zoomLevel).append("/");
-
-				// Does packetsize from conf.xml make a difference here? For
-				// now, assume 128
-				int row = (y / 128) * 128;
-				int col = (x / 128) * 128;
-
-				String rowPart = Integer.toHexString(row);
-				String colPart = Integer.toHexString(col);
-
-				while (rowPart.length() < 4) {
-					rowPart = "0" + rowPart;
-				}
-				while (colPart.length() < 4) {
-					colPart = "0" + colPart;
-				}
-
-				bundleName.append("R").append(rowPart).append("C").append(colPart);
-				String bundlxName = new StringBuilder(bundleName).append(".bundlx").toString();
-
 				if (logger.isLoggable(Level.FINE)) {
-					logger.fine("looking for tile in " + bundleName.toString());
+					logger.fine("looking for tile in " + tpkReader.getBundlePath(x, y, zoomLevel));
 				}
 
 				try {
-					InputStream is = tpkReader.getStream(bundlxName);
-					BundleX bundlex = new BundleX(is);
-					is.close();
-
-					int rowIndex = y % 128;
-					int colIndex = x % 128;
-
-					int offset = bundlex.getOffset(colIndex, rowIndex);
-
-					if (offset != -1) {
-						InputStream bundleStream = tpkReader.getStream(bundleName.append(".bundle").toString());
-						bundleStream.skip(offset);
+					ByteBuffer tile = tpkReader.getTile(x, y, zoomLevel);
 
-						// int length = bbf.readInteger();
-						byte[] lengthVec = new byte[4];
-						bundleStream.read(lengthVec);
-						int length = MoreMath.BuildIntegerLE(lengthVec, 0);
+					if (tile != null) {
 
-						byte[] imageBytes = new byte[length];
-						read(bundleStream, imageBytes, 0, imageBytes.length);
-						bundleStream.close();
-
-						if (imageBytes != null && imageBytes.length > 2000) {
+						if (tile.remaining() > 2000) {
 							// image found
+							byte[] imageBytes = new byte[tile.remaining()];
+							tile.get(imageBytes);
 							ImageIcon ii = new ImageIcon(imageBytes);
 
 							try {
@@ -194,6 +157,7 @@ public class TpkMapTileFactory extends StandardMapTileFactory {
 		super.setProperties(prefix, props);
 		prefix = PropUtils.getScopedPropertyPrefix(prefix);
 
+		memoryMapped = PropUtils.booleanFromProperties(props, prefix + MEMORY_MAPPED_PROPERTY, memoryMapped);
 		String tpkLoc = props.getProperty(prefix + TPK_FILE_PROPERTY);
 		if (tpkLoc != null) {
 			loadTpk(tpkLoc);
@@ -205,6 +169,7 @@ public class TpkMapTileFactory extends StandardMapTileFactory {
 		String prefix = PropUtils.getScopedPropertyPrefix(this);
 
 		props.put(prefix + TPK_FILE_PROPERTY, PropUtils.unnull(tpkLocation));
+		props.put(prefix + MEMORY_MAPPED_PROPERTY, Boolean.toString(memoryMapped));
 
 		return props;
 	}
@@ -212,7 +177,11 @@ public class TpkMapTileFactory extends StandardMapTileFactory {
 	protected void loadTpk(String tpkLoc) {
 		try {
 
-			this.tpkReader = new TpkReader(tpkLoc);
+			if (tpkReader != null) {
+				tpkReader.close();
+			}
+
+			this.tpkReader = memoryMapped ? new MappedTpkReader(tpkLoc) : new TpkReader(tpkLoc);
 			this.tpkLocation = tpkLoc;
 
 		} catch (IOException e) {
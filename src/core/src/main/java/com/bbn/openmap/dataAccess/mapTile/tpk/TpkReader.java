@@ -4,16 +4,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.util.MoreMath;
 import com.bbn.openmap.util.PropUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * Simple TPK reader that loads the mapserver.json in the tpk package to get the
  * imagery path. Uses the MapServerDescription object to parse the json file.
+ * Tiles are read from the compact cache bundles with getTile(). The parsed
+ * bundlx index of recently used bundles is kept, so it isn't read again for
+ * every tile.
  * 
  * @author dietrick
  */
@@ -21,9 +29,26 @@ public class TpkReader {
 
 	public final String SERVICE_DESCRIPTION_LOCATION = "servicedescriptions/mapserver/mapserver.json";
 
+	/** The number of tiles on a side of a bundle. */
+	public final static int BUNDLE_SIZE = 128;
+	public final static int DEFAULT_BUNDLE_CACHE_SIZE = 64;
+
 	protected String pathToTiles;
 	protected ZipFile tpkFile;
 
+	protected int bundleCacheSize = DEFAULT_BUNDLE_CACHE_SIZE;
+	/**
+	 * Recently used bundles, by bundle path without the extension. Bundles that
+	 * aren't in the tpk are stored as null.
+	 */
+	protected final Map<String, Bundle> bundles = new LinkedHashMap<String, Bundle>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Bundle> eldest) {
+			return size() > bundleCacheSize;
+		}
+	};
+
 	private Logger logger = Logger.getLogger("com.bbn.openmap.dataAccess.mapTile.tpk.TpkReader");
 
 	public TpkReader(String tpkLocation) throws IOException, NoClassDefFoundError {
@@ -69,6 +94,135 @@ public class TpkReader {
 		return pathToTiles;
 	}
 
+	/**
+	 * Returns the path in the tpk of the bundle holding a tile, without the
+	 * .bundle or .bundlx extension.
+	 * 
+	 * @param x the world x index for tile
+	 * @param y the world y index for tile
+	 * @param zoomLevel the zoom level for the tile
+	 * @return path to bundle
+	 */
+	public String getBundlePath(int x, int y, int zoomLevel) {
+		StringBuilder bundleName = new StringBuilder(pathToTiles).append("/L");
+		if (zoomLevel < 10) {
+			bundleName.append("0");
+		}
+		bundleName.append(zoomLevel).append("/");
+
+		// Does packetsize from conf.xml make a difference here? For
+		// now, assume 128
+		int row = (y / BUNDLE_SIZE) * BUNDLE_SIZE;
+		int col = (x / BUNDLE_SIZE) * BUNDLE_SIZE;
+
+		String rowPart = Integer.toHexString(row);
+		String colPart = Integer.toHexString(col);
+
+		while (rowPart.length() < 4) {
+			rowPart = "0" + rowPart;
+		}
+		while (colPart.length() < 4) {
+			colPart = "0" + colPart;
+		}
+
+		return bundleName.append("R").append(rowPart).append("C").append(colPart).toString();
+	}
+
+	/**
+	 * Get the image bytes for a tile.
+	 * 
+	 * @param x the world x index for tile
+	 * @param y the world y index for tile
+	 * @param zoomLevel the zoom level for the tile
+	 * @return ByteBuffer with the image bytes between its position and limit,
+	 *         null if the tile isn't in the tpk. Don't modify the contents,
+	 *         they may be shared with the bundle.
+	 * @throws IOException
+	 * @throws FormatException if the bundlx file can't be read.
+	 */
+	public ByteBuffer getTile(int x, int y, int zoomLevel) throws IOException, FormatException {
+		if (pathToTiles == null) {
+			return null;
+		}
+		Bundle bundle = getBundle(getBundlePath(x, y, zoomLevel));
+		return bundle != null ? bundle.getTile(x % BUNDLE_SIZE, y % BUNDLE_SIZE) : null;
+	}
+
+	/**
+	 * Get a bundle from the cache, loading it if needed.
+	 * 
+	 * @param bundlePath path of the bundle, without extension.
+	 * @return Bundle, or null if it isn't in the tpk.
+	 */
+	protected Bundle getBundle(String bundlePath) throws IOException, FormatException {
+		synchronized (bundles) {
+			if (bundles.containsKey(bundlePath)) {
+				return bundles.get(bundlePath);
+			}
+		}
+
+		// Two threads may both load a bundle, but that's cheaper than making
+		// every thread wait while one is loaded.
+		Bundle bundle = loadBundle(bundlePath);
+
+		synchronized (bundles) {
+			bundles.put(bundlePath, bundle);
+		}
+		return bundle;
+	}
+
+	/**
+	 * Read the bundlx index for a bundle, and create a Bundle that reads tiles
+	 * from the zip entry stream for the bundle.
+	 * 
+	 * @param bundlePath path of the bundle, without extension.
+	 * @return Bundle, or null if it isn't in the tpk.
+	 */
+	protected Bundle loadBundle(String bundlePath) throws IOException, FormatException {
+		InputStream is = getStream(bundlePath + ".bundlx");
+		if (is == null) {
+			return null;
+		}
+
+		try {
+			return new StreamBundle(bundlePath + ".bundle", new BundleX(is));
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * @return the number of bundles whose index is kept in memory.
+	 */
+	public int getBundleCacheSize() {
+		return bundleCacheSize;
+	}
+
+	/**
+	 * @param bundleCacheSize the number of bundles whose index is kept in
+	 *        memory.
+	 */
+	public void setBundleCacheSize(int bundleCacheSize) {
+		synchronized (bundles) {
+			this.bundleCacheSize = bundleCacheSize;
+			bundles.clear();
+		}
+	}
+
+	/**
+	 * Close the tpk file.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		synchronized (bundles) {
+			bundles.clear();
+		}
+		if (tpkFile != null) {
+			tpkFile.close();
+		}
+	}
+
 	/**
 	 * Load the JSON file describing the tpk contents.
 	 * 
@@ -108,4 +262,90 @@ public class TpkReader {
 		return new ObjectMapper().readValue(jsonStream, MapServerDescription.class);
 	}
 
+	/**
+	 * A bundle file and its index.
+	 */
+	protected abstract static class Bundle {
+		protected final BundleX index;
+
+		protected Bundle(BundleX index) {
+			this.index = index;
+		}
+
+		/**
+		 * @param col column of tile in bundle
+		 * @param row row of tile in bundle
+		 * @return ByteBuffer with the image bytes, or null if the tile isn't
+		 *         there.
+		 */
+		public ByteBuffer getTile(int col, int row) throws IOException {
+			int offset = index.getOffset(col, row);
+			return offset != -1 ? readTile(offset) : null;
+		}
+
+		/**
+		 * Read the tile image at an offset into the bundle. The image bytes
+		 * follow their length, a little-endian integer.
+		 */
+		protected abstract ByteBuffer readTile(int offset) throws IOException;
+	}
+
+	/**
+	 * A Bundle read through the zip entry stream, which works for compressed
+	 * entries, too.
+	 */
+	protected class StreamBundle extends Bundle {
+		protected final String entryName;
+
+		protected StreamBundle(String entryName, BundleX index) {
+			super(index);
+			this.entryName = entryName;
+		}
+
+		protected ByteBuffer readTile(int offset) throws IOException {
+			InputStream bundleStream = getStream(entryName);
+			if (bundleStream == null) {
+				return null;
+			}
+
+			try {
+				long toSkip = offset;
+				while (toSkip > 0) {
+					long skipped = bundleStream.skip(toSkip);
+					if (skipped <= 0) {
+						return null;
+					}
+					toSkip -= skipped;
+				}
+
+				byte[] lengthVec = new byte[4];
+				if (readFully(bundleStream, lengthVec) < 4) {
+					return null;
+				}
+				byte[] imageBytes = new byte[MoreMath.BuildIntegerLE(lengthVec, 0)];
+				int read = readFully(bundleStream, imageBytes);
+				return ByteBuffer.wrap(imageBytes, 0, Math.max(read, 0));
+			} finally {
+				bundleStream.close();
+			}
+		}
+	}
+
+	/**
+	 * Read from the stream until the array is full or the stream ends.
+	 * 
+	 * @return the number of bytes read.
+	 */
+	protected static int readFully(InputStream stream, byte[] b) throws IOException {
+		int gotsofar = 0;
+		while (gotsofar < b.length) {
+			int read = stream.read(b, gotsofar, b.length - gotsofar);
+			if (read == -1) {
+				break;
+			}
+			gotsofar += read;
+		}
+		return gotsofar;
+	}
+
 }
@@ -25,16 +25,25 @@
 package com.bbn.openmap.dataAccess.shape;
 
 import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.logging.Logger;
 
 import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.FileInputReader;
 import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.io.InputReader;
+import com.bbn.openmap.io.MappedFileInputReader;
 import com.bbn.openmap.omGraphics.DrawingAttributes;
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.rule.IndexRule;
 import com.bbn.openmap.omGraphics.rule.Rule;
 import com.bbn.openmap.omGraphics.rule.RuleHandler;
+import com.bbn.openmap.omGraphics.rule.RuleOp;
 import com.bbn.openmap.util.PropUtils;
 
 /**
@@ -92,13 +101,30 @@ import com.bbn.openmap.util.PropUtils;
  * 
  * </pre>
  * 
+ * If the dbf file is a local file, it's memory-mapped with a MappedDbfFile, and
+ * the rules are evaluated against the mapped records. Only the key column is
+ * decoded for each record, and numbers are compared without creating objects
+ * for them. Set the memoryMapped property to false to read records with the
+ * DbfFile instead.
+ * 
  * @author dietrick
  */
 public class DbfHandler extends RuleHandler<List<?>> {
 
+    public final static String MEMORY_MAPPED_PROPERTY = "memoryMapped";
+
     protected DbfFile dbf;
     protected List<Rule<?>> rules;
     protected DrawingAttributes defaultDA;
+    /**
+     * Path to the dbf file, if it is a local file that can be memory-mapped.
+     */
+    protected String dbfPath;
+    protected boolean memoryMapped = true;
+    protected MappedDbfFile mappedDbf;
+    protected boolean mappingChecked = false;
+
+    static Logger logger = Logger.getLogger("com.bbn.openmap.dataAccess.shape.DbfHandler");
 
     protected DbfHandler() {
         defaultDA = new DrawingAttributes();
@@ -112,6 +138,7 @@ public class DbfHandler extends RuleHandler<List<?>> {
         this();
         dbf = new DbfFile(bf);
         dbf.close();
+        dbfPath = getLocalPath(bf);
     }
 
     public void setProperties(String prefix, Properties props) {
@@ -119,22 +146,79 @@ public class DbfHandler extends RuleHandler<List<?>> {
         prefix = PropUtils.getScopedPropertyPrefix(prefix);
 
         defaultDA.setProperties(prefix, props);
+        setMemoryMapped(PropUtils.booleanFromProperties(props, prefix + MEMORY_MAPPED_PROPERTY, memoryMapped));
     }
 
     public Properties getProperties(Properties props) {
         props = super.getProperties(props);
 
         defaultDA.getProperties(props);
+        props.put(PropUtils.getScopedPropertyPrefix(this) + MEMORY_MAPPED_PROPERTY, Boolean.toString(memoryMapped));
 
         return props;
     }
 
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * @param memoryMapped true if rules should be evaluated against a
+     *        memory-mapped copy of the dbf file, when it's a local file.
+     */
+    public synchronized void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        if (!memoryMapped) {
+            mappedDbf = null;
+        }
+        mappingChecked = false;
+    }
+
+    /**
+     * Get the memory-mapped dbf file, mapping it the first time it's needed.
+     * 
+     * @return MappedDbfFile, or null if the dbf file can't be mapped or the
+     *         DbfFile has a column mask set.
+     */
+    public synchronized MappedDbfFile getMappedDbf() {
+        if (!mappingChecked) {
+            mappingChecked = true;
+            if (memoryMapped && dbfPath != null && dbf != null && dbf._columnMask == null) {
+                try {
+                    mappedDbf = new MappedDbfFile(dbfPath);
+                } catch (IOException ioe) {
+                    logger.fine("can't map " + dbfPath + ": " + ioe.getMessage());
+                } catch (FormatException fe) {
+                    logger.fine("can't map " + dbfPath + ": " + fe.getMessage());
+                }
+            }
+        }
+        return mappedDbf;
+    }
+
     public DbfFile getDbf() {
         return dbf;
     }
 
-    public void setDbf(DbfFile dbf) {
+    public synchronized void setDbf(DbfFile dbf) {
         this.dbf = dbf;
+        mappedDbf = null;
+        mappingChecked = false;
+        dbfPath = dbf != null ? getLocalPath(dbf.getBinaryFile()) : null;
+    }
+
+    /**
+     * @return the path of the file the BinaryFile reads, null if it isn't
+     *         reading a local file.
+     */
+    protected static String getLocalPath(BinaryFile bf) {
+        InputReader reader = bf != null ? bf.getInputReader() : null;
+        if (reader instanceof FileInputReader) {
+            return ((FileInputReader) reader).getAbsolutePath();
+        } else if (reader instanceof MappedFileInputReader) {
+            return ((MappedFileInputReader) reader).getAbsolutePath();
+        }
+        return null;
     }
 
     public DrawingAttributes getDefaultDA() {
@@ -175,7 +259,13 @@ public class DbfHandler extends RuleHandler<List<?>> {
     @Override
     public List<?> getRecordDataForOMGraphic(OMGraphic omg) {
         try {
-            return (List<?>) dbf.getRecordData((Integer) omg.getAttribute(ShapeConstants.SHAPE_INDEX_ATTRIBUTE));
+            Integer index = (Integer) omg.getAttribute(ShapeConstants.SHAPE_INDEX_ATTRIBUTE);
+            MappedDbfFile mapped = getMappedDbf();
+            if (mapped != null && index != null && index.intValue() >= 0 && index.intValue() < mapped.getRowCount()) {
+                // Values are decoded as the rules ask for them.
+                return mapped.getRow(index.intValue());
+            }
+            return (List<?>) dbf.getRecordData(index);
         } catch (IOException ioe) {
 
         } catch (FormatException fe) {
@@ -186,11 +276,79 @@ public class DbfHandler extends RuleHandler<List<?>> {
 
     public class DbfRule extends IndexRule {
         DbfFile dbf;
+        /** The val the numericVal was parsed from. */
+        Object parsedVal;
+        double numericVal;
+        boolean numericValParsed;
 
         public DbfRule(DbfFile dbf) {
             this.dbf = dbf;
         }
 
+        /**
+         * Records from a MappedDbfFile are evaluated without decoding the
+         * whole record.
+         */
+        public boolean evaluate(List<?> record) {
+            if (record instanceof MappedDbfFile.Row && keyIndex >= 0) {
+                MappedDbfFile.Row row = (MappedDbfFile.Row) record;
+                return evaluate(row.getFile().getColumn(keyIndex), row.getIndex());
+            }
+            return super.evaluate(record);
+        }
+
+        /**
+         * Evaluate a cell against the rule. Numbers are compared as doubles,
+         * the rule value is only parsed once. Gives the same answer as the
+         * RuleOp does with the cell's Object.
+         * 
+         * @param column the key column
+         * @param row the record index
+         * @return true if the rule passes.
+         */
+        public boolean evaluate(MappedDbfFile.Column column, int row) {
+            Object key = this.val;
+            if (key != null && column.isNumeric() && op != RuleOp.STARTS_WITH && op != RuleOp.ENDS_WITH) {
+                double value = column.getDouble(row);
+                if (!Double.isNaN(value)) {
+                    synchronized (this) {
+                        if (!parseNumericVal(key)) {
+                            // The RuleOp can't parse it either.
+                            return op.compare(-1);
+                        }
+                        return op.compare(Double.compare(numericVal, value));
+                    }
+                }
+            }
+
+            return op.evaluate(key, column.getValue(row));
+        }
+
+        /**
+         * Parse the rule value into numericVal the way the RuleOp does,
+         * remembering the result. Call while synchronized on this rule.
+         * 
+         * @return true if the value is a number.
+         */
+        protected boolean parseNumericVal(Object key) {
+            if (key != parsedVal) {
+                numericValParsed = true;
+                if (key instanceof Double) {
+                    numericVal = ((Double) key).doubleValue();
+                } else {
+                    DecimalFormat df = new DecimalFormat();
+                    df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.ENGLISH));
+                    try {
+                        numericVal = df.parse(key.toString()).doubleValue();
+                    } catch (ParseException pe) {
+                        numericValParsed = false;
+                    }
+                }
+                parsedVal = key;
+            }
+            return numericValParsed;
+        }
+
         /**
          * A record List for the attributes of an OMGraphic might have a name
          * for each entry. Given a name, provide the index into the List to get
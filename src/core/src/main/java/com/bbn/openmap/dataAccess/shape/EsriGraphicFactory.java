@@ -25,8 +25,20 @@
 package com.bbn.openmap.dataAccess.shape;
 
 import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,6 +53,7 @@ import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.omGraphics.OMPoly;
 import com.bbn.openmap.omGraphics.OMText;
+import com.bbn.openmap.omGraphics.util.PolySimplifier;
 import com.bbn.openmap.proj.ProjMath;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.proj.coords.GeoCoordTransformation;
@@ -62,6 +75,24 @@ public class EsriGraphicFactory implements ShapeConstants {
 
     protected static boolean verbose = false;
 
+    /**
+     * How many pixels simplified polys can be off by, 0 (the default) to not
+     * simplify them. See PolySimplifier.
+     */
+    protected float simplifyTolerance = 0;
+    protected int simplifyMethod = PolySimplifier.DOUGLAS_PEUCKER;
+
+    /**
+     * The vertex significance of the polys in each record, for each part,
+     * keyed by the byte offset of the record. Computed the first time a record
+     * is read with simplification on, or loaded with loadSimplification().
+     */
+    protected Map<Integer, float[][]> significanceCache = new ConcurrentHashMap<Integer, float[][]>();
+
+    /** Header for files written by saveSimplification(). */
+    protected final static int SIMPLIFICATION_FILE_MAGIC = 0x4f4d4c44;
+    protected final static int SIMPLIFICATION_FILE_VERSION = 1;
+
     /**
      * Will create shapes with straight line types (faster for rendering) and no
      * data transformation).
@@ -245,6 +276,7 @@ public class EsriGraphicFactory implements ShapeConstants {
             omg = makeEsriGraphic(shp, drawingAttributes, pointRepresentation, byteTracker);
             if (omg != null) {
                 omg.putAttribute(SHAPE_INDEX_ATTRIBUTE, new Integer(recordNumber - 1));
+                setSimplification(byteOffset, omg);
             }
         }
 
@@ -265,6 +297,7 @@ public class EsriGraphicFactory implements ShapeConstants {
             omg = makeEsriGraphic(iStream, drawingAttributes, pointRepresentation, byteTracker);
             if (omg != null) {
                 omg.putAttribute(SHAPE_INDEX_ATTRIBUTE, new Integer(recordNumber - 1));
+                setSimplification(byteOffset, omg);
             }
         }
 
@@ -1427,11 +1460,191 @@ public class EsriGraphicFactory implements ShapeConstants {
         return ret;
     }
 
+    /**
+     * Set up the polys of a record for simplification, using the cached vertex
+     * significance for the record if there is one, computing it if there
+     * isn't. Does nothing if the simplify tolerance is 0.
+     * 
+     * @param byteOffset the offset of the record in the shape file.
+     * @param omg the OMGraphic created from the record.
+     */
+    protected void setSimplification(int byteOffset, OMGraphic omg) {
+        if (simplifyTolerance <= 0) {
+            return;
+        }
+
+        List<OMPoly> polys = collectPolys(omg, null);
+        if (polys.isEmpty()) {
+            return;
+        }
+
+        Integer key = Integer.valueOf(byteOffset);
+        float[][] significance = significanceCache.get(key);
+        if (significance == null || significance.length != polys.size()) {
+            significance = new float[polys.size()][];
+            for (int i = 0; i < significance.length; i++) {
+                OMPoly poly = polys.get(i);
+                poly.simplify(simplifyMethod);
+                significance[i] = poly.getVertexSignificance();
+            }
+            significanceCache.put(key, significance);
+        } else {
+            for (int i = 0; i < significance.length; i++) {
+                polys.get(i).setVertexSignificance(significance[i]);
+            }
+        }
+
+        for (OMPoly poly : polys) {
+            poly.setSimplifyTolerance(simplifyTolerance);
+        }
+    }
+
+    /**
+     * Gather the polys of an OMGraphic created for a record, which is a single
+     * poly or a list of polys for a record with several parts.
+     */
+    protected List<OMPoly> collectPolys(OMGraphic omg, List<OMPoly> polys) {
+        if (polys == null) {
+            polys = new ArrayList<OMPoly>();
+        }
+        if (omg instanceof OMPoly) {
+            polys.add((OMPoly) omg);
+        } else if (omg instanceof OMGraphicList) {
+            for (OMGraphic part : (OMGraphicList) omg) {
+                collectPolys(part, polys);
+            }
+        }
+        return polys;
+    }
+
+    /**
+     * Set how far, in pixels, the polys created by this factory can be
+     * simplified away from their full detail when they are generated for small
+     * scales. 0 turns simplification off.
+     */
+    public void setSimplifyTolerance(float pixels) {
+        this.simplifyTolerance = pixels;
+    }
+
+    public float getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
+    /**
+     * Set the PolySimplifier method, DOUGLAS_PEUCKER or VISVALINGAM. Clears
+     * the cached vertex significance if it changes.
+     */
+    public void setSimplifyMethod(int method) {
+        if (method != simplifyMethod) {
+            simplifyMethod = method;
+            clearSimplification();
+        }
+    }
+
+    public int getSimplifyMethod() {
+        return simplifyMethod;
+    }
+
+    /**
+     * Clear the cached vertex significance, which should be done if the
+     * factory is used for a different shape file.
+     */
+    public void clearSimplification() {
+        significanceCache.clear();
+    }
+
+    /**
+     * @return the number of records with cached vertex significance.
+     */
+    public int getSimplificationSize() {
+        return significanceCache.size();
+    }
+
+    /**
+     * Save the cached vertex significance to a file, so it can be loaded
+     * instead of computed again.
+     * 
+     * @param file the file to write.
+     * @throws IOException
+     */
+    public void saveSimplification(File file) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            dos.writeInt(SIMPLIFICATION_FILE_MAGIC);
+            dos.writeInt(SIMPLIFICATION_FILE_VERSION);
+            dos.writeInt(simplifyMethod);
+            // Take a copy, so the count matches the records written.
+            Map<Integer, float[][]> cache = new HashMap<Integer, float[][]>(significanceCache);
+            dos.writeInt(cache.size());
+            for (Map.Entry<Integer, float[][]> entry : cache.entrySet()) {
+                float[][] significance = entry.getValue();
+                dos.writeInt(entry.getKey().intValue());
+                dos.writeInt(significance.length);
+                for (float[] part : significance) {
+                    dos.writeInt(part.length);
+                    for (float sig : part) {
+                        dos.writeFloat(sig);
+                    }
+                }
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    /**
+     * Load vertex significance saved with saveSimplification(), replacing the
+     * cached values. The file isn't used if it was saved with a different
+     * simplify method.
+     * 
+     * @param file the file to read.
+     * @return true if the file was loaded.
+     * @throws IOException if the file can't be read, or isn't a
+     *         simplification file.
+     */
+    public boolean loadSimplification(File file) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (dis.readInt() != SIMPLIFICATION_FILE_MAGIC
+                    || dis.readInt() != SIMPLIFICATION_FILE_VERSION) {
+                throw new IOException(file + " is not a simplification file");
+            }
+            if (dis.readInt() != simplifyMethod) {
+                return false;
+            }
+
+            int numRecords = dis.readInt();
+            Map<Integer, float[][]> cache = new HashMap<Integer, float[][]>();
+            for (int i = 0; i < numRecords; i++) {
+                int byteOffset = dis.readInt();
+                float[][] significance = new float[dis.readInt()][];
+                for (int j = 0; j < significance.length; j++) {
+                    float[] part = new float[dis.readInt()];
+                    for (int k = 0; k < part.length; k++) {
+                        part[k] = dis.readFloat();
+                    }
+                    significance[j] = part;
+                }
+                cache.put(Integer.valueOf(byteOffset), significance);
+            }
+
+            significanceCache.clear();
+            significanceCache.putAll(cache);
+            return true;
+        } finally {
+            dis.close();
+        }
+    }
+
     public GeoCoordTransformation getDataCoordTransformation() {
         return dataTransformation;
     }
 
     public void setDataCoordTransformation(GeoCoordTransformation dataTrans) {
+        if (dataTrans != dataTransformation) {
+            // The significance depends on the transformed coordinates.
+            clearSimplification();
+        }
         this.dataTransformation = dataTrans;
     }
 
@@ -0,0 +1,496 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.dataAccess.shape;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.bbn.openmap.io.FormatException;
+
+/**
+ * A read-only dbf file reader that memory-maps the file and decodes values
+ * when they are asked for, instead of reading every record into Lists of
+ * Objects like the DbfFile does. Values are accessed by Column, with methods
+ * that return numbers as primitives, so large tables can be scanned without
+ * creating an object for every cell. Rows can also be accessed as Lists, which
+ * decode their values as they are asked for, and a DbfTableModel holding just
+ * some of the columns can be created.
+ *
+ * <pre>
+ * MappedDbfFile dbf = new MappedDbfFile(&quot;roads.dbf&quot;);
+ * MappedDbfFile.Column classRte = dbf.getColumn(&quot;CLASS_RTE&quot;);
+ * for (int row = 0; row &lt; dbf.getRowCount(); row++) {
+ *     if (classRte.getDouble(row) &lt; 2) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * The file is closed after it is mapped, the mapping stays valid until this
+ * object is garbage collected.
+ */
+public class MappedDbfFile {
+
+    protected int rowCount;
+    protected int headerLength;
+    protected int recordLength;
+    protected String[] names;
+    protected byte[] types;
+    protected int[] lengths;
+    protected byte[] decimalCounts;
+    protected Column[] columns;
+
+    /**
+     * The mapped records. Files bigger than a buffer can hold are mapped in
+     * pieces, each holding rowsPerBuffer whole records.
+     */
+    protected ByteBuffer[] buffers;
+    protected int rowsPerBuffer;
+
+    public MappedDbfFile(String path) throws IOException, FormatException {
+        this(new File(path));
+    }
+
+    public MappedDbfFile(File file) throws IOException, FormatException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            readHeader(channel);
+            mapRecords(channel);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Read the header, the same way the DbfFile does.
+     */
+    protected void readHeader(FileChannel channel) throws IOException, FormatException {
+        ByteBuffer start = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, start, 0);
+        rowCount = start.getInt(4);
+        headerLength = start.getShort(8) & 0xffff;
+        recordLength = start.getShort(10) & 0xffff;
+        int columnCount = (headerLength - 32 - 1) / 32;
+        if (rowCount < 0 || columnCount < 0 || recordLength <= 0) {
+            throw new FormatException("MappedDbfFile: bad dbf header");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(columnCount * 32);
+        readFully(channel, header, 32);
+
+        names = new String[columnCount];
+        types = new byte[columnCount];
+        lengths = new int[columnCount];
+        decimalCounts = new byte[columnCount];
+        columns = new Column[columnCount];
+
+        int offset = 1; // after the delete flag
+        byte[] nameBytes = new byte[11];
+        for (int n = 0; n < columnCount; n++) {
+            header.position(n * 32);
+            header.get(nameBytes);
+            names[n] = new String(nameBytes, 0, nameBytes.length);
+            // Some TIGER dbf files from ESRI have nulls in the column names.
+            int ix = names[n].indexOf((char) 0);
+            if (ix > 0) {
+                names[n] = names[n].substring(0, ix);
+            }
+            types[n] = header.get(n * 32 + 11);
+            lengths[n] = header.get(n * 32 + 16) & 0xff;
+            decimalCounts[n] = header.get(n * 32 + 17);
+
+            columns[n] = new Column(n, offset);
+            offset += lengths[n];
+        }
+
+        if (offset > recordLength) {
+            throw new FormatException("MappedDbfFile: columns are longer than the record length");
+        }
+    }
+
+    /**
+     * Map the records, in as few pieces as possible.
+     */
+    protected void mapRecords(FileChannel channel) throws IOException, FormatException {
+        long available = channel.size() - headerLength;
+        if (available < (long) rowCount * recordLength) {
+            // Some files are cut short, don't read past the end.
+            rowCount = (int) Math.max(0, available / recordLength);
+        }
+
+        rowsPerBuffer = Math.max(1, Integer.MAX_VALUE / recordLength);
+        int numBuffers = Math.max(1, (rowCount + rowsPerBuffer - 1) / rowsPerBuffer);
+        buffers = new ByteBuffer[numBuffers];
+        for (int i = 0; i < numBuffers; i++) {
+            long firstRow = (long) i * rowsPerBuffer;
+            long rows = Math.min(rowsPerBuffer, rowCount - firstRow);
+            buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, headerLength + firstRow * recordLength,
+                    Math.max(0, rows) * recordLength);
+        }
+    }
+
+    protected static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException,
+            FormatException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new FormatException("MappedDbfFile: file too short for header");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public String getColumnName(int column) {
+        return names[column];
+    }
+
+    public byte getType(int column) {
+        return types[column];
+    }
+
+    public int getLength(int column) {
+        return lengths[column];
+    }
+
+    public byte getDecimalCount(int column) {
+        return decimalCounts[column];
+    }
+
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    public int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * @param columnName the name of the column, case doesn't matter.
+     * @return the index of the column, -1 if there isn't one with the name.
+     */
+    public int getColumnIndexForName(String columnName) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public Column getColumn(int column) {
+        return columns[column];
+    }
+
+    /**
+     * @param columnName the name of the column, case doesn't matter.
+     * @return the Column, or null if there isn't one with the name.
+     */
+    public Column getColumn(String columnName) {
+        int index = getColumnIndexForName(columnName);
+        return index >= 0 ? columns[index] : null;
+    }
+
+    /**
+     * @return true if the record is marked as deleted.
+     */
+    public boolean isDeleted(int row) {
+        return buffer(row).get(position(row)) == '*';
+    }
+
+    /**
+     * Get a record as a List that decodes the values when they are asked for.
+     * The values are the same as the ones the DbfFile reads.
+     */
+    public Row getRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + rowCount);
+        }
+        return new Row(row);
+    }
+
+    /**
+     * Create a DbfTableModel with all of the records, with just the named
+     * columns. Only those columns are decoded.
+     *
+     * @param columnNames the columns to include, in order. If null, all the
+     *        columns are included.
+     * @return DbfTableModel
+     */
+    public DbfTableModel getTableModel(String... columnNames) {
+        Column[] selected = columns;
+        if (columnNames != null) {
+            List<Column> found = new ArrayList<Column>(columnNames.length);
+            for (String name : columnNames) {
+                Column column = getColumn(name);
+                if (column != null) {
+                    found.add(column);
+                }
+            }
+            selected = found.toArray(new Column[found.size()]);
+        }
+
+        DbfTableModel model = new DbfTableModel(selected.length);
+        for (int i = 0; i < selected.length; i++) {
+            int c = selected[i].index;
+            model.setColumnName(i, names[c]);
+            model.setType(i, types[c]);
+            model.setLength(i, lengths[c]);
+            model.setDecimalCount(i, decimalCounts[c]);
+        }
+
+        for (int row = 0; row < rowCount; row++) {
+            List<Object> record = new ArrayList<Object>(selected.length);
+            for (Column column : selected) {
+                record.add(column.getValue(row));
+            }
+            model.addRecord(record);
+        }
+        return model;
+    }
+
+    ByteBuffer buffer(int row) {
+        return buffers[row / rowsPerBuffer];
+    }
+
+    int position(int row) {
+        return (row % rowsPerBuffer) * recordLength;
+    }
+
+    /**
+     * Powers of ten that can be represented exactly as doubles.
+     */
+    private final static double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Access to the values of one column. The methods take the row index, and
+     * decode just that cell.
+     */
+    public class Column {
+        protected final int index;
+        /** Offset of the cell in the record. */
+        protected final int offset;
+        protected final int length;
+        protected final byte type;
+
+        protected Column(int index, int offset) {
+            this.index = index;
+            this.offset = offset;
+            this.length = lengths[index];
+            this.type = types[index];
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return names[index];
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public boolean isNumeric() {
+            return DbfTableModel.isNumericalType(type);
+        }
+
+        /**
+         * @return true if the cell is blank.
+         */
+        public boolean isNull(int row) {
+            ByteBuffer buffer = buffer(row);
+            int start = position(row) + offset;
+            for (int i = start; i < start + length; i++) {
+                if (buffer.get(i) != ' ' && buffer.get(i) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the cell contents, trimmed.
+         */
+        public String getString(int row) {
+            ByteBuffer buffer = buffer(row);
+            int start = position(row) + offset;
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            return new String(bytes, 0, length).trim();
+        }
+
+        /**
+         * Decode a number from the cell.
+         *
+         * @return the value, or NaN if the cell is blank or isn't a number.
+         */
+        public double getDouble(int row) {
+            ByteBuffer buffer = buffer(row);
+            int i = position(row) + offset;
+            int end = i + length;
+
+            while (i < end && buffer.get(i) == ' ') {
+                i++;
+            }
+            while (end > i && (buffer.get(end - 1) == ' ' || buffer.get(end - 1) == 0)) {
+                end--;
+            }
+            if (i == end) {
+                return Double.NaN;
+            }
+
+            boolean negative = buffer.get(i) == '-';
+            if (negative || buffer.get(i) == '+') {
+                i++;
+            }
+
+            // Plain decimal numbers with up to 15 digits are exact when
+            // divided by a power of ten, anything else goes to parseDouble.
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = -1;
+            for (; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                } else if (b == '.' && decimals < 0) {
+                    decimals = 0;
+                } else {
+                    digits = -1;
+                    break;
+                }
+            }
+
+            if (digits > 0 && digits <= 15 && decimals < POWERS_OF_TEN.length) {
+                double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+                return negative ? -value : value;
+            }
+
+            try {
+                return Double.parseDouble(getString(row));
+            } catch (NumberFormatException nfe) {
+                return Double.NaN;
+            }
+        }
+
+        /**
+         * Decode a whole number from the cell. Fractions are truncated.
+         *
+         * @return the value, or 0 if the cell is blank or isn't a number.
+         */
+        public long getLong(int row) {
+            double value = getDouble(row);
+            return Double.isNaN(value) ? 0 : (long) value;
+        }
+
+        /**
+         * Decode a whole number from the cell. Fractions are truncated.
+         *
+         * @return the value, or 0 if the cell is blank or isn't a number.
+         */
+        public int getInt(int row) {
+            return (int) getLong(row);
+        }
+
+        /**
+         * @return the Object the DbfFile would read for the cell, a Double for
+         *         numbers, a String otherwise.
+         */
+        public Object getValue(int row) {
+            if (isNumeric()) {
+                double value = getDouble(row);
+                if (!Double.isNaN(value)) {
+                    return Double.valueOf(value);
+                }
+            }
+
+            String cell = getString(row);
+            try {
+                DecimalFormat df = new DecimalFormat();
+                df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.ENGLISH));
+                df.setMaximumFractionDigits(decimalCounts[index]);
+                return DbfTableModel.getObjectForType(cell, type, df, length);
+            } catch (ParseException pe) {
+                return cell;
+            } catch (NumberFormatException nfe) {
+                return cell;
+            }
+        }
+    }
+
+    /**
+     * A record, as a List that decodes the values when they are asked for.
+     */
+    public class Row extends AbstractList<Object> {
+        protected final int row;
+
+        protected Row(int row) {
+            this.row = row;
+        }
+
+        public Object get(int column) {
+            return columns[column].getValue(row);
+        }
+
+        public int size() {
+            return columns.length;
+        }
+
+        /**
+         * @return the record index.
+         */
+        public int getIndex() {
+            return row;
+        }
+
+        public MappedDbfFile getFile() {
+            return MappedDbfFile.this;
+        }
+    }
+}
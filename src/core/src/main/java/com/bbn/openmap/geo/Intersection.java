@@ -13,10 +13,14 @@
 
 package com.bbn.openmap.geo;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Contains great circle intersection algorithms and helper methods. Sources:
@@ -36,6 +40,25 @@ public class Intersection {
     protected final MatchFilter filter;
     protected final MatchCollector<GeoExtent> collector;
 
+    /**
+     * Scratch space for the points pulled out of region boundaries, so they
+     * don't have to be allocated for every pair of regions. An Intersection
+     * is used by one thread at a time, since its collector isn't thread safe.
+     */
+    protected final Geo scratchA = new Geo();
+    protected final Geo scratchB = new Geo();
+
+    /**
+     * The number of regions a collection passed to considerAll() has to have
+     * before it is indexed, if it isn't an ExtentIndex already.
+     */
+    public static final int INDEX_THRESHOLD = 256;
+
+    /**
+     * The pool used by considerAll(), created when first needed.
+     */
+    private static ForkJoinPool considerPool;
+
     /**
      * Create an Intersection class that will use the provided MatchFilter and
      * MatchCollector.
@@ -133,6 +156,139 @@ public class Intersection {
         }
     }
 
+    /**
+     * Calls consider(a, regions) for each of the GeoExtents in the first
+     * collection, spreading the work across a shared fork/join pool. Each
+     * piece of work gets its own Intersection, created by createWorker(), and
+     * the matches are handed to this Intersection's collector on the calling
+     * thread, in the same order a loop over consider() would produce them. The
+     * MatchFilter is shared by the workers and needs to be thread safe, which
+     * the ones in MatchFilter are.
+     * <p>
+     * If the regions aren't already in an ExtentIndex and there are a lot of
+     * them, they are put into a SphericalExtentIndex for the run. Any other
+     * ExtentIndex has to be safe to search from several threads at once, the
+     * ones in this package are as long as they aren't being modified.
+     * 
+     * @param as GeoRegions, GeoPaths and GeoPoints to check.
+     * @param regions the GeoExtents to check them against.
+     */
+    public void considerAll(Collection<? extends GeoExtent> as, Collection<GeoExtent> regions) {
+        if (!(regions instanceof ExtentIndex) && regions.size() >= INDEX_THRESHOLD && as.size() > 1) {
+            regions = new SphericalExtentIndex(regions, Geo.nm(filter.getHRange()));
+        }
+
+        GeoExtent[] extents = as.toArray(new GeoExtent[as.size()]);
+        ForkJoinPool pool = getConsiderPool();
+        // A few pieces per thread, so threads that finish early can steal
+        // work from the others.
+        int grain = Math.max(8, extents.length / (pool.getParallelism() * 4));
+        ConsiderTask task = new ConsiderTask(this, extents, 0, extents.length, grain, regions);
+        List<GeoExtent> matches;
+        if (extents.length <= grain || Thread.currentThread() instanceof ForkJoinWorkerThread) {
+            matches = task.invoke();
+        } else {
+            matches = pool.invoke(task);
+        }
+
+        for (int i = 0; i < matches.size(); i += 2) {
+            collector.collect(matches.get(i), matches.get(i + 1));
+        }
+    }
+
+    /**
+     * Create the Intersection used by considerAll() for a piece of the work.
+     * Subclasses that change how extents are considered should override this
+     * to return an instance of their own class.
+     * 
+     * @param c the collector for the worker's matches.
+     * @return Intersection with the same filter as this one.
+     */
+    protected Intersection createWorker(MatchCollector<GeoExtent> c) {
+        return new Intersection(filter, c);
+    }
+
+    protected static synchronized ForkJoinPool getConsiderPool() {
+        if (considerPool == null) {
+            considerPool = new ForkJoinPool();
+        }
+        return considerPool;
+    }
+
+    /**
+     * Considers a range of extents, splitting it in half until the pieces are
+     * small enough. Returns the matches as a list of a, b pairs, left half
+     * first.
+     */
+    protected static class ConsiderTask extends RecursiveTask<List<GeoExtent>> {
+
+        private static final long serialVersionUID = 1L;
+
+        final Intersection parent;
+        final GeoExtent[] extents;
+        final int from;
+        final int to;
+        final int grain;
+        final Collection<GeoExtent> regions;
+
+        ConsiderTask(Intersection parent, GeoExtent[] extents, int from, int to, int grain,
+                Collection<GeoExtent> regions) {
+            this.parent = parent;
+            this.extents = extents;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.regions = regions;
+        }
+
+        protected List<GeoExtent> compute() {
+            if (to - from <= grain) {
+                RecordingCollector c = new RecordingCollector();
+                Intersection worker = parent.createWorker(c);
+                for (int i = from; i < to; i++) {
+                    worker.consider(extents[i], regions);
+                }
+                return c.matches;
+            }
+
+            int mid = (from + to) >>> 1;
+            ConsiderTask first = new ConsiderTask(parent, extents, from, mid, grain, regions);
+            first.fork();
+            List<GeoExtent> second = new ConsiderTask(parent, extents, mid, to, grain, regions).compute();
+            List<GeoExtent> ret = first.join();
+            ret.addAll(second);
+            return ret;
+        }
+    }
+
+    /**
+     * Keeps the matches as a list of a, b pairs so they can be passed on to
+     * another collector later. The segments handed out by GeoPath segment
+     * iterators are reused for the next segment, so they are copied.
+     */
+    protected static class RecordingCollector implements MatchCollector<GeoExtent> {
+        protected final List<GeoExtent> matches = new ArrayList<GeoExtent>();
+
+        public void collect(GeoExtent a, GeoExtent b) {
+            if (a instanceof GeoSegment && !(a instanceof GeoSegment.Impl)) {
+                Geo[] seg = ((GeoSegment) a).getSeg();
+                GeoSegment.Impl copy = new GeoSegment.Impl(new Geo[] { new Geo(seg[0]), new Geo(seg[1]) });
+                copy.setID(a.getID());
+                a = copy;
+            }
+            matches.add(a);
+            matches.add(b);
+        }
+
+        public Iterator<GeoExtent> iterator() {
+            List<GeoExtent> bs = new ArrayList<GeoExtent>(matches.size() / 2);
+            for (int i = 1; i < matches.size(); i += 2) {
+                bs.add(matches.get(i));
+            }
+            return bs.iterator();
+        }
+    }
+
     /**
      * Loads the collector with regions from the Collection that intersect with
      * r.
@@ -202,9 +358,9 @@ public class Intersection {
         /* these must be cheap! */
         GeoArray rBoundary = r.getPoints();
         /* get the first path point */
-        Geo rPoint = rBoundary.get(0, new Geo());
+        Geo rPoint = rBoundary.get(0, scratchA);
         GeoArray regionBoundary = region.getPoints();
-        Geo regionPoint = regionBoundary.get(0, new Geo());
+        Geo regionPoint = regionBoundary.get(0, scratchB);
 
         // check for total containment
         if (Intersection.isPointInPolygon(rPoint, regionBoundary) || Intersection.isPointInPolygon(regionPoint, rBoundary)
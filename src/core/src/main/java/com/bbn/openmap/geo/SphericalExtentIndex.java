@@ -0,0 +1,576 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.geo;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An ExtentIndex that sorts extents by where they are on the sphere instead of
+ * by longitude. The BoundingCircle of each extent is a cap on the unit sphere,
+ * and the index keeps a box around each cap in earth-centered x, y, z
+ * coordinates. The boxes are packed into an R-tree with the Sort-Tile-Recursive
+ * method. Since the boxes are three dimensional, extents around the poles,
+ * across the dateline or bigger than a hemisphere don't need special handling,
+ * and a lookup only visits the part of the tree near the query.
+ * <p>
+ * The tree is built in one pass the first time the index is searched after it
+ * changes, so this index works best when it is loaded with addAll() or a run
+ * of addExtent() calls and then searched many times, which is how Intersection
+ * uses it. A few extents added after the tree is built are kept in a short list
+ * that is checked on every lookup, and the tree is rebuilt when that list gets
+ * long or when an extent is removed. Lookups on a built tree don't lock, so
+ * several threads can search the index at once as long as nobody is changing
+ * it.
+ * <p>
+ * Like the other ExtentIndex implementations, lookups return a superset of the
+ * extents whose bounding circles, grown by the margin, touch the bounding
+ * circle of the query.
+ */
+public class SphericalExtentIndex extends AbstractCollection<GeoExtent> implements ExtentIndex {
+
+    /**
+     * Default value for #nodeSize if not specified in the call to the
+     * constructor.
+     */
+    public static final int D_NODE_SIZE = 16;
+
+    /**
+     * Default value for #margin if not specified in the call to the
+     * constructor.
+     */
+    public static final double D_MARGIN = 0.0;
+
+    /**
+     * The number of entries in each node of the tree.
+     */
+    public final int nodeSize;
+
+    /**
+     * How much of a margin to put around extents for indexing purposes, in
+     * nautical miles.
+     */
+    public final double margin;
+
+    /** all is a collection of everything successfully indexed. */
+    protected final List<GeoExtent> all = new ArrayList<GeoExtent>();
+
+    /** Extents without a BoundingCircle, which can't be indexed. */
+    protected final List<GeoExtent> discarded = new ArrayList<GeoExtent>();
+
+    /**
+     * The current tree, or null if it has to be rebuilt from #all before the
+     * next lookup.
+     */
+    protected volatile Tree tree;
+
+    public SphericalExtentIndex() {
+        this(D_NODE_SIZE, D_MARGIN);
+    }
+
+    public SphericalExtentIndex(double m) {
+        this(D_NODE_SIZE, m);
+    }
+
+    public SphericalExtentIndex(int nodeSize, double m) {
+        this.nodeSize = Math.max(2, nodeSize);
+        this.margin = m;
+    }
+
+    /**
+     * Create an index and bulk load it with the extents in the collection.
+     */
+    public SphericalExtentIndex(Collection<? extends GeoExtent> extents, double m) {
+        this(D_NODE_SIZE, m);
+        addAll(extents);
+    }
+
+    /**
+     * RegionIndex parameter method.
+     *
+     * @return horizontal range in nautical miles for matches.
+     */
+    public double indexHorizontalRange() {
+        return margin;
+    }
+
+    public boolean add(GeoExtent o) {
+        return addExtent(o);
+    }
+
+    /**
+     * Add an extent to the index. If the tree has already been built, the
+     * extent is added to the list of recent additions, or the tree is marked
+     * for rebuilding if that list is full.
+     *
+     * @return true if the extent was added, false if it didn't have a
+     *         BoundingCircle.
+     */
+    public synchronized boolean addExtent(GeoExtent extent) {
+        BoundingCircle bc = extent.getBoundingCircle();
+        if (bc == null) {
+            discarded.add(extent);
+            return false;
+        }
+
+        all.add(extent);
+        Tree t = tree;
+        if (t != null) {
+            tree = t.addRecent(extent, bc);
+        }
+        return true;
+    }
+
+    /**
+     * Bulk load the extents in the collection. The tree is built once, when the
+     * index is next searched.
+     */
+    public synchronized boolean addAll(Collection<? extends GeoExtent> extents) {
+        boolean ret = false;
+        for (GeoExtent extent : extents) {
+            if (extent.getBoundingCircle() == null) {
+                discarded.add(extent);
+            } else {
+                all.add(extent);
+                ret = true;
+            }
+        }
+        if (ret) {
+            tree = null;
+        }
+        return ret;
+    }
+
+    /**
+     * Remove an extent from the index.
+     *
+     * @return true if the extent was found and removed.
+     */
+    public synchronized boolean removeExtent(GeoExtent extent) {
+        if (extent.getBoundingCircle() == null) {
+            return discarded.remove(extent);
+        }
+
+        boolean ret = all.remove(extent);
+        if (ret) {
+            tree = null;
+        }
+        return ret;
+    }
+
+    public boolean remove(Object o) {
+        return o instanceof GeoExtent && removeExtent((GeoExtent) o);
+    }
+
+    /**
+     * Resets the index to an empty state.
+     */
+    public synchronized void clear() {
+        all.clear();
+        discarded.clear();
+        tree = null;
+    }
+
+    /**
+     * @return Iterator over all entries in Collection. The iterator doesn't
+     *         support remove(), use removeExtent() instead.
+     */
+    public Iterator<GeoExtent> iterator() {
+        return Collections.unmodifiableList(all).iterator();
+    }
+
+    /**
+     * @return number of all entries in Collection.
+     */
+    public int size() {
+        return all.size();
+    }
+
+    /**
+     * @return an Iterator over the extents in the Collection that may be
+     *         related to the GeoExtent.
+     */
+    public Iterator<GeoExtent> iterator(GeoExtent o) {
+        if (o instanceof GeoSegment) {
+            return lookupByBoundingCircle(o.getBoundingCircle());
+        } else if (o instanceof GeoRegion) {
+            // Regions have to be checked before paths, see
+            // AbstractExtentIndex.iterator(GeoExtent).
+            return lookupByBoundingCircle(o.getBoundingCircle());
+        } else if (o instanceof GeoPath) {
+            return lookupByPath((GeoPath) o);
+        } else if (o instanceof GeoPoint) {
+            return lookupByBoundingCircle(new BoundingCircle.Impl(((GeoPoint) o).getPoint(), 0));
+        } else {
+            return lookupByBoundingCircle(o.getBoundingCircle());
+        }
+    }
+
+    public Iterator<GeoExtent> lookupByBoundingCircle(BoundingCircle bc) {
+        if (bc == null) {
+            return iterator();
+        }
+        List<GeoExtent> results = new ArrayList<GeoExtent>();
+        getTree().search(bc.getCenter(), bc.getRadius(), results);
+        return results.iterator();
+    }
+
+    /**
+     * Looks up each segment of the path separately, so a long path doesn't pull
+     * in everything inside its bounding circle.
+     */
+    public Iterator<GeoExtent> lookupByPath(GeoPath path) {
+        Tree t = getTree();
+        List<GeoExtent> found = new ArrayList<GeoExtent>();
+        Collection<GeoExtent> results = new HashSet<GeoExtent>();
+        for (Iterator<GeoSegment> pit = path.segmentIterator(); pit.hasNext();) {
+            BoundingCircle bc = pit.next().getBoundingCircle();
+            t.search(bc.getCenter(), bc.getRadius(), found);
+            results.addAll(found);
+            found.clear();
+        }
+        return results.iterator();
+    }
+
+    /**
+     * @return the current tree, building it first if the index has changed.
+     */
+    protected Tree getTree() {
+        Tree t = tree;
+        if (t == null) {
+            synchronized (this) {
+                t = tree;
+                if (t == null) {
+                    t = new Tree(all.toArray(new GeoExtent[all.size()]), nodeSize, Geo.nmToAngle(margin));
+                    tree = t;
+                }
+            }
+        }
+        return t;
+    }
+
+    public String toString() {
+        Tree t = tree;
+        return getClass().getName() + "[" + size() + " -" + discarded.size() + " N" + nodeSize + "] "
+                + (t == null ? "unbuilt" : ("depth " + t.levels.length + ", recent " + t.recent.length));
+    }
+
+    /**
+     * An immutable packed R-tree over the boxes around the extent caps, plus
+     * the extents added since it was packed.
+     */
+    protected static class Tree {
+        /**
+         * Unit vectors closer than this can be off in their last bits, so the
+         * boxes are grown by this much to make sure they hold their caps.
+         */
+        protected static final double EPSILON = 1e-9;
+
+        protected final int nodeSize;
+
+        /** The margin, in radians. */
+        protected final double margin;
+
+        /** The extents, in tree order. */
+        protected final GeoExtent[] items;
+
+        /** The centers of the extent bounding circles, in tree order. */
+        protected final Geo[] centers;
+
+        /**
+         * The radii of the extent bounding circles plus the margin, in tree
+         * order.
+         */
+        protected final double[] radii;
+
+        /**
+         * The boxes of each level of the tree, minx, miny, minz, maxx, maxy,
+         * maxz for each node. Level 0 has the boxes of the items, the last
+         * level has the single root box. The children of node i are nodes
+         * i*nodeSize up to (i+1)*nodeSize on the level below.
+         */
+        protected final double[][] levels;
+
+        /** Extents added since the tree was packed. */
+        protected final GeoExtent[] recent;
+        protected final Geo[] recentCenters;
+        protected final double[] recentRadii;
+
+        protected Tree(GeoExtent[] extents, int nodeSize, double margin) {
+            this.nodeSize = nodeSize;
+            this.margin = margin;
+
+            int n = extents.length;
+            final double[] boxes = new double[n * 6];
+            Geo[] c = new Geo[n];
+            double[] r = new double[n];
+            for (int i = 0; i < n; i++) {
+                BoundingCircle bc = extents[i].getBoundingCircle();
+                c[i] = bc.getCenter();
+                r[i] = bc.getRadius() + margin;
+                setBox(boxes, i, c[i], r[i]);
+            }
+
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            sortTileRecursive(order, boxes);
+
+            items = new GeoExtent[n];
+            centers = new Geo[n];
+            radii = new double[n];
+            double[] leaves = new double[n * 6];
+            for (int i = 0; i < n; i++) {
+                int j = order[i];
+                items[i] = extents[j];
+                centers[i] = c[j];
+                radii[i] = r[j];
+                System.arraycopy(boxes, j * 6, leaves, i * 6, 6);
+            }
+
+            List<double[]> lv = new ArrayList<double[]>();
+            lv.add(leaves);
+            for (double[] level = leaves; level.length > 6;) {
+                level = pack(level, nodeSize);
+                lv.add(level);
+            }
+            levels = n == 0 ? new double[0][] : lv.toArray(new double[lv.size()][]);
+
+            recent = new GeoExtent[0];
+            recentCenters = new Geo[0];
+            recentRadii = new double[0];
+        }
+
+        protected Tree(Tree t, GeoExtent[] recent, Geo[] recentCenters, double[] recentRadii) {
+            nodeSize = t.nodeSize;
+            margin = t.margin;
+            items = t.items;
+            centers = t.centers;
+            radii = t.radii;
+            levels = t.levels;
+            this.recent = recent;
+            this.recentCenters = recentCenters;
+            this.recentRadii = recentRadii;
+        }
+
+        /**
+         * @return a tree with the extent added to the recent list, or null if
+         *         the list is too long and the tree should be rebuilt.
+         */
+        protected Tree addRecent(GeoExtent extent, BoundingCircle bc) {
+            int n = recent.length;
+            if (n >= Math.max(32, items.length / 16)) {
+                return null;
+            }
+            GeoExtent[] r = Arrays.copyOf(recent, n + 1);
+            Geo[] rc = Arrays.copyOf(recentCenters, n + 1);
+            double[] rr = Arrays.copyOf(recentRadii, n + 1);
+            r[n] = extent;
+            rc[n] = bc.getCenter();
+            rr[n] = bc.getRadius() + margin;
+            return new Tree(this, r, rc, rr);
+        }
+
+        /**
+         * Sort the items so that each run of nodeSize items is a compact tile:
+         * slice the items into slabs along x, each slab into strips along y,
+         * and each strip along z.
+         */
+        protected void sortTileRecursive(Integer[] order, double[] boxes) {
+            int n = order.length;
+            int nodes = (n + nodeSize - 1) / nodeSize;
+            int slices = (int) Math.ceil(Math.cbrt(nodes));
+            int slab = nodeSize * slices * slices;
+            int strip = nodeSize * slices;
+
+            Arrays.sort(order, new CenterComparator(boxes, 0));
+            for (int i = 0; i < n; i += slab) {
+                int slabEnd = Math.min(n, i + slab);
+                Arrays.sort(order, i, slabEnd, new CenterComparator(boxes, 1));
+                for (int j = i; j < slabEnd; j += strip) {
+                    Arrays.sort(order, j, Math.min(slabEnd, j + strip), new CenterComparator(boxes, 2));
+                }
+            }
+        }
+
+        /**
+         * @return the boxes of the level above, each covering nodeSize boxes of
+         *         this level.
+         */
+        protected static double[] pack(double[] level, int nodeSize) {
+            int count = level.length / 6;
+            int parents = (count + nodeSize - 1) / nodeSize;
+            double[] up = new double[parents * 6];
+            for (int p = 0; p < parents; p++) {
+                int o = p * 6;
+                System.arraycopy(level, p * nodeSize * 6, up, o, 6);
+                int end = Math.min(count, (p + 1) * nodeSize);
+                for (int i = p * nodeSize + 1; i < end; i++) {
+                    for (int k = 0; k < 3; k++) {
+                        up[o + k] = Math.min(up[o + k], level[i * 6 + k]);
+                        up[o + 3 + k] = Math.max(up[o + 3 + k], level[i * 6 + 3 + k]);
+                    }
+                }
+            }
+            return up;
+        }
+
+        /**
+         * Set the box around the cap with the center and angular radius. Every
+         * point of the cap is within the chord length of the center.
+         */
+        protected static void setBox(double[] boxes, int i, Geo center, double radius) {
+            double len = center.length();
+            double chord = (radius >= Math.PI ? 2 : 2 * Math.sin(radius / 2)) + EPSILON;
+            int o = i * 6;
+            boxes[o] = Math.max(-1, center.x() / len - chord);
+            boxes[o + 1] = Math.max(-1, center.y() / len - chord);
+            boxes[o + 2] = Math.max(-1, center.z() / len - chord);
+            boxes[o + 3] = Math.min(1, center.x() / len + chord);
+            boxes[o + 4] = Math.min(1, center.y() / len + chord);
+            boxes[o + 5] = Math.min(1, center.z() / len + chord);
+        }
+
+        /**
+         * Add the extents whose circles, grown by the margin, touch the circle
+         * with the center and radius to the results.
+         */
+        protected void search(Geo center, double radius, Collection<GeoExtent> results) {
+            for (int i = 0; i < recent.length; i++) {
+                if (recentCenters[i].distance(center) <= radius + recentRadii[i]) {
+                    results.add(recent[i]);
+                }
+            }
+            if (levels.length == 0) {
+                return;
+            }
+
+            double[] q = new double[6];
+            setBox(q, 0, center, radius);
+
+            int[] stack = new int[levels.length * nodeSize * 2];
+            int top = 0;
+            stack[top++] = levels.length - 1;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                int level = stack[--top];
+                double[] boxes = levels[level];
+                int o = node * 6;
+                if (boxes[o] > q[3] || boxes[o + 3] < q[0] || boxes[o + 1] > q[4] || boxes[o + 4] < q[1]
+                        || boxes[o + 2] > q[5] || boxes[o + 5] < q[2]) {
+                    continue;
+                }
+                if (level == 0) {
+                    if (centers[node].distance(center) <= radius + radii[node]) {
+                        results.add(items[node]);
+                    }
+                } else {
+                    int end = Math.min(levels[level - 1].length / 6, (node + 1) * nodeSize);
+                    // Push in reverse so results come out in tree order.
+                    for (int child = end - 1; child >= node * nodeSize; child--) {
+                        stack[top++] = level - 1;
+                        stack[top++] = child;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders item indexes by one coordinate of the center of their boxes.
+     */
+    protected static class CenterComparator implements Comparator<Integer> {
+        protected final double[] boxes;
+        protected final int axis;
+
+        protected CenterComparator(double[] boxes, int axis) {
+            this.boxes = boxes;
+            this.axis = axis;
+        }
+
+        public int compare(Integer a, Integer b) {
+            return Double.compare(boxes[a * 6 + axis] + boxes[a * 6 + 3 + axis], boxes[b * 6 + axis]
+                    + boxes[b * 6 + 3 + axis]);
+        }
+    }
+
+    /**
+     * Compares lookup times against ExtentIndex.ArrayListExtentIndexImpl on
+     * random regions spread over the whole globe, including the poles and the
+     * dateline.
+     *
+     * <pre>
+     * java com.bbn.openmap.geo.SphericalExtentIndex [number of regions] [number of queries]
+     * </pre>
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        Random random = new Random(1);
+        List<GeoExtent> regions = new ArrayList<GeoExtent>(count);
+        for (int i = 0; i < count; i++) {
+            regions.add(randomRegion(random, 0.5 + random.nextDouble() * 2));
+        }
+        List<GeoExtent> tests = new ArrayList<GeoExtent>(queries);
+        for (int i = 0; i < queries; i++) {
+            tests.add(randomRegion(random, 1 + random.nextDouble() * 5));
+        }
+
+        ExtentIndex[] indexes = new ExtentIndex[] { new ExtentIndex.ArrayListExtentIndexImpl(),
+                new SphericalExtentIndex() };
+        for (ExtentIndex index : indexes) {
+            long start = System.nanoTime();
+            for (GeoExtent region : regions) {
+                index.addExtent(region);
+            }
+            // Force the tree to be built.
+            index.iterator(tests.get(0));
+            long loaded = System.nanoTime();
+
+            long candidates = 0;
+            for (GeoExtent test : tests) {
+                for (Iterator<GeoExtent> it = index.iterator(test); it.hasNext(); it.next()) {
+                    candidates++;
+                }
+            }
+            long done = System.nanoTime();
+            System.out.println(index.getClass().getName() + ": load " + (loaded - start) / 1000000 + " ms, "
+                    + queries + " lookups " + (done - loaded) / 1000000 + " ms, " + candidates + " candidates");
+        }
+    }
+
+    /**
+     * A small square region, degrees on a side, anywhere on the globe.
+     */
+    protected static GeoRegion randomRegion(Random random, double size) {
+        double lat = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+        double lon = random.nextDouble() * 360 - 180;
+        double top = Math.min(90, lat + size / 2);
+        double bottom = Math.max(-90, lat - size / 2);
+        return new GeoRegion.Impl(new double[] { top, lon, top, lon + size, bottom, lon + size, bottom, lon, top,
+                lon }, true);
+    }
+}
@@ -29,6 +29,8 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Properties;
 
 import com.bbn.openmap.Layer;
@@ -378,6 +380,53 @@ public abstract class AbstractImageFormatter
         }
     }
 
+    /**
+     * Write the formatted image to the OutputStream. This version writes the
+     * bytes from formatImage, subclasses that can encode straight to a stream
+     * should override it.
+     * 
+     * @param bi a BufferedImage.
+     * @param out the OutputStream to write the formatted image to.
+     * @throws IOException if the stream can't be written to.
+     */
+    public void writeImage(BufferedImage bi, OutputStream out)
+            throws IOException {
+        out.write(formatImage(bi));
+    }
+
+    /**
+     * Write the formatted image to the OutputStream. Nothing is written if
+     * there isn't an image.
+     * 
+     * @param out the OutputStream to write the image to.
+     * @throws IOException if the stream can't be written to.
+     */
+    public void writeImage(OutputStream out) throws IOException {
+        BufferedImage bi = getBufferedImage();
+        if (bi != null) {
+            Debug.message("formatter", "Formatter: writing formatted image...");
+            writeImage(bi, out);
+        }
+    }
+
+    /**
+     * Scale the internal BufferedImage, then write the formatted image to the
+     * OutputStream.
+     * 
+     * @param scaledWidth the desired pixel width of the image.
+     * @param scaledHeight the desired pixel height of the image.
+     * @param out the OutputStream to write the image to.
+     * @throws IOException if the stream can't be written to.
+     */
+    public void writeScaledImage(int scaledWidth, int scaledHeight,
+                                 OutputStream out) throws IOException {
+        BufferedImage bi = getScaledBufferedImage(scaledWidth, scaledHeight);
+        if (bi != null) {
+            Debug.message("formatter", "Formatter: writing formatted image...");
+            writeImage(bi, out);
+        }
+    }
+
     /**
      * Set the layers and image type in the properties.
      */
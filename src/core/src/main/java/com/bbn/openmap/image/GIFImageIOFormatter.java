@@ -16,11 +16,7 @@
 package com.bbn.openmap.image;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 
-import javax.imageio.ImageIO;
-
-import com.bbn.openmap.util.Debug;
 import com.bbn.openmap.util.http.HttpConnection;
 
 public class GIFImageIOFormatter extends ImageIOFormatter {
@@ -33,16 +29,8 @@ public class GIFImageIOFormatter extends ImageIOFormatter {
         return new GIFImageIOFormatter();
     }
 
-    public byte[] formatImage(BufferedImage bi) {
-        BufferedImage reducedImage = ColorReducer.reduce24(bi, 256);
-        try {
-            ByteArrayOutputStream byo = new ByteArrayOutputStream();
-            ImageIO.write(reducedImage, getFormatName(), byo);
-            return byo.toByteArray();
-        } catch (java.io.IOException e) {
-            Debug.error("ImageIOFormatter caught IOException formatting image!");
-            return new byte[0];
-        }
+    protected BufferedImage getImageToWrite(BufferedImage bi) {
+        return ColorReducer.reduce24(bi, 256);
     }
 
     /**
@@ -23,6 +23,8 @@
 package com.bbn.openmap.image;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Properties;
 
 /**
@@ -53,6 +55,18 @@ public interface ImageFormatter {
      */
     public byte[] formatImage(BufferedImage bi);
 
+    /**
+     * Convert a BufferedImage to a image file format, writing it to the
+     * OutputStream instead of holding all of the bytes in memory. The stream
+     * is not closed.
+     * 
+     * @param bi a BufferedImage.
+     * @param out the OutputStream to write the formatted image to.
+     * @throws IOException if the stream can't be written to.
+     */
+    public void writeImage(BufferedImage bi, OutputStream out)
+            throws IOException;
+
     /**
      * Take a MapBean, and get the image bytes that represent the
      * current state.
@@ -121,6 +135,27 @@ public interface ImageFormatter {
      */
     public abstract byte[] getScaledImageBytes(int scaledWidth, int scaledHeight);
 
+    /**
+     * Write the formatted image to the OutputStream. Nothing is written if
+     * there isn't an image.
+     * 
+     * @param out the OutputStream to write the image to.
+     * @throws IOException if the stream can't be written to.
+     */
+    public void writeImage(OutputStream out) throws IOException;
+
+    /**
+     * Scale the internal BufferedImage, then write the formatted image to
+     * the OutputStream.
+     * 
+     * @param scaledWidth the desired pixel width of the image.
+     * @param scaledHeight the desired pixel height of the image.
+     * @param out the OutputStream to write the image to.
+     * @throws IOException if the stream can't be written to.
+     */
+    public void writeScaledImage(int scaledWidth, int scaledHeight,
+                                 OutputStream out) throws IOException;
+
     /**
      * Get the Image Type created by the ImageFormatter. These
      * responses should adhere to the OGC WMT standard format labels.
@@ -17,6 +17,8 @@ package com.bbn.openmap.image;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 import javax.imageio.ImageIO;
 
@@ -42,13 +44,34 @@ public abstract class ImageIOFormatter extends AbstractImageFormatter {
     public byte[] formatImage(BufferedImage bi) {
         try {
             ByteArrayOutputStream byo = new ByteArrayOutputStream();
-            ImageIO.write(bi, getFormatName(), byo);
+            writeImage(bi, byo);
             return byo.toByteArray();
         } catch (java.io.IOException ioe) {
             Debug.error("ImageIOFormatter caught IOException formatting image!");
             return new byte[0];
         }
     }
+
+    /**
+     * Encode the image with ImageIO straight into the OutputStream.
+     */
+    public void writeImage(BufferedImage bi, OutputStream out)
+            throws IOException {
+        if (!ImageIO.write(getImageToWrite(bi), getFormatName(), out)) {
+            throw new IOException("no ImageIO writer for " + getFormatName());
+        }
+    }
+
+    /**
+     * Called before an image is handed to ImageIO, so subclasses can modify
+     * it first (reducing the colors, for instance). Returns the image as is.
+     * 
+     * @param bi the image being formatted.
+     * @return the image to write.
+     */
+    protected BufferedImage getImageToWrite(BufferedImage bi) {
+        return bi;
+    }
     
     /**
      * Return the applicable Graphics to use to paint the layers into.
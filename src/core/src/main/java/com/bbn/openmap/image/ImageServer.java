@@ -31,6 +31,7 @@ import java.awt.geom.Point2D;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -75,10 +76,11 @@ import com.bbn.openmap.util.PropUtils;
  * layer array contents and the request layer mask at the time the request
  * processing is started, not when it is submitted.
  * <P>
- * Right now, the ImageServer is single threaded - processing requests one after
- * another. The request setup was written to support multi-threaded processing,
- * though, where each image could be generated in it's own thread. That code is
- * not written - maybe someday.
+ * An ImageServer processes requests one after another, since its layers hold
+ * on to the projection and graphics of the request they are working on. To
+ * handle several requests at the same time, use several ImageServers, each with
+ * its own layers. The WmsRequestHandlerPool manages a set of them for the WMS
+ * servlet.
  * <P>
  * 
  * <pre>
@@ -340,18 +342,67 @@ public class ImageServer implements/* ImageReadyListener, ImageReceiver, */Prope
 	public byte[] createImage(Projection proj, int scaledWidth, int scaledHeight, List<String> showLayers,
 			Paint background) {
 
+		ImageFormatter imageFormatter = renderImage(proj, showLayers, background);
+		if (imageFormatter == null) {
+			return new byte[0];
+		}
+		return getFormattedImage(imageFormatter, scaledWidth, scaledHeight);
+	}
+
+	/**
+	 * Like createImage, but the formatted image is written to an OutputStream
+	 * as it's encoded, instead of being collected in a byte[] first. Servlets
+	 * can hand their response stream to this method. Nothing is written if
+	 * the image can't be created.
+	 * 
+	 * @param proj projection of map.
+	 * @param scaledWidth scaled pixel width of final image. If you don't want
+	 *            it scaled, use -1.
+	 * @param scaledHeight scaled pixel height of final image. If you don't want
+	 *            it scaled, use -1.
+	 * @param showLayers Layer marker names reflecting the layers that should be
+	 *            part of this image.
+	 * @param background the Paint to be used for the background of this image.
+	 * @param out the OutputStream to write the image to, not closed here.
+	 * @return true if an image was written.
+	 * @throws IOException if the stream can't be written to.
+	 */
+	public boolean writeImage(Projection proj, int scaledWidth, int scaledHeight, List<String> showLayers,
+			Paint background, OutputStream out) throws IOException {
+
+		ImageFormatter imageFormatter = renderImage(proj, showLayers, background);
+		if (imageFormatter == null) {
+			return false;
+		}
+		writeFormattedImage(imageFormatter, scaledWidth, scaledHeight, out);
+		return true;
+	}
+
+	/**
+	 * Render the named layers into a copy of the formatter, for createImage
+	 * and writeImage.
+	 * 
+	 * @param proj projection of map.
+	 * @param showLayers Layer marker names reflecting the layers that should be
+	 *            part of this image.
+	 * @param background the Paint to be used for the background of this image.
+	 * @return the ImageFormatter holding the image, or null if there isn't a
+	 *         formatter or the image couldn't be created.
+	 */
+	protected ImageFormatter renderImage(Projection proj, List<String> showLayers, Paint background) {
+
 		logger.fine("using the new ProjectionPainter interface!  createImage with layer string array.");
 
 		if (formatter == null) {
 			logger.warning("no formatter set! Can't create image.");
-			return new byte[0];
+			return null;
 		}
 
 		ImageFormatter imageFormatter = formatter.makeClone();
 		java.awt.Graphics graphics = createGraphics(imageFormatter, proj.getWidth(), proj.getHeight());
 
 		if (graphics == null) {
-			return new byte[0];
+			return null;
 		}
 
 		((Proj) proj).drawBackground((Graphics2D) graphics, background);
@@ -376,9 +427,8 @@ public class ImageServer implements/* ImageReadyListener, ImageReceiver, */Prope
 			logger.fine("no layers available for image");
 		}
 
-		byte[] formattedImage = getFormattedImage(imageFormatter, scaledWidth, scaledHeight);
 		graphics.dispose();
-		return formattedImage;
+		return imageFormatter;
 	}
 
 	/**
@@ -602,6 +652,26 @@ public class ImageServer implements/* ImageReadyListener, ImageReceiver, */Prope
 		return formattedImage;
 	}
 
+	/**
+	 * Write the image that is contained in the ImageFormatter to the
+	 * OutputStream, scaling to a particular size if the scaledWidth and
+	 * scaledHeight are greater than 0.
+	 */
+	protected void writeFormattedImage(ImageFormatter formatter, int scaledWidth, int scaledHeight, OutputStream out)
+			throws IOException {
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("ready to write formatted image.");
+		}
+
+		if (scaledWidth > 0 && scaledHeight > 0) {
+			formatter.writeScaledImage(scaledWidth, scaledHeight, out);
+		} else {
+			logger.fine("ImageServer: using full scale image (unscaled).");
+			formatter.writeImage(out);
+		}
+	}
+
 	/**
 	 * Set the layers and image type in the properties.
 	 */
@@ -27,6 +27,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URL;
 import java.util.Iterator;
@@ -65,6 +66,23 @@ public class JPEGHelper {
             throws IOException {
 
         ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeJPEG(image, quality, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Write the JPEG encoded image to an OutputStream. The stream is not
+     * closed.
+     *
+     * @param image the image to encode
+     * @param quality the JPEG quality factor to use in encoding
+     * @param out the stream to write the encoded image to
+     * @exception IOException an error occurred in encoding the image
+     */
+    public static void writeJPEG(BufferedImage image, float quality,
+                                 OutputStream out)
+            throws IOException {
+
         ImageOutputStream iosout = new MemoryCacheImageOutputStream(out);
 
         if (Debug.debugging("jpeghelper")) {
@@ -86,15 +104,17 @@ public class JPEGHelper {
             Debug.output("Got jpeg encoder...");
         }
 
-        IIOImage iioi = new IIOImage(image, null, null);
-        writer.write(null, iioi, iwp);
-
-        writer.dispose();
+        try {
+            IIOImage iioi = new IIOImage(image, null, null);
+            writer.write(null, iioi, iwp);
+        } finally {
+            writer.dispose();
+            // Flushes what's left to out, leaves out open.
+            iosout.close();
+        }
         if (Debug.debugging("jpeghelper")) {
             Debug.output("encoded?");
         }
-
-        return out.toByteArray();
     }
 
     /**
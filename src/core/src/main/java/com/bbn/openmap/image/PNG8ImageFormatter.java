@@ -1,11 +1,7 @@
 package com.bbn.openmap.image;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 
-import javax.imageio.ImageIO;
-
-import com.bbn.openmap.util.Debug;
 import com.bbn.openmap.util.http.HttpConnection;
 
 public class PNG8ImageFormatter extends ImageIOFormatter {
@@ -14,21 +10,12 @@ public class PNG8ImageFormatter extends ImageIOFormatter {
         setFormatName("png");
     }
 
-    public byte[] formatImage(BufferedImage bi) {
-        BufferedImage reducedImage = null;
+    protected BufferedImage getImageToWrite(BufferedImage bi) {
         if (bi.getColorModel().hasAlpha()) {
-			reducedImage = ColorReducer.reduce32(bi, 256);
+			return ColorReducer.reduce32(bi, 256);
 		} else {
-			reducedImage = ColorReducer.reduce24(bi, 256);
+			return ColorReducer.reduce24(bi, 256);
 		}
-        try {
-            ByteArrayOutputStream byo = new ByteArrayOutputStream();
-            ImageIO.write(reducedImage, getFormatName(), byo);
-            return byo.toByteArray();
-        } catch (java.io.IOException e) {
-            Debug.error("ImageIOFormatter caught IOException formatting image!");
-            return new byte[0];
-        }
     }
 
     public java.awt.Graphics getGraphics(int width, int height) {
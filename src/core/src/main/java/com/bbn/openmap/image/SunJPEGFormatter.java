@@ -25,6 +25,8 @@
 package com.bbn.openmap.image;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Properties;
 
 import com.bbn.openmap.util.Debug;
@@ -72,6 +74,11 @@ public class SunJPEGFormatter extends AbstractImageFormatter {
         }
     }
 
+    public void writeImage(BufferedImage bi, OutputStream out)
+            throws IOException {
+        JPEGHelper.writeJPEG(bi, imageQuality, out);
+    }
+
     /**
      * Get the Image Type created by the ImageFormatter. These
      * responses should adhere to the OGC WMT standard format labels.
@@ -11,6 +11,7 @@ import java.awt.Paint;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -163,6 +164,18 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
         }
     }
 
+    /**
+     * Turn off all of the nested layers, so only the ones asked for by the
+     * current request are turned on. A handler can be used for many requests.
+     */
+    protected void resetNestedLayers() {
+        for (IWmsLayer wmsLayer : wmsLayers) {
+            if (wmsLayer instanceof IWmsNestedLayer) {
+                ((IWmsNestedLayer) wmsLayer).setIsActive(false);
+            }
+        }
+    }
+
     protected IWmsLayer getLayerByName(String wmsName) {
         return (IWmsLayer) wmsLayerByName.get(wmsName);
     }
@@ -205,6 +218,7 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
             if (requestType == null) {
                 throw new WMSException("Missing REQUEST type parameter");
             }
+            resetNestedLayers();
             setRequestParametersOnLayers(requestProperties);
             if (requestType.equalsIgnoreCase(GETMAP)) {
                 Debug.message("ms", "OGCMRH: GetMap request...");
@@ -236,15 +250,28 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
      */
     public void handleGetMapRequest(Properties requestProperties, IHttpResponse httpResponse)
             throws IOException, MapRequestFormatException, WMSException {
-        byte[] image = handleGetMapRequest(requestProperties);
-        if (Debug.debugging("imageserver")) {
-            Debug.output("OGCMRH: have completed image, size " + image.length);
-        }
+        GetMapRequestParameters parameters = new GetMapRequestParameters();
+        // Any WMSException is thrown from here, before the response is started.
+        Proj projection = checkGetMapRequest(requestProperties, parameters);
+
+        ImageFormatter imageFormatter = renderImage(projection, parameters.topLayerNames, parameters.background);
         String contentType = getFormatter().getContentType();
         if (contentType == null) {
             contentType = HttpConnection.CONTENT_PLAIN;
         }
-        httpResponse.writeHttpResponse(contentType, image);
+        if (imageFormatter == null) {
+            httpResponse.writeHttpResponse(contentType, new byte[0]);
+            return;
+        }
+
+        // The image is encoded straight into the response, instead of into a
+        // byte[] that's then copied out.
+        OutputStream out = httpResponse.getOutputStream(contentType);
+        writeFormattedImage(imageFormatter, parameters.width, parameters.height, out);
+        out.flush();
+        if (Debug.debugging("imageserver")) {
+            Debug.output("OGCMRH: have written image");
+        }
     }
 
     /**
@@ -257,14 +284,27 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
     public byte[] handleGetMapRequest(Properties requestProperties)
             throws IOException, MapRequestFormatException, WMSException {
         GetMapRequestParameters parameters = new GetMapRequestParameters();
+        Proj projection = checkGetMapRequest(requestProperties, parameters);
+        return createImage(projection, parameters.width, parameters.height, parameters.topLayerNames, parameters.background);
+    }
 
+    /**
+     * Check the GetMap request parameters, set the formatter and create the
+     * projection for the image.
+     * 
+     * @param requestProperties
+     * @param parameters filled in from the requestProperties.
+     * @return the projection for the image.
+     * @throws WMSException
+     */
+    private Proj checkGetMapRequest(Properties requestProperties, GetMapRequestParameters parameters)
+            throws WMSException {
         checkVersion(requestProperties, parameters);
         checkExceptions(requestProperties, parameters);
         checkFormat(requestProperties, parameters);
         setFormatter(parameters.formatter);
 
         checkBackground(requestProperties, parameters);
-        Paint bgPaint = parameters.background;
 
         checkProjectionType(requestProperties, parameters);
         checkWidthAndHeight(requestProperties, parameters);
@@ -275,7 +315,7 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
 
         Debug.message("ms", "handleGetMapRequest: createImage layers:"
                 + parameters.topLayerNames.toString());
-        return createImage(projection, parameters.width, parameters.height, parameters.topLayerNames, bgPaint);
+        return projection;
     }
 
     public byte[] handleGetLegendGraphicRequest(Properties requestProperties)
@@ -465,6 +505,16 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
         return formattedImage;
     }
 
+    /**
+     * For this ImageServer, the image is always written unscaled.
+     */
+    @Override
+    protected void writeFormattedImage(ImageFormatter formatter, int scaledWidth, int scaledHeight, OutputStream out)
+            throws IOException {
+        Debug.message("imageserver", "ImageServer: using full scale image (unscaled).");
+        formatter.writeImage(out);
+    }
+
     /**
      * @param requestProperties
      * @throws WMSException
@@ -0,0 +1,139 @@
+/*
+ * <copyright>
+ *  Copyright 2010 BBN Technologies
+ * </copyright>
+ */
+package com.bbn.openmap.image.wms;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of WmsRequestHandlers, so a servlet can work on several requests at
+ * the same time. A WmsRequestHandler and its layers hold state for the request
+ * being handled (formatter, projection, OMGraphicLists), and layers serialize
+ * calls to renderDataForProjection, so one handler can only work on one request
+ * at a time. The pool lets up to maxHandlers requests run at once, each on its
+ * own handler with its own layers, and makes any others wait for a handler to
+ * free up. Requests that wait too long are turned away instead of piling up.
+ * <P>
+ * Handlers are created by the caller when the pool doesn't have an idle one,
+ * and are handed back to the pool when the request is done:
+ *
+ * <pre>
+ * if (pool.acquire()) {
+ *     WmsRequestHandler handler = null;
+ *     try {
+ *         handler = pool.poll();
+ *         if (handler == null) {
+ *             handler = createHandler();
+ *         }
+ *         handler.handleRequest(...);
+ *     } finally {
+ *         pool.release(handler);
+ *     }
+ * } else {
+ *     // too busy
+ * }
+ * </pre>
+ */
+public class WmsRequestHandlerPool {
+
+    /**
+     * The default number of requests handled at the same time.
+     */
+    public final static int DEFAULT_MAX_HANDLERS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The default time a request waits for a handler, in milliseconds.
+     */
+    public final static long DEFAULT_WAIT_MILLIS = 30000;
+
+    protected final int maxHandlers;
+    protected final long waitMillis;
+    protected final Semaphore permits;
+    protected final ConcurrentLinkedQueue<WmsRequestHandler> idle = new ConcurrentLinkedQueue<WmsRequestHandler>();
+
+    /**
+     * Create a pool with the default number of handlers and wait time.
+     */
+    public WmsRequestHandlerPool() {
+        this(DEFAULT_MAX_HANDLERS, DEFAULT_WAIT_MILLIS);
+    }
+
+    /**
+     * @param maxHandlers the number of requests that can be handled at the
+     *        same time.
+     * @param waitMillis how long a request waits for a free handler before
+     *        giving up, in milliseconds.
+     */
+    public WmsRequestHandlerPool(int maxHandlers, long waitMillis) {
+        this.maxHandlers = Math.max(1, maxHandlers);
+        this.waitMillis = Math.max(0, waitMillis);
+        permits = new Semaphore(this.maxHandlers, true);
+    }
+
+    /**
+     * Wait for the chance to handle a request. If this returns true, release
+     * must be called when the request is finished.
+     *
+     * @return true if the request can go ahead, false if the pool stayed busy
+     *         for the whole wait time.
+     * @throws InterruptedException
+     */
+    public boolean acquire() throws InterruptedException {
+        return permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get an idle handler, after acquire has returned true.
+     *
+     * @return WmsRequestHandler, or null if the caller needs to create one.
+     */
+    public WmsRequestHandler poll() {
+        return idle.poll();
+    }
+
+    /**
+     * Return a handler to the pool and let another request go ahead.
+     *
+     * @param handler the handler used for the request, may be null if one
+     *        couldn't be created.
+     */
+    public void release(WmsRequestHandler handler) {
+        if (handler != null) {
+            idle.offer(handler);
+        }
+        permits.release();
+    }
+
+    /**
+     * Drop the idle handlers, so new ones will be created for the next
+     * requests. Handlers in use are kept when they are released.
+     */
+    public void clear() {
+        idle.clear();
+    }
+
+    /**
+     * @return the number of requests that can be handled at the same time.
+     */
+    public int getMaxHandlers() {
+        return maxHandlers;
+    }
+
+    /**
+     * @return the number of requests currently being handled.
+     */
+    public int getActiveCount() {
+        return maxHandlers - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of requests waiting for a handler, an estimate.
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+}
@@ -31,7 +31,8 @@ import com.bbn.openmap.util.MoreMath;
 /**
  * This class extends the BinaryFile class, doing buffered reads on the
  * underlying input file. The buffer size is not modifiable after construction,
- * and the buffer management isn't the greatest.
+ * and the buffer management isn't the greatest. If the file is memory-mapped,
+ * the buffer is skipped and reads go straight to the mapping.
  */
 public class BinaryBufferedFile extends BinaryFile {
     /** Where reads get buffered */
@@ -190,6 +191,9 @@ public class BinaryBufferedFile extends BinaryFile {
     }
 
     public long skipBytes(long n) throws IOException {
+        if (isMapped()) {
+            return super.skipBytes(n);
+        }
         if (n < bytesinbuffer) {
             bytesinbuffer -= n;
             curptr += n;
@@ -204,10 +208,17 @@ public class BinaryBufferedFile extends BinaryFile {
     }
 
     public long getFilePointer() throws IOException {
+        if (isMapped()) {
+            return super.getFilePointer();
+        }
         return (firstbyteoffset + curptr);
     }
 
     public void seek(long pos) throws IOException {
+        if (isMapped()) {
+            super.seek(pos);
+            return;
+        }
         final long relpos = pos - firstbyteoffset;
         if ((relpos >= 0) && (relpos < (curptr + bytesinbuffer))) {
             final int relcur = (int) relpos - curptr;
@@ -228,6 +239,9 @@ public class BinaryBufferedFile extends BinaryFile {
 //    }
 
     public long available() throws IOException {
+        if (isMapped()) {
+            return super.available();
+        }
         return (length() - firstbyteoffset - curptr);
     }
 
@@ -254,6 +268,9 @@ public class BinaryBufferedFile extends BinaryFile {
     }
 
     public int read() throws IOException {
+        if (isMapped()) {
+            return super.read();
+        }
         try {
             if (bytesinbuffer == 0)
                 refillBuffer();
@@ -274,6 +291,9 @@ public class BinaryBufferedFile extends BinaryFile {
      * @exception IOException Any IO errors encountered in reading from the file
      */
     public int read(byte b[], int off, int len) throws IOException {
+        if (isMapped()) {
+            return super.read(b, off, len);
+        }
         int numread = 0;
         int copy;
         if (len < bytesinbuffer)
@@ -336,6 +356,9 @@ public class BinaryBufferedFile extends BinaryFile {
      */
     public byte[] readBytes(int howmany, boolean allowless)
             throws EOFException, FormatException {
+        if (isMapped()) {
+            return super.readBytes(howmany, allowless);
+        }
 
         byte foo[] = new byte[howmany];
         int gotsofar = 0;
@@ -378,6 +401,9 @@ public class BinaryBufferedFile extends BinaryFile {
      * @exception FormatException a rethrown IOException
      */
     public char readChar() throws EOFException, FormatException {
+        if (isMapped()) {
+            return super.readChar();
+        }
         try {
             int retv = read();
             if (retv == -1) {
@@ -401,6 +427,9 @@ public class BinaryBufferedFile extends BinaryFile {
      * @see #read(byte[])
      */
     public short readShort() throws EOFException, FormatException {
+        if (isMapped()) {
+            return super.readShort();
+        }
         // MSBFirst must be set when we are called
         assertSize(2);
         curptr += 2;
@@ -435,6 +464,10 @@ public class BinaryBufferedFile extends BinaryFile {
      */
     public void readShortArray(short vec[], int offset, int len)
             throws EOFException, FormatException {
+        if (isMapped()) {
+            super.readShortArray(vec, offset, len);
+            return;
+        }
 
         while (len > 0) {
             int shortsleft = bytesinbuffer / 2;
@@ -470,6 +503,9 @@ public class BinaryBufferedFile extends BinaryFile {
      *            reading the bytes for the integer
      */
     public int readInteger() throws EOFException, FormatException {
+        if (isMapped()) {
+            return super.readInteger();
+        }
         // MSBFirst must be set when we are called
         assertSize(4);
         curptr += 4;
@@ -486,6 +522,10 @@ public class BinaryBufferedFile extends BinaryFile {
      */
     public void readIntegerArray(int vec[], int offset, int len)
             throws EOFException, FormatException {
+        if (isMapped()) {
+            super.readIntegerArray(vec, offset, len);
+            return;
+        }
         while (len > 0) {
             int intsleft = bytesinbuffer / 4;
             if (intsleft == 0) {
@@ -523,6 +563,10 @@ public class BinaryBufferedFile extends BinaryFile {
      */
     public void readFloatArray(float vec[], int offset, int len)
             throws EOFException, FormatException {
+        if (isMapped()) {
+            super.readFloatArray(vec, offset, len);
+            return;
+        }
         while (len > 0) {
             int floatsleft = bytesinbuffer / 4;
             if (floatsleft == 0) {
@@ -561,6 +605,9 @@ public class BinaryBufferedFile extends BinaryFile {
      * @see #read(byte[])
      */
     public long readLong() throws EOFException, FormatException {
+        if (isMapped()) {
+            return super.readLong();
+        }
         assertSize(8);
         curptr += 8;
         bytesinbuffer -= 8;
@@ -580,6 +627,9 @@ public class BinaryBufferedFile extends BinaryFile {
      */
     public String readFixedLengthString(int length) throws EOFException,
             FormatException {
+        if (isMapped()) {
+            return super.readFixedLengthString(length);
+        }
         String retstring;
         if (length < buffer.length) {
             assertSize(length);
@@ -42,11 +42,32 @@ import com.bbn.openmap.util.MoreMath;
  * The BinaryFile is the standard object used to access data files. It acts like
  * a RandomAccessFile, but will work on jar file contents and URLs, too. The
  * source of the data is isolated through the InputReader interface.
+ * <P>
+ * Local files can be memory-mapped instead of read through a RandomAccessFile
+ * by setting the openmap.mapFiles property to true, or calling
+ * BinaryFile.setMapFiles(true).
  */
 public class BinaryFile {
 
+	/**
+	 * The Environment property that turns on memory-mapping of local files,
+	 * openmap.mapFiles.
+	 */
+	public final static String MapFilesProperty = Environment.OpenMapPrefix + ".mapFiles";
+
+	/**
+	 * Set programmatically, overrides the Environment property.
+	 */
+	private static Boolean mapFiles = null;
+
 	private InputReader inputReader = null;
 
+	/**
+	 * Set if the inputReader is a MappedFileInputReader, so numbers can be
+	 * decoded straight from the mapped file.
+	 */
+	private MappedFileInputReader mappedReader = null;
+
 	/**
 	 * The byte order of the underlying file. (<code>true</code>== MSB-First ==
 	 * big-endian)
@@ -64,7 +85,23 @@ public class BinaryFile {
 	 * @see java.io.RandomAccessFile
 	 */
 	public BinaryFile(File f) throws IOException {
-		inputReader = new FileInputReader(f);
+		this(f, isMapFiles());
+	}
+
+	/**
+	 * Constructs a new BinaryFile with the specified file as the input,
+	 * choosing whether the file is memory-mapped. The default byte-order is
+	 * LSB first. Reads start at the first byte of the file.
+	 * 
+	 * @param f the file to be opened for reading
+	 * @param mapped if true, the file is memory-mapped with a
+	 *            MappedFileInputReader, otherwise it's read with a
+	 *            RandomAccessFile.
+	 * @exception IOException pass-through errors from opening f
+	 */
+	public BinaryFile(File f, boolean mapped) throws IOException {
+		inputReader = mapped ? new MappedFileInputReader(f) : new FileInputReader(f);
+		mappedReader = mapped ? (MappedFileInputReader) inputReader : null;
 	}
 
 	/**
@@ -76,6 +113,45 @@ public class BinaryFile {
 		this.inputReader = inputReader;
 	}
 
+	/**
+	 * Set whether local files are memory-mapped by the BinaryFile
+	 * constructors that don't say. Mapping makes seeking free and decodes
+	 * numbers straight from memory the operating system caches, which helps
+	 * with data that is read over and over, like RPF, DTED, VPF and shape
+	 * files. Mapped files don't hold file handles open. Overrides the
+	 * openmap.mapFiles Environment property.
+	 * 
+	 * @param map true to memory-map local files.
+	 */
+	public static void setMapFiles(boolean map) {
+		mapFiles = Boolean.valueOf(map);
+	}
+
+	/**
+	 * @return true if local files are memory-mapped by default. False unless
+	 *         setMapFiles(true) has been called, or the openmap.mapFiles
+	 *         Environment property is true.
+	 */
+	public static boolean isMapFiles() {
+		Boolean map = mapFiles;
+		if (map != null) {
+			return map.booleanValue();
+		}
+		try {
+			return Environment.getBoolean(MapFilesProperty);
+		} catch (NullPointerException npe) {
+			// Environment not initialized.
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if the file is being read through a memory mapping.
+	 */
+	public boolean isMapped() {
+		return mappedReader != null;
+	}
+
 	/**
 	 * Constructs a new BinaryFile with the specified file as the input. The
 	 * byte-order is undefined. Reads start at the first byte of the file. This
@@ -110,8 +186,9 @@ public class BinaryFile {
 
 			if (file != null && file.exists()) {
 				// If the string represents a file, then we want to
-				// use the RandomAccessFile aspect of the BinaryFile.
-				setInputReader(new FileInputReader(file));
+				// use the RandomAccessFile aspect of the BinaryFile, or map
+				// it.
+				setInputReader(isMapFiles() ? new MappedFileInputReader(file) : new FileInputReader(file));
 			} else {
 				// see JNLP deploy tip here
 				// http://java.sun.com/javase/6/docs/technotes/guides/jweb/deployment_advice.html#ClassLoader_and_Resources
@@ -156,8 +233,8 @@ public class BinaryFile {
 
 						if (file != null && file.exists()) {
 							// It's still a file, available directly.
-							// Access it with the RandomAccessFile
-							setInputReader(new FileInputReader(file));
+							// Access it with the RandomAccessFile, or map it.
+							setInputReader(isMapFiles() ? new MappedFileInputReader(file) : new FileInputReader(file));
 						} else {
 							// Need to get it as a resource. Needs
 							// special handling if it's coming in a jar
@@ -394,6 +471,7 @@ public class BinaryFile {
 			Debug.output("Setting inputReader");
 		}
 		inputReader = reader;
+		mappedReader = reader instanceof MappedFileInputReader ? (MappedFileInputReader) reader : null;
 	}
 
 	/**
@@ -487,6 +565,7 @@ public class BinaryFile {
 	public void dispose() throws IOException {
 		close();
 		inputReader = null;
+		mappedReader = null;
 	}
 
 	/**
@@ -589,6 +668,9 @@ public class BinaryFile {
 	 */
 	public short readShort() throws EOFException, FormatException {
 		// MSBFirst must be set when we are called
+		if (mappedReader != null) {
+			return mappedReader.readShort(MSBFirst);
+		}
 		return MoreMath.BuildShort(readBytes(2, false), MSBFirst);
 	}
 
@@ -645,10 +727,27 @@ public class BinaryFile {
 	 */
 	public int readInteger() throws EOFException, FormatException {
 		// MSBFirst must be set when we are called
+		if (mappedReader != null) {
+			return mappedReader.readInteger(MSBFirst);
+		}
 		return MoreMath.BuildInteger(readBytes(4, false), MSBFirst);
 	}
 
+	/**
+	 * Reads an array of integers.
+	 * 
+	 * @param vec the array to write the integers into
+	 * @param offset the first array index to write to
+	 * @param len the number of integers to read
+	 * @exception EOFException there were fewer bytes than needed in the file
+	 * @exception FormatException rethrow of IOExceptions encountered while
+	 *                reading the bytes for the array
+	 */
 	public void readIntegerArray(int vec[], int offset, int len) throws EOFException, FormatException {
+		if (mappedReader != null) {
+			mappedReader.readIntegerArray(vec, offset, len, MSBFirst);
+			return;
+		}
 		for (int i = 0; i < len; i++) {
 			vec[offset++] = readInteger();
 		}
@@ -665,6 +764,9 @@ public class BinaryFile {
 	 * @see #read(byte[])
 	 */
 	public long readLong() throws EOFException, FormatException {
+		if (mappedReader != null) {
+			return mappedReader.readLong(MSBFirst);
+		}
 		return MoreMath.BuildLong(readBytes(8, false), MSBFirst);
 	}
 
@@ -682,18 +784,66 @@ public class BinaryFile {
 		return Float.intBitsToFloat(readInteger());
 	}
 
+	/**
+	 * Reads an array of floats.
+	 * 
+	 * @param vec the array to write the floats into
+	 * @param offset the first array index to write to
+	 * @param len the number of floats to read
+	 * @exception EOFException there were fewer bytes than needed in the file
+	 * @exception FormatException rethrow of IOExceptions encountered while
+	 *                reading the bytes for the array
+	 */
 	public void readFloatArray(float vec[], int offset, int len) throws EOFException, FormatException {
+		if (mappedReader != null) {
+			mappedReader.readFloatArray(vec, offset, len, MSBFirst);
+			return;
+		}
 		for (int i = 0; i < len; i++) {
 			vec[offset++] = readFloat();
 		}
 	}
 
+	/**
+	 * Reads an array of floats into an array of doubles.
+	 * 
+	 * @param vec the array to write the values into
+	 * @param offset the first array index to write to
+	 * @param len the number of floats to read
+	 * @exception EOFException there were fewer bytes than needed in the file
+	 * @exception FormatException rethrow of IOExceptions encountered while
+	 *                reading the bytes for the array
+	 */
 	public void readFloatArray(double vec[], int offset, int len) throws EOFException, FormatException {
+		if (mappedReader != null) {
+			mappedReader.readFloatArray(vec, offset, len, MSBFirst);
+			return;
+		}
 		for (int i = 0; i < len; i++) {
 			vec[offset++] = readFloat();
 		}
 	}
 
+	/**
+	 * Reads an array of shorts.
+	 * 
+	 * @param vec the array to write the shorts into
+	 * @param offset the first array index to write to
+	 * @param len the number of shorts to read
+	 * @exception EOFException there were fewer bytes than needed in the file
+	 * @exception FormatException rethrow of IOExceptions encountered while
+	 *                reading the bytes for the array
+	 */
+	public void readShortArray(short vec[], int offset, int len) throws EOFException, FormatException {
+		if (mappedReader != null) {
+			mappedReader.readShortArray(vec, offset, len, MSBFirst);
+			return;
+		}
+		for (int i = 0; i < len; i++) {
+			vec[offset++] = readShort();
+		}
+	}
+
 	/**
 	 * Reads and returns a double
 	 * 
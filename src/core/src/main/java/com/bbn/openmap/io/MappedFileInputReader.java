@@ -0,0 +1,530 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.bbn.openmap.util.Debug;
+
+/**
+ * An InputReader for local files that memory-maps the file instead of reading
+ * it through a RandomAccessFile. Seeking just moves a pointer, reads are
+ * copies out of memory the operating system pages in and caches for us, and
+ * BinaryFile can decode numbers and arrays of numbers straight from the
+ * mapping instead of from byte arrays read for each value.
+ * <P>
+ * The file is mapped in chunks, so files larger than 2GB can be read. The
+ * chunks overlap a little, so any single number can be read from one chunk.
+ * <P>
+ * The file handle is closed as soon as the file is mapped, so these readers
+ * don't count against the open file limit, and close() doesn't have to do
+ * anything - the reader can be used again without reopening the file.
+ * Mappings are shared: readers created for the same, unchanged file while
+ * another reader for it is still around use the existing mapping, from any
+ * thread, without opening the file again. Each reader has its own file
+ * pointer, so each thread should have its own reader.
+ * <P>
+ * The mapping is released by the garbage collector when none of its readers
+ * are referenced anymore. On some platforms, a mapped file can't be deleted or
+ * replaced until then.
+ *
+ * @see com.bbn.openmap.io.BinaryFile#setMapFiles(boolean)
+ */
+public class MappedFileInputReader implements InputReader {
+
+    /**
+     * log2 of the size of the mapped chunks, 1GB.
+     */
+    protected final static int CHUNK_BITS = 30;
+    protected final static long CHUNK_SIZE = 1L << CHUNK_BITS;
+    protected final static long CHUNK_MASK = CHUNK_SIZE - 1;
+    /**
+     * How far each chunk runs into the next one, the size of the largest
+     * number read.
+     */
+    protected final static int CHUNK_OVERLAP = 8;
+
+    /**
+     * Mappings of files that are being used, by absolute path.
+     */
+    private static final Map<String, WeakReference<Mapping>> mappings = new HashMap<String, WeakReference<Mapping>>();
+
+    protected final String name;
+    protected final String absolutePath;
+    protected final Mapping mapping;
+    /**
+     * This reader's views of the mapped chunks, in each byte order.
+     */
+    protected final ByteBuffer[] msbChunks;
+    protected final ByteBuffer[] lsbChunks;
+    protected long position = 0;
+
+    /**
+     * Memory-map a file for reading.
+     *
+     * @param f the file to be mapped.
+     * @exception IOException if the file can't be opened or mapped.
+     */
+    public MappedFileInputReader(File f) throws IOException {
+        if (Debug.debugging("binaryfile")) {
+            Debug.output("MappedFileInputReader created from " + f.getAbsolutePath());
+        }
+        name = f.getName();
+        absolutePath = f.getAbsolutePath();
+        mapping = getMapping(f);
+
+        int numChunks = mapping.chunks.length;
+        msbChunks = new ByteBuffer[numChunks];
+        lsbChunks = new ByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            msbChunks[i] = mapping.chunks[i].duplicate().order(ByteOrder.BIG_ENDIAN);
+            lsbChunks[i] = mapping.chunks[i].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Memory-map a file for reading.
+     *
+     * @param f the path to the file to be mapped.
+     * @exception IOException if the file can't be opened or mapped.
+     */
+    public MappedFileInputReader(String f) throws IOException {
+        this(new File(f));
+    }
+
+    /**
+     * Find the current mapping for a file, or map it if it isn't mapped or
+     * has changed since it was.
+     */
+    protected static Mapping getMapping(File f) throws IOException {
+        String key = f.getAbsolutePath();
+        synchronized (mappings) {
+            WeakReference<Mapping> ref = mappings.get(key);
+            Mapping mapping = ref == null ? null : ref.get();
+            if (mapping != null && mapping.lastModified == f.lastModified()
+                    && mapping.length == f.length()) {
+                return mapping;
+            }
+
+            // Clean out the entries for files nobody is reading anymore.
+            for (Iterator<WeakReference<Mapping>> it = mappings.values().iterator(); it.hasNext();) {
+                if (it.next().get() == null) {
+                    it.remove();
+                }
+            }
+
+            mapping = new Mapping(f);
+            mappings.put(key, new WeakReference<Mapping>(mapping));
+            return mapping;
+        }
+    }
+
+    /**
+     * Get the file name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the absolute path of the file.
+     */
+    public String getAbsolutePath() {
+        return absolutePath;
+    }
+
+    /**
+     * Skip over n bytes in the input file
+     *
+     * @param n the number of bytes to skip
+     * @return the actual number of bytes skipped, which may be less than n at
+     *         the end of the file.
+     */
+    public long skipBytes(long n) {
+        long skip = Math.max(0, Math.min(n, mapping.length - position));
+        position += skip;
+        return skip;
+    }
+
+    /**
+     * Get the index of the next character to be read
+     *
+     * @return the index
+     */
+    public long getFilePointer() {
+        return position;
+    }
+
+    /**
+     * Set the index of the next character to be read. Setting it past the end
+     * of the file is allowed, reads will return EOF.
+     *
+     * @param pos the position to seek to.
+     * @exception IOException if pos is negative.
+     */
+    public void seek(long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException("MappedFileInputReader: negative seek offset " + pos);
+        }
+        position = pos;
+    }
+
+    /**
+     * @return the length of the file, in bytes.
+     */
+    public long length() {
+        return mapping.length;
+    }
+
+    /**
+     * Return how many bytes left to be read in the file.
+     *
+     * @return the number of bytes remaining to be read (counted in bytes)
+     */
+    public long available() {
+        return Math.max(0, mapping.length - position);
+    }
+
+    /**
+     * Nothing to do, the file was closed after it was mapped. The reader can
+     * still be used.
+     */
+    public void close() {
+        if (Debug.debugging("binaryfile")) {
+            Debug.output("MappedFileInputReader.close()");
+        }
+    }
+
+    /**
+     * Read from the file.
+     *
+     * @return one byte from the file. -1 for EOF
+     */
+    public int read() {
+        if (position >= mapping.length) {
+            return -1;
+        }
+        int b = msbChunks[chunk(position)].get(offset(position));
+        position++;
+        return b & 0xff;
+    }
+
+    /**
+     * Read from the file
+     *
+     * @param b The byte array to read into
+     * @param off the first array position to read into
+     * @param len the number of bytes to read
+     * @return the number of bytes read, -1 at EOF.
+     */
+    public int read(byte b[], int off, int len) {
+        if (len <= 0) {
+            return 0;
+        }
+        if (position >= mapping.length) {
+            return -1;
+        }
+
+        int total = (int) Math.min(len, mapping.length - position);
+        for (int left = total; left > 0;) {
+            ByteBuffer buf = msbChunks[chunk(position)];
+            int local = offset(position);
+            int n = Math.min(left, buf.limit() - local);
+            buf.position(local);
+            buf.get(b, off, n);
+            off += n;
+            left -= n;
+            position += n;
+        }
+        return total;
+    }
+
+    /**
+     * Read from the file.
+     *
+     * @param b the byte array to read into. Equivalent to
+     *        <code>read(b, 0, b.length)</code>
+     * @return the number of bytes read
+     */
+    public int read(byte b[]) {
+        return read(b, 0, b.length);
+    }
+
+    /**
+     * Read from the file.
+     *
+     * @param howmany the number of bytes to read
+     * @param allowless if we can return fewer bytes than requested
+     * @return the array of bytes read.
+     * @exception FormatException an end-of-file encountered after reading
+     *            some, but now enough, bytes when allowless was
+     *            <code>false</code>
+     * @exception EOFException Encountered an end-of-file while allowless was
+     *            <code>false</code>, but NO bytes had been read.
+     */
+    public byte[] readBytes(int howmany, boolean allowless) throws EOFException, FormatException {
+        long left = available();
+        if (left < howmany && !allowless) {
+            throw eof(left);
+        }
+
+        byte foo[] = new byte[(int) Math.min(howmany, left)];
+        read(foo, 0, foo.length);
+        return foo;
+    }
+
+    /**
+     * Read a short.
+     *
+     * @param msbFirst the byte order.
+     * @exception EOFException there were no bytes left in the file
+     * @exception FormatException there were some bytes, but not enough
+     */
+    public short readShort(boolean msbFirst) throws EOFException, FormatException {
+        long pos = claim(2);
+        return chunks(msbFirst)[chunk(pos)].getShort(offset(pos));
+    }
+
+    /**
+     * Read an integer.
+     *
+     * @param msbFirst the byte order.
+     * @exception EOFException there were no bytes left in the file
+     * @exception FormatException there were some bytes, but not enough
+     */
+    public int readInteger(boolean msbFirst) throws EOFException, FormatException {
+        long pos = claim(4);
+        return chunks(msbFirst)[chunk(pos)].getInt(offset(pos));
+    }
+
+    /**
+     * Read a long.
+     *
+     * @param msbFirst the byte order.
+     * @exception EOFException there were no bytes left in the file
+     * @exception FormatException there were some bytes, but not enough
+     */
+    public long readLong(boolean msbFirst) throws EOFException, FormatException {
+        long pos = claim(8);
+        return chunks(msbFirst)[chunk(pos)].getLong(offset(pos));
+    }
+
+    /**
+     * Read an array of shorts.
+     *
+     * @param vec the array to read into
+     * @param offset the first array index to read into
+     * @param len the number of values to read
+     * @param msbFirst the byte order.
+     * @exception EOFException there were no bytes left in the file
+     * @exception FormatException there were some bytes, but not enough
+     */
+    public void readShortArray(short vec[], int offset, int len, boolean msbFirst)
+            throws EOFException, FormatException {
+        ByteBuffer[] chunks = chunks(msbFirst);
+        for (long pos = claim(len * 2L); len > 0;) {
+            ByteBuffer buf = chunks[chunk(pos)];
+            int local = offset(pos);
+            int n = Math.min(len, (buf.limit() - local) / 2);
+            buf.position(local);
+            buf.asShortBuffer().get(vec, offset, n);
+            offset += n;
+            len -= n;
+            pos += n * 2L;
+        }
+    }
+
+    /**
+     * Read an array of integers.
+     *
+     * @param vec the array to read into
+     * @param offset the first array index to read into
+     * @param len the number of values to read
+     * @param msbFirst the byte order.
+     * @exception EOFException there were no bytes left in the file
+     * @exception FormatException there were some bytes, but not enough
+     */
+    public void readIntegerArray(int vec[], int offset, int len, boolean msbFirst)
+            throws EOFException, FormatException {
+        ByteBuffer[] chunks = chunks(msbFirst);
+        for (long pos = claim(len * 4L); len > 0;) {
+            ByteBuffer buf = chunks[chunk(pos)];
+            int local = offset(pos);
+            int n = Math.min(len, (buf.limit() - local) / 4);
+            buf.position(local);
+            buf.asIntBuffer().get(vec, offset, n);
+            offset += n;
+            len -= n;
+            pos += n * 4L;
+        }
+    }
+
+    /**
+     * Read an array of floats.
+     *
+     * @param vec the array to read into
+     * @param offset the first array index to read into
+     * @param len the number of values to read
+     * @param msbFirst the byte order.
+     * @exception EOFException there were no bytes left in the file
+     * @exception FormatException there were some bytes, but not enough
+     */
+    public void readFloatArray(float vec[], int offset, int len, boolean msbFirst)
+            throws EOFException, FormatException {
+        ByteBuffer[] chunks = chunks(msbFirst);
+        for (long pos = claim(len * 4L); len > 0;) {
+            ByteBuffer buf = chunks[chunk(pos)];
+            int local = offset(pos);
+            int n = Math.min(len, (buf.limit() - local) / 4);
+            buf.position(local);
+            buf.asFloatBuffer().get(vec, offset, n);
+            offset += n;
+            len -= n;
+            pos += n * 4L;
+        }
+    }
+
+    /**
+     * Read an array of floats into an array of doubles.
+     *
+     * @param vec the array to read into
+     * @param offset the first array index to read into
+     * @param len the number of values to read
+     * @param msbFirst the byte order.
+     * @exception EOFException there were no bytes left in the file
+     * @exception FormatException there were some bytes, but not enough
+     */
+    public void readFloatArray(double vec[], int offset, int len, boolean msbFirst)
+            throws EOFException, FormatException {
+        ByteBuffer[] chunks = chunks(msbFirst);
+        for (long pos = claim(len * 4L); len > 0; len--) {
+            vec[offset++] = chunks[chunk(pos)].getFloat(offset(pos));
+            pos += 4;
+        }
+    }
+
+    /**
+     * Read an array of doubles.
+     *
+     * @param vec the array to read into
+     * @param offset the first array index to read into
+     * @param len the number of values to read
+     * @param msbFirst the byte order.
+     * @exception EOFException there were no bytes left in the file
+     * @exception FormatException there were some bytes, but not enough
+     */
+    public void readDoubleArray(double vec[], int offset, int len, boolean msbFirst)
+            throws EOFException, FormatException {
+        ByteBuffer[] chunks = chunks(msbFirst);
+        for (long pos = claim(len * 8L); len > 0;) {
+            ByteBuffer buf = chunks[chunk(pos)];
+            int local = offset(pos);
+            int n = Math.min(len, (buf.limit() - local) / 8);
+            buf.position(local);
+            buf.asDoubleBuffer().get(vec, offset, n);
+            offset += n;
+            len -= n;
+            pos += n * 8L;
+        }
+    }
+
+    /**
+     * Move the file pointer past numBytes, if there are that many left.
+     *
+     * @return the file pointer before it was moved.
+     */
+    protected long claim(long numBytes) throws EOFException, FormatException {
+        long left = available();
+        if (left < numBytes) {
+            throw eof(left);
+        }
+        long pos = position;
+        position += numBytes;
+        return pos;
+    }
+
+    protected FormatException eof(long left) throws EOFException {
+        if (left <= 0) {
+            throw new EOFException();
+        }
+        return new FormatException("EOF while reading data");
+    }
+
+    protected ByteBuffer[] chunks(boolean msbFirst) {
+        return msbFirst ? msbChunks : lsbChunks;
+    }
+
+    protected static int chunk(long pos) {
+        return (int) (pos >>> CHUNK_BITS);
+    }
+
+    protected static int offset(long pos) {
+        return (int) (pos & CHUNK_MASK);
+    }
+
+    /**
+     * The mapped chunks of a file, shared by all the readers for it.
+     */
+    protected static class Mapping {
+        protected final long length;
+        protected final long lastModified;
+        protected final ByteBuffer[] chunks;
+
+        protected Mapping(File f) throws IOException {
+            if (!f.exists()) {
+                throw new FileNotFoundException("MappedFileInputReader can't find " + f);
+            }
+            lastModified = f.lastModified();
+
+            RandomAccessFile raf;
+            try {
+                raf = new RandomAccessFile(f, "r");
+            } catch (FileNotFoundException fnfe) {
+                // Might be out of file handles.
+                if (!f.canRead()) {
+                    throw fnfe;
+                }
+                BinaryFile.closeClosable();
+                raf = new RandomAccessFile(f, "r");
+            }
+
+            try {
+                FileChannel channel = raf.getChannel();
+                length = channel.size();
+                int numChunks = (int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+                chunks = new ByteBuffer[numChunks];
+                for (int i = 0; i < numChunks; i++) {
+                    long start = (long) i << CHUNK_BITS;
+                    long size = Math.min(CHUNK_SIZE + CHUNK_OVERLAP, length - start);
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                }
+            } finally {
+                // The mappings stay valid after the file is closed.
+                raf.close();
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Component;
 import java.awt.Composite;
+import java.awt.Container;
 import java.awt.Graphics;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
@@ -46,6 +47,7 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import com.bbn.openmap.Layer;
+import com.bbn.openmap.MapBean;
 import com.bbn.openmap.PropertyConsumer;
 import com.bbn.openmap.event.InfoDisplayEvent;
 import com.bbn.openmap.event.LayerStatusEvent;
@@ -73,6 +75,7 @@ import com.bbn.openmap.util.ComponentFactory;
 import com.bbn.openmap.util.ISwingWorker;
 import com.bbn.openmap.util.PooledSwingWorker;
 import com.bbn.openmap.util.PropUtils;
+import com.bbn.openmap.util.TaskService;
 
 /**
  * The OMGraphicHandlerLayer is a layer that provides OMGraphicHandler support.
@@ -227,6 +230,21 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 	 */
 	public final static String InterruptableProperty = "interruptable";
 
+	/**
+	 * The property to set the number of OMGraphics a list has to hold before
+	 * the layer generates them on several threads at once. Only turn this on
+	 * for layers with OMGraphics that can be generated concurrently. The
+	 * default, 0, generates them on the layer's thread.
+	 */
+	public final static String ParallelGenerateThresholdProperty = "parallelGenerateThreshold";
+
+	/**
+	 * The property to set the number of OMGraphics a list has to hold before
+	 * mouse picking and filtering use an index of where the OMGraphics are on
+	 * the screen. The default, 0, checks every OMGraphic.
+	 */
+	public final static String SpatialIndexThresholdProperty = "spatialIndexThreshold";
+
 	/**
 	 * Filter support that can be used to manage OMGraphics.
 	 */
@@ -294,6 +312,60 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 		return interruptable;
 	}
 
+	/**
+	 * The list size where generate() is split across threads, 0 for never.
+	 */
+	protected int parallelGenerateThreshold = 0;
+
+	/**
+	 * Set the number of OMGraphics the layer's list has to hold before they
+	 * are generated on several threads at once. The threshold is passed to
+	 * the lists given to setList(), and the list generated in prepare().
+	 * Layers that generate lists they create themselves can pass it on with
+	 * OMList.setParallelThreshold().
+	 *
+	 * @param threshold
+	 *            list size, 0 to not generate in parallel.
+	 */
+	public void setParallelGenerateThreshold(int threshold) {
+		parallelGenerateThreshold = threshold;
+		OMGraphicList list = getList();
+		if (list != null) {
+			list.setParallelThreshold(threshold);
+		}
+	}
+
+	public int getParallelGenerateThreshold() {
+		return parallelGenerateThreshold;
+	}
+
+	/**
+	 * The list size where picking uses a screen index, 0 for never.
+	 */
+	protected int spatialIndexThreshold = 0;
+
+	/**
+	 * Set the number of OMGraphics the layer's list has to hold before mouse
+	 * picking and filter() look them up in an index of their screen
+	 * locations. Passed to lists the same way as the parallel generate
+	 * threshold. Layers that move and generate OMGraphics on the list one at a
+	 * time should call resetSpatialIndex() on the list afterward.
+	 *
+	 * @param threshold
+	 *            list size, 0 to not use an index.
+	 */
+	public void setSpatialIndexThreshold(int threshold) {
+		spatialIndexThreshold = threshold;
+		OMGraphicList list = getList();
+		if (list != null) {
+			list.setSpatialIndexThreshold(threshold);
+		}
+	}
+
+	public int getSpatialIndexThreshold() {
+		return spatialIndexThreshold;
+	}
+
 	// OMGraphicHandler methods, deferred to FilterSupport...
 
 	/**
@@ -356,6 +428,12 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 	 * canSetGraphicList == true.
 	 */
 	public void setList(OMGraphicList omgl) {
+		if (omgl != null && parallelGenerateThreshold > 0) {
+			omgl.setParallelThreshold(parallelGenerateThreshold);
+		}
+		if (omgl != null && spatialIndexThreshold > 0) {
+			omgl.setSpatialIndexThreshold(spatialIndexThreshold);
+		}
 		filter.setList(omgl);
 	}
 
@@ -563,6 +641,14 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 			ISwingWorker<OMGraphicList> currentLayerWorker = layerWorker;
 
 			if (currentLayerWorker != null) {
+				if (currentLayerWorker instanceof PooledSwingWorker
+						&& !((PooledSwingWorker<?>) currentLayerWorker).isStarted()
+						&& !currentLayerWorker.isInterrupted()) {
+					// The worker is still waiting for a thread, and will pick
+					// up the current projection when it gets one, so another
+					// isn't needed.
+					return;
+				}
 				layerWorkerQueue = true;
 				if (interruptable) {
 					currentLayerWorker.interrupt();
@@ -633,6 +719,12 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 		// if the layer hasn't been added to the MapBean
 		// the projection could be null.
 		if (currentList != null && proj != null) {
+			if (parallelGenerateThreshold > 0) {
+				currentList.setParallelThreshold(parallelGenerateThreshold);
+			}
+			if (spatialIndexThreshold > 0) {
+				currentList.setSpatialIndexThreshold(spatialIndexThreshold);
+			}
 			currentList.generate(proj);
 		}
 
@@ -680,6 +772,26 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 		}
 	}
 
+	/**
+	 * The priority of this layer's LayerWorkers in the TaskService, so layers
+	 * on top of the map get their work started before the layers under them
+	 * when there are more layers than threads. Visible layers on the map get
+	 * priorities above TaskService.DEFAULT_PRIORITY, highest for the top
+	 * layer. Others get the default priority.
+	 *
+	 * @return priority for LayerWorkers
+	 */
+	protected int getWorkerPriority() {
+		Container parent = getParent();
+		if (parent instanceof MapBean && isVisible()) {
+			int index = ((MapBean) parent).getLayerIndex(this);
+			if (index >= 0) {
+				return TaskService.DEFAULT_PRIORITY + Math.max(1, 1000 - index);
+			}
+		}
+		return TaskService.DEFAULT_PRIORITY;
+	}
+
 	/**
 	 * Since we can't have the main thread taking up the time to do the work to
 	 * create OMGraphics, we use this worker thread to do it.
@@ -748,6 +860,17 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 			return getName() + " LayerWorker";
 		}
 
+		/**
+		 * Statistics for the worker are kept under the layer name.
+		 */
+		protected String getTaskName() {
+			return getName();
+		}
+
+		protected int getPriority() {
+			return getWorkerPriority();
+		}
+
 	}
 
 	/**
@@ -895,6 +1018,12 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 		setTransparency(PropUtils.floatFromProperties(props, realPrefix + TransparencyProperty, getTransparency()));
 
 		setInterruptable(PropUtils.booleanFromProperties(props, realPrefix + InterruptableProperty, isInterruptable()));
+
+		setParallelGenerateThreshold(PropUtils.intFromProperties(props, realPrefix + ParallelGenerateThresholdProperty,
+				getParallelGenerateThreshold()));
+
+		setSpatialIndexThreshold(PropUtils.intFromProperties(props, realPrefix + SpatialIndexThresholdProperty,
+				getSpatialIndexThreshold()));
 	}
 
 	/**
@@ -968,6 +1097,10 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 
 		props.put(prefix + InterruptableProperty, Boolean.toString(isInterruptable()));
 
+		props.put(prefix + ParallelGenerateThresholdProperty, Integer.toString(getParallelGenerateThreshold()));
+
+		props.put(prefix + SpatialIndexThresholdProperty, Integer.toString(getSpatialIndexThreshold()));
+
 		return props;
 	}
 
@@ -1038,6 +1171,16 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 				"Flat to set whether the layer should immediately stop performing current work when the projection changes.",
 				"com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
 
+		PropUtils.setI18NPropertyInfo(i18n, list, OMGraphicHandlerLayer.class, ParallelGenerateThresholdProperty,
+				"Parallel generate threshold",
+				"Number of OMGraphics on a list before they are generated on several threads at once, 0 for never.",
+				null);
+
+		PropUtils.setI18NPropertyInfo(i18n, list, OMGraphicHandlerLayer.class, SpatialIndexThresholdProperty,
+				"Spatial index threshold",
+				"Number of OMGraphics on a list before mouse picking uses an index of their screen locations, 0 for never.",
+				null);
+
 		return list;
 	}
 
@@ -1539,4 +1682,4 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 			}
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -82,6 +82,10 @@ import com.bbn.openmap.util.PropUtils;
  * tiles.localCacheRootDir=/data/tiles/osmtiles
  * # save cache when layer is done (true by default)
  * tiles.saveCache=true
+ * # load a ring of tiles around the map, and the tiles for the zoom levels above
+ * # and below, in the background so they're ready for panning and zooming.
+ * tiles.prefetchRing=1
+ * tiles.prefetchZoomLevels=true
  * 
  * # other properties are the same.
  * tiles.fileExt=.png
@@ -365,6 +369,9 @@ public class MapTileLayer extends OMGraphicHandlerLayer implements MapTileReques
      */
     public void removed(Container cont) {
         MapTileFactory tileFactory = getTileFactory();
+        if (tileFactory instanceof StandardMapTileFactory) {
+            ((StandardMapTileFactory) tileFactory).cancelPrefetch();
+        }
         if (tileFactory != null && !saveCache) {
             tileFactory.reset();
         }
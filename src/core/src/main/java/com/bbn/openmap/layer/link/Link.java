@@ -33,6 +33,7 @@ import java.io.OutputStream;
 import java.net.Socket;
 
 import com.bbn.openmap.Layer;
+import com.bbn.openmap.layer.OMGraphicHandlerLayer;
 import com.bbn.openmap.omGraphics.grid.OMGridGenerator;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.util.Debug;
@@ -230,6 +231,10 @@ public class Link implements LinkConstants {
         // Keep this here, so if there is more than one graphics
         // section, then all the graphics get added to one list.
         LinkOMGraphicList graphics = new LinkOMGraphicList();
+        if (layer instanceof OMGraphicHandlerLayer) {
+            // Big graphics sections get generated in parallel.
+            graphics.setParallelThreshold(((OMGraphicHandlerLayer) layer).getParallelGenerateThreshold());
+        }
 
         graphicList = null;
         mapRequest = null;
@@ -436,6 +441,18 @@ public class Link implements LinkConstants {
         return ret;
     }
 
+    /**
+     * Check if there is input waiting to be read from the link,
+     * without blocking.
+     * 
+     * @return true if the other side has sent something that hasn't
+     *         been read yet.
+     * @throws IOException
+     */
+    public boolean isInputAvailable() throws IOException {
+        return dis.available() > 0;
+    }
+
     /**
      * Other threads can check to see if the link is in use.
      * 
@@ -119,11 +119,12 @@ public class LinkBoundingPoly {
 
         int polyLength = dis.readInt();
         points = new float[polyLength];
+        LinkUtil.readFloats(dis, points, 0, polyLength);
         float x, y;
 
         for (int i = 0; i < points.length; i += 2) {
-            y = dis.readFloat();
-            x = dis.readFloat();
+            y = points[i];
+            x = points[i + 1];
 
             if (i == 0) {
                 minX = x;
@@ -132,9 +133,6 @@ public class LinkBoundingPoly {
                 maxY = y;
             }
 
-            points[i] = y;
-            points[i + 1] = x;
-
             if (x < minX)
                 minX = x;
             if (x > maxX)
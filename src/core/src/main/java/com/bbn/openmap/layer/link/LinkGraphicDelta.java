@@ -0,0 +1,238 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+
+/**
+ * The LinkGraphicDelta keeps track of the graphics a client already holds, so
+ * a server can answer a LinkMapRequest with only the graphics that were added
+ * or changed since the client received them. The client lists the graphic IDs
+ * and versions (LPC_GRAPHICVERSION) it holds in the LPC_HELD_GRAPHICS property
+ * of the map request. A server that understands that uses this object to skip
+ * the graphics the client already has:
+ *
+ * <pre>
+ * LinkGraphicDelta delta = new LinkGraphicDelta(link.getMapRequest());
+ * LinkGraphicList gr = new LinkGraphicList(link, delta.getProperties(new LinkProperties()));
+ * for (each graphic in view) {
+ *     if (delta.needsGraphic(id, version)) {
+ *         gr.addXXX(..., graphicProperties);
+ *     }
+ * }
+ * gr.end(Link.END_SECTION);
+ * delta.writeRemovals(link, Link.END_TOTAL);
+ * </pre>
+ *
+ * The held graphics that weren't asked about are deleted from the client with
+ * MODIFY_DELETE_GRAPHIC_MASK updates in a LinkActionList. Servers that don't
+ * know about delta updates ignore the held graphics and send the whole list,
+ * which replaces the client's list.
+ */
+public class LinkGraphicDelta implements LinkPropertiesConstants,
+        LinkActionConstants {
+
+    /** Separates the held graphic entries. */
+    public final static char ENTRY_SEPARATOR = '\n';
+    /** Separates the graphic ID from the version in a held graphic entry. */
+    public final static char VERSION_SEPARATOR = '\t';
+
+    /** The versions of the graphics held by the client, keyed by ID. */
+    protected Map<String, String> held;
+    /** The held IDs the server still wants on the map. */
+    protected Set<String> kept = new HashSet<String>();
+
+    /**
+     * Create a LinkGraphicDelta for the graphics held by the client making the
+     * request.
+     *
+     * @param request the map request from the client.
+     */
+    public LinkGraphicDelta(LinkMapRequest request) {
+        this(request.getProperties());
+    }
+
+    /**
+     * Create a LinkGraphicDelta from the properties of a map request.
+     *
+     * @param requestProperties properties that may have LPC_HELD_GRAPHICS set.
+     */
+    public LinkGraphicDelta(LinkProperties requestProperties) {
+        String heldGraphics = requestProperties == null ? null
+                : requestProperties.getProperty(LPC_HELD_GRAPHICS);
+        if (heldGraphics != null) {
+            held = readHeldGraphics(heldGraphics);
+        }
+    }
+
+    /**
+     * Returns true if the client listed the graphics it holds, so the response
+     * can be a delta.
+     */
+    public boolean isDelta() {
+        return held != null;
+    }
+
+    /**
+     * Set LPC_GRAPHIC_DELTA in the properties for the graphics response, if
+     * the response is a delta.
+     *
+     * @param props the properties for the LinkGraphicList.
+     * @return props
+     */
+    public LinkProperties getProperties(LinkProperties props) {
+        if (isDelta()) {
+            props.setProperty(LPC_GRAPHIC_DELTA, "true");
+        }
+        return props;
+    }
+
+    /**
+     * Check whether a graphic needs to be sent to the client. The graphic is
+     * kept on the client in either case.
+     *
+     * @param id the graphic ID.
+     * @param version the current version of the graphic, may be null if the
+     *        graphic doesn't have one, and then it is always sent.
+     * @return true if the client doesn't hold this version of the graphic.
+     */
+    public boolean needsGraphic(String id, String version) {
+        if (held == null || id == null) {
+            return true;
+        }
+        String heldVersion = held.get(id);
+        if (heldVersion == null) {
+            return true;
+        }
+        kept.add(id);
+        return version == null || !version.equals(heldVersion);
+    }
+
+    /**
+     * Check whether a graphic needs to be sent to the client, using the
+     * LPC_GRAPHICID and LPC_GRAPHICVERSION of its properties.
+     *
+     * @param graphicProperties the properties to be sent with the graphic.
+     * @return true if the client doesn't hold this version of the graphic.
+     */
+    public boolean needsGraphic(LinkProperties graphicProperties) {
+        return needsGraphic(graphicProperties.getProperty(LPC_GRAPHICID),
+                graphicProperties.getProperty(LPC_GRAPHICVERSION));
+    }
+
+    /**
+     * Get the IDs of the held graphics that haven't been checked with
+     * needsGraphic(), which should be removed from the client.
+     */
+    public List<String> getRemovedIds() {
+        List<String> removed = new ArrayList<String>();
+        if (held != null) {
+            for (String id : held.keySet()) {
+                if (!kept.contains(id)) {
+                    removed.add(id);
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Write an actions section deleting the graphics returned by
+     * getRemovedIds() from the client.
+     *
+     * @param link the link to write to.
+     * @param endType Link.END_SECTION or Link.END_TOTAL.
+     * @throws IOException
+     */
+    public void writeRemovals(Link link, String endType) throws IOException {
+        LinkActionList lal = new LinkActionList(link, new LinkProperties());
+        LinkProperties props = new LinkProperties();
+        for (String id : getRemovedIds()) {
+            props.setProperty(LPC_GRAPHICID, id);
+            lal.modifyGraphic(MODIFY_DELETE_GRAPHIC_MASK, props);
+        }
+        lal.end(endType);
+    }
+
+    /**
+     * Create the LPC_HELD_GRAPHICS value for the graphics on a list. Graphics
+     * without an ID or a version are left out, and will be sent again.
+     *
+     * @param graphics the graphics held by the client.
+     * @return the IDs and versions, with an ENTRY_SEPARATOR after each entry.
+     */
+    public static String writeHeldGraphics(OMGraphicList graphics) {
+        StringBuilder buf = new StringBuilder();
+        for (Iterator<OMGraphic> it = graphics.iterator(); it.hasNext();) {
+            Object obj = it.next().getAttribute(OMGraphic.APP_OBJECT);
+            if (!(obj instanceof LinkProperties)) {
+                continue;
+            }
+            LinkProperties props = (LinkProperties) obj;
+            String id = props.getProperty(LPC_GRAPHICID);
+            String version = props.getProperty(LPC_GRAPHICVERSION);
+            if (id == null || version == null || !isValid(id)
+                    || !isValid(version)) {
+                continue;
+            }
+            buf.append(id).append(VERSION_SEPARATOR).append(version).append(ENTRY_SEPARATOR);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Read the LPC_HELD_GRAPHICS value.
+     *
+     * @param heldGraphics the IDs and versions written by
+     *        writeHeldGraphics().
+     * @return the versions, keyed by ID.
+     */
+    public static Map<String, String> readHeldGraphics(String heldGraphics) {
+        Map<String, String> held = new HashMap<String, String>();
+        int start = 0;
+        int length = heldGraphics.length();
+        while (start < length) {
+            int end = heldGraphics.indexOf(ENTRY_SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            int sep = heldGraphics.indexOf(VERSION_SEPARATOR, start);
+            if (sep > start && sep < end) {
+                held.put(heldGraphics.substring(start, sep),
+                        heldGraphics.substring(sep + 1, end));
+            }
+            start = end + 1;
+        }
+        return held;
+    }
+
+    /**
+     * Returns true if the string doesn't have any separators in it.
+     */
+    protected static boolean isValid(String s) {
+        return s.indexOf(ENTRY_SEPARATOR) < 0
+                && s.indexOf(VERSION_SEPARATOR) < 0;
+    }
+}
@@ -30,6 +30,7 @@ import java.io.IOException;
 import javax.swing.ImageIcon;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.omGraphics.OMGrid;
 import com.bbn.openmap.omGraphics.grid.OMGridGenerator;
 import com.bbn.openmap.proj.Projection;
@@ -172,7 +173,10 @@ public class LinkGraphicList implements LinkGraphicConstants {
      * @param graphics the LinkOMGraphicList to add the link graphics too. This
      *        method assumes that this is never null.
      * @param proj If you want the graphics to be projected as they come off the
-     *        wire, add a projection here. Otherwise, use null.
+     *        wire, add a projection here. Otherwise, use null. If the graphics
+     *        list has a parallel threshold and the section has at least that
+     *        many graphics, they are projected in parallel after the section
+     *        is read.
      * @param generator an OMGridGenerator that knows how to render grid
      *        objects.
      * @throws IOException
@@ -191,6 +195,9 @@ public class LinkGraphicList implements LinkGraphicConstants {
         // it needs to generate the LinkOMGraphicList to see if the
         // contents need to be generated.
         graphics.setNeedToRegenerate(proj == null);
+        if (proj != null) {
+            graphics.setProjection(proj);
+        }
 
         // doing nothing with the version number.
         float ver = link.dis.readFloat();
@@ -213,6 +220,15 @@ public class LinkGraphicList implements LinkGraphicConstants {
 
         LinkProperties propertiesBuffer = new LinkProperties(properties);
 
+        // The graphics to generate when the section is done, if they are
+        // generated in parallel.
+        int parallelThreshold = graphics.getParallelThreshold();
+        OMGraphicList toGenerate = null;
+        if (proj != null && parallelThreshold > 0) {
+            toGenerate = new OMGraphicList();
+            toGenerate.setParallelThreshold(parallelThreshold);
+        }
+
         while (true) {
             graphic = null;
             // Just consume the header, don't create a useless
@@ -221,6 +237,10 @@ public class LinkGraphicList implements LinkGraphicConstants {
 
             if (header == Link.END_TOTAL || header == Link.END_SECTION) {
 
+                if (toGenerate != null) {
+                    toGenerate.generate(proj);
+                }
+
                 long endTime = System.currentTimeMillis();
                 Debug.message("link", "LinkGraphicList: received "
                         + graphics.size() + " graphics in "
@@ -270,7 +290,9 @@ public class LinkGraphicList implements LinkGraphicConstants {
                 if (graphic instanceof OMGrid) {
                     ((OMGrid) graphic).setGenerator(generator);
                 }
-                if (proj != null) {
+                if (toGenerate != null) {
+                    toGenerate.add(graphic);
+                } else if (proj != null) {
                     graphic.generate(proj);
                 }
                 graphics.add(graphic);
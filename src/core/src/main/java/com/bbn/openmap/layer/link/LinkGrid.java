@@ -336,15 +336,7 @@ public class LinkGrid implements LinkGraphicConstants {
         }
 
         for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data[0].length; j++) {
-                data[i][j] = dis.readInt();
-                // Debug.message("linkdetail", "LinkGrid reading " +
-                // (rows*i + j) + " " +
-                // (major !=
-                // LinkGraphicConstants.COLUMN_MAJOR?"column":"row")+
-                // " " + j + " = " + Integer.toHexString(data[i][j]) +
-                // " (" + data[i][j] + ")");
-            }
+            LinkUtil.readInts(dis, data[i], 0, data[i].length);
             // Debug.message("linkdetail", "LinkGrid reading " +
             // (major ==
             // LinkGraphicConstants.COLUMN_MAJOR?"column":"row")+
@@ -78,6 +78,10 @@ import com.bbn.openmap.util.PropUtils;
  *       # server.  How the server handles the property depends on the server,
  *       # but non-applicable properties are ignored.
  *       link.propertiesURL=http://location.of.properties.file.com
+ *      
+ *       # Ask the server for only the graphics that changed since the last
+ *       # map request, for servers that support it (false by default).
+ *       link.deltaUpdates=true
  * 
  * 
  * 
@@ -166,6 +170,22 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
      */
     public final static String ExitOnCommandProperty = "exitOnCommand";
 
+    /**
+     * The property to set to true if the layer should tell the server which
+     * graphics it holds with map requests, so the server can just send the
+     * graphics that changed. False by default. "deltaUpdates"
+     */
+    public final static String DeltaUpdatesProperty = "deltaUpdates";
+
+    /** Whether map requests list the held graphics. */
+    protected boolean deltaUpdates = false;
+
+    /**
+     * The graphics received for the last map request, kept for delta updates
+     * since the projection change policy resets the layer's list.
+     */
+    protected LinkOMGraphicList heldGraphics = null;
+
     /**
      * The default constructor for the Layer. All of the attributes are set to
      * their default values.
@@ -342,6 +362,9 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         distanceLimit = PropUtils.intFromProperties(properties, realPrefix
                 + DistanceLimitProperty, distanceLimit);
 
+        setDeltaUpdates(PropUtils.booleanFromProperties(properties, realPrefix
+                + DeltaUpdatesProperty, deltaUpdates));
+
         // listener = new LinkListener(linkManager, this,
         // currentGenerator);
     }
@@ -556,10 +579,18 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
             boundingPolys[0] = new LinkBoundingPoly(ulLon, lrLat, lrLon, ulLat);
         }
 
+        LinkProperties requestArgs = args;
+        LinkOMGraphicList held = heldGraphics;
+        if (deltaUpdates && held != null && !held.isEmpty()) {
+            requestArgs = (LinkProperties) args.clone();
+            requestArgs.setProperty(LPC_HELD_GRAPHICS, LinkGraphicDelta
+                    .writeHeldGraphics(held));
+        }
+
         Point2D center = proj.getCenter();
         LinkMapRequest.write((float) center.getY(), (float) center.getX(), proj
                 .getScale(), proj.getHeight(), proj.getWidth(), boundingPolys,
-                             args, link);
+                             requestArgs, link);
 
         // ///////////////////////////////////////////////////
         // With asynchronous behavior, we don't listen to the reply
@@ -585,9 +616,22 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
             // Deal with all the messaging....
             handleMessages(lgl.getProperties());
             LinkOMGraphicList lomgl = lgl.getGraphics();
+            Projection proj = getProjection();
+            LinkOMGraphicList held = heldGraphics;
+            if (held != null
+                    && PropUtils.booleanFromProperties(lgl.getProperties(),
+                                                       LPC_GRAPHIC_DELTA,
+                                                       false)) {
+                // Only the added and changed graphics were sent, the
+                // removed ones are deleted by an action list.
+                held.merge(lomgl, proj);
+                lomgl = held;
+            }
+            if (deltaUpdates) {
+                heldGraphics = lomgl;
+            }
             setGraphicList(lomgl);
             // Do we need to regenerate?
-            Projection proj = getProjection();
             if (lomgl.getNeedToRegenerate(proj)) {
                 // set to false in LinkGraphicList.readGraphics if the
                 // projection was there when the LinkGraphicList was
@@ -1229,6 +1273,29 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         return distanceLimit;
     }
 
+    /**
+     * Set whether the layer lists the graphics it holds in map requests, so
+     * the server only has to send the graphics that were added or changed.
+     * The server has to set LPC_GRAPHICVERSION on the graphics for this to
+     * make a difference, see LinkGraphicDelta.
+     * 
+     * @param value
+     *            true to ask for delta updates.
+     */
+    public void setDeltaUpdates(boolean value) {
+        deltaUpdates = value;
+        if (!value) {
+            heldGraphics = null;
+        }
+    }
+
+    /**
+     * Whether the layer asks for delta updates.
+     */
+    public boolean getDeltaUpdates() {
+        return deltaUpdates;
+    }
+
     /**
      * Looks at a properties object, and checks for map updates.
      * 
@@ -24,11 +24,22 @@ package com.bbn.openmap.layer.link;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.bbn.openmap.util.Debug;
 
 /**
- * The LinkManager..
+ * The LinkManager hands out the links to a server to the threads that
+ * want to use them. A thread that can't get a link waits until
+ * another thread calls finLink() to give one back.
+ * <P>
+ * By default there is only one link, which is the one the
+ * LinkListener listens to for the server's asynchronous responses.
+ * Clients that read the responses to their requests themselves can
+ * let the LinkManager open more links to the server with
+ * setMaxLinks(), so concurrent requests don't have to wait for each
+ * other.
  */
 public class LinkManager {
 
@@ -38,10 +49,20 @@ public class LinkManager {
 
     /**
      * volatile because we want internal methods to get the message
-     * that a link was nulled out.
+     * that a link was nulled out. This is the first link, the one the
+     * LinkListener uses.
      */
     protected volatile ClientLink link;
 
+    /** All of the open links, guarded by this LinkManager. */
+    protected List<ClientLink> links = new ArrayList<ClientLink>();
+
+    /** The number of links that can be opened to the server. */
+    protected int maxLinks = 1;
+
+    /** The link each thread has locked. */
+    protected final ThreadLocal<ClientLink> heldLink = new ThreadLocal<ClientLink>();
+
     /** Constructor. */
     protected LinkManager() {}
 
@@ -59,6 +80,20 @@ public class LinkManager {
         return obeyCommandToExit;
     }
 
+    /**
+     * Set the number of links that can be open to the server at the
+     * same time. Only use more than one if the responses to requests
+     * are read by the thread that sent them, a LinkListener only
+     * listens to the first link.
+     */
+    public synchronized void setMaxLinks(int maxLinks) {
+        this.maxLinks = Math.max(1, maxLinks);
+    }
+
+    public synchronized int getMaxLinks() {
+        return maxLinks;
+    }
+
     /**
      * This should be the only method a multi-threaded object uses to
      * gain use of the thread, i.e., on the client side where a GUI
@@ -68,52 +103,51 @@ public class LinkManager {
      * the rejection properly.
      * 
      * @param waitForLock if true, the caller will block in this
-     *        method until the link has been locked for the caller. If
-     *        false, a null will be returned if the lock on the link
+     *        method until a link has been locked for the caller. If
+     *        false, a null will be returned if the lock on a link
      *        couldn't be set for the caller's use.
      * @return a link if the link is locked for the caller's use, null
      *         if the link is not available.
      */
-    public ClientLink getLink(boolean waitForLock) throws java.io.IOException {
+    public synchronized ClientLink getLink(boolean waitForLock)
+            throws java.io.IOException {
 
-        // NOTE: This should be the only place that the link
-        // object gets assigned. Otherwise, the layer can end up
-        // using two different links via different threads.
-        if (link == null) {
-            synchronized (this) {
-                if (link == null) {
-                    link = getLink();
-                    link.setObeyCommandToExit(obeyCommandToExit);
+        while (true) {
+            // NOTE: This should be the only place that the first link
+            // object gets assigned. Otherwise, the layer can end up
+            // using two different links via different threads.
+            if (link == null) {
+                link = openLink();
+            }
+
+            for (ClientLink l : links) {
+                if (l.setLocked(true)) {
+                    heldLink.set(l);
+                    return l;
                 }
             }
-        }
 
-        try {
-            while (!link.setLocked(true)) {
+            if (links.size() < maxLinks) {
+                ClientLink l = openLink();
+                l.setLocked(true);
+                heldLink.set(l);
+                return l;
+            }
 
-                // This handles the case where we don't want to wait
-                // for the link to become available.
-                if (!waitForLock) {
-                    return null;
-                }
+            // This handles the case where we don't want to wait
+            // for the link to become available.
+            if (!waitForLock) {
+                return null;
+            }
 
-                // We will wait here for the link to not be in use.
-                // Catch a link == null in case the link was shut down
-                // in finLink() from another thread. IF we didn't
-                // catch the lock, we stay in the loop.
-                try {
-                    Thread.sleep(300);
-                } catch (java.lang.InterruptedException ie) {
-                }
+            // finLink() and resetLink() wake us up.
+            try {
+                wait();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return null;
             }
-        } catch (NullPointerException npe) {
-            // since probably means link is null, so just return null
-            // in case some other thread tries to do something
-            // tricky..
-            return null;
         }
-
-        return link;
     }
 
     /**
@@ -131,8 +165,7 @@ public class LinkManager {
         if (link == null) {
             synchronized (this) {
                 if (link == null) {
-                    link = getLink();
-                    link.setObeyCommandToExit(obeyCommandToExit);
+                    link = openLink();
                 }
             }
         }
@@ -140,6 +173,17 @@ public class LinkManager {
         return link;
     }
 
+    /**
+     * Create a new link and add it to the links. Called with the
+     * LinkManager locked.
+     */
+    protected ClientLink openLink() throws java.io.IOException {
+        ClientLink l = getLink();
+        l.setObeyCommandToExit(obeyCommandToExit);
+        links.add(l);
+        return l;
+    }
+
     /**
      * Get the ClientLink however it is appropriate for this
      * LinkManager. In this case, the LinkManager will just use the
@@ -169,30 +213,54 @@ public class LinkManager {
      * When a getLink() is called, and the link is reserved for that
      * caller, finLink() MUST be called to release the link for
      * others. If it is not called, no one else will be able to use it.
+     * This has to be called from the thread that called getLink().
      */
     public void finLink() throws IOException {
-        if (link.isCloseLink()) {
-            Debug.message("link", "LinkManager.finLink: closing Link");
-            link.close();
-            link = null;
-        } else {
-            Debug.message("link", "LinkManager.finLink: releasing lock on Link");
-            link.setLocked(false);
+        ClientLink l = heldLink.get();
+        heldLink.remove();
+        finLink(l != null ? l : link);
+    }
+
+    /**
+     * Release a link returned by getLink(boolean), from any thread.
+     */
+    public synchronized void finLink(ClientLink l) throws IOException {
+        if (l == null) {
+            return;
+        }
+
+        try {
+            if (l.isCloseLink()) {
+                Debug.message("link", "LinkManager.finLink: closing Link");
+                links.remove(l);
+                if (l == link) {
+                    link = null;
+                }
+                l.close();
+            } else {
+                Debug.message("link", "LinkManager.finLink: releasing lock on Link");
+                l.setLocked(false);
+            }
+        } finally {
+            notifyAll();
         }
     }
 
     /**
-     * Set the link to null.
+     * Close the links and set the link to null.
      */
-    public void resetLink() {
-        if (link != null) {
+    public synchronized void resetLink() {
+        for (ClientLink l : links) {
             try {
-                link.cleanUp();
-                link.close();
+                l.cleanUp();
+                l.close();
             } catch (IOException ioe) {
                 // Nice try...
             }
         }
+        links.clear();
         link = null;
+        heldLink.remove();
+        notifyAll();
     }
-}
\ No newline at end of file
+}
@@ -109,7 +109,7 @@ public class LinkOMGraphicList extends OMGraphicList implements
     protected synchronized Object _remove(int location) {
         Object ret = super.remove(location);
         if (ret != null) {
-            String id = ((LinkProperties) ((OMGeometry) ret).getAttribute(OMGraphic.APP_OBJECT)).getProperty(LPC_GRAPHICID);
+            String id = getGraphicId((OMGraphic) ret);
             if (id != null) {
                 hash.remove(id.intern());
                 if (Debug.debugging("link")) {
@@ -121,6 +121,17 @@ public class LinkOMGraphicList extends OMGraphicList implements
         return ret;
     }
 
+    /**
+     * Remove the graphic at a location in the list, and its graphic ID from
+     * the ID lookup.
+     *
+     * @param location the location of the OMGraphic to remove.
+     * @return the OMGraphic removed.
+     */
+    public OMGraphic remove(int location) {
+        return (OMGraphic) _remove(location);
+    }
+
     /**
      * Remove the graphic. If this list is not vague, it will also ask
      * sub-OMGraphicLists to remove it if the geometry isn't found on
@@ -204,6 +215,73 @@ public class LinkOMGraphicList extends OMGraphicList implements
         }
     }
 
+    /**
+     * Merge a delta update from the server into this list. The updated
+     * graphics replace the graphics with the same graphic ID in place, and
+     * the graphics with new IDs are added to the end of the list. The
+     * graphics that weren't replaced are generated with the projection,
+     * since the updated graphics have been generated when they were read.
+     *
+     * @param updates the added and changed graphics.
+     * @param proj the projection to generate the kept graphics with, may be
+     *        null.
+     */
+    public synchronized void merge(LinkOMGraphicList updates, Projection proj) {
+        HashMap<String, OMGraphic> byId = new HashMap<String, OMGraphic>();
+        OMGraphicList added = new OMGraphicList();
+        for (OMGraphic graphic : updates) {
+            String id = getGraphicId(graphic);
+            if (id != null && hash.containsKey(id.intern())) {
+                byId.put(id, graphic);
+            } else {
+                added.add(graphic);
+            }
+        }
+
+        OMGraphicList kept = new OMGraphicList();
+        kept.setParallelThreshold(getParallelThreshold());
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            OMGraphic graphic = getOMGraphicAt(i);
+            OMGraphic update = byId.isEmpty() ? null
+                    : byId.remove(getGraphicId(graphic));
+            if (update != null) {
+                setOMGraphicAt(update, i);
+            } else {
+                kept.add(graphic);
+            }
+        }
+
+        if (proj != null) {
+            kept.generate(proj);
+        }
+
+        for (OMGraphic graphic : added) {
+            add(graphic);
+        }
+
+        if (updates.getNeedToRegenerate() || proj == null
+                || proj != updates.getProjection()) {
+            setNeedToRegenerate(true);
+        } else {
+            setNeedToRegenerate(false);
+            setProjection(proj);
+        }
+    }
+
+    /**
+     * Get the graphic ID of an OMGraphic from its LinkProperties.
+     *
+     * @return the graphic ID, or null if it doesn't have one.
+     */
+    protected String getGraphicId(OMGraphic graphic) {
+        Object obj = graphic.getAttribute(OMGraphic.APP_OBJECT);
+        if (obj instanceof LinkProperties) {
+            return ((LinkProperties) obj).getProperty(LPC_GRAPHICID);
+        }
+        return null;
+    }
+
     /**
      * Remove all elements from the graphic list.
      */
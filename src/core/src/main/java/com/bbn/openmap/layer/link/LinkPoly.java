@@ -311,9 +311,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
             numPoints = dis.readInt();
 
             double[] llpoints = new double[numPoints];
-            for (int i = 0; i < numPoints; i++) {
-                llpoints[i] = dis.readFloat();
-            }
+            LinkUtil.readFloats(dis, llpoints, 0, numPoints);
             int units = dis.readByte();
             int nsegs = dis.readInt();
 
@@ -335,11 +333,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
             numPoints = dis.readInt();
             xpoints = new int[numPoints / 2];
             ypoints = new int[numPoints / 2];
-
-            for (int i = 0; i < numPoints / 2; i += 1) {
-                xpoints[i] = dis.readInt();
-                ypoints[i] = dis.readInt();
-            }
+            LinkUtil.readIntPairs(dis, xpoints, ypoints, numPoints / 2);
 
             if (Debug.debugging("linkdetail")) {
                 System.out.println("  X/Y LinkPoly:");
@@ -359,11 +353,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
 
             xpoints = new int[numPoints / 2];
             ypoints = new int[numPoints / 2];
-
-            for (int i = 0; i < numPoints / 2; i += 1) {
-                xpoints[i] = dis.readInt();
-                ypoints[i] = dis.readInt();
-            }
+            LinkUtil.readIntPairs(dis, xpoints, ypoints, numPoints / 2);
             int cMode = dis.readByte();
 
             if (Debug.debugging("linkdetail")) {
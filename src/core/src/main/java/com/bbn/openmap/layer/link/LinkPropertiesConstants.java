@@ -84,6 +84,22 @@ public interface LinkPropertiesConstants {
     public final static String LPC_LINKRASTERIMAGEURL = "riu";
     /** The graphic identifier attribute name. */
     public final static String LPC_GRAPHICID = "gid";
+    /**
+     * The graphic version attribute name, changed by the server when the
+     * graphic changes. Used for delta updates.
+     */
+    public final static String LPC_GRAPHICVERSION = "gv";
+
+    // These constants are for delta updates of the map graphics
+    /**
+     * The graphic IDs and versions the client holds, sent with a map request.
+     */
+    public final static String LPC_HELD_GRAPHICS = "held";
+    /**
+     * Set to "true" on a graphics response that only has the graphics that
+     * changed from the ones held by the client.
+     */
+    public final static String LPC_GRAPHIC_DELTA = "delta";
 
     // These constants are to affect the map as a whole
     /** The latitude of the center of the map in decimal degrees. */
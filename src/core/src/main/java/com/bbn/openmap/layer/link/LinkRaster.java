@@ -674,8 +674,10 @@ public class LinkRaster implements LinkGraphicConstants,
                 }
 
                 Color[] colorTable = new Color[length];
+                int[] colorvalues = new int[length];
+                LinkUtil.readInts(dis, colorvalues, 0, length);
                 for (i = 0; i < length; i++) {
-                    int colorvalue = dis.readInt();
+                    int colorvalue = colorvalues[i];
                     colorTable[i] = ColorFactory.createColor(colorvalue, true);
                     if (Debug.debugging("linkdetail")) {
                         System.out.println("LinkRaster | Color " + i + " =  "
@@ -709,9 +711,7 @@ public class LinkRaster implements LinkGraphicConstants,
                             + " pixels.");
                 }
 
-                for (i = 0; i < length; i++) {
-                    pix[i] = dis.readInt();
-                }
+                LinkUtil.readInts(dis, pix, 0, length);
                 switch (renderType) {
                 case RENDERTYPE_OFFSET:
                     raster = new OMRaster(lat, lon, x, y, w, h, pix);
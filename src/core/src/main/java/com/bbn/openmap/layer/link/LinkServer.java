@@ -62,47 +62,71 @@ public class LinkServer extends Thread implements LinkPropertiesConstants {
         try {
             handleClient();
         } catch (IOException ioe) {
+            disconnected(ioe);
+            System.gc();
+        }
+    }
+
+    /**
+     * Called when the connection to the client is lost, to release
+     * the resources used for the client.
+     * 
+     * @param ioe the exception that ended the connection.
+     */
+    public void disconnected(IOException ioe) {
+        if (link != null) {
             link.cleanUp();
             link = null;
-            if (com.bbn.openmap.util.Debug.debugging("link")) {
-                System.err.println(ioe);
-            }
-            com.bbn.openmap.util.Debug.output("LinkServer: Client disconnected");
-            System.gc();
         }
+        if (com.bbn.openmap.util.Debug.debugging("link")) {
+            System.err.println(ioe);
+        }
+        com.bbn.openmap.util.Debug.output("LinkServer: Client disconnected");
     }
 
     /**
      * handleClient is a method that listens to the link to a client,
-     * and responds to requests that are made.
+     * and responds to requests that are made, one at a time.
      * 
      * @throws IOException
      */
     public void handleClient() throws IOException {
+        while (true) {
+            handleRequest();
+        }
+    }
+
+    /**
+     * Read one request from the client and respond to it. A
+     * LinkServerStarter with worker threads calls this when the client
+     * has sent something, instead of giving each client a thread that
+     * calls handleClient().
+     * 
+     * @throws IOException
+     */
+    public void handleRequest() throws IOException {
         boolean validQuery;
 
-        while (true) {
-            link.readAndParse();
-            validQuery = false;
-
-            // For instance, you could do something like this...
-
-            //          LinkMapRequest graphicsQuery = link.getMapRequest();
-            //          LinkActionRequest gestureQuery =
-            // link.getActionRequest();
-
-            //          if (graphicsQuery != null) {
-            //              getRectangle(graphicsQuery, link);
-            //              validQuery = true;
-            //          }
-            //          if (gestureQuery != null) {
-            //              handleGesture(gestureQuery, link);
-            //              validQuery = true;
-            //          }
-
-            if (!validQuery) {
-                huh(link);
-            }
+        link.readAndParse();
+        validQuery = false;
+
+        // For instance, you could do something like this...
+
+        //          LinkMapRequest graphicsQuery = link.getMapRequest();
+        //          LinkActionRequest gestureQuery =
+        // link.getActionRequest();
+
+        //          if (graphicsQuery != null) {
+        //              getRectangle(graphicsQuery, link);
+        //              validQuery = true;
+        //          }
+        //          if (gestureQuery != null) {
+        //              handleGesture(gestureQuery, link);
+        //              validQuery = true;
+        //          }
+
+        if (!validQuery) {
+            huh(link);
         }
     }
 
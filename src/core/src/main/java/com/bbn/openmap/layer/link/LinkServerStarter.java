@@ -22,8 +22,21 @@
 
 package com.bbn.openmap.layer.link;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The LinkServerStarter is the object that listens for Link clients
@@ -33,6 +46,14 @@ import java.net.Socket;
  * you should also create a new LinkServerStarter to launch it
  * properly. Generally, the main() and startNewServer() methods are
  * the only thing you would need to modify.
+ * <P>
+ * If the number of worker threads is set, the clients don't get their
+ * own threads. A selector watches all of the client connections, and
+ * when a client sends a request, one of the worker threads calls
+ * handleRequest() on the client's LinkServer. This lets one server
+ * handle many clients that only send requests once in a while. The
+ * LinkServers don't get started in this case, and their
+ * handleClient() methods aren't called.
  */
 public class LinkServerStarter {
 
@@ -40,6 +61,11 @@ public class LinkServerStarter {
     public static final int DEFAULT_PORT = 3031;
     /** The port being listened to. */
     protected int serverPort;
+    /**
+     * The number of threads handling requests from all of the clients,
+     * or 0 to give each client its own thread.
+     */
+    protected int workerThreads = 0;
 
     /** Starts the LinkServerStarter listening to the default port. */
     public LinkServerStarter() {
@@ -61,12 +87,29 @@ public class LinkServerStarter {
         return serverPort;
     }
 
+    /**
+     * Set the number of threads that handle requests for all of the
+     * clients. If 0, each client gets its own thread.
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
     /**
      * The method of the parent server that is listening for clients.
      * When a contact is made, a child thread is spawned off to handle
-     * the client.
+     * the client, unless worker threads are used.
      */
     public void run() {
+        if (workerThreads > 0) {
+            runWorkers();
+            return;
+        }
+
         try {
             ServerSocket serverSocket = new ServerSocket(serverPort);
             Socket socket;
@@ -85,6 +128,166 @@ public class LinkServerStarter {
         }
     }
 
+    /**
+     * Listen for clients and their requests with a selector, and hand
+     * the requests to the worker threads.
+     */
+    protected void runWorkers() {
+        ExecutorService workers = Executors.newFixedThreadPool(workerThreads);
+        Selector selector = null;
+        ServerSocketChannel serverChannel = null;
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().bind(new InetSocketAddress(serverPort));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("LinkServerStarter: running on port "
+                    + serverPort + " with " + workerThreads
+                    + " worker threads");
+
+            Queue<ClientConnection> finished = new ConcurrentLinkedQueue<ClientConnection>();
+            List<ClientConnection> requests = new ArrayList<ClientConnection>();
+
+            while (true) {
+                // Connections whose requests have been handled go
+                // back to the selector.
+                ClientConnection connection;
+                while ((connection = finished.poll()) != null) {
+                    connection.register();
+                }
+
+                if (selector.selectedKeys().isEmpty()) {
+                    selector.select();
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        SocketChannel channel = serverChannel.accept();
+                        if (channel != null) {
+                            System.out.println("LinkServer: fielding connection");
+                            accept(channel, selector, finished);
+                        }
+                    } else if (key.isReadable()) {
+                        // The channel has to leave the selector before
+                        // it can be read with blocking streams.
+                        key.cancel();
+                        requests.add((ClientConnection) key.attachment());
+                    }
+                }
+
+                if (!requests.isEmpty()) {
+                    // Deregister the cancelled keys before the workers
+                    // put the channels in blocking mode.
+                    selector.selectNow();
+                    for (ClientConnection request : requests) {
+                        workers.execute(request);
+                    }
+                    requests.clear();
+                }
+            }
+
+        } catch (IOException ioe) {
+            System.err.println("LinkServer: IOException while running:");
+            System.err.println(ioe);
+        } finally {
+            workers.shutdown();
+            try {
+                if (serverChannel != null) {
+                    serverChannel.close();
+                }
+                if (selector != null) {
+                    selector.close();
+                }
+            } catch (IOException ioe) {
+            }
+        }
+    }
+
+    /**
+     * Create the LinkServer for a new client, and start watching the
+     * client's connection. If startNewServer() doesn't return a
+     * LinkServer, its thread is started instead.
+     */
+    protected void accept(SocketChannel channel, Selector selector,
+                          Queue<ClientConnection> finished) throws IOException {
+        Thread server = startNewServer(channel.socket());
+        if (server instanceof LinkServer && ((LinkServer) server).link != null) {
+            new ClientConnection((LinkServer) server, channel, selector, finished).register();
+        } else {
+            server.start();
+        }
+    }
+
+    /**
+     * A client's connection and LinkServer, handling requests on a
+     * worker thread.
+     */
+    protected static class ClientConnection implements Runnable {
+        protected final LinkServer server;
+        protected final SocketChannel channel;
+        protected final Selector selector;
+        protected final Queue<ClientConnection> finished;
+
+        protected ClientConnection(LinkServer server, SocketChannel channel,
+                Selector selector, Queue<ClientConnection> finished) {
+            this.server = server;
+            this.channel = channel;
+            this.selector = selector;
+            this.finished = finished;
+        }
+
+        /**
+         * Watch the connection for the next request. Called on the
+         * selector thread.
+         */
+        protected void register() {
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, this);
+            } catch (IOException ioe) {
+                disconnected(ioe);
+            }
+        }
+
+        /**
+         * Handle the requests the client has sent, then give the
+         * connection back to the selector.
+         */
+        public void run() {
+            try {
+                channel.configureBlocking(true);
+                do {
+                    server.handleRequest();
+                    // Requests already in the link's buffer won't wake
+                    // up the selector.
+                } while (server.link.isInputAvailable());
+
+                finished.add(this);
+                selector.wakeup();
+            } catch (IOException ioe) {
+                disconnected(ioe);
+            } catch (RuntimeException re) {
+                disconnected(new IOException(re));
+            }
+        }
+
+        protected void disconnected(IOException ioe) {
+            server.disconnected(ioe);
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
     /**
      * This method gets called to create a new server to handle a new
      * connection. Thread.start() will get called on the returned
@@ -122,16 +325,35 @@ public class LinkServerStarter {
 
         if (pnumber < 0) {
             System.out.println("Need to start the server with a port number.");
-            System.out.println("Usage: java com.bbn.openmap.layer.link.LinkServerStarter -port <port number>");
+            System.out.println("Usage: java com.bbn.openmap.layer.link.LinkServerStarter -port <port number> [-workers <number of threads>]");
             System.exit(0);
         }
 
         System.out.println("LinkServerStarter: Starting up on port " + pnumber
                 + ".");
         LinkServerStarter serverStarter = new LinkServerStarter(pnumber);
+        serverStarter.setWorkerThreads(getWorkerThreads(argv));
         while (true) {
             serverStarter.run();
         }
     }
 
+    /**
+     * Get the number of worker threads from the -workers argument.
+     * 
+     * @return the number of worker threads, 0 if not specified.
+     */
+    public static int getWorkerThreads(String[] argv) {
+        for (int i = 0; i < argv.length - 1; i++) {
+            if (argv[i].equals("-workers")) {
+                try {
+                    return Math.max(0, Integer.parseInt(argv[i + 1]));
+                } catch (NumberFormatException e) {
+                    System.out.println("Bad number of worker threads: " + argv[i + 1]);
+                }
+            }
+        }
+        return 0;
+    }
+
 }
\ No newline at end of file
@@ -26,9 +26,27 @@ package com.bbn.openmap.layer.link;
 
 import java.io.DataInput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class LinkUtil {
 
+    /**
+     * The size of the buffers used to read blocks of numbers off the
+     * link.
+     */
+    protected static final int DECODE_BUFFER_SIZE = 8192;
+
+    /**
+     * The buffers used to read blocks of numbers, one for each thread
+     * reading from a link, reused for every graphic the thread reads.
+     * ByteBuffers are big-endian, like DataInput.
+     */
+    private static final ThreadLocal<ByteBuffer> decodeBuffers = new ThreadLocal<ByteBuffer>() {
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(DECODE_BUFFER_SIZE);
+        }
+    };
+
     /**
      * readString reads an expected number of characters off a
      * DataInput and creates a String from it.
@@ -37,14 +55,115 @@ public class LinkUtil {
      */
     protected static String readString(DataInput dis, int length)
             throws IOException, ArrayIndexOutOfBoundsException {
-        String ret = null;
         char[] chars = new char[length];
+        ByteBuffer buffer = decodeBuffers.get();
+        int offset = 0;
+        while (offset < length) {
+            int count = Math.min(length - offset, buffer.capacity() / 2);
+            fill(dis, buffer, count * 2);
+            buffer.asCharBuffer().get(chars, offset, count);
+            offset += count;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Read a block of floats off a DataInput, the same as calling
+     * readFloat() for each of them.
+     * 
+     * @param dis the DataInput to read from.
+     * @param values the array to put the floats in.
+     * @param offset the index in values of the first float.
+     * @param count the number of floats to read.
+     * @throws IOException
+     */
+    public static void readFloats(DataInput dis, float[] values, int offset,
+                                  int count) throws IOException {
+        ByteBuffer buffer = decodeBuffers.get();
+        while (count > 0) {
+            int n = Math.min(count, buffer.capacity() / 4);
+            fill(dis, buffer, n * 4);
+            buffer.asFloatBuffer().get(values, offset, n);
+            offset += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Read a block of floats off a DataInput into a double array.
+     * 
+     * @param dis the DataInput to read from.
+     * @param values the array to put the floats in.
+     * @param offset the index in values of the first float.
+     * @param count the number of floats to read.
+     * @throws IOException
+     */
+    public static void readFloats(DataInput dis, double[] values, int offset,
+                                  int count) throws IOException {
+        ByteBuffer buffer = decodeBuffers.get();
+        while (count > 0) {
+            int n = Math.min(count, buffer.capacity() / 4);
+            fill(dis, buffer, n * 4);
+            for (int i = 0; i < n; i++) {
+                values[offset++] = buffer.getFloat(i * 4);
+            }
+            count -= n;
+        }
+    }
 
-        for (int i = 0; i < length; i++) {
-            chars[i] = dis.readChar();
+    /**
+     * Read a block of ints off a DataInput, the same as calling
+     * readInt() for each of them.
+     * 
+     * @param dis the DataInput to read from.
+     * @param values the array to put the ints in.
+     * @param offset the index in values of the first int.
+     * @param count the number of ints to read.
+     * @throws IOException
+     */
+    public static void readInts(DataInput dis, int[] values, int offset,
+                                int count) throws IOException {
+        ByteBuffer buffer = decodeBuffers.get();
+        while (count > 0) {
+            int n = Math.min(count, buffer.capacity() / 4);
+            fill(dis, buffer, n * 4);
+            buffer.asIntBuffer().get(values, offset, n);
+            offset += n;
+            count -= n;
         }
-        ret = new String(chars);
-        return ret;
+    }
+
+    /**
+     * Read pairs of ints off a DataInput, x and then y for each pair.
+     * 
+     * @param dis the DataInput to read from.
+     * @param xs the array to put the first int of each pair in.
+     * @param ys the array to put the second int of each pair in.
+     * @param count the number of pairs to read.
+     * @throws IOException
+     */
+    public static void readIntPairs(DataInput dis, int[] xs, int[] ys,
+                                    int count) throws IOException {
+        ByteBuffer buffer = decodeBuffers.get();
+        int offset = 0;
+        while (offset < count) {
+            int n = Math.min(count - offset, buffer.capacity() / 8);
+            fill(dis, buffer, n * 8);
+            for (int i = 0; i < n; i++) {
+                xs[offset] = buffer.getInt(i * 8);
+                ys[offset++] = buffer.getInt(i * 8 + 4);
+            }
+        }
+    }
+
+    /**
+     * Read bytes off the DataInput into the start of the buffer.
+     */
+    private static void fill(DataInput dis, ByteBuffer buffer, int length)
+            throws IOException {
+        dis.readFully(buffer.array(), 0, length);
+        buffer.clear();
+        buffer.limit(length);
     }
 
     /** Provided as a readability convenience. */
@@ -72,7 +72,7 @@ public class TestServerStarter extends LinkServerStarter {
 
         if (pnumber < 0) {
             System.out.println("Need to start the server with a port number.");
-            System.out.println("Usage: java com.bbn.openmap.layer.link.TestServerStarter -port <port number>");
+            System.out.println("Usage: java com.bbn.openmap.layer.link.TestServerStarter -port <port number> [-workers <number of threads>]");
             System.exit(0);
         }
 
@@ -80,6 +80,7 @@ public class TestServerStarter extends LinkServerStarter {
                 + ".");
 
         TestServerStarter serverStarter = new TestServerStarter(pnumber);
+        serverStarter.setWorkerThreads(getWorkerThreads(argv));
         while (true) {
             serverStarter.run();
         }
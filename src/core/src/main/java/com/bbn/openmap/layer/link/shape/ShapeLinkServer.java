@@ -86,57 +86,54 @@ public class ShapeLinkServer extends LinkServer implements
     }
 
     /**
-     * handleClient is a method that listens to the link to a client, and
-     * responds to requests that are made.
+     * handleRequest reads a request from the client, and responds to
+     * it.
      */
-    public void handleClient() throws IOException {
+    public void handleRequest() throws IOException {
         boolean validQuery;
-        try {
-
-            while (true) {
-                if (Debug.debugging("shape")) {
-                    link.clearBytesWritten();
-                }
 
-                link.readAndParse();
-                validQuery = false;
+        if (Debug.debugging("shape")) {
+            link.clearBytesWritten();
+        }
 
-                // For instance, you could do something like this...
+        link.readAndParse();
+        validQuery = false;
 
-                LinkMapRequest graphicsQuery = link.getMapRequest();
-                // LinkActionRequest gestureQuery =
-                // link.getActionRequest();
+        // For instance, you could do something like this...
 
-                if (graphicsQuery != null) {
-                    getRectangle(graphicsQuery, link);
-                    validQuery = true;
-                }
-                graphicsQuery = null;
+        LinkMapRequest graphicsQuery = link.getMapRequest();
+        // LinkActionRequest gestureQuery =
+        // link.getActionRequest();
 
-                // if (gestureQuery != null){
-                // handleGesture(gestureQuery, link);
-                // validQuery = true;
-                // }
+        if (graphicsQuery != null) {
+            getRectangle(graphicsQuery, link);
+            validQuery = true;
+        }
+        graphicsQuery = null;
 
-                if (!validQuery) {
-                    huh(link);
-                }
+        // if (gestureQuery != null){
+        // handleGesture(gestureQuery, link);
+        // validQuery = true;
+        // }
 
-                if (Debug.debugging("shape")) {
-                    System.out.println("ShapeLinkServer: bytes written for response: "
-                            + link.getBytesWritten());
-                }
-            }
+        if (!validQuery) {
+            huh(link);
+        }
 
-        } catch (IOException ioe) {
-            spatialIndex = null;
-            lineColor = null;
-            fillColor = null;
-            lineProperties = null;
-            throw ioe;
+        if (Debug.debugging("shape")) {
+            System.out.println("ShapeLinkServer: bytes written for response: "
+                    + link.getBytesWritten());
         }
     }
 
+    public void disconnected(IOException ioe) {
+        spatialIndex = null;
+        lineColor = null;
+        fillColor = null;
+        lineProperties = null;
+        super.disconnected(ioe);
+    }
+
     public void setFillColor(Color fColor) {
         fillColor = fColor;
     }
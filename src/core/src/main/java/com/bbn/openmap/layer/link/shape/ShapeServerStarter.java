@@ -74,13 +74,14 @@ public class ShapeServerStarter extends LinkServerStarter {
 
         if (pnumber < 0 || shp == null) {
             System.out.println("Need to start the server with a port number and shape file.");
-            System.err.println("Usage: java com.bbn.openmap.layer.link.shape.ShapeServerStarter <ShapeFile Name.shp> -port <port number>");
+            System.err.println("Usage: java com.bbn.openmap.layer.link.shape.ShapeServerStarter <ShapeFile Name.shp> -port <port number> [-workers <number of threads>]");
             System.exit(-1);
         }
 
         System.out.println("ShapeServerStarter: Starting up on port " + pnumber
                 + ".");
         ShapeServerStarter serverStarter = new ShapeServerStarter(pnumber, shp);
+        serverStarter.setWorkerThreads(getWorkerThreads(argv));
 
         while (true) {
             serverStarter.run();
@@ -43,6 +43,7 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 
 import com.bbn.openmap.dataAccess.shape.DbfHandler;
+import com.bbn.openmap.dataAccess.shape.EsriGraphicFactory;
 import com.bbn.openmap.io.BinaryBufferedFile;
 import com.bbn.openmap.io.BinaryFile;
 import com.bbn.openmap.io.FormatException;
@@ -51,6 +52,7 @@ import com.bbn.openmap.layer.policy.BufferedImageRenderPolicy;
 import com.bbn.openmap.omGraphics.DrawingAttributes;
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.util.PolySimplifier;
 import com.bbn.openmap.proj.ProjMath;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.util.DataBounds;
@@ -76,6 +78,17 @@ import com.bbn.openmap.util.PropUtils;
  * shapeLayer.fillColor=ff000000
  * # plus any other properties used by the DrawingAttributes object.
  * shapeLayer.pointImageURL=&amp;ltURL for image to use for point objects&amp;gt
+ * # Save the R-tree built from the spatial index in a .rtx file next to the
+ * # shape file, and memory-map it in later sessions (false by default)
+ * shapeLayer.persistIndexTree=true
+ * # Simplify polys when zoomed out, so they're off by at most this many
+ * # pixels (0, the default, turns simplification off)
+ * shapeLayer.simplifyTolerance=1
+ * # douglasPeucker (default) or visvalingam
+ * shapeLayer.simplifyMethod=douglasPeucker
+ * # Save the simplification in a .lod file next to the shape file, and reuse
+ * # it in later sessions (false by default)
+ * shapeLayer.persistSimplification=true
  *        
  *        
  * # Optionally, Rule marker names specified in space-separated list
@@ -133,6 +146,27 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
     /** The URL of an image to use for point objects. */
     public final static String pointImageURLProperty = "pointImageURL";
 
+    /**
+     * Whether the spatial index R-tree should be saved next to the shape file
+     * and reused.
+     */
+    public final static String persistIndexTreeProperty = "persistIndexTree";
+
+    /**
+     * How many pixels polys can be simplified by when the map is zoomed out, 0
+     * to not simplify them.
+     */
+    public final static String simplifyToleranceProperty = "simplifyTolerance";
+
+    /** The PolySimplifier method, douglasPeucker or visvalingam. */
+    public final static String simplifyMethodProperty = "simplifyMethod";
+
+    /**
+     * Whether the simplification should be saved next to the shape file and
+     * reused.
+     */
+    public final static String persistSimplificationProperty = "persistSimplification";
+
     /** The spatial index of the shape file to be rendered. */
     protected SpatialIndex spatialIndex;
 
@@ -144,6 +178,10 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
     // For writing out to properties file later.
     String shapeFileName = null;
     String imageURLString = null;
+    boolean persistIndexTree = false;
+    float simplifyTolerance = 0;
+    int simplifyMethod = PolySimplifier.DOUGLAS_PEUCKER;
+    boolean persistSimplification = false;
 
     /**
      * Initializes an empty shape layer.
@@ -196,6 +234,22 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
         if (shapeFileName != null && shapeFileName.length() > 0) {
 
             spatialIndex = SpatialIndex.locateAndSetShapeData(shapeFileName);
+            persistIndexTree = PropUtils.booleanFromProperties(props, realPrefix
+                    + persistIndexTreeProperty, persistIndexTree);
+            simplifyTolerance = PropUtils.floatFromProperties(props, realPrefix
+                    + simplifyToleranceProperty, simplifyTolerance);
+            simplifyMethod = PolySimplifier.getMethod(props.getProperty(realPrefix
+                    + simplifyMethodProperty, PolySimplifier.getMethodName(simplifyMethod)));
+            persistSimplification = PropUtils.booleanFromProperties(props, realPrefix
+                    + persistSimplificationProperty, persistSimplification);
+            if (spatialIndex != null) {
+                spatialIndex.setPersistTree(persistIndexTree);
+                EsriGraphicFactory factory = spatialIndex.getFactory();
+                factory.setSimplifyMethod(simplifyMethod);
+                factory.setSimplifyTolerance(simplifyTolerance);
+                spatialIndex.setPersistSimplification(persistSimplification);
+            }
+
             String dbfFileName = SpatialIndex.dbf(shapeFileName);
 
             try {
@@ -263,6 +317,10 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
         String prefix = PropUtils.getScopedPropertyPrefix(this);
         props.put(prefix + shapeFileProperty, (shapeFileName == null ? "" : shapeFileName));
         props.put(prefix + pointImageURLProperty, (imageURLString == null ? "" : imageURLString));
+        props.put(prefix + persistIndexTreeProperty, Boolean.toString(persistIndexTree));
+        props.put(prefix + simplifyToleranceProperty, Float.toString(simplifyTolerance));
+        props.put(prefix + simplifyMethodProperty, PolySimplifier.getMethodName(simplifyMethod));
+        props.put(prefix + persistSimplificationProperty, Boolean.toString(persistSimplification));
 
         if (drawingAttributes != null) {
             drawingAttributes.setPropertyPrefix(getPropertyPrefix());
@@ -306,11 +364,16 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
         PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, dummyMarker, "Rendering Attributes", "Attributes that determine how the shapes will be drawn.", "com.bbn.openmap.omGraphics.DrawingAttributesPropertyEditor");
 
         list.put(initPropertiesProperty, shapeFileProperty + " " + " " + pointImageURLProperty
-                + " " + dummyMarker + " "
+                + " " + persistIndexTreeProperty + " " + simplifyToleranceProperty + " "
+                + simplifyMethodProperty + " " + persistSimplificationProperty + " " + dummyMarker + " "
                 + AddToBeanContextProperty + " " + MinScaleProperty + " " + MaxScaleProperty);
 
         PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, shapeFileProperty, shapeFileProperty, "Location of Shape file - .shp (File, CURL or relative file path).", "com.bbn.openmap.util.propertyEditor.FUPropertyEditor");
         PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, pointImageURLProperty, pointImageURLProperty, "Image file to use for map location of point data (optional).", "com.bbn.openmap.util.propertyEditor.FUPropertyEditor");
+        PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, persistIndexTreeProperty, "Save Index Tree", "Save the spatial index R-tree next to the shape file, and reuse it.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+        PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, simplifyToleranceProperty, "Simplify Tolerance", "Pixels that shapes can be simplified by when zoomed out, 0 for no simplification.", null);
+        PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, simplifyMethodProperty, "Simplify Method", "How to simplify shapes, douglasPeucker or visvalingam.", null);
+        PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, persistSimplificationProperty, "Save Simplification", "Save the shape simplification next to the shape file, and reuse it.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
 
         return list;
     }
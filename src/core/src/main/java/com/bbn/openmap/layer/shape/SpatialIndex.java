@@ -55,6 +55,7 @@ import com.bbn.openmap.proj.coords.GeoCoordTransformation;
 import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.util.DataBounds;
 import com.bbn.openmap.util.PropUtils;
+import com.bbn.openmap.util.rtree.PackedRTree;
 
 /**
  * A Spatial Index is a variation on a Shape Index, adding the bounding box of
@@ -132,6 +133,28 @@ public class SpatialIndex extends ShapeUtils {
      */
     protected List<Entry> entries;
 
+    /**
+     * An R-tree over the entries, built the first time the index is searched.
+     */
+    protected PackedRTree tree;
+
+    /**
+     * Whether the R-tree should be saved in a file next to the shape file, and
+     * memory-mapped from there the next time the shape file is opened.
+     */
+    protected boolean persistTree = false;
+
+    /**
+     * Whether the vertex significance used for simplifying polys should be
+     * saved in a file next to the shape file, and loaded from there.
+     */
+    protected boolean persistSimplification = false;
+
+    /**
+     * Set once the simplification file has been loaded or written.
+     */
+    private boolean simplificationChecked = false;
+
     /**
      * A factory object to use to create OMGraphics from the shp file.
      */
@@ -177,6 +200,34 @@ public class SpatialIndex extends ShapeUtils {
         return ret;
     }
 
+    /**
+     * Figures out the R-tree file name from the shp file name.
+     * 
+     * @param shpFileName
+     * @return rtx file name from shape file name
+     */
+    public static String rtx(String shpFileName) {
+        String ret = null;
+        if (shpFileName != null) {
+            ret = shpFileName.substring(0, shpFileName.indexOf(".shp")) + ".rtx";
+        }
+        return ret;
+    }
+
+    /**
+     * Figures out the simplification file name from the shp file name.
+     * 
+     * @param shpFileName
+     * @return lod file name from shape file name
+     */
+    public static String lod(String shpFileName) {
+        String ret = null;
+        if (shpFileName != null) {
+            ret = shpFileName.substring(0, shpFileName.indexOf(".shp")) + ".lod";
+        }
+        return ret;
+    }
+
     /**
      * Figures out the dbf file name from the shp file name.
      * 
@@ -442,10 +493,185 @@ public class SpatialIndex extends ShapeUtils {
         this.factory = factory;
     }
 
+    /**
+     * Set whether the R-tree built over the spatial index should be saved in a
+     * file next to the shape file (see rtx()), so later sessions can
+     * memory-map it instead of reading the whole spatial index and building
+     * the tree again. Only used for local shape files with data in decimal
+     * degrees, and only if the directory is writable. The saved tree is
+     * rebuilt if the shp or ssx files are newer than it.
+     * 
+     * @param persistTree true to save and reuse the tree file.
+     */
+    public void setPersistTree(boolean persistTree) {
+        this.persistTree = persistTree;
+    }
+
+    public boolean isPersistTree() {
+        return persistTree;
+    }
+
+    /**
+     * Set whether the vertex significance the factory uses to simplify polys
+     * should be saved in a file next to the shape file (see lod()), so later
+     * sessions don't have to compute it again. When the file is written, the
+     * significance is computed for all the records in the shape file. Only
+     * used if the factory has a simplify tolerance, for local shape files with
+     * data in decimal degrees. The file is written again if the shp file is
+     * newer than it.
+     * 
+     * @param persistSimplification true to save and reuse the file.
+     */
+    public void setPersistSimplification(boolean persistSimplification) {
+        this.persistSimplification = persistSimplification;
+        simplificationChecked = false;
+    }
+
+    public boolean isPersistSimplification() {
+        return persistSimplification;
+    }
+
+    /**
+     * Load the factory's vertex significance from the lod file, or compute it
+     * for every record and save it there, if persistSimplification is set.
+     * Only does anything the first time it is called.
+     * 
+     * @param shpFile the open shape file.
+     * @param dataTransform GeoCoordTransform for pre-projected data.
+     * @throws IOException
+     * @throws FormatException
+     */
+    protected synchronized void checkSimplification(BinaryFile shpFile,
+                                                    GeoCoordTransformation dataTransform)
+            throws IOException, FormatException {
+        EsriGraphicFactory factory = getFactory();
+        if (simplificationChecked || !persistSimplification || factory.getSimplifyTolerance() <= 0
+                || dataTransform != null || shpFileName == null) {
+            return;
+        }
+        simplificationChecked = true;
+
+        File shpLocalFile = new File(shpFileName);
+        if (!shpLocalFile.exists()) {
+            return;
+        }
+
+        File lodFile = new File(lod(shpFileName));
+        if (lodFile.exists() && lodFile.lastModified() >= shpLocalFile.lastModified()) {
+            try {
+                if (factory.loadSimplification(lodFile)) {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine("loaded " + factory.getSimplificationSize()
+                                + " simplified records from " + lodFile);
+                    }
+                    return;
+                }
+            } catch (IOException ioe) {
+                logger.warning("couldn't load " + lodFile + ", computing again: "
+                        + ioe.getMessage());
+            }
+        }
+
+        // Creating the graphics for the records fills in the factory cache.
+        EsriGraphicFactory.ReadByteTracker byteTracker = new EsriGraphicFactory.ReadByteTracker();
+        for (Iterator<Entry> it = entryIterator(dataTransform); it.hasNext();) {
+            factory.makeEsriGraphicFromRecord(it.next().byteOffset, shpFile, null, null, byteTracker);
+        }
+
+        try {
+            factory.saveSimplification(lodFile);
+        } catch (IOException ioe) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("couldn't save simplification to " + lodFile + ": "
+                        + ioe.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Get the R-tree used to search the spatial index, loading or building it
+     * if needed. The ids in the tree are the byte offsets of the records in
+     * the shape file.
+     * 
+     * @param dataTransform GeoCoordTransform for pre-projected data.
+     * @return PackedRTree
+     * @throws IOException
+     * @throws FormatException
+     */
+    public synchronized PackedRTree getIndexTree(GeoCoordTransformation dataTransform)
+            throws IOException, FormatException {
+        if (tree != null) {
+            return tree;
+        }
+
+        File treeFile = null;
+        if (persistTree && dataTransform == null && shpFileName != null) {
+            File shpFile = new File(shpFileName);
+            if (shpFile.exists()) {
+                treeFile = new File(rtx(shpFileName));
+                File ssxFile = new File(ssx(shpFileName));
+                long lastModified = Math.max(shpFile.lastModified(), ssxFile.lastModified());
+                if (treeFile.exists() && treeFile.lastModified() >= lastModified) {
+                    try {
+                        tree = PackedRTree.load(treeFile);
+                        if (logger.isLoggable(Level.FINE)) {
+                            logger.fine("mapped " + tree.size() + " entries from " + treeFile);
+                        }
+                    } catch (IOException ioe) {
+                        logger.warning("couldn't load " + treeFile + ", rebuilding: "
+                                + ioe.getMessage());
+                    }
+                }
+            }
+        }
+
+        if (tree == null) {
+            List<Entry> entryList = new ArrayList<Entry>();
+            for (Iterator<Entry> it = entryIterator(dataTransform); it.hasNext();) {
+                entryList.add(it.next());
+            }
+
+            int numEntries = entryList.size();
+            double[] boxes = new double[numEntries * 4];
+            int[] offsets = new int[numEntries];
+            for (int i = 0; i < numEntries; i++) {
+                Entry entry = entryList.get(i);
+                boxes[i * 4] = entry.xMin;
+                boxes[i * 4 + 1] = entry.yMin;
+                boxes[i * 4 + 2] = entry.xMax;
+                boxes[i * 4 + 3] = entry.yMax;
+                offsets[i] = entry.byteOffset;
+            }
+            tree = PackedRTree.build(boxes, offsets);
+
+            if (treeFile != null) {
+                try {
+                    tree.write(treeFile);
+                } catch (IOException ioe) {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine("couldn't save R-tree to " + treeFile + ": " + ioe.getMessage());
+                    }
+                }
+            }
+        }
+
+        if (bounds == null) {
+            double[] treeBounds = tree.getBounds();
+            if (treeBounds != null) {
+                bounds = new ESRIBoundingBox(treeBounds[0], treeBounds[1]);
+                bounds.addPoint(treeBounds[2], treeBounds[3]);
+            }
+        }
+
+        return tree;
+    }
+
     /**
      * Locates OMGraphics in the shape file that intersect with the given
-     * rectangle. The spatial index is searched for intersections and the
-     * appropriate OMGraphics are created from the shape file.
+     * rectangle. The R-tree over the spatial index is searched for
+     * intersections, so only the entries near the rectangle are looked at, and
+     * the appropriate OMGraphics are created from the shape file. Entries
+     * whose bounding boxes just touch the rectangle are included.
      * 
      * @param xmin the smaller of the x coordinates
      * @param ymin the smaller of the y coordinates
@@ -493,40 +719,41 @@ public class SpatialIndex extends ShapeUtils {
         EsriGraphicFactory factory = getFactory();
         factory.setDataCoordTransformation(dataProj);
 
+        checkSimplification(shpFile, dataProj);
+
         OMGraphicList labels = new OMGraphicList();
         list.add(labels);
 
-        for (Iterator<?> it = entryIterator(dataProj); it.hasNext();) {
-            Entry entry = (Entry) it.next();
-
-            if (entry.intersects(xmin, ymin, xmax, ymax)) {
-
-                try {
+        // The hits are byte offsets, in ascending order, so the shape file is
+        // read from front to back.
+        int[] hits = getIndexTree(dataProj).search(xmin, ymin, xmax, ymax);
 
-                    OMGraphic omg = (OMGraphic) factory.makeEsriGraphicFromRecord(entry.getByteOffset(), shpFile, drawingAttributes, pointIcon, byteTracker);
+        for (int byteOffset : hits) {
+            try {
 
-                    if (omg != null) {
+                OMGraphic omg = (OMGraphic) factory.makeEsriGraphicFromRecord(byteOffset, shpFile, drawingAttributes, pointIcon, byteTracker);
 
-                        if (dbfFile != null) {
-                            omg = dbfFile.evaluate(omg, labels, mapProj);
+                if (omg != null) {
 
-                            if (omg == null) {
-                                // Failed dbf test, should be ignored.
-                                continue;
-                            }
-                        }
+                    if (dbfFile != null) {
+                        omg = dbfFile.evaluate(omg, labels, mapProj);
 
-                        if (mapProj != null) {
-                            omg.generate(mapProj);
+                        if (omg == null) {
+                            // Failed dbf test, should be ignored.
+                            continue;
                         }
-                        list.add(omg);
                     }
 
-                } catch (IOException ioe) {
-                    logger.warning("IOException message: " + ioe.getMessage());
-                    ioe.printStackTrace();
-                    break;
+                    if (mapProj != null) {
+                        omg.generate(mapProj);
+                    }
+                    list.add(omg);
                 }
+
+            } catch (IOException ioe) {
+                logger.warning("IOException message: " + ioe.getMessage());
+                ioe.printStackTrace();
+                break;
             }
         }
 
@@ -1023,6 +1250,12 @@ public class SpatialIndex extends ShapeUtils {
                 entries = null;
             }
 
+            if (done) {
+                synchronized (this) {
+                    tree = null;
+                }
+            }
+
             return true;
         } catch (IOException ioe) {
 
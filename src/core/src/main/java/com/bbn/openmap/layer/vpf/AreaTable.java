@@ -48,6 +48,9 @@ public class AreaTable extends PrimitiveTable {
     /** the column number of our start_edge column */
     final private int ringStartColumn;
 
+    /** the face ID and start_edge columns, read from the ring table */
+    final private int[] ringColumns;
+
     /** TilingAdapters used to retrieve edge table information */
     final private TilingAdapter edgeRightFaceAdapter, edgeLeftFaceAdapter, edgeRightEdgeAdapter,
             edgeLeftEdgeAdapter;
@@ -86,6 +89,8 @@ public class AreaTable extends PrimitiveTable {
         if ((faceIDColumn = rings.whatColumn(Constants.RNG_FACEID)) == -1) {
             throw new FormatException("ring has no face_id: " + rings.filename);
         }
+
+        ringColumns = new int[] { faceIDColumn, ringStartColumn };
     }
 
     /**
@@ -115,11 +120,13 @@ public class AreaTable extends PrimitiveTable {
     public int computeEdgePoints(List<Object> facevec, List<CoordFloatString> allLLPoints)
             throws FormatException {
         int ring_ptr = ((Number) facevec.get(ringIDColumn)).intValue();
-        List<Object> ring1 = new ArrayList<Object>(rings.getColumnCount());
-        rings.getRow(ring1, ring_ptr);
-        int fac_id = ((Number) ring1.get(faceIDColumn)).intValue();
+        int[] ring1 = new int[2];
+        if (!rings.getInts(ring_ptr, ringColumns, ring1)) {
+            return 0;
+        }
+        int fac_id = ring1[0];
 
-        int startedgeid = ((Number) ring1.get(ringStartColumn)).intValue();
+        int startedgeid = ring1[1];
         if (startedgeid <= 0) {
             return 0;
         }
@@ -19,12 +19,17 @@ package com.bbn.openmap.layer.vpf;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -614,10 +619,10 @@ public class CoverageTable {
             return false;
         }
 
-        List<Object> v = new ArrayList<Object>(); // hold fci row contents
-
         try {
-            int primitiveIdColIndex = fci.getTilePrimitiveIdColIndex();
+            // Only the primitive ID is needed from the fci rows.
+            int[] primitiveIdColumn = { fci.getTilePrimitiveIdColIndex() };
+            int[] primitiveIdValue = new int[1];
             DcwThematicIndex thematicIndex = fci.getThematicIndex();
             Object[] indexes = thematicIndex.getValueIndexes();
 
@@ -661,12 +666,12 @@ public class CoverageTable {
                         // primitiveID looks like it's the fac_id of the feature
                         // in the tile.
                         int featurePrimID = featureID[j];
-                        if (!fci.getRow(v, featurePrimID)) {
+                        if (!fci.getInts(featurePrimID, primitiveIdColumn, primitiveIdValue)) {
                             // couldn't get row for some reason
                             continue;
                         }
 
-                        int primitiveID = VPFUtil.objectToInt(v.get(primitiveIdColIndex));
+                        int primitiveID = primitiveIdValue[0];
                         // for attribute retrieval, we need the featurePrimID.
                         tables.drawFeature(primitiveID, warehouse, ll1, ll2, dpplat, dpplon, currentFeature, featurePrimID);
                     }
@@ -695,6 +700,14 @@ public class CoverageTable {
      * This is a method specifically designed for the
      * VPFAutoFeatureGraphicWarehouse, and the CoverageTable knows to check with
      * the warehouse and use the PriorityHolders to fetch features.
+     * <P>
+     * The feature class tables are read on the calling thread, and the matched
+     * features are gathered into groups of features from the same tile. The
+     * primitives for each group are read with their own tile tables, on the
+     * warehouse load executor if it has more than one thread. The OMGraphics
+     * are added to the PriorityHolders in the order the features were read,
+     * after all of the groups have been read. Without the executor, each group
+     * is read and added as soon as all of its features have been found.
      * 
      * @param warehouse VPFAutoFeatureGraphicWarehouse
      * @param ll1 upper left of coverage area
@@ -712,80 +725,92 @@ public class CoverageTable {
 
         // The map of feature names versus their table information
         Map<String, FeatureClassInfo> featureInfo = getFeatureClasses();
-        TableHolder tables = new TableHolder(this);
 
-        // Loop through the features, one by one.
-        for (Entry<String, FeatureClassInfo> entry : featureInfo.entrySet()) {
+        String libraryname = "";
+        if (cat != null) {
+            libraryname = cat.libraryname;
+        }
 
-            String featureName = entry.getKey();
-            FeatureClassInfo fci = entry.getValue();
+        ExecutorService executor = (warehouse.getLoadThreads() > 1) ? warehouse.getLoadExecutor()
+                : null;
+        List<TileFeatures> groups = new ArrayList<TileFeatures>();
+        List<Future<OMGraphic[]>> futures = new ArrayList<Future<OMGraphic[]>>();
+        TileFeatures group = null;
 
-            if (fci == null) {
-                continue;
-            }
-            
-            int fciFeatureIDCol = fci.whatColumn(DcwRecordFile.ID_COLUMN_NAME);
-            char featureType = whatFeatureType(warehouse, featureName);
+        try {
+            // Loop through the features, one by one.
+            for (Entry<String, FeatureClassInfo> entry : featureInfo.entrySet()) {
 
-            fci.checkInit();
-            if (logger.isLoggable(Level.FINE)) {
-                logger.fine(" for " + featureName + ": " + fci.getDescription());
-            }
+                String featureName = entry.getKey();
+                FeatureClassInfo fci = entry.getValue();
 
-            /**
-             * The features are made up of various FACC codes, that more
-             * precisely categorize what each feature is. We're going to look at
-             * each entry of this particular feature type, and use the
-             * PriorityHolders from the warehouse to determine when it gets
-             * drawn.
-             */
-            int faccIndex = fci.getFaccIndex();
+                if (fci == null) {
+                    continue;
+                }
 
-            if (faccIndex < 0) {
-                continue;
-            }
+                int fciFeatureIDCol = fci.whatColumn(DcwRecordFile.ID_COLUMN_NAME);
+                char featureType = whatFeatureType(warehouse, featureName);
 
-            int primitiveIDIndex = fci.getTilePrimitiveIdColIndex();
-            int tileIDIndex = fci.getTileIdIndex();
+                fci.checkInit();
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine(" for " + featureName + ": " + fci.getDescription());
+                }
 
-            TileDirectory currentTile = null;
+                /**
+                 * The features are made up of various FACC codes, that more
+                 * precisely categorize what each feature is. We're going to
+                 * look at each entry of this particular feature type, and use
+                 * the PriorityHolders from the warehouse to determine when it
+                 * gets drawn.
+                 */
+                int faccIndex = fci.getFaccIndex();
 
-            boolean needToFindOurselves = true;
+                if (faccIndex < 0) {
+                    continue;
+                }
 
-            TilingAdapter fciTilingAdapter = fci.getTilingAdapter();
-            if (fciTilingAdapter == null) {
-                // no way to find primitives
-                continue;
-            }
+                int primitiveIDIndex = fci.getTilePrimitiveIdColIndex();
+                int tileIDIndex = fci.getTileIdIndex();
 
-            // There are going to be a variable number of columns.
-            // We're interested in the f_code, tile_id, and the
-            // primitive id (fci independent depending on type).
-            int oldTileID = -2; // -1 is "untiled" tile_id
-            int getrow = 1;
-
-            /**
-             * fcirow holds all the information for a particular feature. The
-             * fci lets you know what each column represents.
-             */
-            for (List<Object> fcirow = new ArrayList<Object>(); fci.getRow(fcirow, getrow++);) {
+                TilingAdapter fciTilingAdapter = fci.getTilingAdapter();
+                if (fciTilingAdapter == null) {
+                    // no way to find primitives
+                    continue;
+                }
 
-                String facc = (String) fcirow.get(faccIndex);
+                // There are going to be a variable number of columns.
+                // We're interested in the f_code, tile_id, and the
+                // primitive id (fci independent depending on type).
+                int oldTileID = -2; // -1 is "untiled" tile_id
+                int getrow = 1;
 
                 /**
-                 * Get the list of FeaturePriorityHolders that correspond to
-                 * this particlar facc. This list is just an organizational tool
-                 * so we don't have to run through all of the FPHs.
+                 * fcirow holds all the information for a particular feature.
+                 * The fci lets you know what each column represents. A new
+                 * one is used after a row has been added to a group.
                  */
-                List<FeaturePriorityHolder> list = warehouse.faccLookup.get(facc);
-                if (list != null) {
-                    boolean foundMatch = false;
-                    for (FeaturePriorityHolder ph : list) {
-                        /**
-                         * Checking to see if the attributes for a particular
-                         * feature match this particular FPH.
-                         */
-                        if (ph.matches(facc, fci, fcirow)) {
+                for (List<Object> fcirow = new ArrayList<Object>(); fci.getRow(fcirow, getrow++);) {
+
+                    String facc = (String) fcirow.get(faccIndex);
+                    boolean keepRow = false;
+
+                    /**
+                     * Get the list of FeaturePriorityHolders that correspond to
+                     * this particlar facc. This list is just an organizational
+                     * tool so we don't have to run through all of the FPHs.
+                     */
+                    List<FeaturePriorityHolder> list = warehouse.faccLookup.get(facc);
+                    if (list != null) {
+                        boolean foundMatch = false;
+                        for (FeaturePriorityHolder ph : list) {
+                            /**
+                             * Checking to see if the attributes for a
+                             * particular feature match this particular FPH.
+                             */
+                            if (!ph.matches(facc, fci, fcirow)) {
+                                continue;
+                            }
+
                             foundMatch = true;
                             if (logger.isLoggable(Level.FINE)) {
                                 logger.fine("+++ MATCH FOUND for " + facc + " tileid:"
@@ -793,11 +818,6 @@ public class CoverageTable {
                                         + fcirow.get(primitiveIDIndex));
                             }
 
-                            // Now we have the PriorityHolder that should
-                            // receive the OMGraphic created for this feature.
-                            // Use the CoverageTable to create it via the
-                            // warehouse,
-
                             if (logger.isLoggable(Level.FINER)) {
                                 logger.finer("CoverageTable new feature " + fcirow);
                             }
@@ -807,13 +827,14 @@ public class CoverageTable {
                             // With tileID, find the tile and figure out if it
                             // is needed.
                             if (tileID != oldTileID) {
-                                tables.close();
+                                finish(group, executor, groups, futures);
+                                group = null;
 
                                 if (logger.isLoggable(Level.FINER)) {
                                     logger.finer("opening new tile (" + tileID + ")");
                                 }
 
-                                currentTile = (tileID == -1) ? new TileDirectory()
+                                TileDirectory currentTile = (tileID == -1) ? new TileDirectory()
                                         : cat.getTileWithID(tileID);
 
                                 if (currentTile == null) {
@@ -830,18 +851,10 @@ public class CoverageTable {
                                 if ((tileID == -1)
                                         || currentTile.inRegion(ll1.getLatitude(), ll2.getLatitude(), ll2.getLongitude(), ll1.getLongitude())) {
 
-                                    // We should only be in here once, I
-                                    // think, if the tile IDs are all stored
-                                    // in order. If the tile IDs are laid out
-                                    // in the FCI in jumbled order, only the
-                                    // first group of features will be
-                                    // gathered because the tile will appear
-                                    // cached.
-                                    String libraryname = "";
-                                    if (cat != null) {
-                                        libraryname = cat.libraryname;
-                                    }
-
+                                    // If the tile IDs are laid out in the FCI
+                                    // in jumbled order, only the first group
+                                    // of features will be gathered because
+                                    // the tile will appear cached.
                                     if (!warehouse.needToFetchTileContents(libraryname, featureName, currentTile)) {
                                         if (Debug.debugging("vpf")) {
                                             Debug.output("CoverageTable: Loaded Cached List for "
@@ -855,80 +868,200 @@ public class CoverageTable {
                                                 + " features for " + currentTile);
                                     }
 
-                                    try {
-                                    	tables.setTables(featureType, currentTile);
-                                    } catch (FormatException fe) {
-                                    	System.out.println("missing tile, let's ignore that");
-                                    	continue;
-                                    }
-
-                                    // Only need to do this once for a new
-                                    // fci...
-                                    if (needToFindOurselves) {
-                                        needToFindOurselves = false;
-                                        tables.findYourself(fci);
-                                    }
-
-                                } else {
-                                    tables.close();
+                                    group = new TileFeatures(warehouse, fci, featureName, featureType, currentTile, ll1, ll2, dpplat, dpplon);
                                 }
                                 oldTileID = tileID;
                             }
 
-                            // If currentTile == null, then the tile
-                            // wasn't found, or it is outside the area of
-                            // interest. The tables in the TableHolder
-                            // (tables) will all be null, and the tables
-                            // drawFeature will return false...
+                            // If group == null, then the tile is outside the
+                            // area of interest, and the feature is skipped.
+                            if (group != null) {
+                                int primitiveID = fciTilingAdapter.getPrimId(fcirow);
+                                int featureID = ((Number) fcirow.get(fciFeatureIDCol)).intValue();
+                                group.add(primitiveID, featureID, ph, fcirow);
+                                keepRow = true;
+                            }
+                        }
 
-                            int primitiveID = fciTilingAdapter.getPrimId(fcirow);
-                            int featureID = ((Number) fcirow.get(fciFeatureIDCol)).intValue();
-                            
-                            OMGraphic omg = tables.drawFeature(primitiveID, warehouse, ll1, ll2, dpplat, dpplon, featureName, featureID);
+                        if (!foundMatch) {
+                            if (logger.isLoggable(Level.FINE)) {
+                                logger.fine("--- NO MATCH FOUND for " + facc + ", type:"
+                                        + featureType + ", tileid:" + fcirow.get(tileIDIndex)
+                                        + ", primID:" + fcirow.get(primitiveIDIndex));
+                            }
+                        }
+                    } else if (warehouse.debugFacc == null) {
+                        if (logger.isLoggable(Level.FINE)) {
+                            logger.info("didn't find facc list for: " + facc);
+                        }
+                    }
 
-                            if (omg != null) {
+                    if (keepRow) {
+                        fcirow = new ArrayList<Object>(fcirow.size());
+                    }
+                }
+                fci.close();
+            }
+            finish(group, executor, groups, futures);
+
+            // Hand the OMGraphics to the PriorityHolders in the order the
+            // features were read, so the rendering order is the same no
+            // matter which tiles were read first.
+            for (int i = 0; i < groups.size(); i++) {
+                groups.get(i).merge(futures.get(i).get());
+                // Let the rows and graphics go.
+                groups.set(i, null);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof FormatException) {
+                throw (FormatException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new FormatException("CoverageTable.getFeatures: " + cause);
+        } finally {
+            for (Future<OMGraphic[]> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Called when all of the features of a group have been found. Starts
+     * reading the group on the executor, if there is one, otherwise reads it
+     * and adds its OMGraphics to the PriorityHolders right away, so its
+     * feature rows can be let go.
+     */
+    private void finish(TileFeatures group, ExecutorService executor, List<TileFeatures> groups,
+                        List<Future<OMGraphic[]>> futures) throws FormatException {
+        if (group == null) {
+            return;
+        }
+        if (executor != null) {
+            groups.add(group);
+            futures.add(executor.submit(group));
+        } else {
+            group.merge(group.call());
+        }
+    }
 
-                                warehouse.handleInformationForOMGraphic(omg, fci, fcirow);
-                                ph.add(omg);
+    /**
+     * The features matched by PriorityHolders in one tile of a feature class,
+     * in the order they were found in the feature table. The features are read
+     * with a TableHolder of their own, so groups for different tiles can be
+     * read at the same time.
+     */
+    protected class TileFeatures implements Callable<OMGraphic[]> {
+
+        final VPFAutoFeatureGraphicWarehouse warehouse;
+        final FeatureClassInfo fci;
+        final String featureName;
+        final char featureType;
+        final TileDirectory tile;
+        final LatLonPoint ll1;
+        final LatLonPoint ll2;
+        final double dpplat;
+        final double dpplon;
+
+        int size = 0;
+        int[] primitiveIDs = new int[16];
+        int[] featureIDs = new int[16];
+        final List<FeaturePriorityHolder> holders = new ArrayList<FeaturePriorityHolder>();
+        final List<List<Object>> fcirows = new ArrayList<List<Object>>();
+
+        protected TileFeatures(VPFAutoFeatureGraphicWarehouse warehouse, FeatureClassInfo fci,
+                String featureName, char featureType, TileDirectory tile, LatLonPoint ll1,
+                LatLonPoint ll2, double dpplat, double dpplon) {
+            this.warehouse = warehouse;
+            this.fci = fci;
+            this.featureName = featureName;
+            this.featureType = featureType;
+            this.tile = tile;
+            this.ll1 = ll1;
+            this.ll2 = ll2;
+            this.dpplat = dpplat;
+            this.dpplon = dpplon;
+        }
 
-                                if (logger.isLoggable(Level.FINEST)) {
-                                    StringBuffer pout = new StringBuffer();
-                                    for (Object obj : fcirow) {
-                                        pout.append(obj).append(',');
-                                    }
-                                    logger.finest(pout.toString());
-                                }
-                            }
-                        } else {
-                            // NOTE, this else statement is just for checking
-                            // buoys.
-                            // if (ph.facc.equals(facc)) {
-                            // logger.info("something is getting blown off");
-                            // ph.matches(facc, fci, fcirow);
-                            // }
-                        }
+        /**
+         * Add a feature to the group.
+         * 
+         * @param primitiveID the ID of the primitive in the tile.
+         * @param featureID the ID of the feature in the feature table.
+         * @param ph the PriorityHolder the OMGraphic gets added to.
+         * @param fcirow the feature table row, for the feature info handler.
+         */
+        protected void add(int primitiveID, int featureID, FeaturePriorityHolder ph,
+                           List<Object> fcirow) {
+            if (size == primitiveIDs.length) {
+                primitiveIDs = Arrays.copyOf(primitiveIDs, size * 2);
+                featureIDs = Arrays.copyOf(featureIDs, size * 2);
+            }
+            primitiveIDs[size] = primitiveID;
+            featureIDs[size] = featureID;
+            holders.add(ph);
+            fcirows.add(fcirow);
+            size++;
+        }
 
-                        // And add it to the ph omgraphic list for
-                        // retrieval a little bit later.
+        /**
+         * Read the primitives for the features and have the warehouse create
+         * OMGraphics for them.
+         * 
+         * @return the OMGraphics, in the order the features were added. Some
+         *         may be null, if the warehouse didn't create one.
+         */
+        public OMGraphic[] call() throws FormatException {
+            OMGraphic[] omgs = new OMGraphic[size];
+            TableHolder tables = new TableHolder(CoverageTable.this);
+            try {
+                tables.setTables(featureType, tile);
+            } catch (FormatException fe) {
+                logger.fine("missing tile " + tile + ", ignoring it");
+                tables.close();
+                return omgs;
+            }
 
-                    }
+            try {
+                synchronized (fci) {
+                    tables.findYourself(fci);
+                }
+                for (int i = 0; i < size; i++) {
+                    omgs[i] = tables.drawFeature(primitiveIDs[i], warehouse, ll1, ll2, dpplat, dpplon, featureName, featureIDs[i]);
+                }
+            } finally {
+                tables.close();
+            }
+            return omgs;
+        }
 
-                    if (!foundMatch) {
-                        if (logger.isLoggable(Level.FINE)) {
-                            logger.fine("--- NO MATCH FOUND for " + facc + ", type:" + featureType
-                                    + ", tileid:" + fcirow.get(tileIDIndex) + ", primID:"
-                                    + fcirow.get(primitiveIDIndex));
-                        }
-                    }
-                } else if (warehouse.debugFacc == null) {
-                    if (logger.isLoggable(Level.FINE)) {
-                        logger.info("didn't find facc list for: " + facc);
+        /**
+         * Add the OMGraphics created by call() to their PriorityHolders.
+         */
+        protected void merge(OMGraphic[] omgs) {
+            for (int i = 0; i < size; i++) {
+                OMGraphic omg = omgs[i];
+                if (omg == null) {
+                    continue;
+                }
+
+                List<Object> fcirow = fcirows.get(i);
+                warehouse.handleInformationForOMGraphic(omg, fci, fcirow);
+                holders.get(i).add(omg);
+
+                if (logger.isLoggable(Level.FINEST)) {
+                    StringBuffer pout = new StringBuffer();
+                    for (Object obj : fcirow) {
+                        pout.append(obj).append(',');
                     }
+                    logger.finest(pout.toString());
                 }
             }
-            fci.close();
         }
-        tables.close();
     }
 
     protected OMGraphic getOMGraphicForFeature() {
@@ -18,6 +18,7 @@
 package com.bbn.openmap.layer.vpf;
 
 import java.io.EOFException;
+import java.io.IOException;
 
 import com.bbn.openmap.io.BinaryFile;
 import com.bbn.openmap.io.FormatException;
@@ -568,6 +569,63 @@ public class DcwColumnInfo {
         //unreached
     }
 
+    /**
+     * Read an element of the type specified by the column as an int, without
+     * creating an object for it. Short and int columns are read directly,
+     * other columns are parsed and converted the same way
+     * VPFUtil.objectToInt() does.
+     *
+     * @return the value read from the input file, Integer.MIN_VALUE for
+     *         null values and non-integral columns.
+     * @exception EOFException an end-of-file was encountered before
+     *            reading any of the field
+     * @exception FormatException some data-consistency check failed
+     *            while reading the data
+     * @see VPFUtil#objectToInt(Object)
+     */
+    public int parseInt(BinaryFile inputFile) throws EOFException,
+            FormatException {
+        switch (fieldType) {
+        case VPF_COLUMN_SHORT: {
+            int v = inputFile.readShort();
+            return (v == Short.MIN_VALUE + 1) ? Integer.MIN_VALUE : v;
+        }
+        case VPF_COLUMN_INT: {
+            int v = inputFile.readInteger();
+            return (v == Integer.MIN_VALUE + 1) ? Integer.MIN_VALUE : v;
+        }
+        default:
+            return VPFUtil.objectToInt(parseField(inputFile));
+        }
+    }
+
+    /**
+     * Move past an element of the type specified by the column, without
+     * creating an object for fixed length fields.
+     *
+     * @exception EOFException an end-of-file was encountered before
+     *            reading all of the field
+     * @exception FormatException some data-consistency check failed
+     *            while reading the data
+     */
+    public void skipField(BinaryFile inputFile) throws EOFException,
+            FormatException {
+        int length = fieldLength();
+        if (length < 0) {
+            parseField(inputFile);
+            return;
+        }
+        try {
+            if (inputFile.skipBytes(length) < length) {
+                throw new EOFException();
+            }
+        } catch (EOFException e) {
+            throw e;
+        } catch (IOException ioe) {
+            throw new FormatException(ioe.getMessage());
+        }
+    }
+
     /**
      * produce a nice printed version of all our contained information
      *
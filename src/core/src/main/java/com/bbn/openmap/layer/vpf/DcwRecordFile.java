@@ -529,6 +529,75 @@ public class DcwRecordFile {
         return parseRow(retval);
     }
 
+    /**
+     * Parses the int values of some columns of the row specified by
+     * rownumber, without creating a List or field objects. The other
+     * columns are skipped, and the row is only read up to the last
+     * column asked for.
+     *
+     * @param rownumber the number of the row to read
+     *        [1..recordCount]
+     * @param columns the indexes of the columns to read.
+     * @param values filled with the values of the columns, in the same
+     *        order, as converted by VPFUtil.objectToInt().
+     * @return true if the row was read, false if no more rows are
+     *         available
+     * @exception FormatException data format errors
+     * @see DcwColumnInfo#parseInt(BinaryFile)
+     */
+    public synchronized boolean getInts(int rownumber, int[] columns,
+                                        int[] values)
+            throws FormatException {
+        if (inputFile == null) {
+            reopen(rownumber);
+        } else {
+            seekToRow(rownumber);
+        }
+
+        int last = -1;
+        for (int j = 0; j < columns.length; j++) {
+            last = Math.max(last, columns[j]);
+        }
+
+        int i = 0;
+        try {
+            for (; i <= last; i++) {
+                // The first slot asking for this column, copied into any
+                // other slots asking for it.
+                int first = -1;
+                for (int j = 0; j < columns.length; j++) {
+                    if (columns[j] == i) {
+                        if (first < 0) {
+                            values[j] = columnInfo[i].parseInt(inputFile);
+                            first = j;
+                        } else {
+                            values[j] = values[first];
+                        }
+                    }
+                }
+                if (first < 0) {
+                    columnInfo[i].skipField(inputFile);
+                }
+            }
+        } catch (EOFException e) {
+            cursorRow = -1;
+            if (i == 0) {
+                return false;
+            }
+            throw new FormatException("DcwRecordFile: getInts on table "
+                    + filename + " hit EOF in column " + i);
+        } catch (FormatException f) {
+            cursorRow = -1;
+            throw new FormatException("DcwRecordFile: getInts on table "
+                    + filename + ": " + f.getMessage());
+        }
+
+        // The cursor is only at the start of a row if the whole row was
+        // read.
+        cursorRow = (last == columnInfo.length - 1) ? rownumber + 1 : -1;
+        return true;
+    }
+
     /**
      * moves the input cursor to the specified row [affects subsequent
      * calls parseRow.]
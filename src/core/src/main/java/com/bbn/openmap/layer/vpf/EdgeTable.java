@@ -48,8 +48,11 @@ public class EdgeTable extends PrimitiveTable {
         if (Debug.debugging("vpf")) {
             Debug.output("EdgeTable(): " + filename);
         }
-        if (cov.cachedLineSchema == null) {
-            cov.cachedLineSchema = lookupSchema(edgcolumns, false);
+        // Edge tables for different tiles may be opened at the same time.
+        synchronized (cov) {
+            if (cov.cachedLineSchema == null) {
+                cov.cachedLineSchema = lookupSchema(edgcolumns, false);
+            }
         }
     }
 
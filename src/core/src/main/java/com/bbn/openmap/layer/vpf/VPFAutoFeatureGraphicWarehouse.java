@@ -35,6 +35,12 @@ import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -100,6 +106,12 @@ import com.bbn.openmap.util.PropUtils;
  * </pre>
  * 
  * The priority field really isn't important, the order of the overall file is.
+ * <P>
+ * 
+ * The loadThreads property sets the number of threads reading the feature
+ * tiles of a coverage. The features are still added to the priority lists in
+ * the order they are read from the feature tables, so the rendering order
+ * doesn't change.
  * 
  * @see com.bbn.openmap.omGraphics.OMGraphic
  */
@@ -113,8 +125,14 @@ public class VPFAutoFeatureGraphicWarehouse implements VPFFeatureWarehouse, Prop
 	public final static String FEATURE_INFO_HANDLER_PROPERTY = "featureInfoHandler";
 	public final static String FACC_DEBUG_PROPERTY = "debug";
 	public final static String ICON_SIZE_PROPERTY = "iconSize";
+	public final static String LOAD_THREADS_PROPERTY = "loadThreads";
 
 	public final static int DEFAULT_ICON_SIZE = 20;
+	/**
+	 * The default number of threads reading feature tiles, the number of
+	 * processors, at most 8.
+	 */
+	public final static int DEFAULT_LOAD_THREADS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
 
 	protected List<FeaturePriorityHolder> priorities;
 	protected Hashtable<String, List<FeaturePriorityHolder>> faccLookup;
@@ -123,6 +141,8 @@ public class VPFAutoFeatureGraphicWarehouse implements VPFFeatureWarehouse, Prop
 	protected String geoSymDirectory;
 	protected VPFFeatureInfoHandler featInfoHandler;
 	protected int iconSize = DEFAULT_ICON_SIZE;
+	protected int loadThreads = DEFAULT_LOAD_THREADS;
+	protected ThreadPoolExecutor loadExecutor;
 
 	protected String[] compositeFeatureFaccs = new String[] { "BC010", "BC020", "BC040", "BC070" };
 
@@ -508,6 +528,46 @@ public class VPFAutoFeatureGraphicWarehouse implements VPFFeatureWarehouse, Prop
 		return true;
 	}
 
+	/**
+	 * @return the executor that reads feature tiles, created if needed.
+	 */
+	protected synchronized ExecutorService getLoadExecutor() {
+		if (loadExecutor == null) {
+			loadExecutor = new ThreadPoolExecutor(loadThreads, loadThreads, 30L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "VPFTileLoader-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			loadExecutor.allowCoreThreadTimeOut(true);
+		}
+		return loadExecutor;
+	}
+
+	public synchronized int getLoadThreads() {
+		return loadThreads;
+	}
+
+	/**
+	 * Set the number of threads used to read the feature tiles of a coverage.
+	 * 
+	 * @param loadThreads number of threads, 1 to read the tiles one at a time on
+	 *                    the thread calling getFeatures.
+	 */
+	public synchronized void setLoadThreads(int loadThreads) {
+		loadThreads = Math.max(1, loadThreads);
+		if (loadThreads != this.loadThreads && loadExecutor != null) {
+			// Let anything running finish, a new one is created when needed.
+			loadExecutor.shutdown();
+			loadExecutor = null;
+		}
+		this.loadThreads = loadThreads;
+	}
+
 	/**
 	 * This is where the magic happens.
 	 * 
@@ -730,6 +790,7 @@ public class VPFAutoFeatureGraphicWarehouse implements VPFFeatureWarehouse, Prop
 		geoSymDirectory = props.getProperty(prefix + CGM_DIR_PROPERTY, geoSymDirectory);
 
 		iconSize = PropUtils.intFromProperties(props, prefix + ICON_SIZE_PROPERTY, iconSize);
+		setLoadThreads(PropUtils.intFromProperties(props, prefix + LOAD_THREADS_PROPERTY, getLoadThreads()));
 
 		String fihString = props.getProperty(prefix + FEATURE_INFO_HANDLER_PROPERTY);
 		if (fihString != null) {
@@ -770,6 +831,7 @@ public class VPFAutoFeatureGraphicWarehouse implements VPFFeatureWarehouse, Prop
 		}
 
 		getList.put(prefix + ICON_SIZE_PROPERTY, Integer.toString(iconSize));
+		getList.put(prefix + LOAD_THREADS_PROPERTY, Integer.toString(getLoadThreads()));
 
 		if (debugFacc != null && debugFacc.length() > 0) {
 			getList.put(prefix + FACC_DEBUG_PROPERTY, debugFacc);
@@ -807,6 +869,8 @@ public class VPFAutoFeatureGraphicWarehouse implements VPFFeatureWarehouse, Prop
 				"FACC Debug", "A FACC code to use to debug problems with data set", null);
 		PropUtils.setI18NPropertyInfo(i18n, list, VPFAutoFeatureGraphicWarehouse.class, ICON_SIZE_PROPERTY, "Icon Size",
 				"The pixel size of icons for point features", null);
+		PropUtils.setI18NPropertyInfo(i18n, list, VPFAutoFeatureGraphicWarehouse.class, LOAD_THREADS_PROPERTY,
+				"Load Threads", "Number of threads reading feature tiles (1 reads them one at a time)", null);
 		return list;
 	}
 
@@ -24,6 +24,7 @@ package com.bbn.openmap.omGraphics;
 
 import java.awt.Shape;
 import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
 import java.io.Serializable;
 
 import com.bbn.openmap.util.Debug;
@@ -124,9 +125,25 @@ public class FilterSupport implements OMGraphicHandler, Serializable {
         int count = 0; // for debugging
 
         if (area != null && omgl != null) { // just checking
-            
+
+            // Graphics the list's screen index doesn't find near the area
+            // can't touch it.
+            Rectangle2D areaBounds = area.getBounds2D();
+            int[] near = omgl.getIndexesNear(areaBounds.getMinX(), areaBounds.getMinY(), areaBounds.getMaxX(), areaBounds.getMaxY());
+            int nextNear = 0;
+            int index = -1;
+
             for (OMGraphic omg : omgl) {
 
+                index++;
+                boolean maybeInside = true;
+                if (near != null) {
+                    while (nextNear < near.length && near[nextNear] < index) {
+                        nextNear++;
+                    }
+                    maybeInside = nextNear < near.length && near[nextNear] == index;
+                }
+
                 if (DEBUG) {
                     Debug.output("FilterSupport.filterList evaluating "
                             + (count++) + " OMGraphic, " + omg);
@@ -180,7 +197,7 @@ public class FilterSupport implements OMGraphicHandler, Serializable {
                     }
                     continue;
                 } else {
-                    Shape omgShape = omg.getShape();
+                    Shape omgShape = maybeInside ? omg.getShape() : null;
                     if (omgShape != null) {
                         if (omgShape.getBounds2D().getWidth() == 0 && omgShape.getBounds2D().getHeight() == 0) {
                             if (area.contains(omgShape.getBounds2D().getX(), omgShape.getBounds2D().getY())) {
@@ -9,6 +9,8 @@ package com.bbn.openmap.omGraphics;
 import java.awt.Color;
 import java.awt.geom.GeneralPath;
 
+import com.bbn.openmap.proj.PolyBuffer;
+
 /**
  * The abstract base class of OMPoly and OMLine.
  * 
@@ -76,6 +78,20 @@ public abstract class OMAbstractLine extends OMGraphicAdapter implements OMGraph
         super(rType, lType, dcType, lc, fc, sc);
     }
 
+    /**
+     * Set the xpoints and ypoints from the parts of a PolyBuffer. The
+     * coordinates always go into new arrays, never the current ones, since
+     * render() and distance() may be reading those on another thread.
+     * 
+     * @param buffer the projected coordinates.
+     */
+    protected void setProjectedPoints(PolyBuffer buffer) {
+        float[][] xpts = buffer.copyXPoints(null);
+        float[][] ypts = buffer.copyYPoints(null);
+        xpoints = xpts;
+        ypoints = ypts;
+    }
+
     /**
      * Turn the ArrowHead on/off. The ArrowHead is placed on the
      * finishing end.
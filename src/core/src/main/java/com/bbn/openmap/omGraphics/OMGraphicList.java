@@ -32,9 +32,7 @@ import java.io.ObjectOutputStream;
 import java.io.OptionalDataException;
 import java.io.Serializable;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
@@ -78,7 +76,7 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      * @param initialCapacity the initial capacity of the list
      */
     public OMGraphicList(int initialCapacity) {
-        graphics = Collections.synchronizedList(new ArrayList<OMGraphic>(initialCapacity));
+        super(initialCapacity);
     }
 
     /**
@@ -296,7 +294,7 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
         if (graphics == null) {
             // make sure that the graphics vector is not null,
             // since all of the internal methods rely on it.
-            graphics = Collections.synchronizedList(new ArrayList<OMGraphic>(10));
+            graphics = createGraphicsList(10);
         }
 
         return graphics;
@@ -308,7 +306,9 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      * OMGraphicList will behave badly if there are non-OMGraphics on the list.
      */
     public void setTargets(List<OMGraphic> list) {
-        graphics = Collections.synchronizedList(new ArrayList<OMGraphic>(list));
+        List<OMGraphic> targets = createGraphicsList(list.size());
+        targets.addAll(list);
+        graphics = targets;
     }
 
     /**
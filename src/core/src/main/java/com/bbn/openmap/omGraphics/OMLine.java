@@ -30,11 +30,11 @@ import java.awt.Point;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 import java.io.Serializable;
-import java.util.ArrayList;
 
 import com.bbn.openmap.omGraphics.geom.NonRegional;
 import com.bbn.openmap.omGraphics.util.ArcCalc;
 import com.bbn.openmap.proj.GeoProj;
+import com.bbn.openmap.proj.PolyBuffer;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.util.Debug;
@@ -364,28 +364,20 @@ public class OMLine extends OMAbstractLine implements Serializable, NonRegional
 				isPolyline = true;
 
 			} else {
-				ArrayList<float[]> lines = null;
+				PolyBuffer buffer = PolyBuffer.scratch();
 				if (proj instanceof GeoProj) {
-					lines = ((GeoProj) proj).forwardLine(new LatLonPoint.Double(latlons[0], latlons[1]),
-							new LatLonPoint.Double(latlons[2], latlons[3]), lineType, nsegs);
+					((GeoProj) proj).forwardLine(new LatLonPoint.Double(latlons[0], latlons[1]),
+							new LatLonPoint.Double(latlons[2], latlons[3]), lineType, nsegs, buffer);
 				} else {
-					lines = proj.forwardLine(new Point2D.Double(latlons[1], latlons[0]),
-							new Point2D.Double(latlons[3], latlons[2]));
+					buffer.clear();
+					buffer.add(proj.forwardLine(new Point2D.Double(latlons[1], latlons[0]),
+							new Point2D.Double(latlons[3], latlons[2])));
 				}
 
-				int size = lines.size();
+				setProjectedPoints(buffer);
 
-				xpoints = new float[(int) (size / 2)][0];
-				ypoints = new float[xpoints.length][0];
-
-				for (int i = 0, j = 0; i < size; i += 2, j++) {
-					float[] xps = (float[]) lines.get(i);
-					float[] yps = (float[]) lines.get(i + 1);
-
-					xpoints[j] = xps;
-					ypoints[j] = yps;
-
-					GeneralPath gp = createShape(xps, yps, false);
+				for (int i = 0; i < xpoints.length; i++) {
+					GeneralPath gp = createShape(xpoints[i], ypoints[i], false);
 
 					projectedShape = appendShapeEdge(projectedShape, gp, false);
 				}
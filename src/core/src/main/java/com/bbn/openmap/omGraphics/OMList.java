@@ -22,17 +22,26 @@
 
 package com.bbn.openmap.omGraphics;
 
+import java.awt.BasicStroke;
 import java.awt.Graphics;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
 
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.util.ComponentFactory;
 import com.bbn.openmap.util.Debug;
+import com.bbn.openmap.util.rtree.PackedRTree;
 
 /**
  * This class encapsulates a List of OMGraphics.
@@ -111,15 +120,83 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
      */
     protected List<T> graphics;
 
+    /**
+     * The number of graphics the list has to hold before generate() splits
+     * the work across threads. 0, the default, always generates on the
+     * calling thread.
+     */
+    protected int parallelThreshold = 0;
+
+    /**
+     * The pool used for parallel generation, shared by all lists and created
+     * when first needed.
+     */
+    private static ForkJoinPool generatePool;
+
+    /**
+     * The number of graphics the list has to hold before findClosest(),
+     * findAll() and getContains() use a screen index. 0, the default, never
+     * uses one.
+     */
+    protected int spatialIndexThreshold = 0;
+
+    /**
+     * The list behind graphics, if it was made by createGraphicsList(), and
+     * the synchronized wrapper around it. Used to tell if the list has changed
+     * since the screen index was built.
+     */
+    private transient ChangeCountingList<T> countedGraphics;
+    private transient List<T> countedGraphicsWrapper;
+
+    /**
+     * The index of the projected graphic bounds, built when first needed
+     * after the list is generated or changed.
+     */
+    private transient ScreenIndex screenIndex;
+
     /**
      * Construct an OMGraphicList.
      */
     public OMList() {
-        graphics = Collections.synchronizedList(new ArrayList<T>());
+        graphics = createGraphicsList(10);
     }
 
     public OMList(int initialCapacity) {
-        graphics = Collections.synchronizedList(new ArrayList<T>(initialCapacity));
+        graphics = createGraphicsList(initialCapacity);
+    }
+
+    /**
+     * Create the synchronized List used to hold the graphics. The list keeps
+     * track of changes made to it, so the screen index knows when to rebuild.
+     * 
+     * @param initialCapacity the initial capacity of the list.
+     * @return synchronized List.
+     */
+    protected List<T> createGraphicsList(int initialCapacity) {
+        countedGraphics = new ChangeCountingList<T>(initialCapacity);
+        countedGraphicsWrapper = Collections.synchronizedList(countedGraphics);
+        return countedGraphicsWrapper;
+    }
+
+    /**
+     * An ArrayList that counts replaced elements as changes, too.
+     */
+    protected static class ChangeCountingList<E> extends ArrayList<E> {
+
+        private static final long serialVersionUID = 1L;
+
+        public ChangeCountingList(int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        public E set(int index, E element) {
+            modCount++;
+            return super.set(index, element);
+        }
+
+        int getChangeCount() {
+            return modCount;
+        }
     }
 
     /**
@@ -553,6 +630,17 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
     public boolean generate(Projection p, boolean forceProjectAll) {
         boolean ret = true;
         synchronized (graphics) {
+            // Everything is going to move.
+            screenIndex = null;
+
+            int size = graphics.size();
+            if (parallelThreshold > 0 && size >= parallelThreshold) {
+                // The workers can't use the list while this thread holds the
+                // lock, so they get their own copy of it.
+                OMGeometry[] geometries = graphics.toArray(new OMGeometry[size]);
+                return generateParallel(geometries, p, forceProjectAll);
+            }
+
             Iterator<T> iterator = iterator();
             // Check forceProjectAll outside the loop for slight
             // performance improvement.
@@ -569,6 +657,240 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
         return ret;
     }
 
+    /**
+     * Set the number of graphics the list has to hold before generate() calls
+     * generate() on them from several threads at once. Only use this for lists
+     * whose graphics, and the projection, can be generated concurrently, like
+     * the standard polys, lines, rects and points. Sublists are generated in
+     * parallel with the rest, and use their own threshold for their contents.
+     * 
+     * @param threshold the list size, 0 to always generate on the calling
+     *        thread.
+     */
+    public void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Set the number of graphics the list has to hold before findClosest(),
+     * findAll() and getContains() look up the graphics near the mouse in an
+     * index of their projected bounds, instead of measuring the distance to
+     * every one. The index is built the first time it's needed after the list
+     * is generated or changed. If a graphic on the list is moved and generated
+     * by itself, call resetSpatialIndex() so it isn't looked for in its old
+     * place.
+     * 
+     * @param threshold the list size, 0 to not use an index.
+     */
+    public void setSpatialIndexThreshold(int threshold) {
+        spatialIndexThreshold = threshold;
+        screenIndex = null;
+    }
+
+    public int getSpatialIndexThreshold() {
+        return spatialIndexThreshold;
+    }
+
+    /**
+     * Throw out the screen index, so it's rebuilt with the current positions
+     * of the graphics.
+     */
+    public void resetSpatialIndex() {
+        screenIndex = null;
+    }
+
+    /**
+     * Find the graphics on the list that might be within a screen rectangle,
+     * using the screen index. Lists on the list, and graphics without a shape
+     * or with a label, are always included.
+     * 
+     * @param xmin the smaller of the x coordinates
+     * @param ymin the smaller of the y coordinates
+     * @param xmax the larger of the x coordinates
+     * @param ymax the larger of the y coordinates
+     * @return the list indexes of the graphics, in ascending order, or null if
+     *         the list isn't using an index and all the graphics need to be
+     *         checked.
+     */
+    public int[] getIndexesNear(double xmin, double ymin, double xmax, double ymax) {
+        if (spatialIndexThreshold <= 0) {
+            return null;
+        }
+
+        synchronized (graphics) {
+            if (graphics.size() < spatialIndexThreshold || graphics != countedGraphicsWrapper) {
+                return null;
+            }
+
+            ScreenIndex index = screenIndex;
+            if (index == null || index.changeCount != countedGraphics.getChangeCount()) {
+                index = new ScreenIndex(graphics, countedGraphics.getChangeCount());
+                screenIndex = index;
+            }
+            return index.search(xmin, ymin, xmax, ymax);
+        }
+    }
+
+    /**
+     * The list indexes of the graphics within limit of a point, or null if the
+     * index shouldn't be used.
+     */
+    protected int[] getIndexesNear(double x, double y, float limit) {
+        if (limit >= Float.MAX_VALUE) {
+            // Everything is a candidate.
+            return null;
+        }
+        return getIndexesNear(x - limit, y - limit, x + limit, y + limit);
+    }
+
+    /**
+     * An R-tree of the projected bounds of the graphics on a list.
+     */
+    protected static class ScreenIndex {
+        /**
+         * Pixels added around each graphic, for rounding.
+         */
+        final static double PADDING = 1;
+
+        final int changeCount;
+        final PackedRTree tree;
+        /** Indexes of the graphics that are always candidates. */
+        final int[] unindexed;
+
+        ScreenIndex(List<? extends OMGeometry> graphics, int changeCount) {
+            this.changeCount = changeCount;
+            int size = graphics.size();
+            double[] boxes = new double[size * 4];
+            int[] ids = new int[size];
+            int[] others = new int[size];
+            int numIndexed = 0;
+            int numOthers = 0;
+
+            for (int i = 0; i < size; i++) {
+                OMGeometry geometry = graphics.get(i);
+                Shape shape = geometry instanceof OMList<?> ? null : geometry.getShape();
+                // Labels are drawn, and picked, outside of the shape.
+                if (shape == null || geometry.getAttribute(OMGraphicConstants.LABEL) != null) {
+                    others[numOthers++] = i;
+                    continue;
+                }
+
+                Rectangle2D bounds = shape.getBounds2D();
+                double pad = PADDING;
+                if (geometry instanceof OMGraphic) {
+                    Stroke stroke = ((OMGraphic) geometry).getStroke();
+                    if (stroke instanceof BasicStroke) {
+                        pad += ((BasicStroke) stroke).getLineWidth() / 2;
+                    }
+                }
+
+                int b = numIndexed * 4;
+                boxes[b] = bounds.getMinX() - pad;
+                boxes[b + 1] = bounds.getMinY() - pad;
+                boxes[b + 2] = bounds.getMaxX() + pad;
+                boxes[b + 3] = bounds.getMaxY() + pad;
+                ids[numIndexed++] = i;
+            }
+
+            tree = PackedRTree.build(Arrays.copyOf(boxes, numIndexed * 4), Arrays.copyOf(ids, numIndexed));
+            unindexed = Arrays.copyOf(others, numOthers);
+        }
+
+        int[] search(double xmin, double ymin, double xmax, double ymax) {
+            int[] hits = tree.search(xmin, ymin, xmax, ymax);
+            if (unindexed.length == 0) {
+                return hits;
+            }
+
+            // Merge the two sorted arrays.
+            int[] ret = new int[hits.length + unindexed.length];
+            int h = 0;
+            int u = 0;
+            for (int i = 0; i < ret.length; i++) {
+                if (u == unindexed.length || (h < hits.length && hits[h] < unindexed[u])) {
+                    ret[i] = hits[h++];
+                } else {
+                    ret[i] = unindexed[u++];
+                }
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Generate the geometries on the shared fork/join pool, waiting for them
+     * all to be done.
+     */
+    protected boolean generateParallel(OMGeometry[] geometries, Projection p, boolean forceProjectAll) {
+        ForkJoinPool pool = getGeneratePool();
+        // Split into a few pieces per thread, so threads that finish early can
+        // steal work from the others.
+        int grain = Math.max(64, geometries.length / (pool.getParallelism() * 4));
+        GenerateTask task = new GenerateTask(geometries, 0, geometries.length, grain, p, forceProjectAll);
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+            // Already on a pool thread, for a list within a list.
+            return task.invoke().booleanValue();
+        }
+        return pool.invoke(task).booleanValue();
+    }
+
+    protected static synchronized ForkJoinPool getGeneratePool() {
+        if (generatePool == null) {
+            generatePool = new ForkJoinPool();
+        }
+        return generatePool;
+    }
+
+    /**
+     * Generates a range of geometries, splitting it in half until the pieces
+     * are small enough.
+     */
+    protected static class GenerateTask extends RecursiveTask<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        final OMGeometry[] geometries;
+        final int from;
+        final int to;
+        final int grain;
+        final Projection proj;
+        final boolean forceProjectAll;
+
+        GenerateTask(OMGeometry[] geometries, int from, int to, int grain, Projection proj,
+                boolean forceProjectAll) {
+            this.geometries = geometries;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.proj = proj;
+            this.forceProjectAll = forceProjectAll;
+        }
+
+        protected Boolean compute() {
+            if (to - from <= grain) {
+                boolean ret = true;
+                for (int i = from; i < to; i++) {
+                    if (forceProjectAll) {
+                        ret &= geometries[i].generate(proj);
+                    } else {
+                        ret &= geometries[i].regenerate(proj);
+                    }
+                }
+                return Boolean.valueOf(ret);
+            }
+
+            int mid = (from + to) >>> 1;
+            GenerateTask first = new GenerateTask(geometries, from, mid, grain, proj, forceProjectAll);
+            first.fork();
+            boolean ret = new GenerateTask(geometries, mid, to, grain, proj, forceProjectAll).compute().booleanValue();
+            return Boolean.valueOf(first.join().booleanValue() && ret);
+        }
+    }
+
     /**
      * Renders all the objects in the list a graphics context. This is the same
      * as <code>paint()</code> for AWT components. The graphics are rendered in
@@ -723,7 +1045,21 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
         int i;
 
         synchronized (graphics) {
-            if (!isEmpty()) {
+            int[] near = resetSelect ? null : getIndexesNear(x, y, limit);
+            if (near != null) {
+                // Only the graphics near the point can be within the limit.
+                boolean forward = traverseMode == FIRST_ADDED_ON_TOP;
+                for (int k = 0; k < near.length; k++) {
+                    i = near[forward ? k : near.length - 1 - k];
+                    // The same index the full search reports.
+                    tomd = findClosestTest(omd, forward ? i : i + 1, graphics.get(i), x, y, limit, resetSelect);
+                    if (tomd == null)
+                        continue;
+                    omd = tomd; // for style
+                    if (omd.d == 0)
+                        break;
+                }
+            } else if (!isEmpty()) {
                 if (traverseMode == FIRST_ADDED_ON_TOP) {
                     i = 0;
                     ListIterator<T> iterator = graphics.listIterator();
@@ -883,7 +1219,16 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
         if (!isEmpty()) {
             synchronized (graphics) {
 
-                if (traverseMode == FIRST_ADDED_ON_TOP) {
+                int[] near = resetSelect ? null : getIndexesNear(x, y, limit);
+                if (near != null) {
+                    boolean forward = traverseMode == FIRST_ADDED_ON_TOP;
+                    for (int k = 0; k < near.length; k++) {
+                        int i = near[forward ? k : near.length - 1 - k];
+                        if (!findAllTest(x, y, limit, resetSelect, addTo, graphics.get(i), omd)) {
+                            break;
+                        }
+                    }
+                } else if (traverseMode == FIRST_ADDED_ON_TOP) {
                     ListIterator<? extends OMGeometry> iterator = graphics.listIterator();
                     while (iterator.hasNext()) {
                         if (!findAllTest(x, y, limit, resetSelect, addTo, iterator.next(), omd)) {
@@ -1164,7 +1509,22 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
 
         synchronized (graphics) {
 
-            if (!isEmpty()) {
+            int[] near = getIndexesNear(x, y, x, y);
+            if (near != null) {
+                boolean forward = traverseMode == FIRST_ADDED_ON_TOP;
+                for (int k = 0; k < near.length; k++) {
+                    T graphic = graphics.get(near[forward ? k : near.length - 1 - k]);
+
+                    // cannot select a graphic which isn't visible
+                    if (!shouldProcess(graphic))
+                        continue;
+
+                    ret = getContains(graphic, x, y);
+                    if (ret != null) {
+                        break;
+                    }
+                }
+            } else if (!isEmpty()) {
                 if (traverseMode == FIRST_ADDED_ON_TOP) {
                     ListIterator<? extends OMGeometry> iterator = graphics.listIterator();
                     while (iterator.hasNext()) {
@@ -1221,6 +1581,27 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
         return ret;
     }
 
+    /**
+     * The getContains() test for one graphic on the list.
+     * 
+     * @return the graphic, or what it contains if it's a list that isn't
+     *         vague, if it contains the pixel, null if it doesn't.
+     */
+    // A sublist's contents are handed back as this list's type, the same
+    // assumption the full search in getContains() makes.
+    @SuppressWarnings("unchecked")
+    protected T getContains(T graphic, int x, int y) {
+        if (graphic instanceof OMList<?>) {
+            OMList<?> tomgl = (OMList<?>) graphic;
+            OMGeometry contained = tomgl.getContains(x, y);
+            if (contained == null) {
+                return null;
+            }
+            return tomgl.isVague() ? graphic : (T) contained;
+        }
+        return graphic.contains(x, y) ? graphic : null;
+    }
+
     /**
      * If you call deselect() on an OMGraphicList, it calls deselect() all the
      * graphics it contains, as well as the deselect method on it's super class.
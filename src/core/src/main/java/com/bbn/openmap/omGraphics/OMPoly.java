@@ -31,12 +31,13 @@ import java.awt.Shape;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
 import java.io.Serializable;
-import java.util.ArrayList;
 
 import com.bbn.openmap.geo.Geo;
 import com.bbn.openmap.geo.Intersection;
+import com.bbn.openmap.omGraphics.util.PolySimplifier;
 import com.bbn.openmap.proj.DrawUtil;
 import com.bbn.openmap.proj.GeoProj;
+import com.bbn.openmap.proj.PolyBuffer;
 import com.bbn.openmap.proj.ProjMath;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.util.Debug;
@@ -157,6 +158,26 @@ public class OMPoly extends OMAbstractLine implements Serializable {
      */
     protected boolean doShapes = false;
 
+    /**
+     * The significance of each vertex, from PolySimplifier, if the poly
+     * should be simplified at small scales. Null if it shouldn't.
+     */
+    protected float[] vertexSignificance = null;
+
+    /**
+     * How many pixels a simplified poly can be off by. 0 turns off
+     * simplification.
+     */
+    protected float simplifyTolerance = 0;
+
+    /**
+     * The coordinates last picked for a simplification level, reused until
+     * the map is zoomed to another level.
+     */
+    private transient double[] simplifiedLLPoints;
+    private transient double[] simplifiedSource;
+    private transient float simplifiedLevel;
+
     /**
      * Construct a default OMPoly.
      */
@@ -297,6 +318,7 @@ public class OMPoly extends OMAbstractLine implements Serializable {
             ProjMath.arrayDegToRad(llPoints);
         }
         rawllpts = llPoints;
+        vertexSignificance = null;
         setNeedToRegenerate(true);
         setRenderType(RENDERTYPE_LATLON);
     }
@@ -579,6 +601,85 @@ public class OMPoly extends OMAbstractLine implements Serializable {
         return doShapes;
     }
 
+    /**
+     * Compute the significance of the vertices, so the poly can be simplified
+     * when it's generated for small scales. Simplification also needs a
+     * tolerance, see setSimplifyTolerance(). The significance is worked out
+     * from the current coordinates, so call this again after changing them
+     * in place.
+     * 
+     * @param method PolySimplifier.DOUGLAS_PEUCKER or
+     *        PolySimplifier.VISVALINGAM.
+     */
+    public void simplify(int method) {
+        double[] llpts = getLatLonArray();
+        setVertexSignificance(llpts == null ? null : PolySimplifier.computeSignificance(llpts, method));
+    }
+
+    /**
+     * Set the significance of the vertices, as computed (or saved) by
+     * PolySimplifier. Ignored if the length doesn't match the number of
+     * vertices.
+     * 
+     * @param significance for each vertex, or null to turn off
+     *        simplification.
+     */
+    public void setVertexSignificance(float[] significance) {
+        vertexSignificance = significance;
+        simplifiedLLPoints = null;
+        setNeedToRegenerate(true);
+    }
+
+    public float[] getVertexSignificance() {
+        return vertexSignificance;
+    }
+
+    /**
+     * Set how far, in pixels, the simplified poly can be from the full one.
+     * One pixel hides nothing that could be seen.
+     * 
+     * @param pixels the tolerance, 0 to not simplify.
+     */
+    public void setSimplifyTolerance(float pixels) {
+        simplifyTolerance = pixels;
+        setNeedToRegenerate(true);
+    }
+
+    public float getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
+    /**
+     * Get the coordinates to project, simplified for the projection scale if
+     * the vertex significance and tolerance are set. The rawllpts must be in
+     * radians.
+     * 
+     * @param proj the projection being generated for.
+     * @return rawllpts or a simplified copy of them.
+     */
+    protected double[] getSimplifiedLatLonArray(Projection proj) {
+        double[] llpts = rawllpts;
+        float[] significance = vertexSignificance;
+        if (significance == null || simplifyTolerance <= 0 || llpts == null
+                || significance.length != llpts.length / 2) {
+            return llpts;
+        }
+
+        float level = PolySimplifier.getLevel(PolySimplifier.getTolerance(proj, simplifyTolerance));
+        if (level == 0) {
+            return llpts;
+        }
+
+        double[] simplified = simplifiedLLPoints;
+        if (simplified == null || simplifiedSource != llpts || simplifiedLevel != level) {
+            simplified = PolySimplifier.select(llpts, significance, level);
+            simplifiedLLPoints = simplified;
+            simplifiedSource = llpts;
+            simplifiedLevel = level;
+        }
+        return simplified;
+    }
+
     /**
      * Prepare the poly for rendering.
      * 
@@ -670,32 +771,28 @@ public class OMPoly extends OMAbstractLine implements Serializable {
         case RENDERTYPE_LATLON:
             // polygon/polyline project the polygon/polyline.
             // Vertices should already be in radians.
-            ArrayList<float[]> vector;
+            // Projected into the thread's scratch buffer, and copied into
+            // the existing xpoints and ypoints if they still fit.
+            PolyBuffer buffer = PolyBuffer.scratch();
             if (proj instanceof GeoProj) {
                 if (units == DECIMAL_DEGREES) {
                     ProjMath.arrayDegToRad(rawllpts);
                     units = RADIANS;
                 }
-                vector = ((GeoProj) proj).forwardPoly(rawllpts, lineType, nsegs, isPolygon());
+                ((GeoProj) proj).forwardPoly(getSimplifiedLatLonArray(proj), lineType, nsegs, isPolygon(), buffer);
             } else {
                 if (units == RADIANS) {
                     ProjMath.arrayRadToDeg(rawllpts);
                     units = DECIMAL_DEGREES;
                 }
-                vector = proj.forwardPoly(rawllpts, isPolygon());
+                buffer.clear();
+                buffer.add(proj.forwardPoly(rawllpts, isPolygon()));
             }
 
-            int size = vector.size();
-
-            float[][] loc_xpoints = new float[(int) (size / 2)][0];
-            float[][] loc_ypoints = new float[loc_xpoints.length][0];
-            xpoints = loc_xpoints;
-            ypoints = loc_ypoints;
-
-            for (int i = 0, j = 0; i < size; i += 2, j++) {
-                loc_xpoints[j] = vector.get(i);
-                loc_ypoints[j] = vector.get(i + 1);
-            }
+            setProjectedPoints(buffer);
+            float[][] loc_xpoints = xpoints;
+            float[][] loc_ypoints = ypoints;
+            int size = loc_xpoints.length * 2;
 
             if (!doShapes) {
                 if (size > 1) {
@@ -1272,6 +1369,8 @@ public class OMPoly extends OMAbstractLine implements Serializable {
             this.isPolygon = polySource.isPolygon;
             this.rawllpts = DeepCopyUtil.deepCopy(polySource.getLatLonArray());
             this.doShapes = polySource.doShapes;
+            this.vertexSignificance = polySource.vertexSignificance;
+            this.simplifyTolerance = polySource.simplifyTolerance;
         }
     }
 }
@@ -25,9 +25,9 @@ package com.bbn.openmap.omGraphics;
 import java.awt.Point;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
 
 import com.bbn.openmap.proj.GeoProj;
+import com.bbn.openmap.proj.PolyBuffer;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.util.Debug;
@@ -372,19 +372,21 @@ public class OMRect extends OMGraphicAdapter implements OMGraphic {
                     + y2), (int) Math.abs(x2 - x1), (int) Math.abs(y2 - y1)));
             break;
         case RENDERTYPE_LATLON:
-            ArrayList<float[]> rects;
-
+            // The corners are projected into the thread's scratch buffer,
+            // since only the shape is kept.
+            PolyBuffer buffer = PolyBuffer.scratch();
             if (proj instanceof GeoProj) {
-                rects = ((GeoProj) proj).forwardRect(new LatLonPoint.Double(lat1, lon1), // NW
+                ((GeoProj) proj).forwardRect(new LatLonPoint.Double(lat1, lon1), // NW
                         new LatLonPoint.Double(lat2, lon2), // SE
-                        lineType, nsegs, !isClear(fillPaint));
+                        lineType, nsegs, !isClear(fillPaint), buffer);
             } else {
-                rects = proj.forwardRect(new Point2D.Double(lon1, lat1), new Point2D.Double(lon2, lat2));
+                buffer.clear();
+                buffer.add(proj.forwardRect(new Point2D.Double(lon1, lat1), new Point2D.Double(lon2, lat2)));
             }
-            int size = rects.size();
+            int size = buffer.size();
             GeneralPath projectedShape = null;
-            for (int i = 0; i < size; i += 2) {
-                GeneralPath gp = createShape(rects.get(i), rects.get(i + 1), true);
+            for (int i = 0; i < size; i++) {
+                GeneralPath gp = createShape(buffer.getX(i), buffer.getY(i), 0, buffer.getLength(i), true);
 
                 projectedShape = appendShapeEdge(projectedShape, gp, false);
             }
@@ -265,6 +265,12 @@ public class OMWarpingImage extends OMGraphicAdapter implements OMGraphic {
 
 	public void setWarp(ImageWarp wrp) {
 		warp = wrp;
+		if (warp != null) {
+			// The raster copies the pixels into its image when it's
+			// generated, and the old raster is dropped for the new one, so
+			// the same pixel array can be used for every projection.
+			warp.setReuseBuffers(true);
+		}
 		setNeedToRegenerate(true);
 	}
 
@@ -30,6 +30,9 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.awt.image.PixelGrabber;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -99,6 +102,48 @@ public class ImageWarp {
 	 */
 	protected DataBounds projectedImageBounds;
 
+	/**
+	 * The spacing, in map pixels, of the grid where source image locations are
+	 * calculated exactly. Locations in between are interpolated. 1 or less
+	 * calculates every pixel exactly.
+	 */
+	protected int gridSpacing = 16;
+
+	/**
+	 * How far, in source image pixels, the interpolated locations in a grid
+	 * cell can be off before the cell is calculated pixel by pixel.
+	 */
+	protected double maxGridError = 0.25;
+
+	/**
+	 * Blend the four nearest source pixels instead of using the nearest one.
+	 */
+	protected boolean bilinear = false;
+
+	/**
+	 * The number of destination pixels an image has to have before it's warped
+	 * on several threads. 0 always warps on the calling thread.
+	 */
+	protected int parallelThreshold = 256 * 256;
+
+	/**
+	 * Whether getImagePixels() can hand back the same array for projections
+	 * that need the same size image. Only set this if the previous pixels are
+	 * done with by the time the next ones are asked for, like when they're
+	 * copied into an OMRaster's image.
+	 */
+	protected boolean reuseBuffers = false;
+
+	/**
+	 * The last destination array, if buffers are reused.
+	 */
+	private transient int[] destBuffer;
+
+	/**
+	 * The pool used for warping large images, created when first needed.
+	 */
+	private static ForkJoinPool warpPool;
+
 	/**
 	 * Create an image warp for an image assumed to be world wide coverage, with
 	 * the top at 90 degrees, the bottom at -90, the left side at -180 and the
@@ -256,7 +301,12 @@ public class ImageWarp {
 
 	/**
 	 * Given a projection, return the pixels for an image that will cover the
-	 * projection area.
+	 * projection area. The source location of each destination pixel is
+	 * calculated exactly on a grid of points gridSpacing pixels apart and
+	 * interpolated in between, except for grid cells where the interpolation
+	 * would be off by more than maxGridError source pixels, which are
+	 * calculated pixel by pixel. Large images are warped a stripe of rows at a
+	 * time on a shared fork/join pool.
 	 * 
 	 * @param p map projection
 	 * @return int[] of ARGB pixels for an image covering the given projection.
@@ -274,17 +324,8 @@ public class ImageWarp {
 			int projHeight = (int) Math.ceil(projectedImageBounds.getHeight());
 			int projWidth = (int) Math.ceil(projectedImageBounds.getWidth());
 
-			// See if we can reuse the pixel array we have.
-
-			int[] tmpPixels = new int[projWidth * projHeight];
-			int numTmpPixels = tmpPixels.length;
-			logger.fine("tmpPixels[" + numTmpPixels + "]");
-			int clear = 0x00000000;
-
-			Point2D ctp = new Point2D.Double();
-			Point2D ddll = new Point2D.Double();
-			Point2D imageCoord = new Point2D.Double();
-			Point2D center = p.getCenter();
+			int[] tmpPixels = getBuffer(projWidth * projHeight);
+			logger.fine("tmpPixels[" + tmpPixels.length + "]");
 
 			if (logger.isLoggable(Level.FINE)) {
 				logger.fine(projectedImageBounds.toString());
@@ -292,78 +333,314 @@ public class ImageWarp {
 
 			int minx = (int) Math.floor(projectedImageBounds.getMin().getX());
 			int miny = (int) Math.floor(projectedImageBounds.getMin().getY());
-			int maxx = (int) Math.ceil(projectedImageBounds.getMax().getX());
-			int maxy = (int) Math.ceil(projectedImageBounds.getMax().getY());
 
-			// i and j are map window pixel values.
-			for (int i = minx; i < maxx; i++) {
-				for (int j = miny; j < maxy; j++) {
+			Warp warp = new Warp(p, tmpPixels, minx, miny, projWidth, projHeight);
+			int spacing = Math.max(1, gridSpacing);
+			if (parallelThreshold > 0 && tmpPixels.length >= parallelThreshold) {
+				ForkJoinPool pool = getWarpPool();
+				// A few stripes per thread, whole grid cells high.
+				int cellRows = (projHeight + spacing - 1) / spacing;
+				int grain = Math.max(1, cellRows / (pool.getParallelism() * 4));
+				WarpTask task = new WarpTask(warp, 0, cellRows, grain, spacing);
+				if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+					task.invoke();
+				} else {
+					pool.invoke(task);
+				}
+			} else {
+				warp.warpRows(0, projHeight);
+			}
+
+			logger.fine("finished creating image");
+			return tmpPixels;
+		}
+
+		logger.warning("problem creating image, no pixels: " + (pixels == null ? "true" : "false") + ", no projection:"
+				+ (p == null ? "true" : "false"));
+
+		// If you get here, something's not right.
+		return null;
+	}
 
-					// ix and iy are pixel coordinates of the destination image.
-					int ix = i - minx;
-					int iy = j - miny;
+	/**
+	 * Get the array for the destination pixels. If buffers are being reused,
+	 * the last one is returned if it's the right size. Every pixel is written
+	 * by the warp, so it doesn't need to be cleared.
+	 */
+	protected int[] getBuffer(int size) {
+		if (!reuseBuffers) {
+			return new int[size];
+		}
+		int[] buffer = destBuffer;
+		if (buffer == null || buffer.length != size) {
+			buffer = new int[size];
+			destBuffer = buffer;
+		}
+		return buffer;
+	}
 
-					// index into the OMRaster pixel array
-					int tmpIndex = (ix + (iy * projWidth));
+	protected static synchronized ForkJoinPool getWarpPool() {
+		if (warpPool == null) {
+			warpPool = new ForkJoinPool();
+		}
+		return warpPool;
+	}
 
-					if (tmpIndex >= numTmpPixels) {
-						continue;
+	/**
+	 * Warps a range of grid cell rows, splitting it in half until the pieces
+	 * are small enough.
+	 */
+	protected static class WarpTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		final Warp warp;
+		final int from;
+		final int to;
+		final int grain;
+		final int spacing;
+
+		WarpTask(Warp warp, int from, int to, int grain, int spacing) {
+			this.warp = warp;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.spacing = spacing;
+		}
+
+		protected void compute() {
+			if (to - from <= grain) {
+				warp.warpRows(from * spacing, Math.min(warp.height, to * spacing));
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new WarpTask(warp, from, mid, grain, spacing), new WarpTask(warp, mid, to, grain, spacing));
+		}
+	}
+
+	/**
+	 * The state of one call to getImagePixels(). warpRows() can be called for
+	 * separate row ranges from several threads at once.
+	 */
+	protected class Warp {
+		final Projection proj;
+		final Point2D center;
+		final int[] dest;
+		final int minx;
+		final int miny;
+		final int width;
+		final int height;
+		/**
+		 * GeoCoordTransformations like UTMGCT keep scratch objects, so calls
+		 * to anything but LatLonGCT are made one thread at a time.
+		 */
+		final boolean lockTrans;
+
+		Warp(Projection proj, int[] dest, int minx, int miny, int width, int height) {
+			this.proj = proj;
+			this.center = proj.getCenter();
+			this.dest = dest;
+			this.minx = minx;
+			this.miny = miny;
+			this.width = width;
+			this.height = height;
+			this.lockTrans = geoTrans != null && !(geoTrans instanceof LatLonGCT);
+		}
+
+		/**
+		 * Warp the destination rows from up to to. from should be at the top
+		 * of a grid cell.
+		 */
+		void warpRows(int from, int to) {
+			Point2D ddll = new Point2D.Double();
+			Point2D ctp = new Point2D.Double();
+			Point2D imageCoord = new Point2D.Double();
+			double[] src = new double[2];
+
+			int spacing = gridSpacing;
+			if (spacing <= 1) {
+				for (int iy = from; iy < to; iy++) {
+					for (int ix = 0, index = iy * width; ix < width; ix++, index++) {
+						dest[index] = locate(minx + ix, miny + iy, ddll, ctp, imageCoord, src) ? sample(src[0], src[1])
+								: CLEAR;
 					}
+				}
+				return;
+			}
 
-					ddll = p.inverse(i, j, ddll);
-
-					// If the llp calculated isn't on the map,
-					// don't bother drawing it. Could be a space
-					// point in Orthographic projection, for
-					// instance.
-					if (ddll.equals(center)) {
-						p.forward(ddll, ctp);
-						if (ctp.getX() != i || ctp.getY() != j) {
-							tmpPixels[tmpIndex] = clear;
-							continue;
+			// Source coordinates of the grid points along the top and bottom
+			// of the current row of cells, NaN where they can't be found.
+			int nodes = (width + spacing - 1) / spacing + 1;
+			double[] top = new double[nodes * 2];
+			double[] bottom = new double[nodes * 2];
+			locateNodes(from, spacing, top, ddll, ctp, imageCoord, src);
+
+			for (int y0 = from; y0 < to; y0 += spacing) {
+				locateNodes(y0 + spacing, spacing, bottom, ddll, ctp, imageCoord, src);
+				int y1 = Math.min(to, y0 + spacing);
+
+				for (int c = 0; c < nodes - 1; c++) {
+					int x0 = c * spacing;
+					int x1 = Math.min(width, x0 + spacing);
+					int k = c * 2;
+					double ax = top[k], ay = top[k + 1], bx = top[k + 2], by = top[k + 3];
+					double cx = bottom[k], cy = bottom[k + 1], dx = bottom[k + 2], dy = bottom[k + 3];
+
+					if (Double.isNaN(ax) || Double.isNaN(bx) || Double.isNaN(cx) || Double.isNaN(dx)
+							|| !interpolates(x0, y0, spacing, ax, ay, bx, by, cx, cy, dx, dy, ddll, ctp,
+									imageCoord, src)) {
+						for (int iy = y0; iy < y1; iy++) {
+							for (int ix = x0, index = iy * width + x0; ix < x1; ix++, index++) {
+								dest[index] = locate(minx + ix, miny + iy, ddll, ctp, imageCoord, src) ? sample(
+										src[0], src[1]) : CLEAR;
+							}
 						}
+						continue;
 					}
 
-					if (geoTrans != null) {
-						geoTrans.forward(ddll.getY(), ddll.getX(), imageCoord);
-					} else {
-						imageCoord = ddll;
+					for (int iy = y0; iy < y1; iy++) {
+						double t = (iy - y0) / (double) spacing;
+						double lx = ax + (cx - ax) * t;
+						double ly = ay + (cy - ay) * t;
+						double stepX = (bx + (dx - bx) * t - lx) / spacing;
+						double stepY = (by + (dy - by) * t - ly) / spacing;
+						for (int ix = x0, index = iy * width + x0; ix < x1; ix++, index++) {
+							dest[index] = sample(lx + stepX * (ix - x0), ly + stepY * (ix - x0));
+						}
 					}
+				}
 
-					if (!sourceImageBounds.contains(imageCoord)) {
-						tmpPixels[tmpIndex] = clear;
-						continue;
-					}
+				double[] tmp = top;
+				top = bottom;
+				bottom = tmp;
+			}
+		}
 
-					// Find the corresponding pixel location in
-					// the source image.
-					int horIndex = (int) Math.round(horOrigin + (imageCoord.getX() / hor_upp));
-					int verIndex = (int) Math.round(verOrigin + (imageCoord.getY() / ver_upp));
+		/**
+		 * Find the source locations of the grid points along a row.
+		 */
+		void locateNodes(int iy, int spacing, double[] nodes, Point2D ddll, Point2D ctp, Point2D imageCoord,
+				double[] src) {
+			for (int n = 0; n < nodes.length / 2; n++) {
+				if (locate(minx + n * spacing, miny + iy, ddll, ctp, imageCoord, src)) {
+					nodes[n * 2] = src[0];
+					nodes[n * 2 + 1] = src[1];
+				} else {
+					nodes[n * 2] = Double.NaN;
+					nodes[n * 2 + 1] = Double.NaN;
+				}
+			}
+		}
 
-					if (horIndex < 0 || horIndex >= iwidth || verIndex < 0 || verIndex >= iheight) {
-						// pixel not on the source image. This
-						// happens if the image doesn't cover the
-						// entire earth.
-						continue;
-					}
+		/**
+		 * Check the middle of the cell and the middle of its edges against
+		 * the interpolated locations.
+		 * 
+		 * @return true if the cell can be interpolated.
+		 */
+		boolean interpolates(int x0, int y0, int spacing, double ax, double ay, double bx, double by, double cx,
+				double cy, double dx, double dy, Point2D ddll, Point2D ctp, Point2D imageCoord, double[] src) {
+			int half = spacing / 2;
+			double f = half / (double) spacing;
+			for (int i = 0; i < CHECKS.length; i += 2) {
+				int ox = CHECKS[i] * half;
+				int oy = CHECKS[i + 1] * half;
+				if (!locate(minx + x0 + ox, miny + y0 + oy, ddll, ctp, imageCoord, src)) {
+					return false;
+				}
+				double u = CHECKS[i] * f;
+				double t = CHECKS[i + 1] * f;
+				double ix = (ax * (1 - u) + bx * u) * (1 - t) + (cx * (1 - u) + dx * u) * t;
+				double iy = (ay * (1 - u) + by * u) * (1 - t) + (cy * (1 - u) + dy * u) * t;
+				if (Math.abs(ix - src[0]) > maxGridError || Math.abs(iy - src[1]) > maxGridError) {
+					return false;
+				}
+			}
+			return true;
+		}
 
-					int imageIndex = horIndex + (verIndex * iwidth);
+		/**
+		 * Find the location in the source image, in fractional pixels, for a
+		 * map window pixel.
+		 * 
+		 * @return false if the pixel isn't on the map, like a space point in
+		 *         the Orthographic projection.
+		 */
+		boolean locate(int x, int y, Point2D ddll, Point2D ctp, Point2D imageCoord, double[] src) {
+			proj.inverse(x, y, ddll);
+
+			if (ddll.equals(center)) {
+				proj.forward(ddll, ctp);
+				if (ctp.getX() != x || ctp.getY() != y) {
+					return false;
+				}
+			}
 
-					if (imageIndex >= 0 && imageIndex < pixels.length) {
-						tmpPixels[tmpIndex] = pixels[imageIndex];
+			Point2D coord = ddll;
+			if (geoTrans != null) {
+				if (lockTrans) {
+					synchronized (geoTrans) {
+						geoTrans.forward(ddll.getY(), ddll.getX(), imageCoord);
 					}
+				} else {
+					geoTrans.forward(ddll.getY(), ddll.getX(), imageCoord);
 				}
+				coord = imageCoord;
 			}
 
-			logger.fine("finished creating image");
-			return tmpPixels;
+			src[0] = horOrigin + (coord.getX() / hor_upp);
+			src[1] = verOrigin + (coord.getY() / ver_upp);
+			return !Double.isNaN(src[0]) && !Double.isNaN(src[1]);
 		}
+	}
 
-		logger.warning("problem creating image, no pixels: " + (pixels == null ? "true" : "false") + ", no projection:"
-				+ (p == null ? "true" : "false"));
+	/**
+	 * The offsets, in half cells, of the points checked in each grid cell.
+	 */
+	private static final int[] CHECKS = new int[] { 1, 1, 1, 0, 0, 1, 2, 1, 1, 2 };
 
-		// If you get here, something's not right.
-		return null;
+	private static final int CLEAR = 0x00000000;
+
+	/**
+	 * Get the pixel value for a fractional location in the source image.
+	 * 
+	 * @return the ARGB value, or clear if the location is off the image.
+	 */
+	protected int sample(double x, double y) {
+		int horIndex = (int) Math.round(x);
+		int verIndex = (int) Math.round(y);
+
+		if (horIndex < 0 || horIndex >= iwidth || verIndex < 0 || verIndex >= iheight) {
+			// pixel not on the source image. This happens if the image
+			// doesn't cover the entire earth.
+			return CLEAR;
+		}
+
+		if (!bilinear) {
+			return pixels[horIndex + (verIndex * iwidth)];
+		}
+
+		int x0 = (int) Math.floor(x);
+		int y0 = (int) Math.floor(y);
+		double fx = x - x0;
+		double fy = y - y0;
+		int xa = Math.max(0, x0);
+		int xb = Math.min(iwidth - 1, x0 + 1);
+		int ya = Math.max(0, y0) * iwidth;
+		int yb = Math.min(iheight - 1, y0 + 1) * iwidth;
+		int p00 = pixels[xa + ya];
+		int p10 = pixels[xb + ya];
+		int p01 = pixels[xa + yb];
+		int p11 = pixels[xb + yb];
+
+		int ret = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			double top = ((p00 >>> shift) & 0xff) * (1 - fx) + ((p10 >>> shift) & 0xff) * fx;
+			double bottom = ((p01 >>> shift) & 0xff) * (1 - fx) + ((p11 >>> shift) & 0xff) * fx;
+			ret |= ((int) (top + (bottom - top) * fy + 0.5)) << shift;
+		}
+		return ret;
 	}
 
 	/**
@@ -521,6 +798,49 @@ public class ImageWarp {
 		this.horOrigin = horOrigin;
 	}
 
+	public int getGridSpacing() {
+		return gridSpacing;
+	}
+
+	public void setGridSpacing(int gridSpacing) {
+		this.gridSpacing = gridSpacing;
+	}
+
+	public double getMaxGridError() {
+		return maxGridError;
+	}
+
+	public void setMaxGridError(double maxGridError) {
+		this.maxGridError = maxGridError;
+	}
+
+	public boolean isBilinear() {
+		return bilinear;
+	}
+
+	public void setBilinear(boolean bilinear) {
+		this.bilinear = bilinear;
+	}
+
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	public boolean isReuseBuffers() {
+		return reuseBuffers;
+	}
+
+	public void setReuseBuffers(boolean reuseBuffers) {
+		this.reuseBuffers = reuseBuffers;
+		if (!reuseBuffers) {
+			destBuffer = null;
+		}
+	}
+
 	public GeoCoordTransformation getGeoTrans() {
 		return geoTrans;
 	}
@@ -0,0 +1,382 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.omGraphics.util;
+
+import java.util.Arrays;
+
+import com.bbn.openmap.proj.GeoProj;
+import com.bbn.openmap.proj.Projection;
+
+/**
+ * Vertex simplification for polys, so a detailed poly doesn't have to be
+ * projected and drawn point by point when the map is zoomed out so far that
+ * most of its points land on the same pixels.
+ * <P>
+ * Instead of simplifying a poly again for every scale, each vertex gets a
+ * significance, computed once: the largest tolerance that still keeps the
+ * vertex. Picking the vertices with a significance of at least the tolerance
+ * for the current scale gives the simplified poly for that scale. The end
+ * points are always kept.
+ * <P>
+ * There are two methods for computing significance:
+ * <ul>
+ * <li>DOUGLAS_PEUCKER: the distance of the vertex from the line it would be
+ * replaced by, in radians, as found by the Douglas-Peucker algorithm.
+ * <li>VISVALINGAM: the square root of the effective area of the vertex (the
+ * triangle it makes with its neighbors, in square radians), as found by the
+ * Visvalingam-Whyatt algorithm. This tends to keep the shape of small
+ * features better.
+ * </ul>
+ * Distances are measured in radians on a plane, with longitudes scaled by the
+ * cosine of the poly's middle latitude, which is close enough for deciding
+ * what can be seen.
+ */
+public class PolySimplifier {
+
+    public final static int DOUGLAS_PEUCKER = 0;
+    public final static int VISVALINGAM = 1;
+
+    public final static String DOUGLAS_PEUCKER_NAME = "douglasPeucker";
+    public final static String VISVALINGAM_NAME = "visvalingam";
+
+    private PolySimplifier() {
+    }
+
+    /**
+     * @param name DOUGLAS_PEUCKER_NAME or VISVALINGAM_NAME.
+     * @return the method for the name, DOUGLAS_PEUCKER if the name isn't
+     *         recognized.
+     */
+    public static int getMethod(String name) {
+        return VISVALINGAM_NAME.equalsIgnoreCase(name) ? VISVALINGAM : DOUGLAS_PEUCKER;
+    }
+
+    /**
+     * @param method DOUGLAS_PEUCKER or VISVALINGAM.
+     * @return the name of the method.
+     */
+    public static String getMethodName(int method) {
+        return method == VISVALINGAM ? VISVALINGAM_NAME : DOUGLAS_PEUCKER_NAME;
+    }
+
+    /**
+     * Compute the significance of each vertex of a poly.
+     *
+     * @param rawllpts lat, lon, lat, lon... in radians.
+     * @param method DOUGLAS_PEUCKER or VISVALINGAM.
+     * @return the significance of each vertex, in radians, Float.MAX_VALUE for
+     *         vertices that are always kept.
+     */
+    public static float[] computeSignificance(double[] rawllpts, int method) {
+        int n = rawllpts.length / 2;
+        float[] significance = new float[n];
+        if (n <= 2) {
+            Arrays.fill(significance, Float.MAX_VALUE);
+            return significance;
+        }
+
+        double lonScale = Math.cos((rawllpts[0] + rawllpts[(n - 1) * 2]) / 2);
+        significance[0] = Float.MAX_VALUE;
+        significance[n - 1] = Float.MAX_VALUE;
+
+        if (method == VISVALINGAM) {
+            visvalingam(rawllpts, n, lonScale, significance);
+        } else {
+            douglasPeucker(rawllpts, n, lonScale, significance);
+        }
+        return significance;
+    }
+
+    private static void douglasPeucker(double[] pts, int n, double lonScale, float[] significance) {
+        // Segments to split: start, end, and the significance of the vertex
+        // that made the segment. A vertex can't be more significant than
+        // that, or it would be kept at tolerances where its segment is
+        // already gone.
+        int[] stack = new int[64];
+        float[] caps = new float[32];
+        int top = 0;
+
+        int end = n - 1;
+        if (pts[0] == pts[end * 2] && pts[1] == pts[end * 2 + 1]) {
+            // A closed ring, where the end points are the same. Split it at
+            // the vertex farthest from the start.
+            int far = 1;
+            double farDist = -1;
+            for (int i = 1; i < end; i++) {
+                double dx = (pts[i * 2 + 1] - pts[1]) * lonScale;
+                double dy = pts[i * 2] - pts[0];
+                double dist = dx * dx + dy * dy;
+                if (dist > farDist) {
+                    farDist = dist;
+                    far = i;
+                }
+            }
+            significance[far] = Float.MAX_VALUE;
+            stack[top * 2] = 0;
+            stack[top * 2 + 1] = far;
+            caps[top++] = Float.MAX_VALUE;
+            stack[top * 2] = far;
+            stack[top * 2 + 1] = end;
+            caps[top++] = Float.MAX_VALUE;
+        } else {
+            stack[0] = 0;
+            stack[1] = end;
+            caps[top++] = Float.MAX_VALUE;
+        }
+
+        while (top > 0) {
+            top--;
+            int a = stack[top * 2];
+            int b = stack[top * 2 + 1];
+            float cap = caps[top];
+            if (b - a < 2) {
+                continue;
+            }
+
+            int maxIndex = a + 1;
+            double maxDist = -1;
+            for (int i = a + 1; i < b; i++) {
+                double dist = segmentDistanceSq(pts, i, a, b, lonScale);
+                if (dist > maxDist) {
+                    maxDist = dist;
+                    maxIndex = i;
+                }
+            }
+
+            float sig = Math.min((float) Math.sqrt(maxDist), cap);
+            significance[maxIndex] = sig;
+
+            if (top + 2 > caps.length) {
+                int[] newStack = new int[stack.length * 2];
+                float[] newCaps = new float[caps.length * 2];
+                System.arraycopy(stack, 0, newStack, 0, top * 2);
+                System.arraycopy(caps, 0, newCaps, 0, top);
+                stack = newStack;
+                caps = newCaps;
+            }
+            stack[top * 2] = a;
+            stack[top * 2 + 1] = maxIndex;
+            caps[top++] = sig;
+            stack[top * 2] = maxIndex;
+            stack[top * 2 + 1] = b;
+            caps[top++] = sig;
+        }
+    }
+
+    /**
+     * The squared distance of vertex i from the segment between vertices a
+     * and b.
+     */
+    private static double segmentDistanceSq(double[] pts, int i, int a, int b, double lonScale) {
+        double ax = pts[a * 2 + 1] * lonScale;
+        double ay = pts[a * 2];
+        double bx = pts[b * 2 + 1] * lonScale - ax;
+        double by = pts[b * 2] - ay;
+        double px = pts[i * 2 + 1] * lonScale - ax;
+        double py = pts[i * 2] - ay;
+
+        double len = bx * bx + by * by;
+        double t = len == 0 ? 0 : (px * bx + py * by) / len;
+        if (t < 0) {
+            t = 0;
+        } else if (t > 1) {
+            t = 1;
+        }
+        double dx = px - t * bx;
+        double dy = py - t * by;
+        return dx * dx + dy * dy;
+    }
+
+    private static void visvalingam(double[] pts, int n, double lonScale, float[] significance) {
+        // Vertices are removed smallest area first, from a doubly linked list
+        // of the remaining ones, and a heap ordered by area.
+        int[] prev = new int[n];
+        int[] next = new int[n];
+        double[] area = new double[n];
+        int[] heap = new int[n];
+        int[] heapPos = new int[n];
+        int size = 0;
+
+        for (int i = 0; i < n; i++) {
+            prev[i] = i - 1;
+            next[i] = i + 1;
+        }
+        for (int i = 1; i < n - 1; i++) {
+            area[i] = triangleArea(pts, i - 1, i, i + 1, lonScale);
+            heap[size] = i;
+            heapPos[i] = size++;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heap, heapPos, area, i, size);
+        }
+
+        double maxArea = 0;
+        while (size > 0) {
+            int i = heap[0];
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                heapPos[heap[0]] = 0;
+                siftDown(heap, heapPos, area, 0, size);
+            }
+            heapPos[i] = -1;
+
+            // Keep the areas increasing, so a vertex isn't dropped before one
+            // whose removal changed its triangle.
+            maxArea = Math.max(maxArea, area[i]);
+            significance[i] = (float) Math.sqrt(maxArea);
+
+            int p = prev[i];
+            int nx = next[i];
+            next[p] = nx;
+            prev[nx] = p;
+
+            if (p > 0 && heapPos[p] >= 0) {
+                area[p] = triangleArea(pts, prev[p], p, nx, lonScale);
+                update(heap, heapPos, area, p, size);
+            }
+            if (nx < n - 1 && heapPos[nx] >= 0) {
+                area[nx] = triangleArea(pts, p, nx, next[nx], lonScale);
+                update(heap, heapPos, area, nx, size);
+            }
+        }
+    }
+
+    private static double triangleArea(double[] pts, int a, int b, int c, double lonScale) {
+        double ax = pts[a * 2 + 1] * lonScale;
+        double ay = pts[a * 2];
+        double bx = pts[b * 2 + 1] * lonScale;
+        double by = pts[b * 2];
+        double cx = pts[c * 2 + 1] * lonScale;
+        double cy = pts[c * 2];
+        return Math.abs((bx - ax) * (cy - ay) - (cx - ax) * (by - ay)) / 2;
+    }
+
+    /**
+     * Move a vertex to its place in the heap after its area changed.
+     */
+    private static void update(int[] heap, int[] heapPos, double[] area, int vertex, int size) {
+        siftUp(heap, heapPos, area, heapPos[vertex]);
+        siftDown(heap, heapPos, area, heapPos[vertex], size);
+    }
+
+    private static void siftUp(int[] heap, int[] heapPos, double[] area, int pos) {
+        int item = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (area[heap[parent]] <= area[item]) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            heapPos[heap[pos]] = pos;
+            pos = parent;
+        }
+        heap[pos] = item;
+        heapPos[item] = pos;
+    }
+
+    private static void siftDown(int[] heap, int[] heapPos, double[] area, int pos, int size) {
+        int item = heap[pos];
+        while (true) {
+            int child = pos * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && area[heap[child + 1]] < area[heap[child]]) {
+                child++;
+            }
+            if (area[item] <= area[heap[child]]) {
+                break;
+            }
+            heap[pos] = heap[child];
+            heapPos[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = item;
+        heapPos[item] = pos;
+    }
+
+    /**
+     * The tolerance, in radians, for a number of pixels at the scale of the
+     * projection. Based on the scale at the center of the projection, so
+     * projections that stretch the map away from the center (like Mercator
+     * toward the poles) will be simplified a little more there.
+     *
+     * @param proj the projection the poly is being generated for.
+     * @param pixels the tolerance in pixels.
+     * @return the tolerance in radians, or 0 if the projection isn't a
+     *         GeoProj.
+     */
+    public static float getTolerance(Projection proj, float pixels) {
+        if (!(proj instanceof GeoProj) || pixels <= 0) {
+            return 0;
+        }
+        double pixelsPerRadian = ((GeoProj) proj).getPlanetPixelRadius() / proj.getScale();
+        return (float) (pixels / pixelsPerRadian);
+    }
+
+    /**
+     * Round a tolerance down to a power of two, so all the scales between
+     * two levels use the same set of vertices, and a simplified poly can be
+     * reused until the map is zoomed to another level.
+     *
+     * @param tolerance in radians.
+     * @return the tolerance for the level, 0 if tolerance is 0.
+     */
+    public static float getLevel(float tolerance) {
+        if (tolerance <= 0) {
+            return 0;
+        }
+        return Math.scalb(1f, Math.getExponent(tolerance));
+    }
+
+    /**
+     * @param significance for each vertex.
+     * @param tolerance in radians.
+     * @return the number of vertices that would be kept at the tolerance.
+     */
+    public static int count(float[] significance, float tolerance) {
+        int count = 0;
+        for (float sig : significance) {
+            if (sig >= tolerance) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Pick the vertices of a poly that are kept at a tolerance.
+     *
+     * @param rawllpts lat, lon, lat, lon... coordinates.
+     * @param significance for each vertex, from computeSignificance.
+     * @param tolerance in radians.
+     * @return the kept coordinates, or rawllpts if all of them are kept.
+     */
+    public static double[] select(double[] rawllpts, float[] significance, float tolerance) {
+        int count = count(significance, tolerance);
+        if (count == significance.length) {
+            return rawllpts;
+        }
+        double[] ret = new double[count * 2];
+        for (int i = 0, j = 0; i < significance.length; i++) {
+            if (significance[i] >= tolerance) {
+                ret[j++] = rawllpts[i * 2];
+                ret[j++] = rawllpts[i * 2 + 1];
+            }
+        }
+        return ret;
+    }
+}
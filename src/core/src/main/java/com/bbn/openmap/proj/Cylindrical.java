@@ -457,6 +457,142 @@ public abstract class Cylindrical
         return ret_val;
     }// _forwardPoly()
 
+    /**
+     * Forward project a raw float[] Poly into a PolyBuffer. Straight lines are
+     * projected straight into the buffer, the same way as the ArrayList
+     * version, without allocating anything once the buffer is big enough.
+     * 
+     * @param rawllpts float[] of lat,lon,lat,lon,... in RADIANS!
+     * @param ltype line type (straight, rhumbline, greatcircle)
+     * @param nsegs number of segments between vertices (or if &lt; 0, generate
+     *        this value internally)
+     * @param isFilled filled poly? this is currently ignored for cylindrical
+     *        projections.
+     * @param buffer the cleared PolyBuffer to add the projected parts to.
+     */
+    protected void _forwardPoly(float[] rawllpts, int ltype, int nsegs, boolean isFilled, PolyBuffer buffer) {
+        int len = rawllpts.length >> 1;
+        if (len < 2) {
+            return;
+        }
+
+        if (isComplicatedLineType(ltype)) {
+            super._forwardPoly(rawllpts, ltype, nsegs, isFilled, buffer);
+            return;
+        }
+
+        int n, k, flag = 0, min = 0, max = 0;
+        float xp, xadj = 0;
+
+        Point2D temp = buffer.point;
+        int part = buffer.addPart(len);
+        float[] xs = buffer.getX(part);
+        float[] ys = buffer.getY(part);
+
+        forward(rawllpts[0], rawllpts[1], temp, true);
+        xp = (float) temp.getX();
+        xs[0] = xp;
+        ys[0] = (float) temp.getY();
+        for (n = 1, k = 2; n < len; n++, k += 2) {
+            forward(rawllpts[k], rawllpts[k + 1], temp, true);
+            xs[n] = (float) temp.getX();
+            ys[n] = (float) temp.getY();
+            // segment crosses longitude along screen edge
+            if (Math.abs(xp - xs[n]) >= half_world) {
+                flag += (xp < xs[n]) ? -1 : 1;
+                min = (flag < min) ? flag : min;
+                max = (flag > max) ? flag : max;
+                xadj = flag * world.x;
+            }
+            xp = (float) temp.getX();
+            if (flag != 0) {
+                xs[n] += xadj;
+            }
+        }
+
+        addWrappedParts(buffer, part, -min, max);
+    }
+
+    /**
+     * Forward project a raw double[] Poly into a PolyBuffer. Straight lines are
+     * projected straight into the buffer, the same way as the ArrayList
+     * version, without allocating anything once the buffer is big enough.
+     * 
+     * @param rawllpts double[] of lat,lon,lat,lon,... in RADIANS!
+     * @param ltype line type (straight, rhumbline, greatcircle)
+     * @param nsegs number of segments between vertices (or if &lt; 0, generate
+     *        this value internally)
+     * @param isFilled filled poly? this is currently ignored for cylindrical
+     *        projections.
+     * @param buffer the cleared PolyBuffer to add the projected parts to.
+     */
+    protected void _forwardPoly(double[] rawllpts, int ltype, int nsegs, boolean isFilled, PolyBuffer buffer) {
+        int len = rawllpts.length >> 1;
+        if (len < 2) {
+            return;
+        }
+
+        if (isComplicatedLineType(ltype)) {
+            super._forwardPoly(rawllpts, ltype, nsegs, isFilled, buffer);
+            return;
+        }
+
+        int n, k, flag = 0, min = 0, max = 0;
+        float xp, xadj = 0;
+
+        Point2D temp = buffer.point;
+        int part = buffer.addPart(len);
+        float[] xs = buffer.getX(part);
+        float[] ys = buffer.getY(part);
+
+        forward(rawllpts[0], rawllpts[1], temp, true);
+        xp = (float) temp.getX();
+        xs[0] = xp;
+        ys[0] = (float) temp.getY();
+        for (n = 1, k = 2; n < len; n++, k += 2) {
+            forward(rawllpts[k], rawllpts[k + 1], temp, true);
+            xs[n] = (float) temp.getX();
+            ys[n] = (float) temp.getY();
+            // segment crosses longitude along screen edge
+            if (Math.abs(xp - xs[n]) >= half_world) {
+                flag += (xp < xs[n]) ? -1 : 1;
+                min = (flag < min) ? flag : min;
+                max = (flag > max) ? flag : max;
+                xadj = flag * world.x;
+            }
+            xp = (float) temp.getX();
+            if (flag != 0) {
+                xs[n] += xadj;
+            }
+        }
+
+        addWrappedParts(buffer, part, -min, max);
+    }
+
+    /**
+     * Add the shifted copies of a projected part that wrapped around the
+     * world, min times to the left and max times to the right.
+     */
+    private void addWrappedParts(PolyBuffer buffer, int part, int min, int max) {
+        for (int i = 1; i <= min; i++) {
+            addShiftedPart(buffer, part, i * world.x);
+        }
+        for (int i = 1; i <= max; i++) {
+            addShiftedPart(buffer, part, -i * world.x);
+        }
+    }
+
+    private void addShiftedPart(PolyBuffer buffer, int part, float xadj) {
+        int len = buffer.getLength(part);
+        int shifted = buffer.addPart(len);
+        float[] xs = buffer.getX(part);
+        float[] altx = buffer.getX(shifted);
+        for (int j = 0; j < len; j++) {
+            altx[j] = xs[j] + xadj;
+        }
+        System.arraycopy(buffer.getY(part), 0, buffer.getY(shifted), 0, len);
+    }
+
     // print out polygon
     public static final void dumpPoly(float[] rawllpts, float[] xs, float[] ys) {
         Debug.output("poly:");
@@ -1153,6 +1153,50 @@ public abstract class GeoProj extends Proj {
 		return forwardPoly(rawllpts, ltype, nsegs, isFilled);
 	}
 
+	/**
+	 * Forward project a LatLon Line into a PolyBuffer, without allocating the
+	 * lat/lon array for it.
+	 * 
+	 * @param ll1    LatLonPoint
+	 * @param ll2    LatLonPoint
+	 * @param ltype  line type (straight, rhumbline, greatcircle)
+	 * @param nsegs  number of segment points (only for greatcircle or rhumbline
+	 *               line types, and if &lt; 1, this value is generated
+	 *               internally)
+	 * @param buffer the PolyBuffer to put the projected parts in.
+	 */
+	public void forwardLine(LatLonPoint ll1, LatLonPoint ll2, int ltype, int nsegs, PolyBuffer buffer) {
+		double[] rawllpts = buffer.lineCoords;
+		rawllpts[0] = ll1.getRadLat();
+		rawllpts[1] = ll1.getRadLon();
+		rawllpts[2] = ll2.getRadLat();
+		rawllpts[3] = ll2.getRadLon();
+		forwardPoly(rawllpts, ltype, nsegs, false, buffer);
+	}
+
+	/**
+	 * Forward project a LatLon Rectangle into a PolyBuffer, without allocating
+	 * the lat/lon array for it.
+	 * 
+	 * @param ll1      LatLonPoint of northwest corner
+	 * @param ll2      LatLonPoint of southeast corner
+	 * @param ltype    line type (straight, rhumbline, greatcircle)
+	 * @param nsegs    number of segment points (only for greatcircle or rhumbline
+	 *                 line types, and if &lt; 1, this value is generated
+	 *                 internally)
+	 * @param isFilled filled poly?
+	 * @param buffer   the PolyBuffer to put the projected parts in.
+	 */
+	public void forwardRect(LatLonPoint ll1, LatLonPoint ll2, int ltype, int nsegs, boolean isFilled,
+			PolyBuffer buffer) {
+		double[] rawllpts = buffer.rectCoords;
+		rawllpts[0] = rawllpts[2] = rawllpts[8] = ll1.getRadLat();
+		rawllpts[1] = rawllpts[7] = rawllpts[9] = ll1.getRadLon();
+		rawllpts[3] = rawllpts[5] = ll2.getRadLon();
+		rawllpts[4] = rawllpts[6] = ll2.getRadLat();
+		forwardPoly(rawllpts, ltype, nsegs, isFilled, buffer);
+	}
+
 	/**
 	 * Forward project a lat/lon Rectangle.
 	 * 
@@ -1473,6 +1517,53 @@ public abstract class GeoProj extends Proj {
 		return stuff;
 	}
 
+	/**
+	 * Forward project a lat/lon Poly into a PolyBuffer, instead of a new
+	 * ArrayList. The buffer is cleared first. Projections that can write their
+	 * coordinates straight into the buffer don't allocate anything once the
+	 * buffer has grown to fit, which matters when lots of polys are projected
+	 * for every map change. Remember to specify vertices in radians!
+	 * 
+	 * @param rawllpts float[] of lat,lon,lat,lon,... in RADIANS!
+	 * @param ltype    line type (straight, rhumbline, greatcircle)
+	 * @param nsegs    number of segment points (only for greatcircle or rhumbline
+	 *                 line types, and if &lt; 1, this value is generated
+	 *                 internally)
+	 * @param isFilled poly is filled? or not
+	 * @param buffer   the PolyBuffer to put the projected parts in.
+	 * @see PolyBuffer#scratch()
+	 */
+	public void forwardPoly(float[] rawllpts, int ltype, int nsegs, boolean isFilled, PolyBuffer buffer) {
+		buffer.clear();
+		_forwardPoly(rawllpts, ltype, nsegs, isFilled, buffer);
+		// @HACK: workaround XWindows bug, same as the other forwardPolys.
+		if (Environment.doingXWindowsWorkaround() && (scale <= XSCALE_THRESHOLD)) {
+			buffer.clip(XTHRESHOLD);
+		}
+	}
+
+	/**
+	 * Forward project a lat/lon Poly into a PolyBuffer, instead of a new
+	 * ArrayList. The buffer is cleared first. Remember to specify vertices in
+	 * radians!
+	 * 
+	 * @param rawllpts double[] of lat,lon,lat,lon,... in RADIANS!
+	 * @param ltype    line type (straight, rhumbline, greatcircle)
+	 * @param nsegs    number of segment points (only for greatcircle or rhumbline
+	 *                 line types, and if &lt; 1, this value is generated
+	 *                 internally)
+	 * @param isFilled poly is filled? or not
+	 * @param buffer   the PolyBuffer to put the projected parts in.
+	 * @see PolyBuffer#scratch()
+	 */
+	public void forwardPoly(double[] rawllpts, int ltype, int nsegs, boolean isFilled, PolyBuffer buffer) {
+		buffer.clear();
+		_forwardPoly(rawllpts, ltype, nsegs, isFilled, buffer);
+		if (Environment.doingXWindowsWorkaround() && (scale <= XSCALE_THRESHOLD)) {
+			buffer.clip(XTHRESHOLD);
+		}
+	}
+
 	/**
 	 * Forward project a lat/lon Poly defined as decimal degree lat/lons.
 	 * <p>
@@ -1526,6 +1617,40 @@ public abstract class GeoProj extends Proj {
 	 */
 	protected abstract ArrayList<float[]> _forwardPoly(double[] rawllpts, int ltype, int nsegs, boolean isFilled);
 
+	/**
+	 * Forward project a lat/lon Poly into a PolyBuffer. This version adds the
+	 * results of the ArrayList version, projections that can should override
+	 * it to write into the buffer directly.
+	 * 
+	 * @param rawllpts float[] of lat,lon,lat,lon,... in RADIANS!
+	 * @param ltype    line type (straight, rhumbline, greatcircle)
+	 * @param nsegs    number of segment points (only for greatcircle or rhumbline
+	 *                 line types, and if &lt; 1, this value is generated
+	 *                 internally)
+	 * @param isFilled filled poly?
+	 * @param buffer   the cleared PolyBuffer to add the projected parts to.
+	 */
+	protected void _forwardPoly(float[] rawllpts, int ltype, int nsegs, boolean isFilled, PolyBuffer buffer) {
+		buffer.add(_forwardPoly(rawllpts, ltype, nsegs, isFilled));
+	}
+
+	/**
+	 * Forward project a lat/lon Poly into a PolyBuffer. This version adds the
+	 * results of the ArrayList version, projections that can should override
+	 * it to write into the buffer directly.
+	 * 
+	 * @param rawllpts double[] of lat,lon,lat,lon,... in RADIANS!
+	 * @param ltype    line type (straight, rhumbline, greatcircle)
+	 * @param nsegs    number of segment points (only for greatcircle or rhumbline
+	 *                 line types, and if &lt; 1, this value is generated
+	 *                 internally)
+	 * @param isFilled filled poly?
+	 * @param buffer   the cleared PolyBuffer to add the projected parts to.
+	 */
+	protected void _forwardPoly(double[] rawllpts, int ltype, int nsegs, boolean isFilled, PolyBuffer buffer) {
+		buffer.add(_forwardPoly(rawllpts, ltype, nsegs, isFilled));
+	}
+
 	/**
 	 * Get the unprojected coordinates units of measure.
 	 * 
@@ -0,0 +1,215 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.proj;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+/**
+ * A reusable place for projections to put projected polys, instead of
+ * returning a new ArrayList of new float[]s for every call. A poly can project
+ * into more than one part (x[], y[]) when it wraps around the world, so the
+ * buffer holds a list of parts, and the arrays for each part grow as needed
+ * and are kept for the next poly.
+ * <p>
+ * The arrays returned by getX() and getY() can be longer than the part, use
+ * getLength() for the number of points. The contents are only good until the
+ * buffer is used again, so callers that need to keep the coordinates should
+ * copy them with copyXPoints() and copyYPoints(), which can reuse arrays from
+ * a previous copy.
+ * <p>
+ * A PolyBuffer is not thread safe. scratch() provides one for each thread,
+ * which is what OMGraphics use when they generate.
+ */
+public class PolyBuffer {
+
+    private final static ThreadLocal<PolyBuffer> SCRATCH = new ThreadLocal<PolyBuffer>() {
+        protected PolyBuffer initialValue() {
+            return new PolyBuffer();
+        }
+    };
+
+    /**
+     * @return the PolyBuffer for the current thread.
+     */
+    public static PolyBuffer scratch() {
+        return SCRATCH.get();
+    }
+
+    protected float[][] xs = new float[4][];
+    protected float[][] ys = new float[4][];
+    protected int[] lengths = new int[4];
+    protected int count;
+
+    /**
+     * Scratch point for projections to use while filling the buffer.
+     */
+    protected final Point2D.Double point = new Point2D.Double();
+    /**
+     * Scratch lat/lon arrays for lines and rects.
+     */
+    protected final double[] lineCoords = new double[4];
+    protected final double[] rectCoords = new double[10];
+
+    public PolyBuffer() {
+    }
+
+    /**
+     * Remove all the parts, keeping the arrays for reuse.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * @return the number of parts (x[], y[] pairs) in the buffer.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Add a part with room for length points.
+     *
+     * @param length the number of points in the part.
+     * @return the index of the new part, for getX() and getY().
+     */
+    public int addPart(int length) {
+        if (count == lengths.length) {
+            int newSize = count * 2;
+            float[][] newXs = new float[newSize][];
+            float[][] newYs = new float[newSize][];
+            int[] newLengths = new int[newSize];
+            System.arraycopy(xs, 0, newXs, 0, count);
+            System.arraycopy(ys, 0, newYs, 0, count);
+            System.arraycopy(lengths, 0, newLengths, 0, count);
+            xs = newXs;
+            ys = newYs;
+            lengths = newLengths;
+        }
+
+        xs[count] = ensureCapacity(xs[count], length);
+        ys[count] = ensureCapacity(ys[count], length);
+        lengths[count] = length;
+        return count++;
+    }
+
+    private float[] ensureCapacity(float[] array, int length) {
+        if (array == null || array.length < length) {
+            // Grow ahead, so a run of slightly bigger polys doesn't
+            // reallocate each time.
+            int capacity = array == null ? length : Math.max(length, array.length * 2);
+            return new float[capacity];
+        }
+        return array;
+    }
+
+    /**
+     * Add the parts from a list of x[], y[], x[], y[], ..., as returned by the
+     * projection forwardPoly methods.
+     *
+     * @param polys the list of projected coordinates.
+     */
+    public void add(List<float[]> polys) {
+        int size = polys.size();
+        for (int i = 0; i + 1 < size; i += 2) {
+            float[] x = polys.get(i);
+            float[] y = polys.get(i + 1);
+            int part = addPart(x.length);
+            System.arraycopy(x, 0, xs[part], 0, x.length);
+            System.arraycopy(y, 0, ys[part], 0, x.length);
+        }
+    }
+
+    /**
+     * @param part the part index.
+     * @return the x coordinates of the part, may be longer than the part.
+     */
+    public float[] getX(int part) {
+        return xs[part];
+    }
+
+    /**
+     * @param part the part index.
+     * @return the y coordinates of the part, may be longer than the part.
+     */
+    public float[] getY(int part) {
+        return ys[part];
+    }
+
+    /**
+     * @param part the part index.
+     * @return the number of points in the part.
+     */
+    public int getLength(int part) {
+        return lengths[part];
+    }
+
+    /**
+     * Copy the x coordinates of all the parts into exact length arrays.
+     *
+     * @param reuse the arrays from a previous copy, which are used if the
+     *        number of parts and their lengths match. May be null.
+     * @return the x coordinate arrays, reuse if it could be used.
+     */
+    public float[][] copyXPoints(float[][] reuse) {
+        return copy(xs, reuse);
+    }
+
+    /**
+     * Copy the y coordinates of all the parts into exact length arrays.
+     *
+     * @param reuse the arrays from a previous copy, which are used if the
+     *        number of parts and their lengths match. May be null.
+     * @return the y coordinate arrays, reuse if it could be used.
+     */
+    public float[][] copyYPoints(float[][] reuse) {
+        return copy(ys, reuse);
+    }
+
+    private float[][] copy(float[][] source, float[][] reuse) {
+        float[][] ret = (reuse != null && reuse.length == count) ? reuse : new float[count][];
+        for (int i = 0; i < count; i++) {
+            int length = lengths[i];
+            float[] dest = ret[i];
+            if (dest == null || dest.length != length) {
+                dest = new float[length];
+                ret[i] = dest;
+            }
+            System.arraycopy(source[i], 0, dest, 0, length);
+        }
+        return ret;
+    }
+
+    /**
+     * Clip all the coordinates to +/- threshold.
+     */
+    void clip(float threshold) {
+        for (int i = 0; i < count; i++) {
+            clip(xs[i], lengths[i], threshold);
+            clip(ys[i], lengths[i], threshold);
+        }
+    }
+
+    private static void clip(float[] pts, int length, float threshold) {
+        for (int j = 0; j < length; j++) {
+            if (pts[j] <= -threshold) {
+                pts[j] = -threshold;
+            } else if (pts[j] >= threshold) {
+                pts[j] = threshold;
+            }
+        }
+    }
+}
@@ -74,6 +74,18 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 
 	protected List<Road> removedRoads = new ArrayList<>();
 
+	/**
+	 * Routing graph made from the roads and intersections, built when the first
+	 * route is needed and dropped when the roads change.
+	 */
+	protected volatile RoadGraph roadGraph;
+
+	/**
+	 * Whether the routing graph gets contraction shortcuts, which take time to
+	 * build but make repeated route queries faster.
+	 */
+	protected boolean contractRoadGraph = false;
+
 	/**
 	 * how far (in lat-lon space) from lat,lon point to look in quad tree for
 	 * nearest road *
@@ -132,6 +144,7 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 		removedRoads.clear();
 		roads.clear();
 		toDraw.clear();
+		invalidateRoadGraph();
 		getRoads();
 		checkIntegrity();
 		logger.info("showing " + toDraw.size() + " extra graphics.");
@@ -523,6 +536,7 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 			intersection = new Intersection(loc, name, this);
 			intersections.put(intersection);
 			interQuadTree.put(intersection.getLatitude(), intersection.getLongitude(), intersection);
+			invalidateRoadGraph();
 		}
 		return intersection;
 	}
@@ -542,6 +556,7 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 			intersection = new Intersection(loc, name, this);
 			interQuadTree.put(intersection.getLatitude(), intersection.getLongitude(), intersection);
 			intersections.put(intersection);
+			invalidateRoadGraph();
 		} else {
 			if (logger.isLoggable(Level.FINE))
 				logger.fine("found existing intersection for " + loc + " with " + intersection.getRoadCount()
@@ -554,6 +569,7 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 		if (intersection.getRoadCount() > 0)
 			throw new IllegalArgumentException("Attempt to delete connected intersection");
 		intersections.remove(intersection);
+		invalidateRoadGraph();
 	}
 
 	/**
@@ -585,6 +601,7 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 		from.addRoad(road);
 		to.addRoad(road);
 		roads.add(road);
+		invalidateRoadGraph();
 		return road;
 	}
 
@@ -609,6 +626,7 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 		}
 		removedRoads.add(road);
 		roads.remove(road);
+		invalidateRoadGraph();
 	}
 
 	/**
@@ -629,6 +647,7 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 		newIntersection.addRoad(road);
 		Road newRoad = createRoad(-1, null, newIntersection, secondIntersection, road.getRoadClass());
 		newRoad.setRoadPoints(pointsAfter);
+		invalidateRoadGraph();
 		return newIntersection;
 	}
 
@@ -653,6 +672,7 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 		if (road0 == road1) {
 			roads.remove(road1);
 			intersections.remove(intersection);
+			invalidateRoadGraph();
 			return;
 		}
 		if (road0.getRoadClass() != road1.getRoadClass())
@@ -687,6 +707,45 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 		}
 		road0.setRoadPoints(innerPoints);
 		road0.setName(mergeRoadNames(road0.getName(), road1.getName()));
+		invalidateRoadGraph();
+	}
+
+	/**
+	 * Get the graph used to find routes, building it from the current roads and
+	 * intersections if needed.
+	 */
+	public synchronized RoadGraph getRoadGraph() {
+		RoadGraph graph = roadGraph;
+		if (graph == null) {
+			graph = new RoadGraph(intersections.getIntersections());
+			if (contractRoadGraph) {
+				graph.contract();
+			}
+			roadGraph = graph;
+		}
+		return graph;
+	}
+
+	/**
+	 * Drop the routing graph, so it's rebuilt for the next route. Call this if
+	 * the roads are changed other than through this RoadFinder. Blocking and
+	 * unblocking roads doesn't need it.
+	 */
+	public void invalidateRoadGraph() {
+		roadGraph = null;
+	}
+
+	public boolean isContractRoadGraph() {
+		return contractRoadGraph;
+	}
+
+	/**
+	 * Set whether the routing graph gets contraction shortcuts, for faster
+	 * route queries on a network that doesn't change much.
+	 */
+	public void setContractRoadGraph(boolean contractRoadGraph) {
+		this.contractRoadGraph = contractRoadGraph;
+		invalidateRoadGraph();
 	}
 
 	protected String mergeRoadNames(String name0, String name1) {
@@ -859,8 +918,7 @@ public class RoadFinder implements RoadServices, ProjectionListener, RoadLayer {
 				return bestRoute;
 			}
 
-			bestRoute = Route.getBestRoute(startTemp, endTemp, roadClasses.getBestConvoySpeed(),
-					roadClasses.getWorstConvoySpeed());
+			bestRoute = getRoadGraph().getBestRoute(startTemp, endTemp);
 		}
 
 		if (bestRoute == null) {
@@ -0,0 +1,842 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.tools.roads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.proj.GreatCircle;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * A compact, read-only copy of a road network for finding routes. The
+ * intersections are numbered, and the roads leaving each intersection are kept
+ * in primitive arrays (compressed sparse rows), so a search doesn't touch the
+ * Intersection and Road objects until the route is made.
+ * <P>
+ * Routes are found with A*, using the great circle distance to the destination
+ * at the fastest convoy speed as the estimate of the time left. Each thread
+ * gets its own search arrays, so any number of routes can be found at the same
+ * time without locking. Blocked roads are checked while searching, so blocking
+ * and unblocking roads doesn't require a new graph, but adding, removing or
+ * moving roads does.
+ * <P>
+ * For many queries on the same network, contract() adds shortcut edges
+ * (contraction hierarchies), after which routes are found with a bidirectional
+ * search that only looks at a small part of the graph.
+ */
+public class RoadGraph {
+
+	static Logger logger = Logger.getLogger("com.bbn.openmap.tools.roads.RoadGraph");
+
+	/**
+	 * The number of intersections settled by a witness search before the
+	 * contraction gives up and adds the shortcut.
+	 */
+	protected static final int WITNESS_SEARCH_LIMIT = 64;
+
+	protected final Intersection[] nodes;
+	protected final Map<Intersection, Integer> nodeIds;
+	protected final double[] lats;
+	protected final double[] lons;
+	/**
+	 * The edges leaving node n are firstEdge[n] to firstEdge[n + 1] - 1.
+	 */
+	protected final int[] firstEdge;
+	protected final int[] edgeTarget;
+	/**
+	 * Hours to drive each edge when the road isn't blocked.
+	 */
+	protected final double[] edgeHours;
+	protected final Road[] edgeRoads;
+	/**
+	 * The fastest convoy speed on any road, for the A* estimate.
+	 */
+	protected final double maxSpeed;
+
+	protected volatile Hierarchy hierarchy;
+
+	/**
+	 * The search arrays of each thread, shared by all graphs so they don't
+	 * keep a graph alive after it's dropped.
+	 */
+	private static final ThreadLocal<Search> searches = new ThreadLocal<Search>() {
+		protected Search initialValue() {
+			return new Search();
+		}
+	};
+
+	private static final ThreadLocal<BidirectionalSearch> chSearches = new ThreadLocal<BidirectionalSearch>() {
+		protected BidirectionalSearch initialValue() {
+			return new BidirectionalSearch();
+		}
+	};
+
+	/**
+	 * Create a graph of the intersections and the roads between them.
+	 * Intersections at the other end of the roads are included even if they
+	 * aren't in the collection.
+	 *
+	 * @param intersections the intersections of the network.
+	 */
+	public RoadGraph(Collection<Intersection> intersections) {
+		List<Intersection> nodeList = new ArrayList<>(intersections);
+		nodeIds = new HashMap<>();
+		for (int i = 0; i < nodeList.size(); i++) {
+			nodeIds.put(nodeList.get(i), i);
+		}
+
+		int edgeCount = 0;
+		for (int i = 0; i < nodeList.size(); i++) {
+			for (Road road : nodeList.get(i).getRoads()) {
+				Intersection other = road.getOtherIntersection(nodeList.get(i));
+				if (other != null && !nodeIds.containsKey(other)) {
+					nodeIds.put(other, nodeList.size());
+					nodeList.add(other);
+				}
+				edgeCount++;
+			}
+		}
+
+		int n = nodeList.size();
+		nodes = nodeList.toArray(new Intersection[n]);
+		lats = new double[n];
+		lons = new double[n];
+		firstEdge = new int[n + 1];
+		int[] targets = new int[edgeCount];
+		double[] hours = new double[edgeCount];
+		Road[] edgeRoadList = new Road[edgeCount];
+		double fastest = 0;
+
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			LatLonPoint loc = nodes[i].getLocation();
+			lats[i] = loc.getY();
+			lons[i] = loc.getX();
+			firstEdge[i] = e;
+
+			for (Road road : nodes[i].getRoads()) {
+				Integer target = nodeIds.get(road.getOtherIntersection(nodes[i]));
+				RoadClass roadClass = road.getRoadClass();
+				double speed = roadClass != null ? roadClass.getConvoySpeed() : 0;
+				if (target == null || target.intValue() == i || !(speed > 0)) {
+					continue;
+				}
+				targets[e] = target.intValue();
+				hours[e] = road.getLengthInKilometers() / speed;
+				edgeRoadList[e] = road;
+				fastest = Math.max(fastest, speed);
+				e++;
+			}
+		}
+		firstEdge[n] = e;
+
+		edgeTarget = Arrays.copyOf(targets, e);
+		edgeHours = Arrays.copyOf(hours, e);
+		edgeRoads = Arrays.copyOf(edgeRoadList, e);
+		maxSpeed = fastest;
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("road graph has " + n + " intersections, " + e + " edges");
+		}
+	}
+
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	public int getEdgeCount() {
+		return edgeTarget.length;
+	}
+
+	/**
+	 * @return true if contract() has added shortcuts to the graph.
+	 */
+	public boolean isContracted() {
+		return hierarchy != null;
+	}
+
+	/**
+	 * Find the fastest route between two intersections.
+	 *
+	 * @param from the starting intersection.
+	 * @param to the destination.
+	 * @return the Route, or null if the intersections aren't connected, aren't
+	 *         in the graph, or are the same.
+	 */
+	public Route getBestRoute(Intersection from, Intersection to) {
+		Integer source = nodeIds.get(from);
+		Integer target = nodeIds.get(to);
+		if (source == null || target == null || source.equals(target)) {
+			return null;
+		}
+
+		List<Road> path = null;
+		Hierarchy ch = hierarchy;
+		if (ch != null) {
+			path = ch.findPath(source.intValue(), target.intValue());
+			if (path == null) {
+				return null;
+			}
+			// The shortcuts were made without knowing about blocked roads.
+			if (!isBlocked(path)) {
+				return createRoute(from, path);
+			}
+		}
+
+		path = findPath(searches.get(), source.intValue(), target.intValue());
+		return path != null ? createRoute(from, path) : null;
+	}
+
+	/**
+	 * Get the number of hours it takes to drive a route, or Float.MAX_VALUE if
+	 * one of its roads is blocked.
+	 */
+	public static double getTraverseHours(Route route) {
+		double hours = 0;
+		for (Road road : route.roads) {
+			hours += road.getTraverseHours();
+		}
+		return hours;
+	}
+
+	protected boolean isBlocked(List<Road> path) {
+		for (Road road : path) {
+			if (road.isBlocked()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	protected Route createRoute(Intersection from, List<Road> path) {
+		Road[] roads = path.toArray(new Road[path.size()]);
+		return new Route(null, roads, roads[0].getFirstIntersection().equals(from));
+	}
+
+	/**
+	 * Estimate of the hours to drive between two nodes, never more than it
+	 * really takes. The distance is measured the same way as
+	 * Road.getLengthInKilometers measures it.
+	 */
+	protected double estimateHours(int node, int target) {
+		return GreatCircle.sphericalDistance(lats[node], lons[node], lats[target], lons[target]) / maxSpeed;
+	}
+
+	/**
+	 * Add shortcuts to the graph so that later queries can use a bidirectional
+	 * search on the contraction hierarchy. This takes a while for big
+	 * networks, and should be done again if the roads change.
+	 */
+	public synchronized void contract() {
+		if (hierarchy == null) {
+			long start = System.currentTimeMillis();
+			hierarchy = new Hierarchy();
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("contracted road graph in " + (System.currentTimeMillis() - start) + " ms, "
+						+ hierarchy.shortcutCount + " shortcuts");
+			}
+		}
+	}
+
+	/**
+	 * A binary heap of node ids ordered by a key, allowing a node to be in the
+	 * heap more than once. Stale entries are skipped by the searches.
+	 */
+	static class NodeHeap {
+		double[] keys = new double[64];
+		int[] heapNodes = new int[64];
+		int size;
+
+		void clear() {
+			size = 0;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		double peekKey() {
+			return keys[0];
+		}
+
+		void push(int node, double key) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				heapNodes = Arrays.copyOf(heapNodes, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (keys[parent] <= key) {
+					break;
+				}
+				keys[i] = keys[parent];
+				heapNodes[i] = heapNodes[parent];
+				i = parent;
+			}
+			keys[i] = key;
+			heapNodes[i] = node;
+		}
+
+		/**
+		 * Remove the node with the smallest key. Call peekKey() first to get
+		 * the key.
+		 */
+		int pop() {
+			int top = heapNodes[0];
+			size--;
+			double key = keys[size];
+			int node = heapNodes[size];
+			int i = 0;
+			int child;
+			while ((child = 2 * i + 1) < size) {
+				if (child + 1 < size && keys[child + 1] < keys[child]) {
+					child++;
+				}
+				if (key <= keys[child]) {
+					break;
+				}
+				keys[i] = keys[child];
+				heapNodes[i] = heapNodes[child];
+				i = child;
+			}
+			keys[i] = key;
+			heapNodes[i] = node;
+			return top;
+		}
+	}
+
+	/**
+	 * The arrays for one A* search at a time. The arrays are reused by the
+	 * next search of the same thread, on any graph, and a stamp marks which
+	 * entries are from the current search.
+	 */
+	static class Search {
+		double[] hours = new double[0];
+		double[] estimates = new double[0];
+		int[] parentEdge = new int[0];
+		int[] stamps = new int[0];
+		final NodeHeap heap = new NodeHeap();
+		int stamp;
+
+		/**
+		 * Get ready for a search of a graph with n nodes.
+		 */
+		void start(int n) {
+			if (stamps.length < n) {
+				hours = new double[n];
+				estimates = new double[n];
+				parentEdge = new int[n];
+				stamps = new int[n];
+				stamp = 0;
+			}
+			if (++stamp == 0) {
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+			heap.clear();
+		}
+	}
+
+	/**
+	 * Find the fastest path with A*.
+	 *
+	 * @return the roads from source to target, or null if there is no way
+	 *         there.
+	 */
+	protected List<Road> findPath(Search search, int source, int target) {
+		search.start(nodes.length);
+		double[] hours = search.hours;
+		double[] estimates = search.estimates;
+		int[] stamps = search.stamps;
+		int stamp = search.stamp;
+		NodeHeap heap = search.heap;
+
+		visit(search, source, target, 0, -1);
+		heap.push(source, estimates[source]);
+
+		while (!heap.isEmpty()) {
+			double key = heap.peekKey();
+			int node = heap.pop();
+			if (key > hours[node] + estimates[node]) {
+				// Already reached this node faster.
+				continue;
+			}
+			if (node == target) {
+				return getPath(search.parentEdge, target);
+			}
+
+			for (int e = firstEdge[node]; e < firstEdge[node + 1]; e++) {
+				double h = hours[node] + edgeHours[e];
+				int next = edgeTarget[e];
+				if ((stamps[next] != stamp || h < hours[next]) && !edgeRoads[e].isBlocked()) {
+					visit(search, next, target, h, e);
+					heap.push(next, h + estimates[next]);
+				}
+			}
+		}
+		return null;
+	}
+
+	private void visit(Search search, int node, int target, double h, int edge) {
+		if (search.stamps[node] != search.stamp) {
+			search.stamps[node] = search.stamp;
+			search.estimates[node] = estimateHours(node, target);
+		}
+		search.hours[node] = h;
+		search.parentEdge[node] = edge;
+	}
+
+	private List<Road> getPath(int[] parentEdge, int target) {
+		List<Road> path = new ArrayList<>();
+		for (int e = parentEdge[target]; e >= 0; e = parentEdge[edgeSource(e)]) {
+			path.add(edgeRoads[e]);
+		}
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * The arrays for one bidirectional hierarchy search at a time, reused
+	 * like the Search arrays.
+	 */
+	static class BidirectionalSearch {
+		final double[][] hours = { new double[0], new double[0] };
+		final int[][] parentEdge = { new int[0], new int[0] };
+		final int[][] stamps = { new int[0], new int[0] };
+		final NodeHeap[] heaps = { new NodeHeap(), new NodeHeap() };
+		int stamp;
+
+		/**
+		 * Get ready for a search of a graph with n nodes.
+		 */
+		void start(int n) {
+			if (stamps[0].length < n) {
+				for (int side = 0; side < 2; side++) {
+					hours[side] = new double[n];
+					parentEdge[side] = new int[n];
+					stamps[side] = new int[n];
+				}
+				stamp = 0;
+			}
+			if (++stamp == 0) {
+				Arrays.fill(stamps[0], 0);
+				Arrays.fill(stamps[1], 0);
+				stamp = 1;
+			}
+			heaps[0].clear();
+			heaps[1].clear();
+		}
+	}
+
+	/**
+	 * Find the node an edge leaves from.
+	 */
+	protected int edgeSource(int edge) {
+		int index = Arrays.binarySearch(firstEdge, edge);
+		if (index < 0) {
+			return -index - 2;
+		}
+		// Nodes without edges share their firstEdge value with the next node.
+		while (firstEdge[index + 1] == edge) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * The contraction hierarchy: every node has a rank, and the upward edges
+	 * of a node go to higher ranked nodes. Edges are either roads or shortcuts
+	 * over a lower ranked node. Since roads can be driven both ways, the same
+	 * upward edges are used by the forward and backward searches.
+	 */
+	class Hierarchy {
+		int[] rank;
+		/**
+		 * The hierarchy edges: the two nodes, the hours, and either the road
+		 * or the node that the shortcut goes through (-1 for roads).
+		 */
+		int[] chFrom;
+		int[] chTo;
+		double[] chHours;
+		int[] chMiddle;
+		Road[] chRoads;
+		int chCount;
+		int shortcutCount;
+		/**
+		 * The hierarchy edge between two nodes, by pair key.
+		 */
+		Map<Long, Integer> pairs = new HashMap<>();
+
+		/**
+		 * The upward edges of each node, as hierarchy edge indexes.
+		 */
+		int[] upFirst;
+		int[] upEdges;
+
+		Hierarchy() {
+			int n = nodes.length;
+			int capacity = Math.max(16, edgeTarget.length);
+			chFrom = new int[capacity];
+			chTo = new int[capacity];
+			chHours = new double[capacity];
+			chMiddle = new int[capacity];
+			chRoads = new Road[capacity];
+
+			// Working adjacency lists, hierarchy edge indexes for each node.
+			int[][] adjacent = new int[n][];
+			int[] adjacentCount = new int[n];
+			for (int i = 0; i < n; i++) {
+				adjacent[i] = new int[Math.max(2, firstEdge[i + 1] - firstEdge[i])];
+			}
+			for (int i = 0; i < n; i++) {
+				for (int e = firstEdge[i]; e < firstEdge[i + 1]; e++) {
+					addEdge(i, edgeTarget[e], edgeHours[e], -1, edgeRoads[e], adjacent, adjacentCount);
+				}
+			}
+
+			rank = new int[n];
+			Arrays.fill(rank, -1);
+			int[] contractedNeighbors = new int[n];
+			Witness witness = new Witness(n);
+
+			PriorityQueue<long[]> queue = new PriorityQueue<>(Math.max(1, n), new Comparator<long[]>() {
+				public int compare(long[] a, long[] b) {
+					return a[0] < b[0] ? -1 : (a[0] > b[0] ? 1 : 0);
+				}
+			});
+			for (int i = 0; i < n; i++) {
+				queue.add(new long[] { priority(i, adjacent, adjacentCount, contractedNeighbors, witness), i });
+			}
+
+			int nextRank = 0;
+			while (!queue.isEmpty()) {
+				long[] entry = queue.poll();
+				int node = (int) entry[1];
+				if (rank[node] >= 0) {
+					continue;
+				}
+				// Lazy update: if the node got worse, put it back.
+				long priority = priority(node, adjacent, adjacentCount, contractedNeighbors, witness);
+				if (!queue.isEmpty() && priority > queue.peek()[0]) {
+					queue.add(new long[] { priority, node });
+					continue;
+				}
+
+				contract(node, adjacent, adjacentCount, witness, false);
+				rank[node] = nextRank++;
+				for (int i = 0; i < adjacentCount[node]; i++) {
+					int other = otherNode(adjacent[node][i], node);
+					if (rank[other] < 0) {
+						contractedNeighbors[other]++;
+					}
+				}
+			}
+
+			// Each node's upward edges.
+			upFirst = new int[n + 1];
+			for (int e = 0; e < chCount; e++) {
+				upFirst[lowerNode(e) + 1]++;
+			}
+			for (int i = 0; i < n; i++) {
+				upFirst[i + 1] += upFirst[i];
+			}
+			upEdges = new int[chCount];
+			int[] fill = Arrays.copyOf(upFirst, n);
+			for (int e = 0; e < chCount; e++) {
+				upEdges[fill[lowerNode(e)]++] = e;
+			}
+		}
+
+		int otherNode(int chEdge, int node) {
+			return chFrom[chEdge] == node ? chTo[chEdge] : chFrom[chEdge];
+		}
+
+		int lowerNode(int chEdge) {
+			return rank[chFrom[chEdge]] < rank[chTo[chEdge]] ? chFrom[chEdge] : chTo[chEdge];
+		}
+
+		long pairKey(int a, int b) {
+			return a < b ? (long) a * nodes.length + b : (long) b * nodes.length + a;
+		}
+
+		/**
+		 * Add an edge between two nodes, or make the existing one faster.
+		 *
+		 * @return true if a new edge was added.
+		 */
+		boolean addEdge(int a, int b, double hours, int middle, Road road, int[][] adjacent, int[] adjacentCount) {
+			Long key = Long.valueOf(pairKey(a, b));
+			Integer existing = pairs.get(key);
+			if (existing != null) {
+				int e = existing.intValue();
+				if (hours < chHours[e]) {
+					chHours[e] = hours;
+					chMiddle[e] = middle;
+					chRoads[e] = road;
+				}
+				return false;
+			}
+
+			if (chCount == chFrom.length) {
+				int capacity = chCount * 2;
+				chFrom = Arrays.copyOf(chFrom, capacity);
+				chTo = Arrays.copyOf(chTo, capacity);
+				chHours = Arrays.copyOf(chHours, capacity);
+				chMiddle = Arrays.copyOf(chMiddle, capacity);
+				chRoads = Arrays.copyOf(chRoads, capacity);
+			}
+			int e = chCount++;
+			chFrom[e] = a;
+			chTo[e] = b;
+			chHours[e] = hours;
+			chMiddle[e] = middle;
+			chRoads[e] = road;
+			pairs.put(key, e);
+			addAdjacent(a, e, adjacent, adjacentCount);
+			addAdjacent(b, e, adjacent, adjacentCount);
+			return true;
+		}
+
+		void addAdjacent(int node, int chEdge, int[][] adjacent, int[] adjacentCount) {
+			if (adjacentCount[node] == adjacent[node].length) {
+				adjacent[node] = Arrays.copyOf(adjacent[node], adjacentCount[node] * 2);
+			}
+			adjacent[node][adjacentCount[node]++] = chEdge;
+		}
+
+		/**
+		 * The contraction order: nodes that need few shortcuts, and that are
+		 * next to few contracted nodes, go first.
+		 */
+		long priority(int node, int[][] adjacent, int[] adjacentCount, int[] contractedNeighbors, Witness witness) {
+			int degree = 0;
+			for (int i = 0; i < adjacentCount[node]; i++) {
+				if (rank[otherNode(adjacent[node][i], node)] < 0) {
+					degree++;
+				}
+			}
+			int shortcuts = contract(node, adjacent, adjacentCount, witness, true);
+			return 2L * (shortcuts - degree) + contractedNeighbors[node];
+		}
+
+		/**
+		 * Add the shortcuts needed to take a node out of the remaining graph.
+		 *
+		 * @param simulate if true, just count the shortcuts.
+		 * @return the number of shortcuts.
+		 */
+		int contract(int node, int[][] adjacent, int[] adjacentCount, Witness witness, boolean simulate) {
+			int count = adjacentCount[node];
+			int[] neighbors = new int[count];
+			double[] hours = new double[count];
+			int neighborCount = 0;
+			double maxHours = 0;
+			for (int i = 0; i < count; i++) {
+				int e = adjacent[node][i];
+				int other = otherNode(e, node);
+				if (rank[other] < 0) {
+					neighbors[neighborCount] = other;
+					hours[neighborCount++] = chHours[e];
+					maxHours = Math.max(maxHours, chHours[e]);
+				}
+			}
+
+			int shortcuts = 0;
+			for (int i = 0; i < neighborCount - 1; i++) {
+				// Find the neighbors that can be reached from this one without
+				// going through the node, as fast as through it.
+				witness.search(neighbors[i], node, hours[i] + maxHours, adjacent, adjacentCount);
+				for (int j = i + 1; j < neighborCount; j++) {
+					double viaHours = hours[i] + hours[j];
+					if (witness.hoursTo(neighbors[j]) <= viaHours) {
+						continue;
+					}
+					shortcuts++;
+					if (!simulate && addEdge(neighbors[i], neighbors[j], viaHours, node, null, adjacent, adjacentCount)) {
+						shortcutCount++;
+					}
+				}
+			}
+			return shortcuts;
+		}
+
+		/**
+		 * Bounded Dijkstra searches in the remaining graph, used to find out
+		 * if a shortcut is needed.
+		 */
+		class Witness {
+			final double[] hours;
+			final int[] stamps;
+			final NodeHeap heap = new NodeHeap();
+			int stamp;
+
+			Witness(int n) {
+				hours = new double[n];
+				stamps = new int[n];
+			}
+
+			void search(int source, int skip, double limit, int[][] adjacent, int[] adjacentCount) {
+				stamp++;
+				heap.clear();
+				stamps[source] = stamp;
+				hours[source] = 0;
+				heap.push(source, 0);
+				int settled = 0;
+
+				while (!heap.isEmpty() && settled < WITNESS_SEARCH_LIMIT) {
+					double key = heap.peekKey();
+					int node = heap.pop();
+					if (key > hours[node]) {
+						continue;
+					}
+					if (key > limit) {
+						break;
+					}
+					settled++;
+					for (int i = 0; i < adjacentCount[node]; i++) {
+						int e = adjacent[node][i];
+						int other = otherNode(e, node);
+						if (other == skip || rank[other] >= 0) {
+							continue;
+						}
+						double h = key + chHours[e];
+						if (stamps[other] != stamp || h < hours[other]) {
+							stamps[other] = stamp;
+							hours[other] = h;
+							heap.push(other, h);
+						}
+					}
+				}
+			}
+
+			double hoursTo(int node) {
+				return stamps[node] == stamp ? hours[node] : Double.POSITIVE_INFINITY;
+			}
+		}
+
+		/**
+		 * Add the roads of a hierarchy edge to the path, driving it from a
+		 * node.
+		 */
+		void unpack(int chEdge, int from, List<Road> path) {
+			int middle = chMiddle[chEdge];
+			if (middle < 0) {
+				path.add(chRoads[chEdge]);
+				return;
+			}
+			int to = otherNode(chEdge, from);
+			unpack(pairs.get(Long.valueOf(pairKey(from, middle))).intValue(), from, path);
+			unpack(pairs.get(Long.valueOf(pairKey(middle, to))).intValue(), middle, path);
+		}
+
+		/**
+		 * Searches up the hierarchy from both ends of the route at once.
+		 */
+		List<Road> findPath(int source, int target) {
+			BidirectionalSearch search = chSearches.get();
+			search.start(nodes.length);
+			double[][] hours = search.hours;
+			int[][] parentEdge = search.parentEdge;
+			int[][] stamps = search.stamps;
+			NodeHeap[] heaps = search.heaps;
+			int stamp = search.stamp;
+
+			int[] starts = { source, target };
+			for (int side = 0; side < 2; side++) {
+				stamps[side][starts[side]] = stamp;
+				hours[side][starts[side]] = 0;
+				parentEdge[side][starts[side]] = -1;
+				heaps[side].push(starts[side], 0);
+			}
+
+			double best = Double.POSITIVE_INFINITY;
+			int meeting = -1;
+			while (true) {
+				// Search from the side with the smaller key, and stop when
+				// neither side can find anything faster.
+				int side = -1;
+				double min = best;
+				for (int s = 0; s < 2; s++) {
+					if (!heaps[s].isEmpty() && heaps[s].peekKey() < min) {
+						min = heaps[s].peekKey();
+						side = s;
+					}
+				}
+				if (side < 0) {
+					break;
+				}
+
+				NodeHeap heap = heaps[side];
+				double key = heap.peekKey();
+				int node = heap.pop();
+				if (key > hours[side][node]) {
+					continue;
+				}
+				int other = 1 - side;
+				if (stamps[other][node] == stamp && key + hours[other][node] < best) {
+					best = key + hours[other][node];
+					meeting = node;
+				}
+
+				for (int i = upFirst[node]; i < upFirst[node + 1]; i++) {
+					int e = upEdges[i];
+					int next = otherNode(e, node);
+					double h = key + chHours[e];
+					if (stamps[side][next] != stamp || h < hours[side][next]) {
+						stamps[side][next] = stamp;
+						hours[side][next] = h;
+						parentEdge[side][next] = e;
+						heap.push(next, h);
+					}
+				}
+			}
+
+			if (meeting < 0) {
+				return null;
+			}
+
+			// Up from the source to the meeting node, then down to the
+			// target.
+			List<Integer> up = new ArrayList<>();
+			for (int node = meeting; node != source; node = otherNode(parentEdge[0][node], node)) {
+				up.add(node);
+			}
+			List<Road> path = new ArrayList<>();
+			int node = source;
+			for (int i = up.size() - 1; i >= 0; i--) {
+				int next = up.get(i).intValue();
+				unpack(parentEdge[0][next], node, path);
+				node = next;
+			}
+			while (node != target) {
+				int e = parentEdge[1][node];
+				unpack(e, node, path);
+				node = otherNode(e, node);
+			}
+			return path;
+		}
+	}
+}
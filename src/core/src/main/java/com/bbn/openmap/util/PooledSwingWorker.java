@@ -1,27 +1,73 @@
 package com.bbn.openmap.util;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
 
 /**
  * @param <T> The type of value computed by the task.
- * 
+ *
  *        Use thread pool to run tasks that compute a value.
- * 
+ *
  * Thanks to Carsten for cleaning this up.
  */
 public abstract class PooledSwingWorker<T> extends SwingWorker<T> {
 
+    private volatile boolean started = false;
+
     /**
      * Start a thread that will call the <code>construct</code> method and then
      * exit.
      */
     public PooledSwingWorker() {
         super();
+        // Same as the SwingWorker's, but notes when the work begins.
+        setFuture(new FutureTask<T>(new Callable<T>() {
+            public T call() {
+                started = true;
+                return construct();
+            }
+        }) {
+            @Override
+            protected void done() {
+                finished();
+            }
+        });
     }
 
     /**
-     * Start the worker thread.
+     * Start the worker thread. The worker is queued with the TaskService, and
+     * runs when a thread is free, according to its priority.
      */
     public void start() {
-        TaskService.singleton().spawn(getFuture());
+        TaskService.singleton().spawn(getFuture(), getTaskName(), getPriority());
+    }
+
+    /**
+     * @return true if construct has been called, false if the worker is still
+     *         waiting to run (or was cancelled before it could).
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * The name the TaskService keeps statistics under for this worker. The
+     * default is null, which only adds it to the overall statistics.
+     *
+     * @return name
+     */
+    protected String getTaskName() {
+        return null;
+    }
+
+    /**
+     * The priority of this worker, compared to other tasks waiting to run.
+     * Higher priorities go first. The default is
+     * TaskService.DEFAULT_PRIORITY.
+     *
+     * @return priority
+     */
+    protected int getPriority() {
+        return TaskService.DEFAULT_PRIORITY;
     }
-}
\ No newline at end of file
+}
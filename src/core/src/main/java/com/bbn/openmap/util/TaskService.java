@@ -1,22 +1,62 @@
-/* 
+/*
  * <copyright>
  *  Copyright 2010 BBN Technologies
  * </copyright>
  */
 package com.bbn.openmap.util;
 
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Reuse threads instead of making new ones over and over.
+ * <P>
+ * By default, tasks run on a bounded pool of threads, so a burst of work (like
+ * every layer preparing for a new projection at once) doesn't create a thread
+ * for every task. Tasks that can't run right away wait in a queue, and are
+ * started in priority order, highest first, and in the order they were
+ * submitted when the priorities are equal. Layers use this to get the visible,
+ * top layers going before the ones underneath them.
+ * <P>
+ * The TaskService keeps track of how many tasks are waiting and running, and
+ * keeps TaskStatistics for all tasks and for each task name (layers use their
+ * names), which can be retrieved to see how long work is taking.
+ * <P>
+ * Tasks should not wait on other tasks submitted to the TaskService, since the
+ * pool is bounded and the task being waited on might be stuck in the queue
+ * behind the one waiting.
  */
 public final class TaskService {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.util.TaskService");
+
+    /**
+     * The default number of threads in the pool, the number of processors but
+     * at least 4, since a lot of the work done (reading files, fetching from
+     * servers) spends its time waiting.
+     */
+    public final static int DEFAULT_MAX_NUM_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The priority tasks get if one isn't specified.
+     */
+    public final static int DEFAULT_PRIORITY = 0;
+
     public static TaskService singleton() {
         return SingletonHolder.instance;
     }
@@ -25,45 +65,269 @@ public final class TaskService {
         private static final TaskService instance = new TaskService();
     }
 
-    private ExecutorService executor;
+    private volatile ExecutorService executor;
+    /**
+     * True if the executor was created here, and should be shut down when it
+     * is replaced.
+     */
+    private boolean ownExecutor;
+    private int maxNumThreads;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final TaskStatistics totalStatistics = new TaskStatistics("all");
+    private final ConcurrentHashMap<String, TaskStatistics> statistics = new ConcurrentHashMap<String, TaskStatistics>();
 
     private TaskService() {
-        executor = Executors.newCachedThreadPool();
+        setMaxNumThreads(DEFAULT_MAX_NUM_THREADS);
     }
 
     /**
      * Run a task in a thread.
-     * 
+     *
      * @param task the runnable
      */
     public void spawn(Runnable task) {
-        executor.execute(task);
+        spawn(task, null, DEFAULT_PRIORITY);
     }
 
     public <T> Future<T> spawn(Callable<T> task) {
-        return executor.submit(task);
+        return spawn(task, null, DEFAULT_PRIORITY);
     }
 
     /**
-     * Allows more control over how threads can be allocated.
-     * 
+     * Run a task in a thread.
+     *
+     * @param task the runnable
+     * @param name the name to keep statistics under, may be null if the task
+     *        should only be counted in the overall statistics.
+     * @param priority tasks with higher priorities are started first.
+     */
+    public void spawn(Runnable task, String name, int priority) {
+        Task wrapper = new Task(task, name, priority, sequence.getAndIncrement());
+        queued.incrementAndGet();
+        ExecutorService current = executor;
+        try {
+            current.execute(wrapper);
+        } catch (RejectedExecutionException ree) {
+            // The executor may have been replaced and shut down while this
+            // was being handed to it.
+            try {
+                if (current == executor) {
+                    throw ree;
+                }
+                executor.execute(wrapper);
+            } catch (RuntimeException re) {
+                queued.decrementAndGet();
+                throw re;
+            }
+        }
+    }
+
+    /**
+     * Run a task that computes a value in a thread.
+     *
+     * @param task the callable
+     * @param name the name to keep statistics under, may be null.
+     * @param priority tasks with higher priorities are started first.
+     * @return Future for the result.
+     */
+    public <T> Future<T> spawn(Callable<T> task, String name, int priority) {
+        FutureTask<T> future = new FutureTask<T>(task);
+        spawn(future, name, priority);
+        return future;
+    }
+
+    /**
+     * Allows more control over how threads can be allocated. Task priorities
+     * are only honored if the ExecutorService queues tasks in priority order;
+     * the Runnables handed to it are Comparable, so a ThreadPoolExecutor with
+     * a PriorityBlockingQueue will do that.
+     *
      * @param eService ExecutorService that allocates and schedules thread
      *        spawning for layers.
      */
     public void setExecutorService(ExecutorService eService) {
         if (eService != null) {
-            executor = eService;
+            replaceExecutor(eService, false, 0);
         }
     }
 
     /**
-     * If called, will replace the default unbounded executor using a cached
-     * thread pool with a fixed thread pool executor, so the maxNumThreads are
-     * allocated. If they are all busy, the Runnables will queue.
-     * 
+     * If called, will replace the executor with a new thread pool with
+     * maxNumThreads threads. If they are all busy, the Runnables will queue.
+     * Threads that have been idle for a minute are let go.
+     *
      * @param maxNumThreads number of threads to allocate for the thread pool
      */
     public void setMaxNumThreads(int maxNumThreads) {
-        executor = new ThreadPoolExecutor(0, maxNumThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        maxNumThreads = Math.max(1, maxNumThreads);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxNumThreads, maxNumThreads, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new TaskThreadFactory("TaskService"));
+        pool.allowCoreThreadTimeOut(true);
+        replaceExecutor(pool, true, maxNumThreads);
+    }
+
+    /**
+     * @return the number of threads in the pool, or 0 if an ExecutorService
+     *         was provided with setExecutorService or virtual threads are
+     *         being used.
+     */
+    public synchronized int getMaxNumThreads() {
+        return maxNumThreads;
+    }
+
+    /**
+     * Run each task on its own virtual thread, instead of on a bounded pool.
+     * Needs a Java runtime with virtual threads (21 or later). Priorities
+     * don't matter in this mode, since nothing waits in a queue.
+     *
+     * @return true if virtual threads are being used, false if they aren't
+     *         available and the executor wasn't changed.
+     */
+    public boolean useVirtualThreads() {
+        try {
+            ExecutorService vts = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            replaceExecutor(vts, true, 0);
+            return true;
+        } catch (Exception e) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("virtual threads aren't available: " + e);
+            }
+            return false;
+        }
+    }
+
+    private synchronized void replaceExecutor(ExecutorService eService, boolean own, int numThreads) {
+        ExecutorService old = executor;
+        boolean ownedOld = ownExecutor;
+
+        executor = eService;
+        ownExecutor = own;
+        maxNumThreads = numThreads;
+
+        if (old != null && ownedOld) {
+            // Lets the queued tasks finish.
+            old.shutdown();
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting to start.
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return the number of tasks running.
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return statistics for all tasks.
+     */
+    public TaskStatistics getStatistics() {
+        return totalStatistics;
+    }
+
+    /**
+     * @param name the name tasks were spawned with.
+     * @return statistics for the tasks with that name, or null if none have
+     *         finished.
+     */
+    public TaskStatistics getStatistics(String name) {
+        return name == null ? null : statistics.get(name);
+    }
+
+    /**
+     * @return the statistics for each task name, sorted by name.
+     */
+    public Map<String, TaskStatistics> getAllStatistics() {
+        return new TreeMap<String, TaskStatistics>(statistics);
+    }
+
+    /**
+     * Clear all the statistics.
+     */
+    public void resetStatistics() {
+        totalStatistics.reset();
+        statistics.clear();
+    }
+
+    private TaskStatistics statisticsFor(String name) {
+        TaskStatistics stats = statistics.get(name);
+        if (stats == null) {
+            stats = new TaskStatistics(name);
+            TaskStatistics existing = statistics.putIfAbsent(name, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Wrapper for submitted tasks, that orders them in the queue and keeps
+     * track of their timing.
+     */
+    private class Task implements Runnable, Comparable<Task> {
+        private final Runnable runnable;
+        private final String name;
+        private final int priority;
+        private final long seq;
+        private final long submitted = System.nanoTime();
+
+        Task(Runnable runnable, String name, int priority, long seq) {
+            this.runnable = runnable;
+            this.name = name;
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        public void run() {
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            long started = System.nanoTime();
+            boolean cancelled = runnable instanceof Future && ((Future<?>) runnable).isCancelled();
+            try {
+                runnable.run();
+            } finally {
+                active.decrementAndGet();
+                long finished = System.nanoTime();
+                totalStatistics.record(started - submitted, finished - submitted, cancelled);
+                if (name != null) {
+                    statisticsFor(name).record(started - submitted, finished - submitted, cancelled);
+                }
+            }
+        }
+
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return seq < other.seq ? -1 : (seq == other.seq ? 0 : 1);
+        }
+    }
+
+    /**
+     * Names the pool threads, so they can be picked out in a thread dump.
+     */
+    private static class TaskThreadFactory implements ThreadFactory {
+        private final ThreadFactory factory = Executors.defaultThreadFactory();
+        private final AtomicInteger count = new AtomicInteger();
+        private final String prefix;
+
+        TaskThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = factory.newThread(r);
+            thread.setName(prefix + "-" + count.incrementAndGet());
+            return thread;
+        }
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * <copyright>
+ *  Copyright 2010 BBN Technologies
+ * </copyright>
+ */
+package com.bbn.openmap.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timing statistics for tasks run by the TaskService, for one kind of task
+ * (like the LayerWorkers for one layer) or for all of them. Latency is the
+ * time from when a task is handed to the TaskService to when it finishes, so
+ * it includes the time spent waiting in the queue. Latencies are counted in a
+ * histogram with buckets that double in size: under 1 millisecond, under 2,
+ * under 4, and so on, with the last bucket holding everything slower.
+ * <P>
+ * The values are updated as tasks finish, without locking, so a set of values
+ * read while tasks are running may be off by a task or two.
+ */
+public class TaskStatistics {
+
+    /**
+     * The number of histogram buckets. The last one holds tasks that took
+     * more than 2^(NUM_BUCKETS - 2) milliseconds, a little over a minute.
+     */
+    public final static int NUM_BUCKETS = 18;
+
+    protected final String name;
+    protected final AtomicLong count = new AtomicLong();
+    protected final AtomicLong cancelled = new AtomicLong();
+    protected final AtomicLong totalQueueNanos = new AtomicLong();
+    protected final AtomicLong totalLatencyNanos = new AtomicLong();
+    protected final AtomicLong maxLatencyNanos = new AtomicLong();
+    protected final AtomicLongArray histogram = new AtomicLongArray(NUM_BUCKETS);
+
+    public TaskStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Note a finished task.
+     *
+     * @param queueNanos how long the task waited before it started.
+     * @param latencyNanos how long from submission to finish.
+     * @param wasCancelled true if the task was cancelled before it ran.
+     */
+    public void record(long queueNanos, long latencyNanos, boolean wasCancelled) {
+        if (wasCancelled) {
+            cancelled.incrementAndGet();
+            return;
+        }
+
+        count.incrementAndGet();
+        totalQueueNanos.addAndGet(queueNanos);
+        totalLatencyNanos.addAndGet(latencyNanos);
+
+        long max;
+        while ((max = maxLatencyNanos.get()) < latencyNanos) {
+            if (maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+                break;
+            }
+        }
+
+        histogram.incrementAndGet(bucketFor(latencyNanos / 1000000L));
+    }
+
+    /**
+     * @return the histogram bucket for a latency.
+     */
+    protected static int bucketFor(long millis) {
+        int bucket = 0;
+        while (bucket < NUM_BUCKETS - 1 && millis >= (1L << bucket)) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * @return the name of the tasks being measured.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of tasks that have run.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the number of tasks cancelled before they started, like layer
+     *         workers replaced by newer ones.
+     */
+    public long getCancelledCount() {
+        return cancelled.get();
+    }
+
+    /**
+     * @return the average time tasks waited to start, in milliseconds.
+     */
+    public double getMeanQueueMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : totalQueueNanos.get() / 1000000d / n;
+    }
+
+    /**
+     * @return the average time from submission to finish, in milliseconds.
+     */
+    public double getMeanLatencyMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : totalLatencyNanos.get() / 1000000d / n;
+    }
+
+    /**
+     * @return the longest time from submission to finish, in milliseconds.
+     */
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1000000d;
+    }
+
+    /**
+     * @return a copy of the latency histogram. Bucket i counts the tasks that
+     *         took less than getBucketLimitMillis(i) milliseconds, and at least
+     *         the limit of the bucket before it.
+     */
+    public long[] getHistogram() {
+        long[] copy = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            copy[i] = histogram.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * @param bucket histogram bucket index.
+     * @return the upper limit of a histogram bucket, in milliseconds, or
+     *         Long.MAX_VALUE for the last bucket.
+     */
+    public static long getBucketLimitMillis(int bucket) {
+        return bucket >= NUM_BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket);
+    }
+
+    /**
+     * Clear the statistics.
+     */
+    public void reset() {
+        count.set(0);
+        cancelled.set(0);
+        totalQueueNanos.set(0);
+        totalLatencyNanos.set(0);
+        maxLatencyNanos.set(0);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    public String toString() {
+        return name + ": " + getCount() + " tasks, " + getCancelledCount() + " cancelled, mean latency "
+                + getMeanLatencyMillis() + " ms (" + getMeanQueueMillis() + " ms queued), max "
+                + getMaxLatencyMillis() + " ms";
+    }
+}
@@ -24,6 +24,8 @@
 
 package com.bbn.openmap.util.cacheHandler;
 
+import java.util.List;
+import java.util.ListIterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,12 +33,18 @@ import java.util.logging.Logger;
  * A base cache support object. Based on the
  * com.bbn.openmap.layer.util.cacheHandler package components, this CacheHandler
  * uses Objects instead of Strings and will be replacing the earlier version.
+ * <P>
+ * The CacheObjects are held in a StripedLRUCache, so lookups don't depend on
+ * the size of the cache and the CacheHandler can be used by several threads at
+ * the same time. The cache size is a number of entries by default. Subclasses
+ * can override weigh() to have the size measured in something else, like
+ * bytes.
  * 
  * @author dietrick
  */
 public abstract class CacheHandler {
-    protected CacheObject[] objs;
-    protected int logicalClock;
+    protected volatile StripedLRUCache cache;
+    protected volatile int maxSize;
 
     public static Logger logger = Logger.getLogger("com.bbn.openmap.util.cacheHandler.CacheHandler");
 
@@ -57,50 +65,111 @@ public abstract class CacheHandler {
     }
 
     /**
-     * Set the size, reset the logical clock
+     * Set the size, creating a new, empty cache if the size has changed.
      */
-    private void initCache(int max_size) {
-        if (objs != null && objs.length == max_size) {
+    private synchronized void initCache(int max_size) {
+        if (cache != null && maxSize == max_size) {
             clear();
         } else {
-            objs = new CacheObject[max_size];
+            cache = createCache(max_size);
+            maxSize = max_size;
         }
-        logicalClock = 0;
+    }
+
+    /**
+     * Create the storage for the CacheObjects, hooking the weigh method of this
+     * CacheHandler into it.
+     * 
+     * @param max_size the maximum weight of the cache.
+     * @return StripedLRUCache
+     */
+    protected StripedLRUCache createCache(int max_size) {
+        return new StripedLRUCache(max_size) {
+            protected long weigh(CacheObject obj) {
+                return CacheHandler.this.weigh(obj);
+            }
+        };
+    }
+
+    /**
+     * Returns the weight of a CacheObject in the units of the cache size. The
+     * default returns 1, so the cache size is the number of objects held.
+     * Override this method to size the cache by the number of bytes the cached
+     * objects use, for instance.
+     * 
+     * @param obj the CacheObject being added to the cache.
+     * @return weight of the object, should be greater than zero.
+     */
+    protected long weigh(CacheObject obj) {
+        return 1;
     }
 
     /**
      * Remove all the objects from the cache.
      */
     public void clear() {
-        if (objs != null) {
-            for (int i = 0; i < objs.length; i++) {
-                objs[i] = null;
-            }
-        }
+        cache.clear();
     }
 
     /**
      * Need to clear memory, get gc moving, and ready for new objects
      */
     public void resetCache() {
-        initCache(objs.length);
+        initCache(maxSize);
     }
 
     /**
      * Need to clear memory, get gc moving, and ready for new objects. Delete
-     * the current Hashtable and create a new one with the new capacity.
+     * the current cache and create a new one with the new capacity.
      * 
-     * @param max_size the capacity of the Hashtable.
+     * @param max_size the capacity of the cache.
      */
     public void resetCache(int max_size) {
         initCache(max_size);
     }
 
+    /**
+     * Change the size of the cache, keeping the objects already in it. If the
+     * cache is shrinking, the most recently used objects that fit are kept.
+     * 
+     * @param max_size the new capacity of the cache.
+     */
+    public synchronized void resizeCache(int max_size) {
+        if (max_size == maxSize || max_size <= 0) {
+            return;
+        }
+
+        List<CacheObject> current = cache.values();
+        StripedLRUCache resized = createCache(max_size);
+        // Add the oldest first, so the recent ones push them out if needed.
+        for (ListIterator<CacheObject> it = current.listIterator(current.size()); it.hasPrevious();) {
+            resized.put(it.previous());
+        }
+
+        cache = resized;
+        maxSize = max_size;
+    }
+
     /**
      * Get the current size of the cache.
      */
     public int getCacheSize() {
-        return objs.length;
+        return maxSize;
+    }
+
+    /**
+     * @return the number of objects currently held in the cache.
+     */
+    public int getCacheCount() {
+        return cache.size();
+    }
+
+    /**
+     * @return the total weight of the objects currently in the cache, which is
+     *         the same as the count unless weigh() has been overridden.
+     */
+    public long getCacheWeight() {
+        return cache.getWeight();
     }
 
     /**
@@ -115,7 +184,16 @@ public abstract class CacheHandler {
         if (ret == null)
             return null;
 
-        replaceLeastUsed(ret);
+        // Another thread may have loaded the same thing while we were, use
+        // the one that made it into the cache.
+        CacheObject existing = cache.putIfAbsent(ret);
+        if (existing != null) {
+            return existing.obj;
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("added " + ret.id);
+        }
         return ret.obj;
     }
 
@@ -127,88 +205,29 @@ public abstract class CacheHandler {
     public abstract CacheObject load(Object key);
 
     /**
-     * Search the cache for a match -return null if not found. The key search is
-     * case insensitive.
+     * Search the cache for a match -return null if not found. Keys are
+     * matched with equals().
      */
     public CacheObject searchCache(Object key) {
-        for (int i = 0; i < objs.length; i++) {
-            CacheObject co = objs[i];
-            if (co == null) {
-                // Since we load 0 -> length - 1, if we get a null
-                // one, the rest are null, too.
-                break;
-            } else if (co.id.equals(key)) {
-                return co;
-            }
-        }
-        return null;
+        return cache.get(key);
     }
 
     /**
-     * If there is space in the cache, put the object in. If there isn't space,
-     * find the least used object, and replace it.
+     * Put the object in the cache. If there isn't space, the least recently
+     * used objects are removed to make room.
      */
     protected void replaceLeastUsed(CacheObject newObj) {
-
-        // If the cache has room...
-        int i;
-        for (i = objs.length - 1; i >= 0; i--) {
-            if (objs[i] == null) {
-                // Somewhere in a partially filled cache, keep looking
-                // for the last taken place...
-                if (i == 0) {
-                    // there is nothing in the cache.
-                    objs[0] = newObj;
-                    if (logger.isLoggable(Level.FINE)) {
-                        logger.fine("was empty - added " + newObj.id);
-                    }
-
-                    return;
-                } else {
-                    continue;
-                }
-            } else if (i == objs.length - 1) {
-                // We're at the end, and there is no empty space -
-                // we'll need to look at the LRU clock.
-                break;
-            } else {
-                // We are at the index of the last taken spot, and the
-                // next place is available.
-                objs[i + 1] = newObj;
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("had room - added " + newObj.id + " to the "
-                            + i + " spot.");
-                }
-                return;
-            }
-        }
-
-        // If we get here, we need to replace something in the cache.
-
-        int minClock = logicalClock + 1;
-        int LUIndex = -1;
-
-        for (i = objs.length - 1; i >= 0; i--) {
-            if (objs[i].older(minClock)) {
-                LUIndex = i;
-                minClock = objs[i].cachedTime;
-            }
-        }
-
-        if (LUIndex != -1) {
-            if (logger.isLoggable(Level.FINE)) {
-                logger.fine("Tossing " + objs[LUIndex].id
-                        + " from cache[" + LUIndex + "] to add " + newObj.id);
-            }
-            objs[LUIndex] = newObj;
-            newObj.cachedTime = logicalClock++;
+        cache.put(newObj);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("added " + newObj.id);
         }
     }
 
     /**
-     * Return a ListIterator of the cache objects.
+     * Return a ListIterator of the cache objects, from the most recently used
+     * to the least. The list is a copy, changes to it don't affect the cache.
      */
-    public java.util.ListIterator<CacheObject> listIterator() {
-        return java.util.Arrays.asList(objs).listIterator();
+    public ListIterator<CacheObject> listIterator() {
+        return cache.values().listIterator();
     }
-}
\ No newline at end of file
+}
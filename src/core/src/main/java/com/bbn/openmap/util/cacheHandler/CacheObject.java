@@ -29,6 +29,10 @@ public class CacheObject {
     public Object obj = null;
     public int cachedTime = 0;
     public Object id = null;
+    /**
+     * The weight assigned to this object by the cache when it was added.
+     */
+    protected long weight = 1;
 
     /**
      * New object, set the local clock to zero
@@ -0,0 +1,378 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.util.cacheHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The storage engine behind the CacheHandler. CacheObjects are kept in a set of
+ * segments, each one a hash-indexed, access-ordered map guarded by its own
+ * lock, so lookups and insertions are constant time and threads working on
+ * different keys rarely contend with each other. Each segment evicts its least
+ * recently used entries when its share of the maximum weight is exceeded.
+ * <P>
+ * By default every CacheObject weighs 1, so the maximum weight is a maximum
+ * entry count. Override weigh() to bound the cache by some other measure, like
+ * the number of bytes held by each cached object.
+ */
+public class StripedLRUCache {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.util.cacheHandler.CacheHandler");
+
+    /**
+     * The default upper limit on the number of segments.
+     */
+    public static int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * The minimum weight a segment should be able to hold before another
+     * segment is added. Keeps small caches from being split up so much that
+     * they stop behaving like LRU caches.
+     */
+    protected final static int MIN_SEGMENT_WEIGHT = 20;
+
+    protected final Segment[] segments;
+    protected final int segmentMask;
+    protected final long maxWeight;
+    protected final AtomicInteger logicalClock = new AtomicInteger();
+
+    /**
+     * Create a cache with the default concurrency level.
+     *
+     * @param maxWeight the maximum total weight of the objects in the cache.
+     */
+    public StripedLRUCache(long maxWeight) {
+        this(maxWeight, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxWeight the maximum total weight of the objects in the cache.
+     * @param concurrencyLevel the maximum number of segments to use. The number
+     *        of segments actually used is a power of two, and depends on the
+     *        maxWeight.
+     */
+    public StripedLRUCache(long maxWeight, int concurrencyLevel) {
+        this.maxWeight = Math.max(0, maxWeight);
+
+        int numSegments = 1;
+        while (numSegments < concurrencyLevel && numSegments * 2L * MIN_SEGMENT_WEIGHT <= this.maxWeight) {
+            numSegments <<= 1;
+        }
+
+        segments = new Segment[numSegments];
+        segmentMask = numSegments - 1;
+
+        long segmentWeight = this.maxWeight / numSegments;
+        long remainder = this.maxWeight % numSegments;
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(i < remainder ? segmentWeight + 1 : segmentWeight);
+        }
+    }
+
+    /**
+     * Returns the weight of a CacheObject. The default returns 1, which makes
+     * the maximum weight a maximum number of entries. The value should not
+     * change while the object is in the cache.
+     *
+     * @param obj the CacheObject being added to the cache.
+     * @return the weight, should be greater than zero.
+     */
+    protected long weigh(CacheObject obj) {
+        return 1;
+    }
+
+    /**
+     * Called when an object is pushed out of the cache to make room for
+     * another. Called while the segment lock is held, so it should be quick.
+     *
+     * @param obj the evicted CacheObject.
+     */
+    protected void evicted(CacheObject obj) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Tossing " + obj.id + " from cache");
+        }
+    }
+
+    /**
+     * @return the maximum weight of the cache.
+     */
+    public long getMaximumWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * @return the current total weight of the objects in the cache.
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.getWeight();
+        }
+        return weight;
+    }
+
+    /**
+     * @return the number of objects in the cache.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Retrieve an object from the cache, marking it as recently used.
+     *
+     * @param key the id of the CacheObject.
+     * @return CacheObject, or null if it isn't in the cache.
+     */
+    public CacheObject get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * Add an object to the cache, replacing any object stored with the same
+     * id. The least recently used objects are removed if there isn't room.
+     *
+     * @param obj the CacheObject to add.
+     * @return the CacheObject previously stored with that id, or null.
+     */
+    public CacheObject put(CacheObject obj) {
+        return segmentFor(obj.id).put(obj, false);
+    }
+
+    /**
+     * Add an object to the cache if nothing is already stored with its id.
+     *
+     * @param obj the CacheObject to add.
+     * @return the CacheObject already stored with that id, in which case obj
+     *         was not added, or null if obj was added.
+     */
+    public CacheObject putIfAbsent(CacheObject obj) {
+        return segmentFor(obj.id).put(obj, true);
+    }
+
+    /**
+     * Remove an object from the cache.
+     *
+     * @param key the id of the CacheObject.
+     * @return the removed CacheObject, or null if it wasn't in the cache.
+     */
+    public CacheObject remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        return segmentFor(key).remove(key);
+    }
+
+    /**
+     * Remove all the objects from the cache.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Get a copy of the contents of the cache, ordered from the most recently
+     * used object to the least recently used.
+     *
+     * @return List of CacheObjects.
+     */
+    public List<CacheObject> values() {
+        List<TimedObject> timed = new ArrayList<TimedObject>(size());
+        for (Segment segment : segments) {
+            segment.copyInto(timed);
+        }
+
+        // Sort on the times copied under the segment locks, the objects' own
+        // times can change while the list is sorted.
+        Collections.sort(timed, new Comparator<TimedObject>() {
+            public int compare(TimedObject to1, TimedObject to2) {
+                // Newest first, written to survive clock wrap-around.
+                int diff = to2.time - to1.time;
+                return diff > 0 ? 1 : (diff < 0 ? -1 : 0);
+            }
+        });
+
+        List<CacheObject> values = new ArrayList<CacheObject>(timed.size());
+        for (TimedObject to : timed) {
+            values.add(to.object);
+        }
+        return values;
+    }
+
+    protected Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        // Spread the bits so keys with similar low bits land in different
+        // segments.
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[h & segmentMask];
+    }
+
+    /**
+     * A CacheObject and its time of last use, as of when it was copied.
+     */
+    protected static class TimedObject {
+        protected final CacheObject object;
+        protected final int time;
+
+        protected TimedObject(CacheObject object, int time) {
+            this.object = object;
+            this.time = time;
+        }
+    }
+
+    /**
+     * A piece of the cache, holding the objects whose keys hash to it.
+     */
+    protected class Segment {
+        protected final ReentrantLock lock = new ReentrantLock();
+        protected final LinkedHashMap<Object, CacheObject> map;
+        protected final long maxSegmentWeight;
+        protected long weight;
+
+        protected Segment(long maxSegmentWeight) {
+            this.maxSegmentWeight = maxSegmentWeight;
+            // Access order, so iteration starts at the least recently used.
+            map = new LinkedHashMap<Object, CacheObject>(16, .75f, true);
+        }
+
+        protected CacheObject get(Object key) {
+            lock.lock();
+            try {
+                CacheObject co = map.get(key);
+                if (co != null) {
+                    co.cachedTime = logicalClock.incrementAndGet();
+                }
+                return co;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected CacheObject put(CacheObject obj, boolean onlyIfAbsent) {
+            long objWeight = weigh(obj);
+            lock.lock();
+            try {
+                CacheObject previous = map.get(obj.id);
+                if (previous != null) {
+                    if (onlyIfAbsent) {
+                        previous.cachedTime = logicalClock.incrementAndGet();
+                        return previous;
+                    }
+                    map.remove(obj.id);
+                    weight -= previous.weight;
+                }
+
+                obj.cachedTime = logicalClock.incrementAndGet();
+                obj.weight = objWeight;
+                map.put(obj.id, obj);
+                weight += objWeight;
+
+                evictIfNeeded();
+                return onlyIfAbsent ? null : previous;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Drop least recently used objects until the segment fits. Called with
+         * the lock held. The object just added is the last to go, so something
+         * heavier than the whole segment is still handed back to the caller,
+         * it just won't stay in the cache.
+         */
+        protected void evictIfNeeded() {
+            Iterator<CacheObject> it = map.values().iterator();
+            while (weight > maxSegmentWeight && it.hasNext()) {
+                CacheObject eldest = it.next();
+                it.remove();
+                weight -= eldest.weight;
+                evicted(eldest);
+            }
+        }
+
+        protected CacheObject remove(Object key) {
+            lock.lock();
+            try {
+                CacheObject co = map.remove(key);
+                if (co != null) {
+                    weight -= co.weight;
+                }
+                return co;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected void clear() {
+            lock.lock();
+            try {
+                map.clear();
+                weight = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected int size() {
+            lock.lock();
+            try {
+                return map.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected long getWeight() {
+            lock.lock();
+            try {
+                return weight;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected void copyInto(List<TimedObject> values) {
+            lock.lock();
+            try {
+                for (CacheObject co : map.values()) {
+                    values.add(new TimedObject(co, co.cachedTime));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
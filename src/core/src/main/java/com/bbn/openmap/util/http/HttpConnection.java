@@ -101,6 +101,50 @@ public class HttpConnection extends Thread {
                 CONTENT_WBMP};
     }
 
+    /**
+     * Figure out the content type of image data by looking at the first few
+     * bytes, for data that doesn't come with a file extension.
+     * 
+     * @param data image bytes
+     * @return CONTENT_PNG, CONTENT_JPEG, CONTENT_GIF, CONTENT_TIFF or null if
+     *         the format isn't recognized.
+     */
+    public static String getImageContentType(byte[] data) {
+        if (data == null || data.length < 4) {
+            return null;
+        }
+
+        int b0 = data[0] & 0xff;
+        int b1 = data[1] & 0xff;
+        int b2 = data[2] & 0xff;
+        int b3 = data[3] & 0xff;
+
+        if (b0 == 0x89 && b1 == 'P' && b2 == 'N' && b3 == 'G') {
+            return CONTENT_PNG;
+        } else if (b0 == 0xff && b1 == 0xd8 && b2 == 0xff) {
+            return CONTENT_JPEG;
+        } else if (b0 == 'G' && b1 == 'I' && b2 == 'F' && b3 == '8') {
+            return CONTENT_GIF;
+        } else if ((b0 == 'I' && b1 == 'I' && b2 == 42 && b3 == 0)
+                || (b0 == 'M' && b1 == 'M' && b2 == 0 && b3 == 42)) {
+            return CONTENT_TIFF;
+        }
+
+        return null;
+    }
+
+    /**
+     * Check if image data is in a format that can be sent to a web map client
+     * as is, PNG or JPEG.
+     * 
+     * @param data image bytes
+     * @return true if the data is a PNG or JPEG image.
+     */
+    public static boolean isWebTileImage(byte[] data) {
+        String contentType = getImageContentType(data);
+        return CONTENT_PNG.equals(contentType) || CONTENT_JPEG.equals(contentType);
+    }
+
     /**
      * The running thread simply reads all the lines of input and
      * hands each line off to be parsed.
@@ -1,6 +1,7 @@
 package com.bbn.openmap.util.http;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  */
@@ -23,4 +24,16 @@ public interface IHttpResponse {
      */
     public void writeHttpResponse(String contentType, byte[] response)
             throws IOException;
+
+    /**
+     * Start a response of unknown length, to be written to the returned
+     * OutputStream. Used for large responses, like images, that are written
+     * as they're encoded. The caller flushes the stream, but doesn't close
+     * it.
+     * 
+     * @param contentType the content type of the response.
+     * @return the OutputStream to write the response to.
+     */
+    public OutputStream getOutputStream(String contentType)
+            throws IOException;
 }
@@ -0,0 +1,493 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.util.rtree;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A read-only R-tree, bulk loaded with the Sort-Tile-Recursive (STR)
+ * algorithm. All of the items are known up front, so every node is packed
+ * full and neighboring items end up in the same nodes, which makes for a
+ * smaller, shallower tree with less node overlap than one built by inserting
+ * items one at a time.
+ * <P>
+ * The tree is stored in two flat arrays instead of node objects. The item
+ * boxes come first, in the order STR put them in, followed by the boxes for
+ * each level of nodes above them, with the root last. Each item has an id,
+ * and each node has the position of its first child; its other children
+ * follow it. Since there aren't any object references, the tree can be written
+ * to a file and memory-mapped back in later without reading or parsing it,
+ * and the operating system only pages in the parts of the tree a query
+ * touches.
+ * <P>
+ * Searches are safe to run from several threads at the same time.
+ *
+ * <pre>
+ * double[] boxes = new double[numItems * 4]; // xmin, ymin, xmax, ymax for each
+ * int[] ids = new int[numItems];
+ * // ... fill in boxes and ids
+ * PackedRTree tree = PackedRTree.build(boxes, ids);
+ * int[] hits = tree.search(xmin, ymin, xmax, ymax);
+ * </pre>
+ */
+public class PackedRTree {
+
+    /**
+     * The default maximum number of children for a node.
+     */
+    public final static int DEFAULT_NODE_SIZE = 16;
+
+    /**
+     * Marks the beginning of a PackedRTree file, "OMRT".
+     */
+    public final static int MAGIC = 0x4F4D5254;
+
+    /**
+     * The version of the file layout.
+     */
+    public final static int VERSION = 1;
+
+    protected final int numItems;
+    protected final int nodeSize;
+    /**
+     * The end position of each level, items first, root last.
+     */
+    protected final int[] levelBounds;
+    /**
+     * xmin, ymin, xmax, ymax for each item and node.
+     */
+    protected final DoubleBuffer boxes;
+    /**
+     * The id of each item, and the position of the first child of each node.
+     */
+    protected final IntBuffer indices;
+
+    protected PackedRTree(int numItems, int nodeSize, int[] levelBounds, DoubleBuffer boxes,
+            IntBuffer indices) {
+        this.numItems = numItems;
+        this.nodeSize = nodeSize;
+        this.levelBounds = levelBounds;
+        this.boxes = boxes;
+        this.indices = indices;
+    }
+
+    /**
+     * Build a tree with the default node size.
+     *
+     * @param itemBoxes xmin, ymin, xmax, ymax for each item, 4 values per item.
+     * @param ids the id returned by searches for each item.
+     * @return PackedRTree
+     */
+    public static PackedRTree build(double[] itemBoxes, int[] ids) {
+        return build(itemBoxes, ids, DEFAULT_NODE_SIZE);
+    }
+
+    /**
+     * Build a tree.
+     *
+     * @param itemBoxes xmin, ymin, xmax, ymax for each item, 4 values per item.
+     *        Not modified.
+     * @param ids the id returned by searches for each item. Not modified.
+     * @param nodeSize the maximum number of children for each node, at least
+     *        2.
+     * @return PackedRTree
+     */
+    public static PackedRTree build(double[] itemBoxes, int[] ids, int nodeSize) {
+        if (itemBoxes.length != ids.length * 4) {
+            throw new IllegalArgumentException("need 4 box values for each of the " + ids.length
+                    + " ids, got " + itemBoxes.length);
+        }
+        nodeSize = Math.max(2, nodeSize);
+
+        int numItems = ids.length;
+
+        // Figure out how big each level is, so everything fits in one array.
+        // A tree with one item or none is just the item level.
+        int numLevels = 1;
+        int numNodes = numItems;
+        for (int size = numItems; size > 1;) {
+            size = (size + nodeSize - 1) / nodeSize;
+            numNodes += size;
+            numLevels++;
+        }
+
+        int[] levelBounds = new int[numLevels];
+        double[] allBoxes = new double[numNodes * 4];
+        int[] allIndices = new int[numNodes];
+
+        // Items, sorted into STR order.
+        int[] order = strOrder(itemBoxes, 0, numItems, nodeSize);
+        for (int i = 0; i < numItems; i++) {
+            int item = order[i];
+            System.arraycopy(itemBoxes, item * 4, allBoxes, i * 4, 4);
+            allIndices[i] = ids[item];
+        }
+        levelBounds[0] = numItems;
+
+        // Each level of nodes wraps groups of nodeSize nodes from the level
+        // below. The parents are STR sorted too, so their parents are
+        // compact.
+        int levelStart = 0;
+        int levelEnd = numItems;
+        for (int level = 1; level < numLevels; level++) {
+            int numParents = (levelEnd - levelStart + nodeSize - 1) / nodeSize;
+            double[] parentBoxes = new double[numParents * 4];
+            int[] firstChild = new int[numParents];
+
+            for (int p = 0; p < numParents; p++) {
+                int start = levelStart + p * nodeSize;
+                int end = Math.min(start + nodeSize, levelEnd);
+                double xmin = Double.POSITIVE_INFINITY;
+                double ymin = Double.POSITIVE_INFINITY;
+                double xmax = Double.NEGATIVE_INFINITY;
+                double ymax = Double.NEGATIVE_INFINITY;
+                for (int c = start; c < end; c++) {
+                    xmin = Math.min(xmin, allBoxes[c * 4]);
+                    ymin = Math.min(ymin, allBoxes[c * 4 + 1]);
+                    xmax = Math.max(xmax, allBoxes[c * 4 + 2]);
+                    ymax = Math.max(ymax, allBoxes[c * 4 + 3]);
+                }
+                parentBoxes[p * 4] = xmin;
+                parentBoxes[p * 4 + 1] = ymin;
+                parentBoxes[p * 4 + 2] = xmax;
+                parentBoxes[p * 4 + 3] = ymax;
+                firstChild[p] = start;
+            }
+
+            int[] parentOrder = strOrder(parentBoxes, 0, numParents, nodeSize);
+            for (int i = 0; i < numParents; i++) {
+                int p = parentOrder[i];
+                System.arraycopy(parentBoxes, p * 4, allBoxes, (levelEnd + i) * 4, 4);
+                allIndices[levelEnd + i] = firstChild[p];
+            }
+
+            levelStart = levelEnd;
+            levelEnd += numParents;
+            levelBounds[level] = levelEnd;
+        }
+
+        return new PackedRTree(numItems, nodeSize, levelBounds, DoubleBuffer.wrap(allBoxes), IntBuffer.wrap(allIndices));
+    }
+
+    /**
+     * Figure out the Sort-Tile-Recursive order for a set of boxes: sorted into
+     * vertical slices by x center, then each slice sorted by y center, so each
+     * run of nodeSize boxes is a compact tile.
+     *
+     * @return the positions of the boxes, in STR order.
+     */
+    protected static int[] strOrder(double[] boxes, int offset, int count, int nodeSize) {
+        int[] order = new int[count];
+        double[] keys = new double[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = offset + i;
+            int b = (offset + i) * 4;
+            keys[i] = boxes[b] + boxes[b + 2];
+        }
+        sort(order, keys, 0, count - 1);
+
+        int numGroups = (count + nodeSize - 1) / nodeSize;
+        int numSlices = (int) Math.ceil(Math.sqrt(numGroups));
+        int sliceSize = numSlices == 0 ? count : (numGroups + numSlices - 1) / numSlices * nodeSize;
+
+        for (int i = 0; i < count; i++) {
+            int b = order[i] * 4;
+            keys[i] = boxes[b + 1] + boxes[b + 3];
+        }
+        for (int start = 0; start < count; start += sliceSize) {
+            sort(order, keys, start, Math.min(start + sliceSize, count) - 1);
+        }
+
+        return order;
+    }
+
+    /**
+     * Sort the values and keys arrays together by key, between lo and hi
+     * inclusive. A quicksort on primitives, so building a tree for millions of
+     * items doesn't create millions of objects.
+     */
+    protected static void sort(int[] values, double[] keys, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = keys[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, keys, i++, j--);
+                }
+            }
+            // Recurse into the smaller side, loop on the bigger one.
+            if (j - lo < hi - i) {
+                sort(values, keys, lo, j);
+                lo = i;
+            } else {
+                sort(values, keys, i, hi);
+                hi = j;
+            }
+        }
+
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && keys[j - 1] > keys[j]; j--) {
+                swap(values, keys, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(int[] values, double[] keys, int i, int j) {
+        int v = values[i];
+        values[i] = values[j];
+        values[j] = v;
+        double k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+    }
+
+    /**
+     * @return the number of items in the tree.
+     */
+    public int size() {
+        return numItems;
+    }
+
+    /**
+     * @return the maximum number of children for each node.
+     */
+    public int getNodeSize() {
+        return nodeSize;
+    }
+
+    /**
+     * @return xmin, ymin, xmax, ymax of all the items, or null if the tree is
+     *         empty.
+     */
+    public double[] getBounds() {
+        if (numItems == 0) {
+            return null;
+        }
+
+        double[] bounds = new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        int top = levelBounds.length - 1;
+        for (int n = top == 0 ? 0 : levelBounds[top - 1]; n < levelBounds[top]; n++) {
+            bounds[0] = Math.min(bounds[0], boxes.get(n * 4));
+            bounds[1] = Math.min(bounds[1], boxes.get(n * 4 + 1));
+            bounds[2] = Math.max(bounds[2], boxes.get(n * 4 + 2));
+            bounds[3] = Math.max(bounds[3], boxes.get(n * 4 + 3));
+        }
+        return bounds;
+    }
+
+    /**
+     * Find the items whose boxes intersect a rectangle. Boxes that just touch
+     * the rectangle count.
+     *
+     * @param xmin the smaller of the x coordinates
+     * @param ymin the smaller of the y coordinates
+     * @param xmax the larger of the x coordinates
+     * @param ymax the larger of the y coordinates
+     * @return the ids of the items found, sorted in ascending order.
+     */
+    public int[] search(double xmin, double ymin, double xmax, double ymax) {
+        if (numItems == 0) {
+            return new int[0];
+        }
+
+        int[] hits = new int[16];
+        int numHits = 0;
+
+        // Stack of [start, end) ranges of nodes left to check, starting with
+        // the top level.
+        int[] stack = new int[levelBounds.length * 4];
+        int top = levelBounds.length - 1;
+        int sp = 0;
+        stack[sp++] = top == 0 ? 0 : levelBounds[top - 1];
+        stack[sp++] = levelBounds[top];
+
+        while (sp > 0) {
+            int end = stack[--sp];
+            int start = stack[--sp];
+
+            for (int n = start; n < end; n++) {
+                int b = n * 4;
+                if (boxes.get(b + 2) < xmin || boxes.get(b + 3) < ymin || boxes.get(b) > xmax
+                        || boxes.get(b + 1) > ymax) {
+                    continue;
+                }
+
+                if (n < numItems) {
+                    if (numHits == hits.length) {
+                        hits = Arrays.copyOf(hits, numHits * 2);
+                    }
+                    hits[numHits++] = indices.get(n);
+                } else {
+                    int childStart = indices.get(n);
+                    if (sp + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[sp++] = childStart;
+                    stack[sp++] = Math.min(childStart + nodeSize, levelEnd(childStart));
+                }
+            }
+        }
+
+        hits = Arrays.copyOf(hits, numHits);
+        Arrays.sort(hits);
+        return hits;
+    }
+
+    /**
+     * @return the end position of the level holding node n.
+     */
+    protected int levelEnd(int n) {
+        for (int level = 0; level < levelBounds.length; level++) {
+            if (n < levelBounds[level]) {
+                return levelBounds[level];
+            }
+        }
+        return levelBounds[levelBounds.length - 1];
+    }
+
+    /**
+     * Write the tree to a file, so it can be mapped back in with load(). The
+     * file is written next to its final location and renamed when done, so a
+     * partially written file is never picked up by another reader.
+     *
+     * @param file the file to write.
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        int numNodes = levelBounds[levelBounds.length - 1];
+        int headerLength = getHeaderLength(levelBounds.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength + numNodes * 36).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(nodeSize);
+        buffer.putInt(numItems);
+        buffer.putInt(levelBounds.length);
+        for (int levelBound : levelBounds) {
+            buffer.putInt(levelBound);
+        }
+        buffer.position(headerLength);
+        for (int i = 0; i < numNodes * 4; i++) {
+            buffer.putDouble(boxes.get(i));
+        }
+        for (int i = 0; i < numNodes; i++) {
+            buffer.putInt(indices.get(i));
+        }
+        buffer.flip();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            FileChannel channel = fos.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            fos.close();
+        }
+
+        if (!tmp.renameTo(file)) {
+            // Windows won't rename over an existing file.
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("couldn't rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Memory-map a tree written by write(). Nothing but the header is read
+     * right away, the rest of the file is paged in as searches need it.
+     *
+     * @param file the tree file.
+     * @return PackedRTree
+     * @throws IOException if the file can't be read, or isn't a tree file.
+     */
+    public static PackedRTree load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if (length < 20 || length > Integer.MAX_VALUE) {
+                throw new IOException(file + " isn't a PackedRTree file, wrong size");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " isn't a PackedRTree file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is version " + version + " of the PackedRTree format, expected " + VERSION);
+            }
+            int nodeSize = buffer.getInt();
+            int numItems = buffer.getInt();
+            int numLevels = buffer.getInt();
+            if (nodeSize < 2 || numItems < 0 || numLevels < 1 || 20 + numLevels * 4 > length) {
+                throw new IOException(file + " has a bad PackedRTree header");
+            }
+            int[] levelBounds = new int[numLevels];
+            for (int i = 0; i < numLevels; i++) {
+                levelBounds[i] = buffer.getInt();
+            }
+
+            int numNodes = levelBounds[numLevels - 1];
+            int headerLength = getHeaderLength(numLevels);
+            if (levelBounds[0] != numItems || headerLength + (long) numNodes * 36 != length) {
+                throw new IOException(file + " has a bad PackedRTree header");
+            }
+
+            buffer.position(headerLength);
+            DoubleBuffer boxes = buffer.slice().order(ByteOrder.BIG_ENDIAN).asDoubleBuffer();
+            buffer.position(headerLength + numNodes * 32);
+            IntBuffer indices = buffer.slice().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+
+            return new PackedRTree(numItems, nodeSize, levelBounds, boxes, indices);
+        } finally {
+            // The mapping stays valid after the file is closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * The header is padded out to a multiple of 8 bytes, so the boxes are
+     * aligned in the file.
+     */
+    protected static int getHeaderLength(int numLevels) {
+        int length = 20 + numLevels * 4;
+        return (length + 7) & ~7;
+    }
+}
@@ -0,0 +1,132 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class DiskTileCacheTest extends TestCase {
+
+	File file;
+
+	protected void setUp() throws Exception {
+		file = File.createTempFile("DiskTileCacheTest", ".tiles");
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+		new File(file.getPath() + ".tmp").delete();
+	}
+
+	byte[] tile(int seed, int size) {
+		byte[] bytes = new byte[size];
+		Arrays.fill(bytes, (byte) seed);
+		return bytes;
+	}
+
+	public void testStoreAndReopen() throws Exception {
+		DiskTileCache dtc = new DiskTileCache(file, 10000, 0);
+		assertFalse(dtc.contains(1, 2, 3));
+		assertNull(dtc.get(1, 2, 3));
+
+		assertTrue(dtc.put(1, 2, 3, tile(1, 100)));
+		assertTrue(dtc.put(2, 2, 3, tile(2, 200)));
+		assertTrue(dtc.put(1, 2, 3, tile(3, 300)));
+		assertTrue(dtc.put(5, 5, 5, tile(4, 50)));
+		dtc.remove(5, 5, 5);
+
+		assertTrue(dtc.contains(1, 2, 3));
+		assertFalse(dtc.contains(5, 5, 5));
+		assertTrue(Arrays.equals(tile(3, 300), dtc.get(1, 2, 3)));
+		assertEquals(2, dtc.size());
+		assertEquals(500, dtc.getBytes());
+		dtc.close();
+
+		dtc = new DiskTileCache(file, 10000, 0);
+		assertEquals(2, dtc.size());
+		assertEquals(500, dtc.getBytes());
+		assertTrue(Arrays.equals(tile(3, 300), dtc.get(1, 2, 3)));
+		assertTrue(Arrays.equals(tile(2, 200), dtc.get(2, 2, 3)));
+		assertFalse(dtc.contains(5, 5, 5));
+		dtc.close();
+	}
+
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		DiskTileCache dtc = new DiskTileCache(file, 1000, 0);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(dtc.put(i, 0, 1, tile(i, 300)));
+			// Keep the first one in use.
+			dtc.get(0, 0, 1);
+		}
+
+		assertEquals(3, dtc.size());
+		assertTrue(dtc.getBytes() <= 1000);
+		assertTrue(dtc.contains(0, 0, 1));
+		assertFalse(dtc.contains(1, 0, 1));
+		assertTrue(dtc.contains(3, 0, 1));
+		assertFalse(dtc.put(9, 9, 9, tile(9, 1001)));
+		dtc.close();
+
+		// Evicted tiles stay gone.
+		dtc = new DiskTileCache(file, 1000, 0);
+		assertFalse(dtc.contains(1, 0, 1));
+		assertEquals(3, dtc.size());
+		dtc.close();
+	}
+
+	public void testCompaction() throws Exception {
+		DiskTileCache dtc = new DiskTileCache(file, 100000, 0);
+		byte[] big = tile(7, 50000);
+		for (int i = 0; i < 100; i++) {
+			dtc.put(i % 2, 0, 10, big);
+		}
+		// Never more than the live tiles plus the dead space limit.
+		assertTrue(dtc.getFileLength() < 100000 + 2 * DiskTileCache.MIN_COMPACT_BYTES);
+		assertTrue(Arrays.equals(big, dtc.get(1, 0, 10)));
+		dtc.close();
+
+		dtc = new DiskTileCache(file, 100000, 0);
+		assertEquals(2, dtc.size());
+		assertTrue(Arrays.equals(big, dtc.get(0, 0, 10)));
+		dtc.close();
+	}
+
+	public void testExpiredAndTruncated() throws Exception {
+		DiskTileCache dtc = new DiskTileCache(file, 10000, 0);
+		dtc.put(1, 1, 1, tile(1, 100));
+		dtc.put(2, 2, 2, tile(2, 100));
+		dtc.close();
+
+		// Chop the last tile in half, like a crash while writing it.
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 50);
+		raf.close();
+
+		dtc = new DiskTileCache(file, 10000, 0);
+		assertTrue(dtc.contains(1, 1, 1));
+		assertFalse(dtc.contains(2, 2, 2));
+		assertEquals(DiskTileCache.HEADER_SIZE + 100, dtc.getFileLength());
+
+		Thread.sleep(20);
+		dtc.setTimeToLive(10);
+		assertFalse(dtc.contains(1, 1, 1));
+		assertNull(dtc.get(1, 1, 1));
+		assertEquals(0, dtc.size());
+		dtc.close();
+	}
+}
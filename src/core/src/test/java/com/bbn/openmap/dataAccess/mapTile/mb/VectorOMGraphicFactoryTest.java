@@ -0,0 +1,93 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.dataAccess.mapTile.mb;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.omGraphics.OMGraphicList;
+
+import no.ecc.vectortile.VectorTileDecoder.Feature;
+
+public class VectorOMGraphicFactoryTest extends TestCase {
+
+	public void testCreateFeatureListsRestoresTransform() {
+		VectorOMGraphicFactory factory = new VectorOMGraphicFactory(null);
+		AffineTransform coordTransform = new AffineTransform();
+		factory.setCoordTransform(coordTransform);
+
+		Map<String, OMGraphicList> featureLists = factory.createFeatureLists(Collections.<Feature> emptyList(), 3,
+				AffineTransform.getScaleInstance(2, 2));
+		assertTrue(featureLists.isEmpty());
+		assertSame(coordTransform, factory.getCoordTransform());
+	}
+
+	public void testRender() {
+		VectorOMGraphicFactory factory = new VectorOMGraphicFactory(null);
+		Map<String, OMGraphicList> featureLists = factory.getFeatureMap();
+		BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = image.createGraphics();
+
+		Logger logger = Logger.getLogger(VectorOMGraphicFactory.class.getName());
+		Level level = logger.getLevel();
+		try {
+			factory.render(g2, 3, featureLists);
+			// The tile description is only built when it's logged.
+			logger.setLevel(Level.FINE);
+			factory.render(g2, 3, featureLists, AffineTransform.getTranslateInstance(256, 0));
+		} finally {
+			logger.setLevel(level);
+			g2.dispose();
+		}
+		assertEquals(0, image.getRGB(128, 128));
+	}
+
+	static class CountingFactory extends VectorMapTileFactory {
+		int resets;
+
+		public void reset() {
+			resets++;
+			super.reset();
+		}
+	}
+
+	public void testSetPropertiesDirectRendering() {
+		CountingFactory factory = new CountingFactory();
+		Properties props = new Properties();
+		props.setProperty("vt.directRendering", "true");
+
+		factory.setProperties("vt", props);
+		assertTrue(factory.isDirectRendering());
+		// Tiles made the other way have to go.
+		assertEquals(1, factory.resets);
+
+		factory.setProperties("vt", props);
+		assertEquals(1, factory.resets);
+		assertEquals("true", factory.getProperties(new Properties()).getProperty("vt.directRendering"));
+
+		props.setProperty("vt.directRendering", "false");
+		factory.setProperties("vt", props);
+		assertFalse(factory.isDirectRendering());
+		assertEquals(2, factory.resets);
+	}
+}
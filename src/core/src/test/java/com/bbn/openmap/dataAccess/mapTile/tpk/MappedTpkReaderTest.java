@@ -0,0 +1,132 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.dataAccess.mapTile.tpk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+public class MappedTpkReaderTest extends TestCase {
+
+	static final String PATH = "v101/Layers/_alllayers";
+
+	File tpk;
+
+	protected void setUp() throws Exception {
+		tpk = File.createTempFile("bundles", ".tpk");
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(tpk));
+		// Zoom level 2 is stored, like tpk packages do, level 3 is compressed.
+		writeBundle(zos, PATH + "/L02/R0000C0000", ZipEntry.STORED);
+		writeBundle(zos, PATH + "/L03/R0000C0000", ZipEntry.DEFLATED);
+		zos.close();
+	}
+
+	protected void tearDown() throws Exception {
+		tpk.delete();
+	}
+
+	/**
+	 * Tiles where x + y is a multiple of 7 have x * y + 1 bytes of x + y.
+	 */
+	static byte[] tileBytes(int x, int y) {
+		if ((x + y) % 7 != 0) {
+			return null;
+		}
+		byte[] bytes = new byte[x * y + 1];
+		java.util.Arrays.fill(bytes, (byte) (x + y));
+		return bytes;
+	}
+
+	void writeBundle(ZipOutputStream zos, String path, int method) throws Exception {
+		ByteArrayOutputStream bundlx = new ByteArrayOutputStream();
+		ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+		bundlx.write(new byte[BundleX.HEADER_SIZE]);
+		bundle.write(new byte[60]);
+
+		for (int x = 0; x < 128; x++) {
+			for (int y = 0; y < 128; y++) {
+				writeInt(bundlx, bundle.size(), BundleX.OFFSET_SIZE);
+				byte[] tile = tileBytes(x, y);
+				writeInt(bundle, tile != null ? tile.length : 0, 4);
+				if (tile != null) {
+					bundle.write(tile);
+				}
+			}
+		}
+		writeInt(bundlx, bundle.size(), BundleX.OFFSET_SIZE);
+		bundlx.write(new byte[16]);
+
+		writeEntry(zos, path + ".bundlx", bundlx.toByteArray(), method);
+		writeEntry(zos, path + ".bundle", bundle.toByteArray(), method);
+	}
+
+	void writeInt(ByteArrayOutputStream out, int value, int size) {
+		for (int i = 0; i < size; i++) {
+			out.write(i < 4 ? value >> (8 * i) : 0);
+		}
+	}
+
+	void writeEntry(ZipOutputStream zos, String name, byte[] data, int method) throws Exception {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(method);
+		if (method == ZipEntry.STORED) {
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			entry.setCrc(crc.getValue());
+			entry.setSize(data.length);
+		}
+		zos.putNextEntry(entry);
+		zos.write(data);
+		zos.closeEntry();
+	}
+
+	public void testMappedTilesMatchStreams() throws Exception {
+		TpkReader streams = new TpkReader(tpk.getPath());
+		MappedTpkReader mapped = new MappedTpkReader(tpk.getPath());
+		streams.pathToTiles = PATH;
+		mapped.pathToTiles = PATH;
+
+		assertEquals(2, mapped.storedEntries.size());
+		assertTrue(mapped.getBundle(PATH + "/L02/R0000C0000") instanceof MappedTpkReader.MappedBundle);
+		assertTrue(mapped.getBundle(PATH + "/L03/R0000C0000") instanceof TpkReader.StreamBundle);
+		assertNull(mapped.getBundle(PATH + "/L04/R0000C0000"));
+
+		for (int zoom = 2; zoom <= 4; zoom++) {
+			for (int x = 0; x < 128; x += 3) {
+				for (int y = 0; y < 128; y += 5) {
+					byte[] expected = zoom < 4 ? tileBytes(x, y) : null;
+					ByteBuffer s = streams.getTile(x, y, zoom);
+					ByteBuffer m = mapped.getTile(x, y, zoom);
+					if (expected == null) {
+						assertNull(s);
+						assertNull(m);
+					} else {
+						assertEquals(ByteBuffer.wrap(expected), s);
+						assertEquals(ByteBuffer.wrap(expected), m);
+					}
+				}
+			}
+		}
+
+		streams.close();
+		mapped.close();
+	}
+}
@@ -0,0 +1,134 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.dataAccess.shape;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.dataAccess.shape.output.DbfOutputStream;
+import com.bbn.openmap.io.BinaryBufferedFile;
+
+public class MappedDbfFileTest extends TestCase {
+
+	File file;
+
+	protected void setUp() throws Exception {
+		DbfTableModel model = new DbfTableModel(4);
+		model.setColumnName(0, "NAME");
+		model.setType(0, DbfTableModel.TYPE_CHARACTER);
+		model.setLength(0, 12);
+		model.setColumnName(1, "CLASS");
+		model.setType(1, DbfTableModel.TYPE_NUMERIC);
+		model.setLength(1, 4);
+		model.setColumnName(2, "LENGTH");
+		model.setType(2, DbfTableModel.TYPE_NUMERIC);
+		model.setLength(2, 12);
+		model.setDecimalCount(2, (byte) 3);
+		model.setColumnName(3, "CODE");
+		model.setType(3, DbfTableModel.TYPE_CHARACTER);
+		model.setLength(3, 3);
+
+		// Some of the lengths are written with grouping separators, and some
+		// cells are blank.
+		Random random = new Random(11);
+		for (int i = 0; i < 2000; i++) {
+			List<Object> record = new ArrayList<Object>();
+			record.add("road " + random.nextInt(500));
+			record.add(i % 50 == 0 ? null : Double.valueOf(random.nextInt(5)));
+			record.add(i % 70 == 0 ? null : Double.valueOf((random.nextDouble() - 0.3) * 5000));
+			record.add(i % 3 == 0 ? "A" + (i % 7) : "");
+			model.addRecord(record);
+		}
+
+		file = File.createTempFile("mapped", ".dbf");
+		new DbfOutputStream(new FileOutputStream(file)).writeModel(model);
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testMatchesDbfFile() throws Exception {
+		DbfFile dbf = new DbfFile(new BinaryBufferedFile(file.getPath()));
+		MappedDbfFile mapped = new MappedDbfFile(file);
+
+		assertEquals(dbf.getRowCount(), mapped.getRowCount());
+		assertEquals(dbf.getColumnCount(), mapped.getColumnCount());
+		for (int c = 0; c < dbf.getColumnCount(); c++) {
+			assertEquals(dbf.getColumnName(c), mapped.getColumnName(c));
+			assertEquals(dbf.getType(c), mapped.getType(c));
+			assertEquals(dbf.getLength(c), mapped.getLength(c));
+		}
+
+		MappedDbfFile.Column classColumn = mapped.getColumn("class");
+		for (int row = 0; row < dbf.getRowCount(); row++) {
+			List<Object> record = dbf.getRecordData(row);
+			assertEquals(record, mapped.getRow(row));
+			if (record.get(1) instanceof Double) {
+				assertEquals(((Double) record.get(1)).intValue(), classColumn.getInt(row));
+			} else {
+				assertTrue(classColumn.isNull(row));
+			}
+		}
+
+		DbfTableModel projected = mapped.getTableModel("CODE", "LENGTH");
+		assertEquals(2, projected.getColumnCount());
+		assertEquals("CODE", projected.getColumnName(0));
+		assertEquals(dbf.getRecordData(9).get(3), projected.getValueAt(9, 0));
+		assertEquals(dbf.getRecordData(9).get(2), projected.getValueAt(9, 1));
+		dbf.close();
+	}
+
+	public void testRulesMatchDbfFile() throws Exception {
+		Properties props = new Properties();
+		String[][] rules = { { "CLASS", "lt", "2" }, { "LENGTH", "gte", "1,000.5" }, { "CODE", "equals", "A3" },
+				{ "NAME", "starts", "road 1" }, { "CLASS", "ne", "x" } };
+		DbfHandler handler = new DbfHandler(new BinaryBufferedFile(file.getPath()));
+		List<DbfHandler.DbfRule> dbfRules = new ArrayList<DbfHandler.DbfRule>();
+		for (int i = 0; i < rules.length; i++) {
+			props.setProperty("r" + i + ".key", rules[i][0]);
+			props.setProperty("r" + i + ".op", rules[i][1]);
+			props.setProperty("r" + i + ".val", rules[i][2]);
+			DbfHandler.DbfRule rule = (DbfHandler.DbfRule) handler.createRule();
+			rule.setProperties("r" + i, props);
+			dbfRules.add(rule);
+		}
+
+		DbfFile dbf = handler.getDbf();
+		dbf.setBinaryFile(new BinaryBufferedFile(file.getPath()));
+		MappedDbfFile mapped = handler.getMappedDbf();
+		assertNotNull(mapped);
+
+		int passed = 0;
+		for (int row = 0; row < mapped.getRowCount(); row++) {
+			List<Object> record = dbf.getRecordData(row);
+			for (DbfHandler.DbfRule rule : dbfRules) {
+				boolean expected = rule.evaluate(record);
+				assertEquals(expected, rule.evaluate(mapped.getRow(row)));
+				if (expected) {
+					passed++;
+				}
+			}
+		}
+		assertTrue(passed > 0);
+		dbf.close();
+	}
+}
@@ -24,6 +24,12 @@
 
 package com.bbn.openmap.geo;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 public class IntersectionTest extends TestCase {
@@ -71,6 +77,71 @@ public class IntersectionTest extends TestCase {
 
 	}
 
+	/**
+	 * Records the matches as they come in, path segments by their index since
+	 * the segment iterators reuse themselves.
+	 */
+	static class PairRecorder implements MatchCollector<GeoExtent> {
+		List<Object> pairs = new ArrayList<Object>();
+
+		public void collect(GeoExtent a, GeoExtent b) {
+			pairs.add(a instanceof GeoSegment ? a.getID() : a);
+			pairs.add(b);
+		}
+
+		public Iterator<GeoExtent> iterator() {
+			return null;
+		}
+	}
+
+	public void testConsiderAllMatchesConsider() {
+		Random random = new Random(11);
+		List<GeoExtent> regions = new ArrayList<GeoExtent>();
+		for (int i = 0; i < 1000; i++) {
+			regions.add(SphericalExtentIndex.randomRegion(random, 1 + random.nextDouble() * 3));
+		}
+		List<GeoExtent> queries = new ArrayList<GeoExtent>();
+		for (int i = 0; i < 300; i++) {
+			double lat = random.nextDouble() * 140 - 70;
+			double lon = random.nextDouble() * 360 - 180;
+			switch (i % 3) {
+			case 0:
+				queries.add(new GeoPath.Impl(new double[] { lat, lon, lat + 5, lon + 10, lat - 5, lon + 20 }, true));
+				break;
+			case 1:
+				queries.add(SphericalExtentIndex.randomRegion(random, 5));
+				break;
+			default:
+				queries.add(new GeoPoint.Impl(lat, lon, true));
+			}
+		}
+
+		ExtentIndex index = new SphericalExtentIndex(regions, 0);
+		PairRecorder sequential = new PairRecorder();
+		Intersection ix = Intersection.intersector(new MatchFilter.ExactMF(), sequential);
+		for (GeoExtent query : queries) {
+			ix.consider(query, index);
+		}
+		PairRecorder parallel = new PairRecorder();
+		Intersection.intersector(new MatchFilter.ExactMF(), parallel).considerAll(queries, index);
+		List<Object> expected = sequential.pairs;
+		assertTrue(expected.size() > 100);
+		assertEquals(expected, parallel.pairs);
+
+		// A plain collection is indexed first, the matches are the same.
+		MatchCollector.SetMatchCollector<GeoExtent> set = new MatchCollector.SetMatchCollector<GeoExtent>();
+		Intersection.intersector(new MatchFilter.ExactMF(), set).considerAll(queries, regions);
+		HashSet<GeoExtent> found = new HashSet<GeoExtent>();
+		for (Iterator<GeoExtent> it = set.iterator(); it.hasNext();) {
+			found.add(it.next());
+		}
+		HashSet<Object> expectedRegions = new HashSet<Object>();
+		for (int i = 1; i < expected.size(); i += 2) {
+			expectedRegions.add(expected.get(i));
+		}
+		assertEquals(expectedRegions, found);
+	}
+
 	private static double[] _Polygon = { -73.267463684082031, 42.745159149169922, -73.214195251464844,
 			42.743900299072266, -73.076728820800781, 42.740665435791016, -73.023033142089844, 42.739715576171875,
 			-72.930160522460938, 42.738025665283203, -72.907691955566406, 42.737617492675781, -72.843818664550781,
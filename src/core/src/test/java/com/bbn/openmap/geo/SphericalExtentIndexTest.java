@@ -0,0 +1,98 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.geo;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class SphericalExtentIndexTest extends TestCase {
+
+	Set<GeoExtent> matches(ExtentIndex index, GeoExtent query) {
+		Set<GeoExtent> found = new HashSet<GeoExtent>();
+		for (Iterator<GeoExtent> it = index.iterator(query); it.hasNext();) {
+			GeoExtent extent = it.next();
+			if (extent.getBoundingCircle().intersects(query.getBoundingCircle())) {
+				found.add(extent);
+			}
+		}
+		return found;
+	}
+
+	Set<GeoExtent> scan(List<GeoExtent> regions, GeoExtent query) {
+		Set<GeoExtent> found = new HashSet<GeoExtent>();
+		for (GeoExtent extent : regions) {
+			if (extent.getBoundingCircle().intersects(query.getBoundingCircle())) {
+				found.add(extent);
+			}
+		}
+		return found;
+	}
+
+	public void testMatchesArrayListIndex() {
+		Random random = new Random(5);
+		List<GeoExtent> regions = new ArrayList<GeoExtent>();
+		for (int i = 0; i < 3000; i++) {
+			regions.add(SphericalExtentIndex.randomRegion(random, 0.5 + random.nextDouble() * 4));
+		}
+		// Around a pole and across the dateline.
+		regions.add(new GeoRegion.Impl(new double[] { 88, 0, 88, 120, 88, -120, 88, 0 }, true));
+		regions.add(new GeoRegion.Impl(new double[] { 10, 179, 10, -179, 8, -179, 8, 179, 10, 179 }, true));
+
+		ExtentIndex buckets = new ExtentIndex.ArrayListExtentIndexImpl();
+		buckets.addAll(regions);
+		SphericalExtentIndex sphere = new SphericalExtentIndex(regions, 0);
+		assertEquals(regions.size(), sphere.size());
+
+		for (int i = 0; i < 500; i++) {
+			GeoExtent query = SphericalExtentIndex.randomRegion(random, 1 + random.nextDouble() * 8);
+			assertEquals(matches(buckets, query), matches(sphere, query));
+		}
+
+		GeoExtent polar = new GeoPoint.Impl(Geo.makeGeoDegrees(89, 45));
+		assertEquals(scan(regions, polar), matches(sphere, polar));
+		assertTrue(matches(sphere, polar).contains(regions.get(3000)));
+		GeoExtent dateline = new GeoSegment.Impl(new Geo[] { Geo.makeGeoDegrees(9, 178), Geo.makeGeoDegrees(9, -178) });
+		assertTrue(matches(sphere, dateline).contains(regions.get(3001)));
+		assertEquals(matches(buckets, dateline), matches(sphere, dateline));
+
+		// A path is looked up a segment at a time, and everything near any of
+		// the segments is found.
+		GeoPath path = new GeoPath.Impl(new double[] { 0, -60, 30, -30, 60, 60 }, true);
+		Set<GeoExtent> near = new HashSet<GeoExtent>();
+		for (Iterator<GeoSegment> it = path.segmentIterator(); it.hasNext();) {
+			near.addAll(scan(regions, new GeoSegment.Impl(it.next().getSeg())));
+		}
+		Set<GeoExtent> found = new HashSet<GeoExtent>();
+		for (Iterator<GeoExtent> it = sphere.iterator(path); it.hasNext();) {
+			found.add(it.next());
+		}
+		assertTrue(found.containsAll(near));
+		assertTrue(near.containsAll(found));
+
+		// Changes after the tree is built.
+		GeoExtent added = new GeoRegion.Impl(new double[] { 88.5, 10, 88.5, 130, 88.5, -110, 88.5, 10 }, true);
+		sphere.addExtent(added);
+		assertTrue(matches(sphere, polar).contains(added));
+		assertTrue(sphere.removeExtent(regions.get(3000)));
+		assertFalse(matches(sphere, polar).contains(regions.get(3000)));
+		assertTrue(matches(sphere, polar).contains(added));
+	}
+}
@@ -0,0 +1,189 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.image.wms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.event.ProjectionEvent;
+import com.bbn.openmap.image.PNGImageIOFormatter;
+import com.bbn.openmap.util.http.IHttpResponse;
+
+public class WmsRequestHandlerTest extends TestCase {
+
+	/**
+	 * A top layer with two nested layers, a and b.
+	 */
+	public static class NestedTestLayer extends Layer implements IWmsNestedLayer {
+
+		NestedTestLayer top = this;
+		NestedTestLayer[] nested;
+		String name = "test";
+		boolean active;
+
+		public NestedTestLayer() {
+			nested = new NestedTestLayer[] { new NestedTestLayer(this, "test.a"), new NestedTestLayer(this, "test.b") };
+		}
+
+		NestedTestLayer(NestedTestLayer top, String name) {
+			this.top = top;
+			this.name = name;
+		}
+
+		public void projectionChanged(ProjectionEvent e) {
+		}
+
+		public IWmsNestedLayer[] getNestedLayers() {
+			return nested;
+		}
+
+		public IWmsNestedLayer getTopLayer() {
+			return top;
+		}
+
+		public void setIsActive(boolean active) {
+			this.active = active;
+		}
+
+		public String getTitle() {
+			return name;
+		}
+
+		public String getWmsName() {
+			return name;
+		}
+
+		public String getAbstract() {
+			return null;
+		}
+
+		public boolean isQueryable() {
+			return false;
+		}
+
+		public LayerFeatureInfoResponse query(int x, int y) {
+			return null;
+		}
+
+		public IWmsLayerStyle[] getStyles() {
+			return new IWmsLayerStyle[0];
+		}
+
+		public void setStyle(String name) {
+		}
+
+		public boolean isStyleSupported(String name) {
+			return false;
+		}
+
+		public void setDefaultStyle() {
+		}
+
+		public void setRequestParameters(Properties requestParameters) {
+		}
+
+		public Legend getLegend() {
+			return null;
+		}
+	}
+
+	static class TestResponse implements IHttpResponse {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		String contentType;
+
+		public void writeHttpResponse(String contentType, String response) {
+			this.contentType = contentType;
+		}
+
+		public void writeHttpResponse(String contentType, byte[] response) {
+			this.contentType = contentType;
+		}
+
+		public OutputStream getOutputStream(String contentType) {
+			this.contentType = contentType;
+			return out;
+		}
+	}
+
+	static WmsRequestHandler createHandler() throws Exception {
+		Properties props = new Properties();
+		props.setProperty("layers", "test");
+		props.setProperty("test.class", NestedTestLayer.class.getName());
+		props.setProperty("test.prettyName", "Test");
+		props.setProperty("formatters", "png");
+		props.setProperty("png.class", PNGImageIOFormatter.class.getName());
+		return new WmsRequestHandler("http", "localhost", 8080, "/openmap/wms", props);
+	}
+
+	static Properties getMap(String layers) {
+		Properties props = new Properties();
+		props.setProperty("REQUEST", "GetMap");
+		props.setProperty("VERSION", "1.1.1");
+		props.setProperty("SERVICE", "WMS");
+		props.setProperty("LAYERS", layers);
+		props.setProperty("STYLES", "");
+		props.setProperty("SRS", "EPSG:4326");
+		props.setProperty("BBOX", "-10,-10,10,10");
+		props.setProperty("WIDTH", "64");
+		props.setProperty("HEIGHT", "64");
+		props.setProperty("FORMAT", "image/png");
+		return props;
+	}
+
+	public void testNestedLayersResetBetweenRequests() throws Exception {
+		WmsRequestHandler handler = createHandler();
+		NestedTestLayer top = (NestedTestLayer) handler.getTopLayerByName("test");
+		NestedTestLayer a = top.nested[0];
+		NestedTestLayer b = top.nested[1];
+
+		TestResponse response = new TestResponse();
+		handler.handleRequest(getMap("test.a"), response);
+		assertEquals("image/png", response.contentType);
+		assertTrue(a.active);
+		assertFalse(b.active);
+
+		// The same handler, as if it came back from the pool.
+		response = new TestResponse();
+		handler.handleRequest(getMap("test.b"), response);
+		assertEquals("image/png", response.contentType);
+		assertFalse(a.active);
+		assertTrue(b.active);
+	}
+
+	public void testPoolReusesHandlers() throws Exception {
+		WmsRequestHandlerPool pool = new WmsRequestHandlerPool(1, 0);
+		assertTrue(pool.acquire());
+		assertNull(pool.poll());
+		WmsRequestHandler handler = createHandler();
+		// Only one request at a time for the whole pool.
+		assertFalse(pool.acquire());
+		assertEquals(1, pool.getActiveCount());
+		pool.release(handler);
+
+		assertTrue(pool.acquire());
+		assertSame(handler, pool.poll());
+		pool.release(handler);
+		assertEquals(0, pool.getActiveCount());
+
+		pool.clear();
+		assertTrue(pool.acquire());
+		assertNull(pool.poll());
+		pool.release(null);
+	}
+}
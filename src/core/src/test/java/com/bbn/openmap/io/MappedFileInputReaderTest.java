@@ -0,0 +1,129 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MappedFileInputReaderTest extends TestCase {
+
+	File file;
+
+	protected void setUp() throws Exception {
+		byte[] bytes = new byte[10001];
+		new Random(3).nextBytes(bytes);
+		file = File.createTempFile("MappedFileInputReaderTest", ".bin");
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(bytes);
+		fos.close();
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	/**
+	 * Read the same things out of a file through the RandomAccessFile reader
+	 * and the mapped one, both byte orders.
+	 */
+	void compare(BinaryFile plain, BinaryFile mapped) throws Exception {
+		assertFalse(plain.isMapped());
+		assertTrue(mapped.isMapped());
+		assertEquals(plain.length(), mapped.length());
+
+		for (boolean msbFirst : new boolean[] { true, false }) {
+			plain.byteOrder(msbFirst);
+			mapped.byteOrder(msbFirst);
+
+			for (long pos : new long[] { 0, 1, 3, 777, 4099 }) {
+				plain.seek(pos);
+				mapped.seek(pos);
+				assertEquals(plain.readShort(), mapped.readShort());
+				assertEquals(plain.readInteger(), mapped.readInteger());
+				assertEquals(plain.readLong(), mapped.readLong());
+				assertEquals(plain.readFloat(), mapped.readFloat());
+				assertEquals(plain.readDouble(), mapped.readDouble());
+				assertEquals(plain.read(), mapped.read());
+				assertEquals(plain.getFilePointer(), mapped.getFilePointer());
+
+				int[] ints1 = new int[300];
+				int[] ints2 = new int[300];
+				plain.readIntegerArray(ints1, 1, 299);
+				mapped.readIntegerArray(ints2, 1, 299);
+				assertTrue(Arrays.equals(ints1, ints2));
+
+				float[] floats1 = new float[100];
+				float[] floats2 = new float[100];
+				plain.readFloatArray(floats1, 0, 100);
+				mapped.readFloatArray(floats2, 0, 100);
+				assertTrue(Arrays.equals(floats1, floats2));
+
+				short[] shorts1 = new short[101];
+				short[] shorts2 = new short[101];
+				plain.readShortArray(shorts1, 0, 101);
+				mapped.readShortArray(shorts2, 0, 101);
+				assertTrue(Arrays.equals(shorts1, shorts2));
+
+				assertTrue(Arrays.equals(plain.readBytes(50, false), mapped.readBytes(50, false)));
+				assertEquals(plain.getFilePointer(), mapped.getFilePointer());
+				assertEquals(plain.available(), mapped.available());
+			}
+		}
+	}
+
+	public void testMatchesFileInputReader() throws Exception {
+		compare(new BinaryFile(file, false), new BinaryFile(file, true));
+	}
+
+	public void testBufferedFileUsesMapping() throws Exception {
+		BinaryFile.setMapFiles(true);
+		try {
+			BinaryBufferedFile mapped = new BinaryBufferedFile(file);
+			BinaryFile.setMapFiles(false);
+			compare(new BinaryBufferedFile(file), mapped);
+		} finally {
+			BinaryFile.setMapFiles(false);
+		}
+	}
+
+	public void testEndOfFile() throws Exception {
+		BinaryFile mapped = new BinaryFile(file, true);
+		mapped.seek(file.length() - 2);
+		try {
+			mapped.readInteger();
+			fail("read past end of file");
+		} catch (FormatException fe) {
+			// two bytes left, not four
+		}
+		mapped.seek(file.length());
+		try {
+			mapped.readShort();
+			fail("read past end of file");
+		} catch (EOFException eofe) {
+		}
+		assertEquals(-1, mapped.read());
+		assertEquals(0, mapped.readBytes(10, true).length);
+
+		// Closing doesn't stop the reader from working.
+		mapped.close();
+		mapped.seek(0);
+		assertEquals(new BinaryFile(file, false).read(), mapped.read());
+	}
+}
@@ -0,0 +1,146 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMPoint;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class LinkGraphicDeltaTest extends TestCase {
+
+	Link server;
+	ClientLink client;
+
+	protected void setUp() throws Exception {
+		ServerSocket serverSocket = new ServerSocket(0);
+		client = new ClientLink(new Socket("localhost", serverSocket.getLocalPort()));
+		server = new Link(serverSocket.accept());
+		serverSocket.close();
+	}
+
+	protected void tearDown() throws Exception {
+		client.cleanUp();
+		server.cleanUp();
+	}
+
+	static LinkProperties props(String id, String version) {
+		LinkProperties props = new LinkProperties(LinkPropertiesConstants.LPC_GRAPHICID, id);
+		props.setProperty(LinkPropertiesConstants.LPC_GRAPHICVERSION, version);
+		return props;
+	}
+
+	static OMGraphic point(String id, String version) {
+		OMPoint point = new OMPoint(42f, -70f);
+		point.putAttribute(OMGraphic.APP_OBJECT, props(id, version));
+		return point;
+	}
+
+	static String version(OMGraphic graphic) {
+		return ((LinkProperties) graphic.getAttribute(OMGraphic.APP_OBJECT))
+				.getProperty(LinkPropertiesConstants.LPC_GRAPHICVERSION);
+	}
+
+	public void testHeldGraphicsRoundTrip() {
+		LinkOMGraphicList held = new LinkOMGraphicList();
+		held.add(point("a", "1"));
+		held.add(point("b\tc", "1"));
+		held.add(point("d", "12"));
+		Map<String, String> versions = LinkGraphicDelta.readHeldGraphics(LinkGraphicDelta.writeHeldGraphics(held));
+		assertEquals(2, versions.size());
+		assertEquals("1", versions.get("a"));
+		assertEquals("12", versions.get("d"));
+	}
+
+	public void testDeltaUpdate() throws Exception {
+		Mercator proj = new Mercator(new LatLonPoint.Double(42, -70), 1000000f, 640, 480);
+		LinkLayer layer = new LinkLayer();
+		layer.setProjection(proj);
+		layer.setDeltaUpdates(true);
+		layer.args = new LinkProperties();
+
+		LinkOMGraphicList held = new LinkOMGraphicList();
+		OMGraphic a = point("a", "1");
+		held.add(a);
+		held.add(point("b", "1"));
+		held.add(point("c", "1"));
+		held.add(point("e", "1"));
+		layer.heldGraphics = held;
+		layer.sendMapRequest(client, proj);
+
+		// The server has a the same, b changed, c and e gone and d new.
+		server.readAndParse();
+		LinkGraphicDelta delta = new LinkGraphicDelta(server.getMapRequest());
+		assertTrue(delta.isDelta());
+		LinkGraphicList gr = new LinkGraphicList(server, delta.getProperties(new LinkProperties()));
+		String[][] graphics = { { "a", "1" }, { "b", "2" }, { "d", "1" } };
+		int sent = 0;
+		for (String[] graphic : graphics) {
+			LinkProperties props = props(graphic[0], graphic[1]);
+			if (delta.needsGraphic(props)) {
+				gr.addPoint(41f, -71f, 2, props);
+				sent++;
+			}
+		}
+		assertEquals(2, sent);
+		gr.end(Link.END_SECTION);
+		delta.writeRemovals(server, Link.END_TOTAL);
+
+		client.readAndParse(proj, null);
+		layer.handleLinkGraphicList(client.getGraphicList());
+		// Merged without generating the new graphics again.
+		assertFalse(held.getNeedToRegenerate(proj));
+		layer.handleLinkActionList(client.getActionList());
+
+		LinkOMGraphicList list = layer.getGraphicList();
+		assertSame(held, list);
+		assertEquals(3, list.size());
+		assertSame(a, list.getOMGraphicAt(0));
+		assertEquals("2", version(list.getOMGraphicWithId("b")));
+		assertEquals(1, list.getOMGraphicIndexWithId("b"));
+		assertEquals(2, list.getOMGraphicIndexWithId("d"));
+		assertNull(list.getOMGraphicWithId("c"));
+		assertNull(list.getOMGraphicWithId("e"));
+		for (OMGraphic graphic : list) {
+			assertNotNull(graphic.getShape());
+		}
+	}
+
+	public void testFullUpdate() throws Exception {
+		Mercator proj = new Mercator(new LatLonPoint.Double(42, -70), 1000000f, 640, 480);
+		LinkLayer layer = new LinkLayer();
+		layer.setProjection(proj);
+		layer.setDeltaUpdates(true);
+		layer.heldGraphics = new LinkOMGraphicList();
+		layer.heldGraphics.add(point("a", "1"));
+
+		// A server that doesn't know about delta updates.
+		LinkGraphicList gr = new LinkGraphicList(server, new LinkProperties());
+		gr.addPoint(41f, -71f, 2, props("b", "1"));
+		gr.end(Link.END_TOTAL);
+
+		client.readAndParse(proj, null);
+		layer.handleLinkGraphicList(client.getGraphicList());
+		assertEquals(1, layer.getGraphicList().size());
+		assertNotNull(layer.getGraphicList().getOMGraphicWithId("b"));
+		assertSame(layer.getGraphicList(), layer.heldGraphics);
+	}
+}
@@ -0,0 +1,107 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.net.ServerSocket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class LinkServerStarterTest extends TestCase {
+
+	int port;
+
+	protected void setUp() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		port = socket.getLocalPort();
+		socket.close();
+
+		final LinkServerStarter starter = new LinkServerStarter(port);
+		starter.setWorkerThreads(2);
+		Thread thread = new Thread() {
+			public void run() {
+				starter.run();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Send an empty request over a link, the LinkServer answers with HUH.
+	 */
+	void ping(ClientLink link) throws Exception {
+		link.end(Link.END_TOTAL);
+		link.readAndParse();
+	}
+
+	public void testManyClientsFewWorkers() throws Exception {
+		final LinkManager[] managers = new LinkManager[6];
+		for (int i = 0; i < managers.length; i++) {
+			managers[i] = new LinkManager("localhost", port);
+			managers[i].setMaxLinks(2);
+		}
+		// Wait for the server to be listening.
+		for (int tries = 0;; tries++) {
+			try {
+				ping(managers[0].getLink(true));
+				managers[0].finLink();
+				break;
+			} catch (java.io.IOException ioe) {
+				managers[0].resetLink();
+				if (tries > 50) {
+					throw ioe;
+				}
+				Thread.sleep(100);
+			}
+		}
+
+		final AtomicInteger answered = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		// More threads than links, so some of them wait for links.
+		Thread[] threads = new Thread[18];
+		for (int t = 0; t < threads.length; t++) {
+			final LinkManager manager = managers[t % managers.length];
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < 20; i++) {
+							ClientLink link = manager.getLink(true);
+							ping(link);
+							manager.finLink();
+							answered.incrementAndGet();
+						}
+					} catch (Exception e) {
+						failed.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join(30000);
+		}
+
+		assertEquals(0, failed.get());
+		assertEquals(threads.length * 20, answered.get());
+		for (LinkManager manager : managers) {
+			assertTrue(manager.links.size() <= 2);
+			// All of the links were given back.
+			assertNotNull(manager.getLink(false));
+			manager.finLink();
+			manager.resetLink();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMPoly;
+
+public class LinkUtilTest extends TestCase {
+
+	public void testBlockReadsMatchSingleReads() throws Exception {
+		// More values than fit in a decode buffer.
+		int count = LinkUtil.DECODE_BUFFER_SIZE + 123;
+		Random random = new Random(7);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bytes);
+		for (int i = 0; i < count; i++) {
+			dos.writeInt(random.nextInt());
+		}
+		dos.writeChars("a string \u00e9\u4e2d");
+		dos.close();
+		byte[] data = bytes.toByteArray();
+
+		DataInputStream single = new DataInputStream(new ByteArrayInputStream(data));
+		int[] ints = new int[count];
+		for (int i = 0; i < count; i++) {
+			ints[i] = single.readInt();
+		}
+
+		DataInputStream block = new DataInputStream(new ByteArrayInputStream(data));
+		int[] blockInts = new int[count + 1];
+		LinkUtil.readInts(block, blockInts, 1, count);
+		assertTrue(Arrays.equals(ints, Arrays.copyOfRange(blockInts, 1, count + 1)));
+		assertEquals("a string \u00e9\u4e2d", LinkUtil.readString(block, 11));
+
+		block = new DataInputStream(new ByteArrayInputStream(data));
+		float[] floats = new float[count];
+		LinkUtil.readFloats(block, floats, 0, count);
+		double[] doubles = new double[count];
+		block = new DataInputStream(new ByteArrayInputStream(data));
+		LinkUtil.readFloats(block, doubles, 0, count);
+		int[] xs = new int[count / 2];
+		int[] ys = new int[count / 2];
+		block = new DataInputStream(new ByteArrayInputStream(data));
+		LinkUtil.readIntPairs(block, xs, ys, count / 2);
+
+		for (int i = 0; i < count; i++) {
+			assertEquals(Float.intBitsToFloat(ints[i]), floats[i], 0);
+			assertEquals((double) Float.intBitsToFloat(ints[i]), doubles[i], 0);
+			if (i < count / 2 * 2) {
+				assertEquals(ints[i], i % 2 == 0 ? xs[i / 2] : ys[i / 2]);
+			}
+		}
+	}
+
+	public void testPolyRoundTrip() throws Exception {
+		double[] llpoints = new double[5000];
+		int[] xypoints = new int[3000];
+		for (int i = 0; i < llpoints.length; i++) {
+			llpoints[i] = (i % 2 == 0 ? 40 : -70) + i * 0.001;
+		}
+		for (int i = 0; i < xypoints.length; i++) {
+			xypoints[i] = i * 3 - 1000;
+		}
+		LinkProperties props = new LinkProperties(LinkPropertiesConstants.LPC_GRAPHICID, "poly 1");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bytes);
+		LinkPoly.write(llpoints, OMGraphic.DECIMAL_DEGREES, OMGraphic.LINETYPE_STRAIGHT, -1, props, dos);
+		LinkPoly.write(xypoints, props, dos);
+		dos.close();
+
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		dis.skipBytes(Link.POLY_HEADER.length() + 1);
+		OMPoly poly = LinkPoly.read(dis, null);
+		double[] read = poly.getLatLonArray();
+		assertEquals(llpoints.length, read.length);
+		for (int i = 0; i < llpoints.length; i++) {
+			assertEquals((float) llpoints[i], Math.toDegrees(read[i]), 1e-4);
+		}
+		assertEquals("poly 1", ((LinkProperties) poly.getAttribute(OMGraphic.APP_OBJECT))
+				.getProperty(LinkPropertiesConstants.LPC_GRAPHICID));
+
+		dis.skipBytes(Link.POLY_HEADER.length() + 1);
+		poly = LinkPoly.read(dis, null);
+		assertEquals(1500, poly.getXs().length);
+		assertEquals(-1000, poly.getXs()[0]);
+		assertEquals(-997, poly.getYs()[0]);
+		assertEquals(xypoints[2998], poly.getXs()[1499]);
+		assertEquals(xypoints[2999], poly.getYs()[1499]);
+	}
+}
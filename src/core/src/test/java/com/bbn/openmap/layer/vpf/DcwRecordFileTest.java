@@ -0,0 +1,93 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.layer.vpf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class DcwRecordFileTest extends TestCase {
+
+	File file;
+
+	protected void setUp() throws Exception {
+		String header = "M;test table;-;" + "id=I,1,P,Row Id,-,-,-,:" + "name=T,4,N,Name,-,-,-,:"
+				+ "val=S,1,N,Value,-,-,-,:" + "count=I,1,N,Count,-,-,-,:;";
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(header.length());
+		out.writeBytes(header);
+		String[] names = { "abcd", "efgh", "ijkl" };
+		short[] vals = { 7, Short.MIN_VALUE + 1, 9 };
+		for (int i = 0; i < names.length; i++) {
+			out.writeInt(i + 1);
+			out.writeBytes(names[i]);
+			out.writeShort(vals[i]);
+			out.writeInt((i + 1) * 100);
+		}
+		out.close();
+
+		file = File.createTempFile("DcwRecordFileTest", ".tbl");
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(bytes.toByteArray());
+		fos.close();
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testGetInts() throws Exception {
+		DcwRecordFile table = new DcwRecordFile(file.getPath());
+		try {
+			assertEquals(4, table.getColumnCount());
+			int[] values = new int[3];
+			List<Object> row = new ArrayList<Object>();
+			for (int i = 3; i >= 1; i--) {
+				assertTrue(table.getInts(i, new int[] { 3, 0, 2 }, values));
+				assertTrue(table.getRow(row, i));
+				assertEquals(VPFUtil.objectToInt(row.get(3)), values[0]);
+				assertEquals(VPFUtil.objectToInt(row.get(0)), values[1]);
+				assertEquals(VPFUtil.objectToInt(row.get(2)), values[2]);
+			}
+			assertTrue(table.getInts(2, new int[] { 2 }, values));
+			assertEquals(Integer.MIN_VALUE, values[0]);
+
+			// The same column asked for twice, with another in between.
+			assertTrue(table.getInts(3, new int[] { 3, 0, 3 }, values));
+			assertEquals(300, values[0]);
+			assertEquals(3, values[1]);
+			assertEquals(300, values[2]);
+
+			// Only part of the row was read, the next row is still right.
+			assertTrue(table.getInts(2, new int[] { 0 }, values));
+			assertTrue(table.getRow(row, 3));
+			assertEquals("ijkl", row.get(1));
+
+			table.close();
+			assertTrue(table.getInts(1, new int[] { 0, 3 }, values));
+			assertEquals(1, values[0]);
+			assertEquals(100, values[1]);
+			assertFalse(table.getInts(4, new int[] { 0 }, values));
+		} finally {
+			table.close();
+		}
+	}
+}
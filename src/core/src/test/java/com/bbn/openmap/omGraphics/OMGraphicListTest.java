@@ -0,0 +1,142 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.omGraphics;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.proj.Gnomonic;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Orthographic;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class OMGraphicListTest extends TestCase {
+
+	OMGraphicList createList(long seed, int size) {
+		Random random = new Random(seed);
+		OMGraphicList list = new OMGraphicList();
+		OMGraphicList sublist = new OMGraphicList();
+		for (int i = 0; i < size; i++) {
+			double lat = random.nextDouble() * 120 - 60;
+			double lon = random.nextDouble() * 340 - 170;
+			OMGraphic omg;
+			switch (i % 4) {
+			case 0:
+				omg = new OMPoly(new double[] { lat, lon, lat + 2, lon + 5, lat - 1, lon + 8, lat, lon },
+						OMGraphicConstants.DECIMAL_DEGREES, OMGraphicConstants.LINETYPE_STRAIGHT);
+				break;
+			case 1:
+				omg = new OMLine(lat, lon, lat + 3, lon + 4, OMGraphicConstants.LINETYPE_GREATCIRCLE);
+				break;
+			case 2:
+				omg = new OMRect(lat + 1, lon, lat, lon + 1, OMGraphicConstants.LINETYPE_RHUMB);
+				break;
+			default:
+				omg = new OMPoint(lat, lon);
+			}
+			(i % 10 == 0 ? sublist : list).add(omg);
+		}
+		list.add(sublist);
+		return list;
+	}
+
+	void assertSameShapes(OMGraphicList expected, OMGraphicList actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			OMGraphic e = expected.get(i);
+			OMGraphic a = actual.get(i);
+			if (e instanceof OMGraphicList) {
+				assertSameShapes((OMGraphicList) e, (OMGraphicList) a);
+			} else if (e instanceof OMAbstractLine) {
+				float[][] ex = ((OMAbstractLine) e).xpoints;
+				float[][] ax = ((OMAbstractLine) a).xpoints;
+				assertEquals(ex.length, ax.length);
+				for (int j = 0; j < ex.length; j++) {
+					assertTrue(Arrays.equals(ex[j], ax[j]));
+				}
+			} else {
+				assertEquals(e.getShape() == null, a.getShape() == null);
+			}
+		}
+	}
+
+	public void testParallelGenerateMatchesSequential() {
+		Projection[] projections = new Projection[] {
+				new Mercator(new LatLonPoint.Double(0, 0), 100000000f, 800, 600),
+				new Orthographic(new LatLonPoint.Double(40, -70), 50000000f, 800, 600),
+				new Gnomonic(new LatLonPoint.Double(40, -100), 30000000f, 800, 600) };
+
+		OMGraphicList sequential = createList(42, 20000);
+		OMGraphicList parallel = createList(42, 20000);
+		parallel.setParallelThreshold(1000);
+		((OMGraphicList) parallel.get(parallel.size() - 1)).setParallelThreshold(100);
+
+		for (Projection proj : projections) {
+			assertEquals(sequential.generate(proj), parallel.generate(proj));
+			assertSameShapes(sequential, parallel);
+		}
+
+		// Only the graphics that need it are regenerated.
+		OMPoly poly = (OMPoly) parallel.get(3);
+		poly.setLocation(new double[] { 0, 0, 1, 1, 2, 0 }, OMGraphicConstants.DECIMAL_DEGREES);
+		assertTrue(poly.getNeedToRegenerate());
+		parallel.regenerate(projections[0]);
+		assertFalse(poly.getNeedToRegenerate());
+	}
+
+	public void testSpatialIndexMatchesScan() {
+		Mercator merc = new Mercator(new LatLonPoint.Double(20, 0), 50000000f, 800, 600);
+		OMGraphicList scanned = createList(7, 5000);
+		OMGraphicList indexed = createList(7, 5000);
+		indexed.setSpatialIndexThreshold(100);
+		scanned.generate(merc);
+		indexed.generate(merc);
+		assertNotNull(indexed.getIndexesNear(0, 0, 10, 10));
+		assertNull(scanned.getIndexesNear(0, 0, 10, 10));
+
+		Random random = new Random(3);
+		for (int mode = 0; mode < 2; mode++) {
+			scanned.setTraverseMode(mode);
+			indexed.setTraverseMode(mode);
+			for (int i = 0; i < 300; i++) {
+				int x = random.nextInt(800);
+				int y = random.nextInt(600);
+				int e = scanned.findIndexOfClosest(x, y, 4);
+				assertEquals(e, indexed.findIndexOfClosest(x, y, 4));
+				if (e != OMList.NONE) {
+					assertEquals(scanned.findClosest(x, y, 4).getClass(), indexed.findClosest(x, y, 4).getClass());
+				}
+				assertEquals(scanned.findAll(x, y, 4).size(), indexed.findAll(x, y, 4).size());
+				assertEquals(scanned.getContains(x, y) == null, indexed.getContains(x, y) == null);
+			}
+		}
+
+		// Graphics added after the index was built are found.
+		OMPoint point = new OMPoint(20.0, 0.0);
+		point.generate(merc);
+		indexed.add(point);
+		assertSame(point, indexed.findClosest(403, 300, 2));
+		scanned.add((OMGraphic) point.clone());
+
+		FilterSupport scannedFilter = new FilterSupport(scanned);
+		FilterSupport indexedFilter = new FilterSupport(indexed);
+		Rectangle rect = new Rectangle(300, 200, 100, 80);
+		assertEquals(scannedFilter.filter(rect).size(), indexedFilter.filter(rect).size());
+	}
+}
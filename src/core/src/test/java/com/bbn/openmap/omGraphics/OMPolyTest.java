@@ -0,0 +1,45 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.omGraphics;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class OMPolyTest extends TestCase {
+
+	public void testGenerateLeavesOldPoints() {
+		Mercator merc = new Mercator(new LatLonPoint.Double(0, 0), 100000000f, 800, 600);
+		OMPoly poly = new OMPoly(new double[] { 10, 10, 20, 20, 30, 10 }, OMGraphicConstants.DECIMAL_DEGREES,
+				OMGraphicConstants.LINETYPE_STRAIGHT);
+		assertTrue(poly.generate(merc));
+		float[][] xpoints = poly.xpoints;
+		float[][] ypoints = poly.ypoints;
+		float x = xpoints[0][0];
+		float y = ypoints[0][0];
+
+		// A render on another thread may still be using the old arrays, so
+		// they're left alone and new ones are made.
+		merc.setCenter(new LatLonPoint.Double(5, 5));
+		assertTrue(poly.generate(merc));
+		assertNotSame(xpoints, poly.xpoints);
+		assertNotSame(xpoints[0], poly.xpoints[0]);
+		assertNotSame(ypoints[0], poly.ypoints[0]);
+		assertEquals(x, xpoints[0][0], 0f);
+		assertEquals(y, ypoints[0][0], 0f);
+		assertTrue(x != poly.xpoints[0][0]);
+	}
+}
@@ -0,0 +1,95 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.omGraphics.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Orthographic;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class ImageWarpTest extends TestCase {
+
+	/**
+	 * A world image where every pixel is different.
+	 */
+	ImageWarp createWarp() {
+		int width = 720;
+		int height = 360;
+		int[] pix = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				pix[x + y * width] = 0xff000000 | (x << 10) | y;
+			}
+		}
+		return new ImageWarp(pix, width, height);
+	}
+
+	public void testGridMatchesExact() {
+		Projection[] projections = new Projection[] {
+				new Mercator(new LatLonPoint.Double(20, 30), 100000000f, 640, 480),
+				new Orthographic(new LatLonPoint.Double(60, -100), 60000000f, 640, 480) };
+
+		ImageWarp exact = createWarp();
+		exact.setGridSpacing(1);
+		exact.setParallelThreshold(0);
+		ImageWarp grid = createWarp();
+		grid.setParallelThreshold(0);
+		ImageWarp parallel = createWarp();
+		parallel.setParallelThreshold(1000);
+
+		for (Projection proj : projections) {
+			int[] e = exact.getImagePixels(proj);
+			int[] g = grid.getImagePixels(proj);
+			assertEquals(exact.getProjectedImageBoundsForLastProjection(),
+					grid.getProjectedImageBoundsForLastProjection());
+			assertEquals(e.length, g.length);
+			int clear = 0;
+			for (int i = 0; i < e.length; i++) {
+				// The same pixels are covered, and interpolated locations are
+				// at most a source pixel off.
+				assertEquals(e[i] == 0, g[i] == 0);
+				assertTrue(Math.abs(((e[i] >> 10) & 0x3ff) - ((g[i] >> 10) & 0x3ff)) <= 1);
+				assertTrue(Math.abs((e[i] & 0x3ff) - (g[i] & 0x3ff)) <= 1);
+				if (e[i] == 0) {
+					clear++;
+				}
+			}
+			assertTrue(clear < e.length);
+			assertTrue(Arrays.equals(g, parallel.getImagePixels(proj)));
+		}
+	}
+
+	public void testBilinearAndReuse() {
+		int[] pix = new int[100 * 50];
+		Arrays.fill(pix, 0xff336699);
+		ImageWarp warp = new ImageWarp(pix, 100, 50);
+		warp.setBilinear(true);
+		warp.setReuseBuffers(true);
+
+		// The world image covers the whole window, so the pixel array is the
+		// same size when the map moves.
+		Mercator merc = new Mercator(new LatLonPoint.Double(0, 0), 20000000f, 400, 300);
+		int[] first = warp.getImagePixels(merc);
+		for (int i = 0; i < first.length; i++) {
+			assertTrue(first[i] == 0xff336699 || first[i] == 0);
+		}
+		merc.setCenter(10, 10);
+		assertSame(first, warp.getImagePixels(merc));
+	}
+}
@@ -0,0 +1,128 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.omGraphics.util;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.omGraphics.OMGraphicConstants;
+import com.bbn.openmap.omGraphics.OMPoly;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.ProjMath;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class PolySimplifierTest extends TestCase {
+
+	/**
+	 * A wiggly line, lat, lon in radians, near the equator so the longitude
+	 * scaling doesn't matter.
+	 */
+	double[] wiggle(int n) {
+		double[] llpts = new double[n * 2];
+		for (int i = 0; i < n; i++) {
+			llpts[i * 2] = Math.sin(i / 10.0) * 2 + Math.sin(i / 1.7) * 0.1;
+			llpts[i * 2 + 1] = i / 10.0;
+		}
+		ProjMath.arrayDegToRad(llpts);
+		return llpts;
+	}
+
+	double segmentDistance(double y, double x, double y1, double x1, double y2, double x2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double len2 = dx * dx + dy * dy;
+		double t = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / len2));
+		return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+	}
+
+	public void testDouglasPeuckerTolerance() {
+		double[] llpts = wiggle(500);
+		float[] sig = PolySimplifier.computeSignificance(llpts, PolySimplifier.DOUGLAS_PEUCKER);
+		assertEquals(Float.MAX_VALUE, sig[0]);
+		assertEquals(Float.MAX_VALUE, sig[499]);
+
+		int lastCount = 500;
+		for (float tol = 1e-5f; tol < 0.1f; tol *= 2) {
+			int count = PolySimplifier.count(sig, tol);
+			assertTrue(count <= lastCount);
+			lastCount = count;
+
+			// Every dropped vertex is within the tolerance of the line that
+			// replaces it.
+			int prev = 0;
+			for (int i = 1; i < 500; i++) {
+				if (sig[i] >= tol) {
+					for (int j = prev + 1; j < i; j++) {
+						assertTrue(segmentDistance(llpts[j * 2], llpts[j * 2 + 1], llpts[prev * 2],
+								llpts[prev * 2 + 1], llpts[i * 2], llpts[i * 2 + 1]) <= tol * 1.0001);
+					}
+					prev = i;
+				}
+			}
+		}
+		assertEquals(2, lastCount);
+	}
+
+	public void testVisvalingamKeepsShape() {
+		double[] llpts = wiggle(500);
+		float[] sig = PolySimplifier.computeSignificance(llpts, PolySimplifier.VISVALINGAM);
+		assertEquals(Float.MAX_VALUE, sig[0]);
+
+		double[] simple = PolySimplifier.select(llpts, sig, 0.003f);
+		assertTrue(simple.length < llpts.length / 4);
+		assertTrue(simple.length > 4);
+		assertSame(llpts, PolySimplifier.select(llpts, sig, 0f));
+
+		// Collinear points are the first to go.
+		double[] line = new double[] { 0, 0, 0, 0.1, 0, 0.2, 0.1, 0.3 };
+		sig = PolySimplifier.computeSignificance(line, PolySimplifier.VISVALINGAM);
+		assertEquals(0f, sig[1], 1e-6f);
+		assertTrue(sig[2] > sig[1]);
+	}
+
+	public void testOMPolyGeneratesSimplified() {
+		double[] llpts = wiggle(2000);
+		OMPoly poly = new OMPoly(llpts, OMGraphicConstants.RADIANS, OMGraphicConstants.LINETYPE_STRAIGHT);
+		poly.simplify(PolySimplifier.DOUGLAS_PEUCKER);
+		poly.setSimplifyTolerance(1f);
+
+		Mercator merc = new Mercator(new LatLonPoint.Double(0, 10), 100000000f, 800, 600);
+		OMPoly full = new OMPoly(llpts, OMGraphicConstants.RADIANS, OMGraphicConstants.LINETYPE_STRAIGHT);
+		assertTrue(poly.generate(merc));
+		assertTrue(full.generate(merc));
+		int zoomedOut = countPoints(poly);
+		assertTrue(zoomedOut > 2 && zoomedOut < countPoints(full) / 4);
+
+		merc.setScale(10000f);
+		assertTrue(poly.generate(merc));
+		assertTrue(full.generate(merc));
+		// Only the points that are less than a pixel off a line are dropped.
+		assertTrue(countPoints(poly) > countPoints(full) * 0.99);
+
+		// Changing the coordinates drops the significance.
+		poly.setLocation(wiggle(100), OMGraphicConstants.RADIANS);
+		assertNull(poly.getVertexSignificance());
+	}
+
+	int countPoints(OMPoly poly) {
+		int count = 0;
+		java.awt.geom.PathIterator pi = poly.getShape().getPathIterator(null);
+		for (double[] coords = new double[6]; !pi.isDone(); pi.next()) {
+			if (pi.currentSegment(coords) != java.awt.geom.PathIterator.SEG_CLOSE) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
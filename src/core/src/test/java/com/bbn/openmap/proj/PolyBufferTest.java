@@ -0,0 +1,59 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.proj;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.omGraphics.OMGraphicConstants;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class PolyBufferTest extends TestCase {
+
+	void assertMatches(ArrayList<float[]> expected, PolyBuffer buffer) {
+		assertEquals(expected.size() / 2, buffer.size());
+		for (int i = 0; i < buffer.size(); i++) {
+			int length = buffer.getLength(i);
+			assertEquals(expected.get(i * 2).length, length);
+			assertTrue(Arrays.equals(expected.get(i * 2), Arrays.copyOf(buffer.getX(i), length)));
+			assertTrue(Arrays.equals(expected.get(i * 2 + 1), Arrays.copyOf(buffer.getY(i), length)));
+		}
+	}
+
+	public void testMatchesListProjection() {
+		Mercator merc = new Mercator(new LatLonPoint.Double(0, 0), 100000000f, 800, 600);
+		// Crosses the dateline, so it wraps into a second part.
+		double[] llpts = new double[] { 10, 170, 20, -170, 30, -160, 10, 170 };
+		ProjMath.arrayDegToRad(llpts);
+
+		PolyBuffer buffer = new PolyBuffer();
+		merc.forwardPoly(llpts, OMGraphicConstants.LINETYPE_STRAIGHT, -1, true, buffer);
+		assertMatches(merc.forwardPoly(llpts, OMGraphicConstants.LINETYPE_STRAIGHT, -1, true), buffer);
+		assertTrue(buffer.size() > 1);
+
+		// Other line types go through the list version.
+		merc.forwardPoly(llpts, OMGraphicConstants.LINETYPE_GREATCIRCLE, 8, true, buffer);
+		assertMatches(merc.forwardPoly(llpts, OMGraphicConstants.LINETYPE_GREATCIRCLE, 8, true), buffer);
+
+		LatLonPoint nw = new LatLonPoint.Double(40, -80);
+		LatLonPoint se = new LatLonPoint.Double(30, -70);
+		merc.forwardRect(nw, se, OMGraphicConstants.LINETYPE_STRAIGHT, -1, false, buffer);
+		assertMatches(merc.forwardRect(nw, se, OMGraphicConstants.LINETYPE_STRAIGHT, -1, false), buffer);
+		merc.forwardLine(nw, se, OMGraphicConstants.LINETYPE_STRAIGHT, -1, buffer);
+		assertMatches(merc.forwardLine(nw, se, OMGraphicConstants.LINETYPE_STRAIGHT, -1), buffer);
+	}
+}
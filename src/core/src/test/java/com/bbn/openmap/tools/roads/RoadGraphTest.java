@@ -0,0 +1,153 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.tools.roads;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class RoadGraphTest extends TestCase {
+
+	static final int SIZE = 12;
+
+	Intersection[][] grid;
+	List<Intersection> intersections;
+	List<Road> roads;
+
+	/**
+	 * A grid of intersections, with roads of random classes between neighbors
+	 * and a few missing.
+	 */
+	protected void setUp() throws Exception {
+		RoadClass[] classes = { new RoadClass("slow", Color.red, 1, 20f), new RoadClass("medium", Color.red, 1, 45f),
+				new RoadClass("fast", Color.red, 1, 90f) };
+		Random random = new Random(5);
+		grid = new Intersection[SIZE][SIZE];
+		intersections = new ArrayList<Intersection>();
+		roads = new ArrayList<Road>();
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				LatLonPoint loc = new LatLonPoint.Double(40 + i * 0.1 + random.nextDouble() * 0.05,
+						-70 + j * 0.1 + random.nextDouble() * 0.05);
+				grid[i][j] = new Intersection(loc, null);
+				intersections.add(grid[i][j]);
+			}
+		}
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				if (i + 1 < SIZE && random.nextInt(8) > 0) {
+					addRoad(grid[i][j], grid[i + 1][j], classes[random.nextInt(3)]);
+				}
+				if (j + 1 < SIZE && random.nextInt(8) > 0) {
+					addRoad(grid[i][j], grid[i][j + 1], classes[random.nextInt(3)]);
+				}
+			}
+		}
+	}
+
+	void addRoad(Intersection from, Intersection to, RoadClass roadClass) {
+		Road road = new Road(roads.size(), null, from, to, roadClass, null);
+		from.addRoad(road);
+		to.addRoad(road);
+		roads.add(road);
+	}
+
+	/**
+	 * Check that a route goes from one intersection to the other.
+	 */
+	void checkRoute(Route route, Intersection from, Intersection to) {
+		Intersection at = from;
+		for (Road road : route.getRoads()) {
+			at = road.getOtherIntersection(at);
+			assertNotNull(at);
+		}
+		assertEquals(to, at);
+		assertEquals(from, route.getOriginIntersection());
+	}
+
+	public void testRoutes() {
+		RoadGraph graph = new RoadGraph(intersections);
+		RoadGraph contracted = new RoadGraph(intersections);
+		contracted.contract();
+		assertEquals(intersections.size(), graph.getNodeCount());
+		assertEquals(roads.size() * 2, graph.getEdgeCount());
+
+		// Block some roads after contracting, the contracted graph has to
+		// notice.
+		for (int i = 0; i < roads.size(); i += 9) {
+			roads.get(i).block();
+		}
+
+		Random random = new Random(3);
+		for (int q = 0; q < 200; q++) {
+			Intersection from = intersections.get(random.nextInt(intersections.size()));
+			Intersection to = intersections.get(random.nextInt(intersections.size()));
+			Route route = graph.getBestRoute(from, to);
+			Route other = contracted.getBestRoute(from, to);
+			Route old = Route.getBestRoute(from, to, 90f, 20f);
+
+			if (from == to) {
+				assertNull(route);
+				assertNull(other);
+				continue;
+			}
+			assertEquals(route == null, other == null);
+			if (route == null) {
+				assertTrue(old == null || RoadGraph.getTraverseHours(old) >= Float.MAX_VALUE);
+				continue;
+			}
+			checkRoute(route, from, to);
+			checkRoute(other, from, to);
+
+			double hours = RoadGraph.getTraverseHours(route);
+			assertTrue(hours < Float.MAX_VALUE);
+			assertEquals(hours, RoadGraph.getTraverseHours(other), 1e-9);
+			assertTrue(old == null || hours <= RoadGraph.getTraverseHours(old) + 1e-9);
+		}
+	}
+
+	public void testConcurrentRoutes() throws Exception {
+		final RoadGraph graph = new RoadGraph(intersections);
+		final Intersection from = grid[0][0];
+		final Intersection to = grid[SIZE - 1][SIZE - 1];
+		final double hours = RoadGraph.getTraverseHours(graph.getBestRoute(from, to));
+		final AtomicInteger failures = new AtomicInteger();
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < 100; i++) {
+						Route route = graph.getBestRoute(i % 2 == 0 ? from : to, i % 2 == 0 ? to : from);
+						if (route == null || Math.abs(RoadGraph.getTraverseHours(route) - hours) > 1e-9) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+	}
+}
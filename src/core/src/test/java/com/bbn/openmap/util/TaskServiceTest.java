@@ -0,0 +1,111 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.util;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TaskServiceTest extends TestCase {
+
+	protected void tearDown() throws Exception {
+		TaskService.singleton().setMaxNumThreads(TaskService.DEFAULT_MAX_NUM_THREADS);
+		TaskService.singleton().resetStatistics();
+	}
+
+	public void testPriorityOrder() throws Exception {
+		TaskService ts = TaskService.singleton();
+		ts.setMaxNumThreads(1);
+		ts.resetStatistics();
+
+		// Keep the only thread busy while the others queue up.
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch running = new CountDownLatch(1);
+		ts.spawn(new Runnable() {
+			public void run() {
+				running.countDown();
+				try {
+					blocker.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+
+		final List<String> order = new Vector<String>();
+		final CountDownLatch done = new CountDownLatch(4);
+		String[] names = new String[] { "low", "high", "middle", "high2" };
+		int[] priorities = new int[] { -1, 10, 5, 10 };
+		for (int i = 0; i < names.length; i++) {
+			final String name = names[i];
+			ts.spawn(new Runnable() {
+				public void run() {
+					order.add(name);
+					done.countDown();
+				}
+			}, name, priorities[i]);
+		}
+
+		assertEquals(4, ts.getQueueDepth());
+		assertEquals(1, ts.getActiveCount());
+
+		blocker.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+
+		assertEquals("high", order.get(0));
+		assertEquals("high2", order.get(1));
+		assertEquals("middle", order.get(2));
+		assertEquals("low", order.get(3));
+	}
+
+	public void testStatistics() throws Exception {
+		TaskService ts = TaskService.singleton();
+		ts.resetStatistics();
+
+		Future<String> future = null;
+		for (int i = 0; i < 5; i++) {
+			future = ts.spawn(new java.util.concurrent.Callable<String>() {
+				public String call() throws Exception {
+					Thread.sleep(3);
+					return "done";
+				}
+			}, "sleeper", TaskService.DEFAULT_PRIORITY);
+		}
+		assertEquals("done", future.get(5, TimeUnit.SECONDS));
+
+		// The statistics are recorded just after the future is done.
+		long wait = System.currentTimeMillis() + 5000;
+		while ((ts.getStatistics("sleeper") == null || ts.getStatistics("sleeper").getCount() < 5)
+				&& System.currentTimeMillis() < wait) {
+			Thread.sleep(10);
+		}
+
+		TaskStatistics stats = ts.getStatistics("sleeper");
+		assertEquals(5, stats.getCount());
+		assertTrue(stats.getMeanLatencyMillis() >= 3);
+		assertTrue(stats.getMaxLatencyMillis() >= stats.getMeanLatencyMillis());
+		long total = 0;
+		for (long count : stats.getHistogram()) {
+			total += count;
+		}
+		assertEquals(5, total);
+		assertTrue(ts.getAllStatistics().containsKey("sleeper"));
+		assertTrue(ts.getStatistics().getCount() >= 5);
+	}
+}
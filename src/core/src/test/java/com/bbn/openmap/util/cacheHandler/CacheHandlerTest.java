@@ -0,0 +1,139 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.util.cacheHandler;
+
+import java.util.ListIterator;
+
+import junit.framework.TestCase;
+
+public class CacheHandlerTest extends TestCase {
+
+	/**
+	 * Counts the loads, hands back the key as the cached object.
+	 */
+	static class CountingCache extends CacheHandler {
+		int loads = 0;
+
+		CountingCache(int size) {
+			super(size);
+		}
+
+		public CacheObject load(Object key) {
+			loads++;
+			return new CacheObject(key, key);
+		}
+	}
+
+	public void testHitsDontReload() {
+		CountingCache ch = new CountingCache(10);
+		assertEquals("a", ch.get("a"));
+		assertEquals("a", ch.get("a"));
+		assertEquals(1, ch.loads);
+		assertEquals(1, ch.getCacheCount());
+	}
+
+	public void testLeastRecentlyUsedIsEvicted() {
+		CountingCache ch = new CountingCache(3);
+		ch.get("a");
+		ch.get("b");
+		ch.get("c");
+		// touch a, so b is the oldest
+		ch.get("a");
+		ch.get("d");
+
+		assertEquals(3, ch.getCacheCount());
+		assertNotNull(ch.searchCache("a"));
+		assertNull(ch.searchCache("b"));
+		assertNotNull(ch.searchCache("c"));
+		assertNotNull(ch.searchCache("d"));
+	}
+
+	public void testLargeCacheStaysBounded() {
+		CountingCache ch = new CountingCache(1000);
+		for (int i = 0; i < 5000; i++) {
+			ch.get(Integer.valueOf(i));
+		}
+		assertTrue(ch.getCacheCount() <= 1000);
+		assertTrue(ch.getCacheCount() > 900);
+		// The newest should all be there.
+		for (int i = 4990; i < 5000; i++) {
+			assertNotNull(ch.searchCache(Integer.valueOf(i)));
+		}
+	}
+
+	public void testResizeKeepsMostRecent() {
+		CountingCache ch = new CountingCache(10);
+		for (int i = 0; i < 10; i++) {
+			ch.get(Integer.valueOf(i));
+		}
+		ch.resizeCache(4);
+		assertEquals(4, ch.getCacheSize());
+		assertEquals(4, ch.getCacheCount());
+
+		ListIterator<CacheObject> it = ch.listIterator();
+		for (int i = 9; i >= 6; i--) {
+			assertEquals(Integer.valueOf(i), it.next().id);
+		}
+
+		ch.resetCache();
+		assertEquals(0, ch.getCacheCount());
+		assertEquals(4, ch.getCacheSize());
+	}
+
+	public void testWeightedEviction() {
+		CacheHandler ch = new CountingCache(100) {
+			protected long weigh(CacheObject obj) {
+				return ((String) obj.id).length();
+			}
+		};
+		ch.get("abcd");
+		ch.get("ab");
+		assertEquals(6, ch.getCacheWeight());
+
+		String key = "";
+		for (int i = 0; i < 200; i++) {
+			key = Integer.toString(i % 10) + Integer.toString(i);
+			ch.get(key);
+		}
+		assertTrue(ch.getCacheWeight() <= 100);
+		assertTrue(ch.getCacheCount() < 50);
+		assertNotNull(ch.searchCache(key));
+	}
+
+	public void testConcurrentAccess() throws InterruptedException {
+		final CountingCache ch = new CountingCache(200);
+		Thread[] threads = new Thread[8];
+		final boolean[] failed = new boolean[1];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < 20000; i++) {
+						Integer key = Integer.valueOf((i * 7 + offset) % 500);
+						if (!key.equals(ch.get(key))) {
+							failed[0] = true;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(failed[0]);
+		assertTrue(ch.getCacheCount() <= 200);
+	}
+}
@@ -0,0 +1,52 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.util.http;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+public class HttpConnectionTest extends TestCase {
+
+	byte[] encode(String format) throws Exception {
+		BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(ImageIO.write(image, format, out));
+		return out.toByteArray();
+	}
+
+	public void testGetImageContentType() throws Exception {
+		assertEquals(HttpConnection.CONTENT_PNG, HttpConnection.getImageContentType(encode("png")));
+		assertEquals(HttpConnection.CONTENT_JPEG, HttpConnection.getImageContentType(encode("jpeg")));
+		assertEquals(HttpConnection.CONTENT_GIF, HttpConnection.getImageContentType(encode("gif")));
+		assertEquals(HttpConnection.CONTENT_TIFF, HttpConnection.getImageContentType(new byte[] { 'I', 'I', 42, 0 }));
+		assertEquals(HttpConnection.CONTENT_TIFF, HttpConnection.getImageContentType(new byte[] { 'M', 'M', 0, 42 }));
+		assertNull(HttpConnection.getImageContentType(new byte[] { 1, 2, 3, 4 }));
+		assertNull(HttpConnection.getImageContentType(new byte[] { (byte) 0x89, 'P' }));
+		assertNull(HttpConnection.getImageContentType(null));
+	}
+
+	public void testIsWebTileImage() throws Exception {
+		assertTrue(HttpConnection.isWebTileImage(encode("png")));
+		assertTrue(HttpConnection.isWebTileImage(encode("jpeg")));
+		// Everything else gets converted to PNG before it's sent.
+		assertFalse(HttpConnection.isWebTileImage(encode("gif")));
+		assertFalse(HttpConnection.isWebTileImage(new byte[] { 'I', 'I', 42, 0, 8, 0, 0, 0 }));
+		assertFalse(HttpConnection.isWebTileImage(null));
+	}
+}
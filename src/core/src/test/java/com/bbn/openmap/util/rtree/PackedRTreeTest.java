@@ -0,0 +1,105 @@
+//**********************************************************************
+//
+//<copyright>
+//
+//BBN Technologies
+//10 Moulton Street
+//Cambridge, MA 02138
+//(617) 873-8000
+//
+//Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+//</copyright>
+//**********************************************************************
+
+package com.bbn.openmap.util.rtree;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class PackedRTreeTest extends TestCase {
+
+	static double[] randomBoxes(int count, Random random) {
+		double[] boxes = new double[count * 4];
+		for (int i = 0; i < count; i++) {
+			double x = random.nextDouble() * 360 - 180;
+			double y = random.nextDouble() * 180 - 90;
+			boxes[i * 4] = x;
+			boxes[i * 4 + 1] = y;
+			// Some points, some boxes
+			boxes[i * 4 + 2] = x + (i % 3 == 0 ? 0 : random.nextDouble() * 5);
+			boxes[i * 4 + 3] = y + (i % 3 == 0 ? 0 : random.nextDouble() * 5);
+		}
+		return boxes;
+	}
+
+	static int[] ids(int count) {
+		int[] ids = new int[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = i * 10 + 100;
+		}
+		return ids;
+	}
+
+	static int[] scan(double[] boxes, int[] ids, double xmin, double ymin, double xmax, double ymax) {
+		int[] hits = new int[ids.length];
+		int numHits = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (!(boxes[i * 4 + 2] < xmin || boxes[i * 4 + 3] < ymin || boxes[i * 4] > xmax || boxes[i * 4 + 1] > ymax)) {
+				hits[numHits++] = ids[i];
+			}
+		}
+		return Arrays.copyOf(hits, numHits);
+	}
+
+	public void testSearchMatchesScan() {
+		Random random = new Random(42);
+		for (int count : new int[] { 0, 1, 2, 15, 16, 17, 300, 5000 }) {
+			double[] boxes = randomBoxes(count, random);
+			int[] ids = ids(count);
+			PackedRTree tree = PackedRTree.build(boxes, ids, 8);
+			assertEquals(count, tree.size());
+
+			for (int q = 0; q < 50; q++) {
+				double x = random.nextDouble() * 360 - 180;
+				double y = random.nextDouble() * 180 - 90;
+				double w = random.nextDouble() * 60;
+				double h = random.nextDouble() * 30;
+				assertTrue(Arrays.equals(scan(boxes, ids, x, y, x + w, y + h), tree.search(x, y, x + w, y + h)));
+			}
+			assertTrue(Arrays.equals(ids, tree.search(-200, -100, 200, 100)));
+		}
+	}
+
+	public void testBounds() {
+		double[] boxes = new double[] { 1, 2, 3, 4, -5, -6, 0, 0, 10, 1, 11, 1 };
+		PackedRTree tree = PackedRTree.build(boxes, new int[] { 0, 1, 2 });
+		assertTrue(Arrays.equals(new double[] { -5, -6, 11, 4 }, tree.getBounds()));
+		assertNull(PackedRTree.build(new double[0], new int[0]).getBounds());
+	}
+
+	public void testWriteAndLoad() throws Exception {
+		Random random = new Random(7);
+		double[] boxes = randomBoxes(2000, random);
+		int[] ids = ids(2000);
+		PackedRTree tree = PackedRTree.build(boxes, ids);
+
+		File file = File.createTempFile("PackedRTreeTest", ".rtx");
+		try {
+			tree.write(file);
+			PackedRTree loaded = PackedRTree.load(file);
+			assertEquals(tree.size(), loaded.size());
+			assertEquals(tree.getNodeSize(), loaded.getNodeSize());
+			for (int q = 0; q < 50; q++) {
+				double x = random.nextDouble() * 360 - 180;
+				double y = random.nextDouble() * 180 - 90;
+				assertTrue(Arrays.equals(tree.search(x, y, x + 20, y + 10), loaded.search(x, y, x + 20, y + 10)));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
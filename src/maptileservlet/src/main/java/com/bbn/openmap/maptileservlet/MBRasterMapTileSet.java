@@ -3,21 +3,21 @@
 package com.bbn.openmap.maptileservlet;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
-import java.sql.Statement;
 import java.util.Properties;
 import java.util.logging.Logger;
 
+import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 
+import com.bbn.openmap.dataAccess.mapTile.mb.MBTilesReader;
 import com.bbn.openmap.dataAccess.mapTile.mb.RasterMapTileFactory;
 import com.bbn.openmap.image.BufferedImageHelper;
 import com.bbn.openmap.image.PNGImageIOFormatter;
 import com.bbn.openmap.io.FormatException;
 import com.bbn.openmap.util.PropUtils;
+import com.bbn.openmap.util.http.HttpConnection;
 
 /**
  * MapTileSet that reads MapBox raster mbtiles files.
@@ -25,8 +25,13 @@ import com.bbn.openmap.util.PropUtils;
  * <pre>
  * name=the-name-of-dataset
  * class=com.bbn.openmap.maptileservlet.MBRasterMapTileSet
- * rootDir=the path to the mbtiles file.
- *  * </pre>
+ * rootDir=the jdbc string for the mbtiles file, "jdbc:sqlite:path to file".
+ * # Send stored PNG/JPEG tiles as they are, instead of converting them to PNG (true by default).
+ * # Tiles in other formats, like GIF or TIFF, are always converted.
+ * passThrough=true
+ * # The number of database connections to keep open, defaults to the number of processors.
+ * connectionPoolSize=4
+ * </pre>
  * 
  * As an example, a url for accessing a tile from this server would be:
  * 
@@ -41,6 +46,17 @@ import com.bbn.openmap.util.PropUtils;
  */
 public class MBRasterMapTileSet extends StandardMapTileSet {
 
+    public final static String PASS_THROUGH_PROPERTY = "passThrough";
+
+    /**
+     * Whether stored tile bytes are sent as is when they are already PNG or
+     * JPEG images.
+     */
+    protected boolean passThrough = true;
+    protected int connectionPoolSize = MBTilesReader.DEFAULT_POOL_SIZE;
+    protected MBTilesReader reader;
+    protected boolean jdbcChecked = false;
+
     public MBRasterMapTileSet() {
     }
 
@@ -52,49 +68,69 @@ public class MBRasterMapTileSet extends StandardMapTileSet {
         props = super.getProperties(props);
         String prefix = PropUtils.getScopedPropertyPrefix(this);
         props.put(prefix + CLASS_ATTRIBUTE, this.getClass().getName());
+        props.put(prefix + PASS_THROUGH_PROPERTY, Boolean.toString(passThrough));
+        props.put(prefix + RasterMapTileFactory.CONNECTION_POOL_SIZE_PROPERTY, Integer.toString(connectionPoolSize));
 
         return props;
     }
 
+    public void setProperties(String prefix, Properties props) {
+        super.setProperties(prefix, props);
+        prefix = PropUtils.getScopedPropertyPrefix(prefix);
+
+        passThrough = PropUtils.booleanFromProperties(props, prefix + PASS_THROUGH_PROPERTY, passThrough);
+        connectionPoolSize = PropUtils.intFromProperties(props, prefix
+                + RasterMapTileFactory.CONNECTION_POOL_SIZE_PROPERTY, connectionPoolSize);
+    }
+
+    /**
+     * Get the MBTilesReader for the rootDir, creating it the first time.
+     * 
+     * @return MBTilesReader, null if the JDBC driver can't be found.
+     */
+    protected synchronized MBTilesReader getReader() {
+        if (reader == null && !jdbcChecked) {
+            jdbcChecked = true;
+            try {
+                Class.forName(RasterMapTileFactory.DEFAULT_TEST_CLASS);
+                reader = new MBTilesReader(rootDir, connectionPoolSize);
+            } catch (Exception e) {
+                getLogger().warning("can't locate sqlite JDBC components");
+            }
+        }
+        return reader;
+    }
+
     public byte[] getImageData(String pathInfo) throws IOException, FormatException {
 
         byte[] imageData = null;
 
-        try {
-            Class.forName(RasterMapTileFactory.DEFAULT_TEST_CLASS);
-        } catch (Exception e) {
-            getLogger().warning("can't locate sqlite JDBC components");
+        MBTilesReader mbReader = getReader();
+        if (mbReader == null) {
             return null;
         }
 
         try {
 
             TileInfo ti = new TileInfo(pathInfo);
-
-            Connection conn = DriverManager.getConnection(rootDir);
-            Statement stat = conn.createStatement();
-
-            // "select zoom_level, tile_column, tile_row, tile_data from map, images where map.tile_id = images.tile_id";
-            StringBuilder statement = new StringBuilder("select tile_data from map, images where");
-            statement.append(" zoom_level = ").append(ti.zoomLevel);
-            statement.append(" and tile_column = ").append(ti.x);
-            statement.append(" and tile_row = ").append((int) (Math.pow(2, ti.zoomLevel)) - ti.y
-                    - 1);
-            statement.append(" and map.tile_id = images.tile_id;");
-
-            ResultSet rs = stat.executeQuery(statement.toString());
-            while (rs.next()) {
-                byte[] imageBytes = rs.getBytes("tile_data");
-                ImageIcon ii = new ImageIcon(imageBytes);
-                BufferedImage bi = BufferedImageHelper.getBufferedImage(ii.getImage(), 0, 0, -1, -1);
-
-                // TODO: Still have to incorporate properties or something to
-                // all
-                // specification of map image format.
-                imageData = new PNGImageIOFormatter().formatImage(bi);
+            byte[] imageBytes = mbReader.getTileData(ti.x, ti.y, ti.zoomLevel);
+
+            if (imageBytes != null) {
+                if (passThrough && HttpConnection.isWebTileImage(imageBytes)) {
+                    imageData = imageBytes;
+                } else {
+                    BufferedImage bi = ImageIO.read(new ByteArrayInputStream(imageBytes));
+                    if (bi == null) {
+                        ImageIcon ii = new ImageIcon(imageBytes);
+                        bi = BufferedImageHelper.getBufferedImage(ii.getImage(), 0, 0, -1, -1);
+                    }
+
+                    // TODO: Still have to incorporate properties or something to
+                    // all
+                    // specification of map image format.
+                    imageData = new PNGImageIOFormatter().formatImage(bi);
+                }
             }
-            rs.close();
-            conn.close();
         } catch (Exception e) {
             getLogger().warning("something went wrong fetching image from database: "
                     + e.getMessage());
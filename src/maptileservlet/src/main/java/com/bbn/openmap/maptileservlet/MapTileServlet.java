@@ -48,7 +48,8 @@ import com.bbn.openmap.util.wanderer.WandererCallback;
  * TileMillMapTileSet knows how to use mbtiles files created using TileMill. The
  * RelayMapTileSet uses a local z/x/y directory structure as a cache for tiles
  * to disperse, but goes to another server location to fetch new tiles it
- * doesn't have. Each MapTileSet has configuration information in its javadoc.
+ * doesn't have. The TpkMapTileSet serves tiles from an ArcGIS tile package.
+ * Each MapTileSet has configuration information in its javadoc.
  * See the web.xml file for more information about configuring this
  * MapTileServlet.
  * 
@@ -224,11 +225,16 @@ public class MapTileServlet extends HttpServlet {
             }
 
             try {
-                resp.setContentType(HttpConnection.CONTENT_PNG);
                 byte[] imageData = mts.getImageData(pathInfo);
-                OutputStreamWriter osw = new OutputStreamWriter(out);
+                // Tile sets can pass stored tiles through, so check what
+                // they actually are.
+                String contentType = HttpConnection.getImageContentType(imageData);
+                resp.setContentType(contentType != null ? contentType : HttpConnection.CONTENT_PNG);
+                // Tiles are already encoded, so they go straight out, and
+                // the length lets the connection be kept alive.
+                resp.setContentLength(imageData.length);
                 out.write(imageData, 0, imageData.length);
-                osw.flush();
+                out.flush();
             } catch (Exception e) {
                 if (logger.isLoggable(Level.FINE)) {
                     getLogger().fine("Tile not found: " + pathInfo);
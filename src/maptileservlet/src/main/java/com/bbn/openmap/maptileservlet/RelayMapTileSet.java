@@ -19,6 +19,10 @@ import java.util.Properties;
  * class=com.bbn.openmap.maptileservlet.RelayMapTileSet
  * rootDir=the formatted URL for remote tiles, i.e. http://server.com/{z}/{x}/{y}.png
  * localCacheRootDir=the local path of the cached tiles, i.e. /data/tiles/{z}/{x}/{y}.png
+ * # and/or, a single file holding a limited amount of cached tiles
+ * diskCacheFile=/data/tiles/relay.tiles
+ * diskCacheSize=megabytes of tiles to keep in the disk cache file
+ * diskCacheTTL=hours before a cached tile is fetched again
  * </pre>
  *
  * As an example, a url for accessing a tile from this server would be:
@@ -94,9 +98,9 @@ public class RelayMapTileSet
 			}
 		}
 
-        // The file wasn't found.
+        // The file wasn't found, check the disk cache and then the server.
 		String remoteFilePath = buildFilePath(tInfo.x, tInfo.y, tInfo.zoomLevel, getFileExt());
-		imageData = getImageBytes(remoteFilePath, localFilePath);
+		imageData = getTileBytes(tInfo.x, tInfo.y, tInfo.zoomLevel, remoteFilePath, localFilePath);
 
 		return imageData;
 	}
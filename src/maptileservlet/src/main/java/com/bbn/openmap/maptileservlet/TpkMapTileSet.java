@@ -0,0 +1,143 @@
+/*
+ */
+package com.bbn.openmap.maptileservlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.dataAccess.mapTile.tpk.MappedTpkReader;
+import com.bbn.openmap.dataAccess.mapTile.tpk.TpkMapTileFactory;
+import com.bbn.openmap.dataAccess.mapTile.tpk.TpkReader;
+import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.util.PropUtils;
+
+/**
+ * MapTileSet that serves the tiles in an ArcGIS tile package (tpk) file. The
+ * stored tile images are sent as they are.
+ *
+ * <pre>
+ * name=the-name-of-dataset
+ * class=com.bbn.openmap.maptileservlet.TpkMapTileSet
+ * tpk=path to tpk file
+ * # Memory-map the bundle files in the tpk (true by default).
+ * memoryMapped=true
+ * </pre>
+ *
+ * As an example, a url for accessing a tile from this server would be:
+ *
+ * <pre>
+ * http://your.machine/ommaptile/the-name-of-dataset/z/x/y.png
+ * </pre>
+ *
+ * where ommaptile is the name of the servlet. You can change that in the
+ * web.xml and in glassfish/tomcat.
+ */
+public class TpkMapTileSet extends StandardMapTileSet {
+
+    protected String tpkLocation;
+    protected boolean memoryMapped = true;
+    protected TpkReader reader;
+    protected boolean readerChecked = false;
+
+    public TpkMapTileSet() {
+    }
+
+    public TpkMapTileSet(Properties props) {
+        setProperties(props);
+    }
+
+    public boolean allGood() {
+        return name != null && getReader() != null;
+    }
+
+    public Properties getProperties(Properties props) {
+        props = super.getProperties(props);
+        String prefix = PropUtils.getScopedPropertyPrefix(this);
+        props.put(prefix + CLASS_ATTRIBUTE, this.getClass().getName());
+        props.put(prefix + TpkMapTileFactory.TPK_FILE_PROPERTY, PropUtils.unnull(tpkLocation));
+        props.put(prefix + TpkMapTileFactory.MEMORY_MAPPED_PROPERTY, Boolean.toString(memoryMapped));
+
+        return props;
+    }
+
+    public void setProperties(String prefix, Properties props) {
+        super.setProperties(prefix, props);
+        prefix = PropUtils.getScopedPropertyPrefix(prefix);
+
+        tpkLocation = props.getProperty(prefix + TpkMapTileFactory.TPK_FILE_PROPERTY, tpkLocation);
+        memoryMapped = PropUtils.booleanFromProperties(props, prefix + TpkMapTileFactory.MEMORY_MAPPED_PROPERTY,
+                memoryMapped);
+    }
+
+    /**
+     * Get the TpkReader for the tpk file, creating it the first time.
+     *
+     * @return TpkReader, null if the tpk file can't be read.
+     */
+    protected synchronized TpkReader getReader() {
+        if (reader == null && !readerChecked && tpkLocation != null) {
+            readerChecked = true;
+            try {
+                reader = memoryMapped ? new MappedTpkReader(tpkLocation) : new TpkReader(tpkLocation);
+            } catch (IOException ioe) {
+                getLogger().warning("can't read " + tpkLocation + ": " + ioe.getMessage());
+            } catch (NoClassDefFoundError ncdfe) {
+                getLogger().warning("TPK package requires the Jackson JSON package, ObjectMapper not found.");
+            }
+        }
+        return reader;
+    }
+
+    public byte[] getImageData(String pathInfo) throws IOException, FormatException {
+
+        TpkReader tpkReader = getReader();
+        if (tpkReader == null) {
+            return null;
+        }
+
+        TileInfo ti = new TileInfo(pathInfo);
+        if (!ti.valid) {
+            return null;
+        }
+
+        ByteBuffer tile = tpkReader.getTile(ti.x, ti.y, ti.zoomLevel);
+        if (tile == null) {
+            return null;
+        }
+
+        // The response needs an array, this is the only copy of the bytes.
+        byte[] imageData = new byte[tile.remaining()];
+        tile.get(imageData);
+        return imageData;
+    }
+
+    /**
+     * Holder for this class's Logger. This allows for lazy initialization of
+     * the logger.
+     */
+    private static final class LoggerHolder {
+        /**
+         * The logger for this class
+         */
+        private static final Logger LOGGER = Logger.getLogger(MapTileSet.class.getName());
+
+        /**
+         * Prevent instantiation
+         */
+        private LoggerHolder() {
+            throw new AssertionError("This should never be instantiated");
+        }
+    }
+
+    /**
+     * Get the logger for this class.
+     *
+     * @return logger for this class
+     */
+    private static Logger getLogger() {
+        return LoggerHolder.LOGGER;
+    }
+
+}
@@ -68,4 +68,16 @@ public class HttpResponse implements IHttpResponse {
         out.flush();
     }
 
+    /**
+     * Set the content type, and return the servlet OutputStream for a
+     * response of unknown length.
+     *
+     * @param contentType the content type of the response.
+     * @return the OutputStream to write the response to.
+     */
+    public OutputStream getOutputStream(String contentType) throws IOException {
+        httpResponse.setContentType(contentType);
+        return httpResponse.getOutputStream();
+    }
+
 }
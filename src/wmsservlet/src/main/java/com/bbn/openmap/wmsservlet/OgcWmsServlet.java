@@ -17,6 +17,8 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.Properties;
 
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -25,13 +27,37 @@ import javax.servlet.http.HttpServletResponse;
 import com.bbn.openmap.PropertyHandler;
 import com.bbn.openmap.image.wms.WMSException;
 import com.bbn.openmap.image.wms.WmsRequestHandler;
+import com.bbn.openmap.image.wms.WmsRequestHandlerPool;
 import com.bbn.openmap.util.Debug;
 
 /**
+ * The OgcWmsServlet answers WMS requests. Requests are handled by
+ * WmsRequestHandlers kept in a pool, so several requests can be rendered at
+ * the same time, each with its own copy of the layers. There is one pool for
+ * the servlet, and the URL written into the capabilities of a handler is set
+ * from each request it handles. The pool is configured with context parameters
+ * in the web.xml file:
  * 
+ * <pre>
+ * # The number of requests handled at the same time, defaults to the number of processors.
+ * handlerPoolSize
+ * # How long, in milliseconds, a request waits for a free handler before a 503 is returned. Default is 30000.
+ * handlerWaitMillis
+ * </pre>
  */
 public class OgcWmsServlet extends HttpServlet {
 
+    public final static String HANDLER_POOL_SIZE_ATTRIBUTE = "handlerPoolSize";
+    public final static String HANDLER_WAIT_MILLIS_ATTRIBUTE = "handlerWaitMillis";
+
+    protected int handlerPoolSize = WmsRequestHandlerPool.DEFAULT_MAX_HANDLERS;
+    protected long handlerWaitMillis = WmsRequestHandlerPool.DEFAULT_WAIT_MILLIS;
+
+    /**
+     * The handlers for all requests, created in init.
+     */
+    protected WmsRequestHandlerPool handlerPool;
+
     /**
      * A do-nothing constructor - init does all the work.
      */
@@ -39,6 +65,44 @@ public class OgcWmsServlet extends HttpServlet {
         super();
     }
 
+    /**
+     * Called when the servlet is loaded, reads the handler pool settings.
+     */
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        ServletContext context = config.getServletContext();
+
+        String poolSize = context.getInitParameter(HANDLER_POOL_SIZE_ATTRIBUTE);
+        if (poolSize != null) {
+            try {
+                handlerPoolSize = Integer.parseInt(poolSize.trim());
+            } catch (NumberFormatException nfe) {
+                Debug.error("OgcWmsServlet: can't read " + HANDLER_POOL_SIZE_ATTRIBUTE + ": " + poolSize);
+            }
+        }
+
+        String waitMillis = context.getInitParameter(HANDLER_WAIT_MILLIS_ATTRIBUTE);
+        if (waitMillis != null) {
+            try {
+                handlerWaitMillis = Long.parseLong(waitMillis.trim());
+            } catch (NumberFormatException nfe) {
+                Debug.error("OgcWmsServlet: can't read " + HANDLER_WAIT_MILLIS_ATTRIBUTE + ": " + waitMillis);
+            }
+        }
+
+        handlerPool = new WmsRequestHandlerPool(handlerPoolSize, handlerWaitMillis);
+    }
+
+    /**
+     * Get the handler pool, shared by all requests.
+     * 
+     * @param request
+     * @return WmsRequestHandlerPool
+     */
+    protected WmsRequestHandlerPool getHandlerPool(HttpServletRequest request) {
+        return handlerPool;
+    }
+
     /**
      * @param request the request argument
      * @return Properties
@@ -84,6 +148,23 @@ public class OgcWmsServlet extends HttpServlet {
 		return props;
 	}
 
+    /**
+     * Get the path of the servlet for the capabilities, from the context path,
+     * servlet path and path info of the request.
+     * 
+     * @param request
+     * @return path like "/myproject/wms"
+     */
+    protected String getRequestPath(HttpServletRequest request) {
+        String contextPath = request.getContextPath();
+        String servletPath = request.getServletPath();
+        // can be used to encode extra things in the path info. only usable by
+        // subclassing OgcWmsServlet
+        String servletPathInfo = request.getPathInfo();
+        return (contextPath == null ? "" : contextPath) + (servletPath == null ? "" : servletPath)
+                + (servletPathInfo == null ? "" : servletPathInfo);
+    }
+
     protected WmsRequestHandler createRequestHandler(HttpServletRequest request) throws ServletException,
             IOException {
         Debug.message("wms", "OgcWmsServlet.createRequestHandler : ");
@@ -110,17 +191,10 @@ public class OgcWmsServlet extends HttpServlet {
         if (servletPath == null) {
             throw new ServletException("servlet path is not specified");
         }
-        
-        // can be used to encode extra things in the path info. only usable by
-        // subclassing OgcWmsServlet
-        String servletPathInfo = request.getPathInfo();
-        if (servletPathInfo == null) {
-            servletPathInfo = "";
-        }
 
         try {
             WmsRequestHandler wmsRequestHandler = new WmsRequestHandler(schema, hostName,
-                    serverPort, contextPath + servletPath + servletPathInfo, getProperties());
+                    serverPort, getRequestPath(request), getProperties());
             return wmsRequestHandler;
         } catch (java.net.MalformedURLException me) {
             Debug.message("wms", "MS: caught MalformedURLException - \n" + me.getMessage());
@@ -144,11 +218,48 @@ public class OgcWmsServlet extends HttpServlet {
     public void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         Debug.message("wms", "OgcWmsServlet.doGet");
-        WmsRequestHandler wmsRequestHandler = createRequestHandler(request);
+        WmsRequestHandlerPool pool = getHandlerPool(request);
+
+        try {
+            if (!pool.acquire()) {
+                Debug.message("wms", "OgcWmsServlet: too busy, turning request away");
+                response.setHeader("Retry-After", "1");
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server busy");
+                return;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server shutting down");
+            return;
+        }
+
+        WmsRequestHandler wmsRequestHandler = null;
+        try {
+            wmsRequestHandler = pool.poll();
+            if (wmsRequestHandler == null) {
+                wmsRequestHandler = createRequestHandler(request);
+            } else {
+                // The handler may have been created for another request URL.
+                wmsRequestHandler.getCapabilities().setUrl(request.getScheme(), request.getServerName(),
+                        request.getServerPort(), getRequestPath(request));
+            }
 
-        Properties properties = parsePropertiesFromRequest(request);
-        HttpResponse httpResponse = new HttpResponse(response);
-        wmsRequestHandler.handleRequest(properties, httpResponse);
+            Properties properties = parsePropertiesFromRequest(request);
+            HttpResponse httpResponse = new HttpResponse(response);
+            wmsRequestHandler.handleRequest(properties, httpResponse);
+        } finally {
+            pool.release(wmsRequestHandler);
+        }
+    }
+
+    /**
+     * Drops the pooled handlers.
+     */
+    public void destroy() {
+        if (handlerPool != null) {
+            handlerPool.clear();
+        }
+        super.destroy();
     }
 
 }